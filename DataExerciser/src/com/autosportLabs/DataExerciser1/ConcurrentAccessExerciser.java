@@ -0,0 +1,119 @@
+package com.autosportLabs.DataExerciser1;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.IOUtils;
+
+import com.autosportLabs.data.AnalogDataChannel;
+import com.autosportLabs.data.DataChannelGroup;
+import com.autosportLabs.data.DataManager;
+
+/**
+ * Stress test for the DataManager concurrency model: one writer ingests samples while several
+ * reader threads read the published samples.
+ * 
+ * Each sample's channel values are derived from its index, so a reader can tell if it
+ * observed a torn sample (values from different writes) or an unpublished one.
+ */
+public class ConcurrentAccessExerciser {
+	
+	private static final int SAMPLE_COUNT = 3000000;
+	private static final int READER_COUNT = 4;
+	
+	public static void main(String[] args) throws Exception {
+		File dataFile = new File("config.json");
+		FileInputStream stream = new FileInputStream(dataFile);
+		String stringJSON = IOUtils.toString(stream, "UTF-8");
+		stream.close();
+		
+		final DataManager manager = new DataManager(stringJSON);
+		final AnalogDataChannel channelX = (AnalogDataChannel) manager.getDataChannel("Lateral Acceleration");
+		final AnalogDataChannel channelY = (AnalogDataChannel) manager.getDataChannel("Longitudinal Acceleration");
+		final AnalogDataChannel channelZ = (AnalogDataChannel) manager.getDataChannel("Vertical Acceleration");
+		final AnalogDataChannel channelYaw = (AnalogDataChannel) manager.getDataChannel("Yaw Rate");
+		final DataChannelGroup group = manager.getDataChannelGroup("Inertial Measurements");
+		
+		final AtomicBoolean writing = new AtomicBoolean(true);
+		final AtomicLong samplesRead = new AtomicLong();
+		final AtomicLong tornSamples = new AtomicLong();
+		
+		Thread[] readers = new Thread[READER_COUNT];
+		for (int readerIndex = 0; readerIndex < READER_COUNT; readerIndex++) {
+			final long seed = readerIndex;
+			readers[readerIndex] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					Random random = new Random(seed);
+					long reads = 0;
+					long torn = 0;
+					
+					boolean lastPass = false;
+					while (!lastPass) {
+						lastPass = !writing.get();
+						int published = group.getPublishedSampleCount();
+						if (published == 0) {
+							continue;
+						}
+						
+						// Read the newest samples, then some random older ones.
+						for (int step = 0; step < 64; step++) {
+							int index = (step < 8) ? Math.max(0, published - 1 - step) : random.nextInt(published);
+							if (!isConsistent(index, channelX, channelY, channelZ, channelYaw, group)) {
+								torn++;
+							}
+							reads++;
+						}
+					}
+					samplesRead.addAndGet(reads);
+					tornSamples.addAndGet(torn);
+				}
+			}, "Reader " + readerIndex);
+			readers[readerIndex].start();
+		}
+		
+		long start = System.nanoTime();
+		for (int index = 0; index < SAMPLE_COUNT; index++) {
+			channelX.setFloat(index, index);
+			channelY.setFloat(-index, index);
+			channelZ.setFloat(index * 0.5f, index);
+			channelYaw.setFloat(index + 0.25f, index);
+			group.setValid(true, index);
+			group.publishSamples(index + 1);
+		}
+		long elapsed = System.nanoTime() - start;
+		writing.set(false);
+		
+		for (Thread reader : readers) {
+			reader.join();
+		}
+		
+		// Final check of every sample from this thread.
+		int errors = 0;
+		for (int index = 0; index < SAMPLE_COUNT; index++) {
+			if (!isConsistent(index, channelX, channelY, channelZ, channelYaw, group)) {
+				errors++;
+			}
+		}
+		
+		System.out.println("Wrote " + SAMPLE_COUNT + " samples in " + (elapsed / 1000000) + " ms with " + READER_COUNT + " readers.");
+		System.out.println("Concurrent reads: " + samplesRead.get());
+		System.out.println("Torn or unpublished samples observed: " + tornSamples.get());
+		System.out.println("Data Integrity Errors: " + errors);
+	}
+	
+	private static boolean isConsistent(int index, AnalogDataChannel channelX, AnalogDataChannel channelY,
+			AnalogDataChannel channelZ, AnalogDataChannel channelYaw, DataChannelGroup group) {
+		if (!group.isValid(index)) {
+			return false;
+		}
+		return channelX.getFloat(index) == index
+				&& channelY.getFloat(index) == -index
+				&& channelZ.getFloat(index) == index * 0.5f
+				&& channelYaw.getFloat(index) == index + 0.25f;
+	}
+
+}
@@ -11,15 +11,33 @@ import java.io.RandomAccessFile;
 import org.apache.commons.io.IOUtils;
 
 import com.autosportLabs.data.AnalogDataChannel;
+import com.autosportLabs.data.CsvLogImporter;
 import com.autosportLabs.data.DataChannelGroup;
 import com.autosportLabs.data.DataManager;
+import com.autosportLabs.data.DataMetrics;
+import com.autosportLabs.data.DurabilityPolicy;
+import com.autosportLabs.data.ImportStatistics;
+import com.autosportLabs.data.SampleRecord;
+import com.autosportLabs.data.InProcessSyncTransport;
+import com.autosportLabs.data.MetricsReporter;
+import com.autosportLabs.data.MetricsSnapshot;
+import com.autosportLabs.data.SyncReceiver;
+import com.autosportLabs.data.SyncSender;
 
 public class DataExerciser1 {
 	
+	// The size of a telemetry message, about one packet on the cellular link.
+	private static final int TELEMETRY_MESSAGE_BYTES = 1400;
+	
 	public static void main(String[] args) throws Exception {
 		
 		String originalDataFile = "rc_0.log";
 		
+		// Every DataManager records its work in one set of metrics, also visible through JMX.
+		DataMetrics metrics = new DataMetrics();
+		DataMetrics.setDefault(metrics);
+		metrics.registerMBean("DataExerciser1");
+		
 		File dataFile = new File("config.json");
 		FileInputStream stream = new FileInputStream(dataFile);
 		String stringJSON = IOUtils.toString(stream, "UTF-8"); 
@@ -39,20 +57,27 @@ public class DataExerciser1 {
 		 
 		 System.out.println("Checking stored data loaded");
 		 checkData(originalDataFile, loadedDataManager);
+		 System.out.println();
 		 
+		 metrics.report(new MetricsReporter() {
+			 @Override
+			 public void report(MetricsSnapshot snapshot) {
+				 System.out.println("Metrics");
+				 System.out.print(snapshot);
+			 }
+		 });
+		 metrics.unregisterMBean();
 		 
 		
 	}
 	
 	 static DataManager simulateCaptureAndTelemetry(String fileName, DataManager captureDataManager) throws Exception {
-		 BufferedReader br = new BufferedReader(new FileReader(fileName));
-		 int rowNumber = 0;
-		 String line = br.readLine(); // get past the header line, no processing.
-		 
-		 AnalogDataChannel inertialChannelX = (AnalogDataChannel) captureDataManager.getDataChannel("Lateral Acceleration");
-		 AnalogDataChannel inertialChannelY = (AnalogDataChannel) captureDataManager.getDataChannel("Longitudinal Acceleration");
-		 AnalogDataChannel inertialChannelZ = (AnalogDataChannel) captureDataManager.getDataChannel("Vertical Acceleration");
-		 AnalogDataChannel inertialChannelYaw = (AnalogDataChannel) captureDataManager.getDataChannel("Yaw Rate");		 
+		 // The log's first four columns are the inertial measurements.
+		 CsvLogImporter importer = new CsvLogImporter();
+		 importer.mapColumn(0, "Lateral Acceleration");
+		 importer.mapColumn(1, "Longitudinal Acceleration");
+		 importer.mapColumn(2, "Vertical Acceleration");
+		 importer.mapColumn(3, "Yaw Rate");
 		 
 		 DataChannelGroup captureInertialGroup = captureDataManager.getDataChannelGroup("Inertial Measurements");
 		 
@@ -67,50 +92,32 @@ public class DataExerciser1 {
 			 checkFile.delete();
 		 }
 		 
+		 // Frames are written straight into a mapping of the file, and forced to storage once a second.
+		 captureDataManager.setNewMappedDataFile(checkFile, DurabilityPolicy.everyMillis(1000));
 		 
-		 RandomAccessFile captureFile = new RandomAccessFile("capture.rcap", "rws");
-		 captureDataManager.setNewDataFile(captureFile);
+		 // Capture the log; each frame is committed as it is completed.
+		 ImportStatistics statistics = importer.importLog(new File(fileName), captureDataManager);
+		 System.out.println("Captured " + statistics);
 		 
+		 // TODO: Process GPS data at a different rate.
 		 
-		 while ((line = br.readLine()) != null) {
-			 String[] columns = line.split(",");
-			 
-			 Float inertialValueX = Float.valueOf(columns[0]);
-			 Float inertialValueY = Float.valueOf(columns[1]);
-			 Float inertialValueZ = Float.valueOf(columns[2]);
-			 Float inertialValueYaw = Float.valueOf(columns[3]);
-			 
-			 inertialChannelX.setValue(inertialValueX, rowNumber);
-			 inertialChannelY.setValue(inertialValueY, rowNumber);
-			 inertialChannelZ.setValue(inertialValueZ, rowNumber);
-			 inertialChannelYaw.setValue(inertialValueYaw, rowNumber);
-			 
-			 captureInertialGroup.setValid(true, rowNumber);
-			 
-			 // TODO: Process GPS data at a different rate.
-			 
-			 // Simulate normal Telemetry data cycle
-			 if ((rowNumber % 10) == 0) {	// 3 Hz Updates
-				 byte[] transmittedSampleBytes = captureInertialGroup.getBytesForSample(rowNumber);
-				 telemetryInertialGroup.setBytesForSample(transmittedSampleBytes, rowNumber);
-			 }
-			 
-			 // TODO: Simulate detailed Telemetry requests 
-			 
-			 rowNumber++;
-			 
-			 // Commit when done with a frame
-			 if (rowNumber % captureInertialGroup.getSampleRate() == 0) {
-				 captureDataManager.writeFrame((rowNumber / captureInertialGroup.getSampleRate()) - 1);
-			 }
-		 }
+		 // Simulate normal Telemetry data cycle, syncing the capture over an in-process link
+		 InProcessSyncTransport[] link = InProcessSyncTransport.createPair();
+		 SyncSender sender = new SyncSender(captureDataManager, TELEMETRY_MESSAGE_BYTES);
+		 SyncReceiver receiver = new SyncReceiver(telemetryDataManager, TELEMETRY_MESSAGE_BYTES);
+		 sender.setSampleInterval(captureInertialGroup, 10);	// 3 Hz Updates
+		 sender.sendUpdates(link[0]);
+		 receiver.receive(link[1], 0);
+		 System.out.println("Telemetry updates: " + sender.getSampleCount() + " samples in " + sender.getByteCount() + " bytes");
 		 
-		 // Commit last data
-		 captureDataManager.writeFrame(rowNumber / captureInertialGroup.getSampleRate());
+		 // Simulate detailed Telemetry requests, for the first ten seconds in full
+		 receiver.sendBackfillRequest(link[1], telemetryInertialGroup, 0, 10 * telemetryInertialGroup.getSampleRate());
+		 sender.serveBackfill(link[0], 0);
+		 receiver.receive(link[1], 0);
+		 System.out.println("Telemetry total: " + sender.getSampleCount() + " samples in " + sender.getByteCount() + " bytes");
 		 
 		 // close files
-		 captureFile.close();
-		 br.close();
+		 captureDataManager.close();
 		 return telemetryDataManager;
 	}
 
@@ -134,38 +141,41 @@ public class DataExerciser1 {
 		 int samplesSkipped = 0;
 		 int errors = 0;
 		 
+		 // One cursor visits each received sample in turn, reading all four channels from one frame lookup.
+		 SampleRecord record = new SampleRecord(receivedInertialGroup);
+		 
 		 while ((line = br.readLine()) != null) {
-			 boolean validSample = receivedInertialGroup.isValid(rowNumber);
-			 if (validSample) {
+			 record.advance();
+			 if (record.isValid()) {
 				 // Count as received
 				 samplesReceived++;
 				 
 				 String[] columns = line.split(",");
 				 
-				 Float inertialValueX = Float.valueOf(columns[0]);
-				 Float telemetryValueX = receivedX.getValue(rowNumber);
-				 if (!inertialValueX.equals(telemetryValueX)) {
+				 float inertialValueX = Float.parseFloat(columns[0]);
+				 float telemetryValueX = record.getFloat(receivedX);
+				 if (Float.compare(inertialValueX, telemetryValueX) != 0) {
 					 errors++;
 					 System.out.println("Error, sample " + rowNumber + ". X Value expected " + inertialValueX + ", Received " + telemetryValueX);
 				 }
 				 				 
-				 Float inertialValueY = Float.valueOf(columns[1]);
-				 Float telemetryValueY = receivedY.getValue(rowNumber);
-				 if (!inertialValueY.equals(telemetryValueY)) {
+				 float inertialValueY = Float.parseFloat(columns[1]);
+				 float telemetryValueY = record.getFloat(receivedY);
+				 if (Float.compare(inertialValueY, telemetryValueY) != 0) {
 					 errors++;
 					 System.out.println("Error, sample " + rowNumber + ". Y Value expected " + inertialValueY + ", Received " + telemetryValueY);
 				 }
 				 
-				 Float inertialValueZ = Float.valueOf(columns[2]);
-				 Float telemetryValueZ = receivedZ.getValue(rowNumber);
-				 if (!inertialValueZ.equals(telemetryValueZ)) {
+				 float inertialValueZ = Float.parseFloat(columns[2]);
+				 float telemetryValueZ = record.getFloat(receivedZ);
+				 if (Float.compare(inertialValueZ, telemetryValueZ) != 0) {
 					 errors++;
 					 System.out.println("Error, sample " + rowNumber + ". Z Value expected " + inertialValueZ + ", Received " + telemetryValueZ);
 				 }
 				 
-				 Float inertialValueYaw = Float.valueOf(columns[3]);
-				 Float telemetryValueYaw = receivedYaw.getValue(rowNumber);
-				 if (!inertialValueYaw.equals(telemetryValueYaw)) {
+				 float inertialValueYaw = Float.parseFloat(columns[3]);
+				 float telemetryValueYaw = record.getFloat(receivedYaw);
+				 if (Float.compare(inertialValueYaw, telemetryValueYaw) != 0) {
 					 errors++;
 					 System.out.println("Error, sample " + rowNumber + ". Yaw Value expected " + inertialValueYaw + ", Received " + telemetryValueYaw);
 				 }
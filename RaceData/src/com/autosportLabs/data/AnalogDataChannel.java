@@ -16,20 +16,173 @@ public final class AnalogDataChannel extends DataChannel<Float> {
 		super(name, units, byteOffset, manager, group);
 		// TODO Auto-generated constructor stub
 	}
-
+	
 	@Override
-	protected void insertValueIntoFrame(Float value, ByteBuffer frame) {
-		frame.putFloat(value);
+	public int getByteCount() {
+		return 4;
 	}
 
-	@Override
-	protected Float extractValueFromFrame(ByteBuffer frame) {
-		return frame.getFloat();
+	/**
+	 * Gets the value for the frame and sample indexes, without boxing.
+	 * @param frameIndex the frame index containing the value
+	 * @param sampleIndex the sample index containing the value
+	 * @return the value
+	 */
+	public float getFloat(int frameIndex, int sampleIndex) {
+		countReads(1);
+		int offset = valueOffset(frameIndex, sampleIndex);
+		float value;
+		long stamp;
+		do {
+			stamp = this.manager.startRead(frameIndex);
+			value = this.manager.getFrameBuffer(frameIndex).getFloat(offset);
+		} while (!this.manager.validateRead(stamp));
+		return value;
+	}
+	
+	public float getFloat(int index) {
+		int frameIndex = index / this.group.getSampleRate();
+		int sampleIndex = index % this.group.getSampleRate();
+		return this.getFloat(frameIndex, sampleIndex);
+	}
+	
+	/**
+	 * Sets the value for the frame and sample indexes, without boxing.
+	 * @param value the value to set
+	 * @param frameIndex the frame index to contain the value
+	 * @param sampleIndex the sample index to contain the value
+	 */
+	public void setFloat(float value, int frameIndex, int sampleIndex) {
+		ByteBuffer buffer = this.manager.getFrameBufferForWrite(frameIndex);
+		buffer.putFloat(valueOffset(frameIndex, sampleIndex), value);
+		countWrites(1);
+	}
+	
+	public void setFloat(float value, int index) {
+		int frameIndex = index / this.group.getSampleRate();
+		int sampleIndex = index % this.group.getSampleRate();
+		this.setFloat(value, frameIndex, sampleIndex);
 	}
 
+	/**
+	 * Reads the values for a range of sample indexes into an array.
+	 * Frames are visited in order, with one frame lookup per frame rather than per sample.
+	 * @param fromIndex the first sample index (inclusive)
+	 * @param toIndex the last sample index (exclusive)
+	 * @param destination the array to receive the values
+	 * @param destinationOffset the position in the array for the value at fromIndex
+	 */
+	public void readFloats(int fromIndex, int toIndex, float[] destination, int destinationOffset) {
+		checkRange(fromIndex, toIndex, destination.length, destinationOffset);
+		countReads(toIndex - fromIndex);
+		
+		int sampleRate = this.group.getSampleRate();
+		int sampleBytes = this.group.getSampleBytes();
+		int frameIndex = fromIndex / sampleRate;
+		int sampleIndex = fromIndex % sampleRate;
+		int outputIndex = destinationOffset;
+		int remaining = toIndex - fromIndex;
+		
+		while (remaining > 0) {
+			int count = Math.min(remaining, sampleRate - sampleIndex);
+			long stamp;
+			do {
+				stamp = this.manager.startRead(frameIndex);
+				ByteBuffer buffer = this.manager.getFrameBuffer(frameIndex);
+				int offset = valueOffset(frameIndex, sampleIndex);
+				for (int step = 0; step < count; step++) {
+					destination[outputIndex + step] = buffer.getFloat(offset);
+					offset += sampleBytes;
+				}
+			} while (!this.manager.validateRead(stamp));
+			
+			outputIndex += count;
+			remaining -= count;
+			frameIndex++;
+			sampleIndex = 0;
+		}
+	}
+	
+	/**
+	 * Reads the values for a range of sample indexes into an array, widened to double.
+	 * @param fromIndex the first sample index (inclusive)
+	 * @param toIndex the last sample index (exclusive)
+	 * @param destination the array to receive the values
+	 * @param destinationOffset the position in the array for the value at fromIndex
+	 */
+	public void readDoubles(int fromIndex, int toIndex, double[] destination, int destinationOffset) {
+		checkRange(fromIndex, toIndex, destination.length, destinationOffset);
+		countReads(toIndex - fromIndex);
+		
+		int sampleRate = this.group.getSampleRate();
+		int sampleBytes = this.group.getSampleBytes();
+		int frameIndex = fromIndex / sampleRate;
+		int sampleIndex = fromIndex % sampleRate;
+		int outputIndex = destinationOffset;
+		int remaining = toIndex - fromIndex;
+		
+		while (remaining > 0) {
+			int count = Math.min(remaining, sampleRate - sampleIndex);
+			long stamp;
+			do {
+				stamp = this.manager.startRead(frameIndex);
+				ByteBuffer buffer = this.manager.getFrameBuffer(frameIndex);
+				int offset = valueOffset(frameIndex, sampleIndex);
+				for (int step = 0; step < count; step++) {
+					destination[outputIndex + step] = buffer.getFloat(offset);
+					offset += sampleBytes;
+				}
+			} while (!this.manager.validateRead(stamp));
+			
+			outputIndex += count;
+			remaining -= count;
+			frameIndex++;
+			sampleIndex = 0;
+		}
+	}
+	
+	/**
+	 * Writes the values for a range of sample indexes from an array.
+	 * @param source the array holding the values
+	 * @param sourceOffset the position in the array of the value for fromIndex
+	 * @param fromIndex the first sample index (inclusive)
+	 * @param toIndex the last sample index (exclusive)
+	 */
+	public void writeFloats(float[] source, int sourceOffset, int fromIndex, int toIndex) {
+		checkRange(fromIndex, toIndex, source.length, sourceOffset);
+		countWrites(toIndex - fromIndex);
+		
+		int sampleRate = this.group.getSampleRate();
+		int sampleBytes = this.group.getSampleBytes();
+		int frameIndex = fromIndex / sampleRate;
+		int sampleIndex = fromIndex % sampleRate;
+		int inputIndex = sourceOffset;
+		int remaining = toIndex - fromIndex;
+		
+		while (remaining > 0) {
+			ByteBuffer buffer = this.manager.getFrameBufferForWrite(frameIndex);
+			int offset = valueOffset(frameIndex, sampleIndex);
+			int count = Math.min(remaining, sampleRate - sampleIndex);
+			
+			for (int step = 0; step < count; step++) {
+				buffer.putFloat(offset, source[inputIndex++]);
+				offset += sampleBytes;
+			}
+			
+			remaining -= count;
+			frameIndex++;
+			sampleIndex = 0;
+		}
+	}
 
+	@Override
+	protected void insertValueIntoFrame(Float value, ByteBuffer buffer, int offset) {
+		buffer.putFloat(offset, value);
+	}
 
-
-
+	@Override
+	protected Float extractValueFromFrame(ByteBuffer buffer, int offset) {
+		return buffer.getFloat(offset);
+	}
 
 }
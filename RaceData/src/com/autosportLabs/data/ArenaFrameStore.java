@@ -0,0 +1,165 @@
+package com.autosportLabs.data;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Holds the frames in memory, packed into a few large contiguous chunks.
+ * 
+ * Each new chunk holds twice the frames of the one before, up to a maximum chunk size;
+ * chunks are never copied or moved once allocated. A frame is located by arithmetic on
+ * its index, rather than by a lookup per frame. Chunks may be allocated on the heap, or
+ * as direct (off-heap) buffers.
+ * 
+ * Growth is synchronized, and the chunks and frame count are published through volatile
+ * fields, so reader threads may access frames while a single writer adds more.
+ */
+public class ArenaFrameStore implements FrameStore {
+
+	private static final int DEFAULT_INITIAL_FRAMES = 64;
+	private static final int MAXIMUM_CHUNK_BYTES = 256 * 1024 * 1024;
+	
+	private final int frameBytes;
+	private final boolean direct;
+	
+	private final int initialFrames;			// The number of frames in the first chunk.
+	private final int growthChunks;				// The number of chunks that double in size.
+	private final int fixedChunkFrames;			// The number of frames in each chunk after doubling stops.
+	private final int fixedChunksFirstFrame;	// The first frame held in a fixed size chunk.
+	
+	private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+	private volatile int frameCount = 0;		// The high-water mark of frames in use.
+	private int capacity = 0;					// Guarded by this.
+	
+	/**
+	 * Creates a heap store sized for a default number of frames.
+	 * @param frameBytes the number of bytes used per Frame
+	 */
+	public ArenaFrameStore(int frameBytes) {
+		this(frameBytes, DEFAULT_INITIAL_FRAMES, false);
+	}
+	
+	/**
+	 * @param frameBytes the number of bytes used per Frame
+	 * @param initialFrames the number of frames to allocate space for immediately
+	 * @param direct true to allocate direct (off-heap) buffers, false for heap buffers
+	 */
+	public ArenaFrameStore(int frameBytes, int initialFrames, boolean direct) {
+		this.frameBytes = frameBytes;
+		this.direct = direct;
+		
+		int maximumChunkFrames = Math.max(1, MAXIMUM_CHUNK_BYTES / frameBytes);
+		this.initialFrames = Math.max(1, Math.min(initialFrames, maximumChunkFrames));
+		
+		int doublings = 0;
+		while (doublings < 30 && ((long) this.initialFrames << (doublings + 1)) <= maximumChunkFrames) {
+			doublings++;
+		}
+		this.growthChunks = doublings;
+		this.fixedChunkFrames = this.initialFrames << doublings;
+		this.fixedChunksFirstFrame = this.initialFrames * ((1 << doublings) - 1);
+		
+		// Allocate the first chunk immediately, so pre-sized stores do not grow during capture.
+		allocateChunk(0);
+	}
+	
+	@Override
+	public ByteBuffer getBuffer(int frameIndex) {
+		if (frameIndex >= this.frameCount) {
+			extendFramesToIndex(frameIndex);
+		}
+		return this.chunks[chunkIndex(frameIndex)];
+	}
+	
+	@Override
+	public ByteBuffer getBufferForWrite(int frameIndex) {
+		return getBuffer(frameIndex);
+	}
+	
+	@Override
+	public int getOffset(int frameIndex) {
+		int chunkIndex = chunkIndex(frameIndex);
+		return (frameIndex - chunkFirstFrame(chunkIndex)) * this.frameBytes;
+	}
+	
+	@Override
+	public int getFrameCount() {
+		return this.frameCount;
+	}
+	
+	/**
+	 * @return the number of frames that can be held without allocating another chunk
+	 */
+	public synchronized int getCapacity() {
+		return this.capacity;
+	}
+	
+	/**
+	 * @return true if the chunks are direct (off-heap) buffers
+	 */
+	public boolean isDirect() {
+		return this.direct;
+	}
+	
+	@Override
+	public void commitFrame(int frameIndex) {
+		// Nothing to do; frames are held in memory only.
+	}
+	
+	@Override
+	public void flush() {
+		// Nothing to do; frames are held in memory only.
+	}
+	
+	@Override
+	public synchronized void close() {
+		this.chunks = new ByteBuffer[0];
+		this.capacity = 0;
+		this.frameCount = 0;
+	}
+	
+	private synchronized void extendFramesToIndex(int frameIndex) {
+		if (frameIndex < this.frameCount) {
+			return;		// Another thread has already extended the frames.
+		}
+		while (frameIndex >= this.capacity) {
+			allocateChunk(this.chunks.length);
+		}
+		
+		// Publish the frame count after the chunks, so a reader that sees the count also sees the chunk.
+		this.frameCount = frameIndex + 1;
+	}
+	
+	private void allocateChunk(int chunkIndex) {
+		int chunkBytes = chunkFrames(chunkIndex) * this.frameBytes;
+		ByteBuffer chunk = this.direct ? ByteBuffer.allocateDirect(chunkBytes) : ByteBuffer.allocate(chunkBytes);
+		
+		ByteBuffer[] newChunks = new ByteBuffer[chunkIndex + 1];
+		System.arraycopy(this.chunks, 0, newChunks, 0, this.chunks.length);
+		newChunks[chunkIndex] = chunk;
+		this.chunks = newChunks;
+		this.capacity += chunkFrames(chunkIndex);
+	}
+	
+	private int chunkIndex(int frameIndex) {
+		if (frameIndex < this.fixedChunksFirstFrame) {
+			// Chunk k starts at frame initialFrames * (2^k - 1)
+			return 31 - Integer.numberOfLeadingZeros((frameIndex / this.initialFrames) + 1);
+		}
+		return this.growthChunks + ((frameIndex - this.fixedChunksFirstFrame) / this.fixedChunkFrames);
+	}
+	
+	private int chunkFirstFrame(int chunkIndex) {
+		if (chunkIndex < this.growthChunks) {
+			return this.initialFrames * ((1 << chunkIndex) - 1);
+		}
+		return this.fixedChunksFirstFrame + ((chunkIndex - this.growthChunks) * this.fixedChunkFrames);
+	}
+	
+	private int chunkFrames(int chunkIndex) {
+		if (chunkIndex < this.growthChunks) {
+			return this.initialFrames << chunkIndex;
+		}
+		return this.fixedChunkFrames;
+	}
+	
+}
@@ -21,9 +21,75 @@ public final class BooleanDataChannel extends DataChannel<Boolean> {
 		this.mask = (byte)(~trueValue);
 	}
 
+	/**
+	 * @return the bit holding the value, within the byte at the channel's byte offset
+	 */
+	public int getBitOffset() {
+		return this.bitOffset;
+	}
+	
+	/**
+	 * @return 1: the byte holding the value's bit, which other boolean channels may share
+	 */
+	@Override
+	public int getByteCount() {
+		return 1;
+	}
+	
+	/**
+	 * Gets the value for the frame and sample indexes, without boxing.
+	 * @param frameIndex the frame index containing the value
+	 * @param sampleIndex the sample index containing the value
+	 * @return the value
+	 */
+	public boolean getBoolean(int frameIndex, int sampleIndex) {
+		countReads(1);
+		int offset = valueOffset(frameIndex, sampleIndex);
+		boolean value;
+		long stamp;
+		do {
+			stamp = this.manager.startRead(frameIndex);
+			value = readBit(this.manager.getFrameBuffer(frameIndex), offset);
+		} while (!this.manager.validateRead(stamp));
+		return value;
+	}
+	
+	public boolean getBoolean(int index) {
+		int frameIndex = index / this.group.getSampleRate();
+		int sampleIndex = index % this.group.getSampleRate();
+		return this.getBoolean(frameIndex, sampleIndex);
+	}
+	
+	/**
+	 * Sets the value for the frame and sample indexes, without boxing.
+	 * @param value the value to set
+	 * @param frameIndex the frame index to contain the value
+	 * @param sampleIndex the sample index to contain the value
+	 */
+	public void setBoolean(boolean value, int frameIndex, int sampleIndex) {
+		ByteBuffer buffer = this.manager.getFrameBufferForWrite(frameIndex);
+		writeBit(value, buffer, valueOffset(frameIndex, sampleIndex));
+		countWrites(1);
+	}
+	
+	public void setBoolean(boolean value, int index) {
+		int frameIndex = index / this.group.getSampleRate();
+		int sampleIndex = index % this.group.getSampleRate();
+		this.setBoolean(value, frameIndex, sampleIndex);
+	}
+
+	@Override
+	protected void insertValueIntoFrame(Boolean value, ByteBuffer buffer, int offset) {
+		writeBit(value, buffer, offset);
+	}
+
 	@Override
-	protected void insertValueIntoFrame(Boolean value, ByteBuffer frame) {
-		byte previousByte = frame.get(); // side effect: advances the frame's position by one byte.
+	protected Boolean extractValueFromFrame(ByteBuffer buffer, int offset) {
+		return readBit(buffer, offset);
+	}
+	
+	private void writeBit(boolean value, ByteBuffer buffer, int offset) {
+		byte previousByte = buffer.get(offset);
 		
 		// Set or clear our bit, while keeping the remaining bits unchanged.
 		byte newByte;
@@ -33,14 +99,11 @@ public final class BooleanDataChannel extends DataChannel<Boolean> {
 			newByte = (byte)(previousByte & this.mask);
 		}
 		
-		// steps the frame back to the position upon entry.
-		frame.position(frame.position() - 1);
-		frame.put(newByte);
+		buffer.put(offset, newByte);
 	}
-
-	@Override
-	protected Boolean extractValueFromFrame(ByteBuffer frame) {
-		byte containingByte = frame.get();
+	
+	private boolean readBit(ByteBuffer buffer, int offset) {
+		byte containingByte = buffer.get(offset);
 		
 		// isolate our bit
 		byte isolatedBit = (byte) ((containingByte >> bitOffset) & 0x01);
@@ -49,7 +112,4 @@ public final class BooleanDataChannel extends DataChannel<Boolean> {
 		return (isolatedBit == 0x01);
 	}
 
-
-
-
 }
@@ -0,0 +1,260 @@
+package com.autosportLabs.data;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Loads frames from a data file on demand, holding the most recently used frames in memory.
+ * 
+ * The cache is limited to a byte budget. When it is full, the least recently used frame
+ * is evicted; if it has been changed, it is written back to the file first. A frame got for
+ * write is not evicted until commitFrame(), so a write in progress is never written back early
+ * and lost; the cache may exceed its budget by the frames being written.
+ * Frames beyond the end of the file read as blank (all zero) frames; only a write adds them
+ * to the frame count.
+ * 
+ * All methods are synchronized. Each frame loaded gets a new buffer, and the buffer of an evicted
+ * frame is never reused, so a thread still holding it keeps reading that frame's contents (a
+ * changed frame is written back before eviction, and only once committed).
+ */
+public class CachedFrameStore implements FrameStore {
+
+	private final FileChannel channel;
+	private final long dataOffset;				// The offset for the start of binary data
+	private final int frameBytes;
+	private final int maximumFrames;
+	
+	// Frames in least to most recently used order.
+	private final LinkedHashMap<Integer, ByteBuffer> cachedFrames = new LinkedHashMap<Integer, ByteBuffer>(16, 0.75f, true);
+	private final HashSet<Integer> dirtyFrames = new HashSet<Integer>();
+	private final HashSet<Integer> pinnedFrames = new HashSet<Integer>();	// Got for write, not yet committed.
+	private int frameCount;
+	
+	// The most recently used frame, to avoid a map lookup for repeated access to one frame.
+	private int lastFrameIndex = -1;
+	private ByteBuffer lastFrame;
+	
+	// Statistics
+	private long hitCount = 0;
+	private long missCount = 0;
+	private long evictionCount = 0;
+	private long writeBackCount = 0;
+	private DataMetrics metrics;				// Records frame loads; null while disabled.
+	
+	/**
+	 * @param file the data file; it remains the caller's to close
+	 * @param dataOffset the position of the first frame in the file
+	 * @param frameBytes the number of bytes used per Frame
+	 * @param cacheBytes the maximum number of bytes of frames to hold in memory (at least one frame is held)
+	 * @throws IOException
+	 */
+	public CachedFrameStore(RandomAccessFile file, long dataOffset, int frameBytes, long cacheBytes) throws IOException {
+		this.channel = file.getChannel();
+		this.dataOffset = dataOffset;
+		this.frameBytes = frameBytes;
+		this.maximumFrames = (int) Math.max(1, Math.min(Integer.MAX_VALUE, cacheBytes / frameBytes));
+		
+		// Only complete frames are counted.
+		this.frameCount = (int) ((this.channel.size() - this.dataOffset) / this.frameBytes);
+	}
+
+	@Override
+	public synchronized ByteBuffer getBuffer(int frameIndex) {
+		if (frameIndex == this.lastFrameIndex) {
+			this.hitCount++;
+			return this.lastFrame;
+		}
+		
+		ByteBuffer frame = this.cachedFrames.get(frameIndex);
+		if (frame != null) {
+			this.hitCount++;
+		} else {
+			this.missCount++;
+			frame = loadFrame(frameIndex);
+		}
+		
+		this.lastFrameIndex = frameIndex;
+		this.lastFrame = frame;
+		return frame;
+	}
+	
+	@Override
+	public synchronized ByteBuffer getBufferForWrite(int frameIndex) {
+		ByteBuffer frame = getBuffer(frameIndex);
+		this.dirtyFrames.add(frameIndex);
+		this.pinnedFrames.add(frameIndex);
+		if (frameIndex >= this.frameCount) {
+			this.frameCount = frameIndex + 1;
+		}
+		return frame;
+	}
+
+	@Override
+	public int getOffset(int frameIndex) {
+		return 0;
+	}
+
+	@Override
+	public synchronized int getFrameCount() {
+		return this.frameCount;
+	}
+
+	@Override
+	public synchronized void commitFrame(int frameIndex) {
+		// The frame may now be evicted; changed frames are written back on eviction or flush.
+		this.pinnedFrames.remove(frameIndex);
+	}
+
+	@Override
+	public synchronized void flush() throws IOException {
+		for (Integer frameIndex : this.dirtyFrames) {
+			ByteBuffer frame = this.cachedFrames.get(frameIndex);
+			if (frame != null) {
+				writeBack(frameIndex, frame);
+			}
+		}
+		// Frames still being written stay dirty, to be written back again once committed.
+		this.dirtyFrames.retainAll(this.pinnedFrames);
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		flush();
+		this.cachedFrames.clear();
+		this.pinnedFrames.clear();
+		this.lastFrameIndex = -1;
+		this.lastFrame = null;
+	}
+	
+	/**
+	 * @return the number of frame requests satisfied from the cache
+	 */
+	public synchronized long getHitCount() {
+		return this.hitCount;
+	}
+	
+	/**
+	 * @return the number of frame requests that had to load the frame
+	 */
+	public synchronized long getMissCount() {
+		return this.missCount;
+	}
+	
+	/**
+	 * @return the number of frames evicted from the cache
+	 */
+	public synchronized long getEvictionCount() {
+		return this.evictionCount;
+	}
+	
+	/**
+	 * @return the number of changed frames written back to the file
+	 */
+	public synchronized long getWriteBackCount() {
+		return this.writeBackCount;
+	}
+	
+	/**
+	 * Records the frames loaded from the data file, and the latency of each load.
+	 * @param metrics the metrics; null to disable
+	 */
+	synchronized void setMetrics(DataMetrics metrics) {
+		this.metrics = metrics;
+	}
+	
+	/**
+	 * @return the number of frames currently held in memory
+	 */
+	public synchronized int getCachedFrameCount() {
+		return this.cachedFrames.size();
+	}
+	
+	private ByteBuffer loadFrame(int frameIndex) {
+		// A new buffer each time: readers may still hold the buffer of an evicted frame.
+		if (this.cachedFrames.size() >= this.maximumFrames) {
+			evictLeastRecentlyUsed();
+		}
+		ByteBuffer frame = ByteBuffer.allocate(this.frameBytes);
+		
+		try {
+			if (frameIndex < this.frameCount) {
+				long startTime = (this.metrics != null) ? System.nanoTime() : 0;
+				readFrame(frameIndex, frame);
+				if (this.metrics != null) {
+					this.metrics.framesLoaded.increment();
+					this.metrics.frameLoadLatency.recordSince(startTime);
+				}
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to read frame " + frameIndex + " from the data file", e);
+		}
+		
+		this.cachedFrames.put(frameIndex, frame);
+		return frame;
+	}
+	
+	private void evictLeastRecentlyUsed() {
+		// Frames being written are skipped; if every frame is, the cache grows instead.
+		Iterator<Map.Entry<Integer, ByteBuffer>> eldest = this.cachedFrames.entrySet().iterator();
+		Map.Entry<Integer, ByteBuffer> entry = null;
+		while (eldest.hasNext()) {
+			Map.Entry<Integer, ByteBuffer> next = eldest.next();
+			if (!this.pinnedFrames.contains(next.getKey())) {
+				entry = next;
+				break;
+			}
+		}
+		if (entry == null) {
+			return;
+		}
+		Integer frameIndex = entry.getKey();
+		ByteBuffer frame = entry.getValue();
+		
+		if (this.dirtyFrames.remove(frameIndex)) {
+			try {
+				writeBack(frameIndex, frame);
+			} catch (IOException e) {
+				throw new IllegalStateException("Unable to write frame " + frameIndex + " to the data file", e);
+			}
+		}
+		
+		eldest.remove();
+		this.evictionCount++;
+		if (frameIndex == this.lastFrameIndex) {
+			this.lastFrameIndex = -1;
+			this.lastFrame = null;
+		}
+	}
+	
+	private void readFrame(int frameIndex, ByteBuffer frame) throws IOException {
+		long position = this.dataOffset + ((long) this.frameBytes * frameIndex);
+		ByteBuffer target = frame.duplicate();
+		target.clear();
+		while (target.hasRemaining()) {
+			int count = this.channel.read(target, position + target.position());
+			if (count < 0) {
+				break;	// End of file; the remainder reads as blank.
+			}
+		}
+		while (target.hasRemaining()) {
+			target.put((byte) 0);
+		}
+	}
+	
+	private void writeBack(int frameIndex, ByteBuffer frame) throws IOException {
+		long position = this.dataOffset + ((long) this.frameBytes * frameIndex);
+		ByteBuffer source = frame.duplicate();
+		source.clear();
+		while (source.hasRemaining()) {
+			this.channel.write(source, position + source.position());
+		}
+		this.writeBackCount++;
+	}
+	
+}
@@ -0,0 +1,166 @@
+package com.autosportLabs.data;
+
+/**
+ * The count, minimum, maximum, mean and variance of the valid samples of an AnalogDataChannel.
+ *
+ * Statistics of separate ranges are merged exactly (the variance by Chan's pairwise method), so
+ * they can be computed in parallel by ParallelAnalytics with aggregator().
+ */
+public final class ChannelStatistics {
+
+	private static final ChannelStatistics EMPTY = new ChannelStatistics(0, Float.NaN, Float.NaN, 0, 0);
+
+	private final long count;
+	private final float min;
+	private final float max;
+	private final double mean;
+	private final double squaredDeviations;		// the sum of squared differences from the mean
+
+	private ChannelStatistics(long count, float min, float max, double mean, double squaredDeviations) {
+		this.count = count;
+		this.min = min;
+		this.max = max;
+		this.mean = mean;
+		this.squaredDeviations = squaredDeviations;
+	}
+
+	/**
+	 * Gets an aggregator of the statistics of a channel. The channel is looked up by name in each
+	 * DataManager, so it can be used across sessions that share a configuration.
+	 * @param channelName the name of an AnalogDataChannel
+	 */
+	public static FrameRangeAggregator<ChannelStatistics> aggregator(final String channelName) {
+		return new FrameRangeAggregator<ChannelStatistics>() {
+			@Override
+			public ChannelStatistics identity() {
+				return EMPTY;
+			}
+
+			@Override
+			public ChannelStatistics aggregate(DataManager manager, int fromFrame, int toFrame) {
+				DataChannel<?> channel = manager.getDataChannel(channelName);
+				if (!(channel instanceof AnalogDataChannel)) {
+					throw new IllegalArgumentException(String.format("%s is not an analog channel", channelName));
+				}
+				return of((AnalogDataChannel) channel, fromFrame, toFrame);
+			}
+
+			@Override
+			public ChannelStatistics merge(ChannelStatistics earlier, ChannelStatistics later) {
+				return earlier.merge(later);
+			}
+		};
+	}
+
+	/**
+	 * Computes the statistics of a channel over a range of frames, on the calling thread.
+	 * @param channel the channel
+	 * @param fromFrame the first frame index (inclusive)
+	 * @param toFrame the last frame index (exclusive)
+	 */
+	public static ChannelStatistics of(AnalogDataChannel channel, int fromFrame, int toFrame) {
+		DataChannelGroup group = channel.getGroup();
+		int sampleRate = group.getSampleRate();
+		float[] values = new float[sampleRate];
+		long[] validity = new long[(sampleRate + 63) / 64];
+
+		ChannelStatistics statistics = EMPTY;
+		for (int frameIndex = fromFrame; frameIndex < toFrame; frameIndex++) {
+			int fromIndex = frameIndex * sampleRate;
+			channel.readFloats(fromIndex, fromIndex + sampleRate, values, 0);
+			if (group.readValidity(fromIndex, fromIndex + sampleRate, validity) == 0) {
+				continue;
+			}
+
+			// Two passes over the frame's values: the mean, then the deviations from it.
+			long count = 0;
+			float min = Float.POSITIVE_INFINITY;
+			float max = Float.NEGATIVE_INFINITY;
+			double sum = 0;
+			for (int i = 0; i < sampleRate; i++) {
+				if ((validity[i >>> 6] & (1L << i)) != 0) {
+					float value = values[i];
+					min = Math.min(min, value);
+					max = Math.max(max, value);
+					sum += value;
+					count++;
+				}
+			}
+			double mean = sum / count;
+			double squaredDeviations = 0;
+			for (int i = 0; i < sampleRate; i++) {
+				if ((validity[i >>> 6] & (1L << i)) != 0) {
+					double deviation = values[i] - mean;
+					squaredDeviations += deviation * deviation;
+				}
+			}
+			statistics = statistics.merge(new ChannelStatistics(count, min, max, mean, squaredDeviations));
+		}
+		return statistics;
+	}
+
+	/**
+	 * @return the statistics of both sets of samples
+	 */
+	public ChannelStatistics merge(ChannelStatistics other) {
+		if (other.count == 0) {
+			return this;
+		}
+		if (this.count == 0) {
+			return other;
+		}
+		long count = this.count + other.count;
+		double delta = other.mean - this.mean;
+		double mean = this.mean + delta * other.count / count;
+		double squaredDeviations = this.squaredDeviations + other.squaredDeviations
+				+ delta * delta * ((double) this.count * other.count / count);
+		return new ChannelStatistics(count, Math.min(this.min, other.min), Math.max(this.max, other.max),
+				mean, squaredDeviations);
+	}
+
+	/**
+	 * @return the number of valid samples
+	 */
+	public long getCount() {
+		return this.count;
+	}
+
+	/**
+	 * @return the minimum value; NaN if there are no valid samples
+	 */
+	public float getMin() {
+		return this.min;
+	}
+
+	/**
+	 * @return the maximum value; NaN if there are no valid samples
+	 */
+	public float getMax() {
+		return this.max;
+	}
+
+	/**
+	 * @return the mean value; NaN if there are no valid samples
+	 */
+	public double getMean() {
+		return this.count > 0 ? this.mean : Double.NaN;
+	}
+
+	/**
+	 * @return the population variance; NaN if there are no valid samples
+	 */
+	public double getVariance() {
+		return this.count > 0 ? this.squaredDeviations / this.count : Double.NaN;
+	}
+
+	public double getStandardDeviation() {
+		return Math.sqrt(getVariance());
+	}
+
+	@Override
+	public String toString() {
+		return String.format("count %s, min %s, max %s, mean %s, standard deviation %s",
+				this.count, getMin(), getMax(), getMean(), getStandardDeviation());
+	}
+
+}
@@ -0,0 +1,317 @@
+package com.autosportLabs.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A pyramid of min/max/mean summaries of an AnalogDataChannel, for drawing long spans of data.
+ *
+ * Level 0 holds one bucket per frame; each level above holds buckets of twice as many frames,
+ * up to a single bucket for the whole capture. A bucket summarizes only the valid samples of
+ * its frames. A frame is summarized once its group's samples are published past it
+ * (DataChannelGroup.publishSamples()), so frames from every writer (telemetry, SampleRecord,
+ * channel setters) are covered, and again, with its final contents, when it is passed to
+ * DataManager.writeFrame(). Each update costs in proportion to the number of levels, not the
+ * number of frames.
+ *
+ * query() picks the finest level that draws a span in at most a given number of buckets, so
+ * an overview costs in proportion to its width in pixels rather than the samples it covers.
+ *
+ * The writer thread updates the summary; reader threads may query frames below getFrameCount().
+ * Updates and queries are synchronized, so a query never sees a bucket partly merged.
+ */
+public final class ChannelSummary {
+
+	private static final int MAGIC = 0x5253554D;	// "RSUM"
+	private static final int VERSION = 1;
+
+	private final AnalogDataChannel channel;
+	private final DataChannelGroup group;
+
+	private volatile Level[] levels = new Level[] {new Level()};
+	private volatile int frameCount = 0;
+
+	// Scratch space for summarizing a frame, used by the writer.
+	private final float[] values;
+	private final long[] validity;
+
+	ChannelSummary(AnalogDataChannel channel) {
+		this.channel = channel;
+		this.group = channel.getGroup();
+		this.values = new float[this.group.getSampleRate()];
+		this.validity = new long[(this.group.getSampleRate() + 63) / 64];
+	}
+
+	/**
+	 * @return the file kept beside a data file to hold its channel summaries
+	 */
+	public static File summaryFileFor(File dataFile) {
+		return new File(dataFile.getPath() + ".sum");
+	}
+
+	public AnalogDataChannel getChannel() {
+		return this.channel;
+	}
+
+	/**
+	 * @return the number of frames summarized
+	 */
+	public int getFrameCount() {
+		return this.frameCount;
+	}
+
+	/**
+	 * @return the number of levels; level n has buckets of 2^n frames
+	 */
+	public int getLevelCount() {
+		return this.levels.length;
+	}
+
+	/**
+	 * Summarizes a span of frames in at most the given number of buckets, using the finest level
+	 * that fits. Buckets are aligned to their level, so the first and last may extend beyond the span.
+	 * @param fromFrame the first frame index (inclusive)
+	 * @param toFrame the last frame index (exclusive); at most getFrameCount()
+	 * @param maximumBuckets the most buckets to return, such as the chart width in pixels
+	 * @return the buckets
+	 */
+	public synchronized SummaryBuckets query(int fromFrame, int toFrame, int maximumBuckets) {
+		if (fromFrame < 0 || toFrame < fromFrame || toFrame > this.frameCount || maximumBuckets < 1) {
+			throw new IndexOutOfBoundsException(String.format("Invalid frame range %s to %s", fromFrame, toFrame));
+		}
+		Level[] currentLevels = this.levels;
+		if (toFrame == fromFrame) {
+			return new SummaryBuckets(fromFrame, 1, new float[0], new float[0], new double[0], new int[0]);
+		}
+
+		int levelIndex = 0;
+		while (levelIndex < currentLevels.length - 1
+				&& ((toFrame - 1) >> levelIndex) - (fromFrame >> levelIndex) + 1 > maximumBuckets) {
+			levelIndex++;
+		}
+		Level level = currentLevels[levelIndex];
+		int first = fromFrame >> levelIndex;
+		int last = ((toFrame - 1) >> levelIndex) + 1;
+		return new SummaryBuckets(first << levelIndex, 1 << levelIndex,
+				Arrays.copyOfRange(level.min, first, last), Arrays.copyOfRange(level.max, first, last),
+				Arrays.copyOfRange(level.sum, first, last), Arrays.copyOfRange(level.count, first, last));
+	}
+
+	/**
+	 * Summarizes the frames not yet summarized, up to a frame. Frames no longer held (in live
+	 * mode) are skipped.
+	 * @param toFrame the last frame index to summarize (exclusive)
+	 */
+	void summarizeTo(int toFrame) {
+		int frameIndex = Math.max(this.frameCount, this.channel.manager.getFirstFrameIndex());
+		for (; frameIndex < toFrame; frameIndex++) {
+			frameCommitted(frameIndex);
+		}
+	}
+
+	/**
+	 * Summarizes again the frames already summarized in a range, after their samples were revised.
+	 * @param fromFrame the first frame index (inclusive)
+	 * @param toFrame the last frame index (exclusive)
+	 */
+	void framesRevised(int fromFrame, int toFrame) {
+		int frameIndex = Math.max(fromFrame, this.channel.manager.getFirstFrameIndex());
+		for (; frameIndex < Math.min(toFrame, this.frameCount); frameIndex++) {
+			frameCommitted(frameIndex);
+		}
+	}
+
+	/**
+	 * Summarizes a frame's samples into level 0, then updates the buckets above it.
+	 */
+	void frameCommitted(int frameIndex) {
+		int sampleRate = this.group.getSampleRate();
+		int fromIndex = frameIndex * sampleRate;
+		this.channel.readFloats(fromIndex, fromIndex + sampleRate, this.values, 0);
+		this.group.readValidity(fromIndex, fromIndex + sampleRate, this.validity);
+
+		float min = Float.NaN;
+		float max = Float.NaN;
+		double sum = 0;
+		int count = 0;
+		for (int i = 0; i < sampleRate; i++) {
+			if ((this.validity[i >>> 6] & (1L << i)) != 0) {
+				float value = this.values[i];
+				if (count == 0 || value < min) {
+					min = value;
+				}
+				if (count == 0 || value > max) {
+					max = value;
+				}
+				sum += value;
+				count++;
+			}
+		}
+		setBucket(frameIndex, min, max, sum, count);
+	}
+
+	/**
+	 * Sets a level 0 bucket, then updates the buckets above it.
+	 */
+	private synchronized void setBucket(int frameIndex, float min, float max, double sum, int count) {
+		Level[] currentLevels = this.levels;
+		currentLevels[0].set(frameIndex, min, max, sum, count);
+		int newFrameCount = Math.max(this.frameCount, frameIndex + 1);
+
+		int bucket = frameIndex;
+		int levelIndex = 1;
+		while ((newFrameCount - 1) >> (levelIndex - 1) > 0) {
+			if (levelIndex == currentLevels.length) {
+				currentLevels = Arrays.copyOf(currentLevels, levelIndex + 1);
+				currentLevels[levelIndex] = new Level();
+				// Fill the new level's buckets before the one being updated
+				for (int b = 0; b < (frameIndex >> levelIndex); b++) {
+					currentLevels[levelIndex].merge(b, currentLevels[levelIndex - 1]);
+				}
+			}
+			bucket >>= 1;
+			currentLevels[levelIndex].merge(bucket, currentLevels[levelIndex - 1]);
+			levelIndex++;
+		}
+
+		this.levels = currentLevels;
+		this.frameCount = newFrameCount;
+	}
+
+	void write(DataOutputStream output) throws IOException {
+		Level level = this.levels[0];
+		int count = this.frameCount;
+		output.writeInt(count);
+		for (int frameIndex = 0; frameIndex < count; frameIndex++) {
+			output.writeFloat(level.min[frameIndex]);
+			output.writeFloat(level.max[frameIndex]);
+			output.writeDouble(level.sum[frameIndex]);
+			output.writeInt(level.count[frameIndex]);
+		}
+	}
+
+	/**
+	 * Reads the level 0 buckets written by write(), and rebuilds the levels above.
+	 * @return the number of frames read
+	 */
+	int read(DataInputStream input) throws IOException {
+		int count = input.readInt();
+		for (int frameIndex = 0; frameIndex < count; frameIndex++) {
+			setBucket(frameIndex, input.readFloat(), input.readFloat(), input.readDouble(), input.readInt());
+		}
+		return count;
+	}
+
+	/**
+	 * Writes the summaries to a summary file: a header, then each channel's name and level 0 buckets.
+	 */
+	static void writeFile(File file, List<ChannelSummary> summaries) throws IOException {
+		DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			output.writeInt(summaries.size());
+			for (ChannelSummary summary : summaries) {
+				output.writeUTF(summary.channel.getName());
+				summary.write(output);
+			}
+		} finally {
+			output.close();
+		}
+	}
+
+	/**
+	 * Reads a summary file into the summaries of the same channels.
+	 * @return the number of frames summarized by every channel in the file
+	 */
+	static int readFile(File file, Map<String, ChannelSummary> summaries) throws Exception {
+		DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (input.readInt() != MAGIC) {
+				throw new Exception(String.format("%s is not a summary file", file));
+			}
+			int version = input.readInt();
+			if (version != VERSION) {
+				throw new Exception(String.format("Unsupported summary file version %s", version));
+			}
+			int channelCount = input.readInt();
+			int frameCount = Integer.MAX_VALUE;
+			for (int i = 0; i < channelCount; i++) {
+				String name = input.readUTF();
+				ChannelSummary summary = summaries.get(name);
+				if (summary == null) {
+					throw new Exception(String.format("The summary file has no analog channel %s in this configuration", name));
+				}
+				frameCount = Math.min(frameCount, summary.read(input));
+			}
+			if (channelCount != summaries.size()) {
+				throw new Exception("The summary file does not cover every analog channel");
+			}
+			return channelCount == 0 ? 0 : frameCount;
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * The buckets of one level, in arrays that grow by doubling.
+	 * Values in the arrays are written before the frame count that makes them visible.
+	 */
+	private static final class Level {
+		float[] min = new float[16];
+		float[] max = new float[16];
+		double[] sum = new double[16];
+		int[] count = new int[16];
+
+		void set(int bucket, float bucketMin, float bucketMax, double bucketSum, int bucketCount) {
+			if (bucket >= this.count.length) {
+				int length = Math.max(bucket + 1, this.count.length * 2);
+				float[] newMin = Arrays.copyOf(this.min, length);
+				float[] newMax = Arrays.copyOf(this.max, length);
+				double[] newSum = Arrays.copyOf(this.sum, length);
+				int[] newCount = Arrays.copyOf(this.count, length);
+				this.min = newMin;
+				this.max = newMax;
+				this.sum = newSum;
+				this.count = newCount;
+			}
+			this.min[bucket] = bucketMin;
+			this.max[bucket] = bucketMax;
+			this.sum[bucket] = bucketSum;
+			this.count[bucket] = bucketCount;
+		}
+
+		/**
+		 * Sets a bucket from its two buckets in the level below.
+		 */
+		void merge(int bucket, Level below) {
+			int left = bucket * 2;
+			int right = left + 1;
+			float bucketMin = below.min[left];
+			float bucketMax = below.max[left];
+			double bucketSum = below.sum[left];
+			int bucketCount = below.count[left];
+			if (right < below.count.length && below.count[right] > 0) {
+				if (bucketCount == 0 || below.min[right] < bucketMin) {
+					bucketMin = below.min[right];
+				}
+				if (bucketCount == 0 || below.max[right] > bucketMax) {
+					bucketMax = below.max[right];
+				}
+				bucketSum += below.sum[right];
+				bucketCount += below.count[right];
+			}
+			set(bucket, bucketMin, bucketMax, bucketSum, bucketCount);
+		}
+	}
+
+}
@@ -0,0 +1,286 @@
+package com.autosportLabs.data;
+
+import java.util.Arrays;
+
+/**
+ * The column codecs of the compressed data file format.
+ *
+ * XOR (for floats): each value is XORed with the previous one, and only the meaningful bits
+ * of the result are stored, as in Facebook's Gorilla. Slowly changing values share their sign,
+ * exponent and high mantissa bits, so most of each XOR is zero.
+ *
+ * DELTA_OF_DELTA (for integers, and floats that change linearly): the change in the difference
+ * between successive values is stored in a variable number of bits.
+ *
+ * RUN_LENGTH (for bytes, such as validity flags): runs of equal bytes are stored as a count and a value.
+ *
+ * RAW: the values as they are, for data none of the codecs reduce.
+ */
+final class ColumnCodec {
+
+	static final byte RAW = 0;
+	static final byte XOR = 1;
+	static final byte DELTA_OF_DELTA = 2;
+	static final byte RUN_LENGTH = 3;
+
+	private ColumnCodec() {
+	}
+
+	static void encodeXor(int[] values, int count, BitWriter output) {
+		if (count == 0) {
+			return;
+		}
+		output.write(values[0], 32);
+		int previousLeading = -1;
+		int previousTrailing = 0;
+		for (int i = 1; i < count; i++) {
+			int xor = values[i] ^ values[i - 1];
+			if (xor == 0) {
+				output.write(0, 1);
+				continue;
+			}
+			output.write(1, 1);
+			int leading = Math.min(31, Integer.numberOfLeadingZeros(xor));
+			int trailing = Integer.numberOfTrailingZeros(xor);
+			if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+				// The meaningful bits fit in the previous value's window
+				output.write(0, 1);
+				output.write(xor >>> previousTrailing, 32 - previousLeading - previousTrailing);
+			} else {
+				int significant = 32 - leading - trailing;
+				output.write(1, 1);
+				output.write(leading, 5);
+				output.write(significant - 1, 5);
+				output.write(xor >>> trailing, significant);
+				previousLeading = leading;
+				previousTrailing = trailing;
+			}
+		}
+	}
+
+	static void decodeXor(BitReader input, int[] values, int count) {
+		if (count == 0) {
+			return;
+		}
+		values[0] = input.read(32);
+		int leading = 0;
+		int trailing = 0;
+		for (int i = 1; i < count; i++) {
+			if (input.read(1) == 0) {
+				values[i] = values[i - 1];
+				continue;
+			}
+			if (input.read(1) == 1) {
+				leading = input.read(5);
+				int significant = input.read(5) + 1;
+				trailing = 32 - leading - significant;
+			}
+			values[i] = values[i - 1] ^ (input.read(32 - leading - trailing) << trailing);
+		}
+	}
+
+	static void encodeDeltaOfDelta(int[] values, int count, BitWriter output) {
+		if (count == 0) {
+			return;
+		}
+		output.write(values[0], 32);
+		int previousDelta = 0;
+		for (int i = 1; i < count; i++) {
+			int delta = values[i] - values[i - 1];
+			int deltaOfDelta = delta - previousDelta;
+			int zigzag = (deltaOfDelta << 1) ^ (deltaOfDelta >> 31);
+			if (zigzag == 0) {
+				output.write(0, 1);
+			} else if (zigzag > 0 && zigzag < (1 << 7)) {
+				output.write(0x2, 2);
+				output.write(zigzag, 7);
+			} else if (zigzag > 0 && zigzag < (1 << 9)) {
+				output.write(0x6, 3);
+				output.write(zigzag, 9);
+			} else if (zigzag > 0 && zigzag < (1 << 12)) {
+				output.write(0xE, 4);
+				output.write(zigzag, 12);
+			} else {
+				output.write(0xF, 4);
+				output.write(zigzag, 32);
+			}
+			previousDelta = delta;
+		}
+	}
+
+	static void decodeDeltaOfDelta(BitReader input, int[] values, int count) {
+		if (count == 0) {
+			return;
+		}
+		values[0] = input.read(32);
+		int previousDelta = 0;
+		for (int i = 1; i < count; i++) {
+			int zigzag;
+			if (input.read(1) == 0) {
+				zigzag = 0;
+			} else if (input.read(1) == 0) {
+				zigzag = input.read(7);
+			} else if (input.read(1) == 0) {
+				zigzag = input.read(9);
+			} else if (input.read(1) == 0) {
+				zigzag = input.read(12);
+			} else {
+				zigzag = input.read(32);
+			}
+			int delta = previousDelta + ((zigzag >>> 1) ^ -(zigzag & 1));
+			values[i] = values[i - 1] + delta;
+			previousDelta = delta;
+		}
+	}
+
+	static void encodeRunLength(byte[] values, int count, BitWriter output) {
+		int i = 0;
+		while (i < count) {
+			byte value = values[i];
+			int run = 1;
+			while (i + run < count && values[i + run] == value) {
+				run++;
+			}
+			output.writeVarint(run);
+			output.write(value & 0xFF, 8);
+			i += run;
+		}
+	}
+
+	static void decodeRunLength(BitReader input, byte[] values, int count) {
+		int i = 0;
+		while (i < count) {
+			int run = input.readVarint();
+			byte value = (byte) input.read(8);
+			if (run <= 0 || run > count - i) {
+				throw new IllegalArgumentException("Corrupt run length");
+			}
+			Arrays.fill(values, i, i + run, value);
+			i += run;
+		}
+	}
+
+	/**
+	 * Writes bits, most significant first, into a growing byte array.
+	 */
+	static final class BitWriter {
+		private byte[] bytes = new byte[256];
+		private int length = 0;			// complete bytes
+		private long pending = 0;
+		private int pendingBits = 0;
+
+		void reset() {
+			this.length = 0;
+			this.pending = 0;
+			this.pendingBits = 0;
+		}
+
+		/**
+		 * Writes the low bits of a value (at most 32).
+		 */
+		void write(int value, int bitCount) {
+			if (bitCount == 0) {
+				return;
+			}
+			this.pending = (this.pending << bitCount) | (value & (0xFFFFFFFFL >>> (32 - bitCount)));
+			this.pendingBits += bitCount;
+			while (this.pendingBits >= 8) {
+				this.pendingBits -= 8;
+				append((byte) (this.pending >>> this.pendingBits));
+			}
+		}
+
+		void writeVarint(int value) {
+			while ((value & ~0x7F) != 0) {
+				write((value & 0x7F) | 0x80, 8);
+				value >>>= 7;
+			}
+			write(value, 8);
+		}
+
+		/**
+		 * Writes whole bytes; the output must be at a byte boundary.
+		 */
+		void writeBytes(byte[] source, int count) {
+			if (this.pendingBits != 0) {
+				throw new IllegalStateException("Not at a byte boundary");
+			}
+			if (this.length + count > this.bytes.length) {
+				this.bytes = Arrays.copyOf(this.bytes, Math.max(this.bytes.length * 2, this.length + count));
+			}
+			System.arraycopy(source, 0, this.bytes, this.length, count);
+			this.length += count;
+		}
+
+		/**
+		 * Pads the last byte with zero bits.
+		 * @return the number of bytes written
+		 */
+		int finish() {
+			if (this.pendingBits > 0) {
+				append((byte) (this.pending << (8 - this.pendingBits)));
+				this.pendingBits = 0;
+			}
+			return this.length;
+		}
+
+		byte[] getBytes() {
+			return this.bytes;
+		}
+
+		private void append(byte value) {
+			if (this.length == this.bytes.length) {
+				this.bytes = Arrays.copyOf(this.bytes, this.bytes.length * 2);
+			}
+			this.bytes[this.length++] = value;
+		}
+	}
+
+	/**
+	 * Reads bits, most significant first, from a region of a byte array.
+	 */
+	static final class BitReader {
+		private final byte[] bytes;
+		private int position;
+		private final int end;
+		private long pending = 0;
+		private int pendingBits = 0;
+
+		BitReader(byte[] bytes, int offset, int length) {
+			this.bytes = bytes;
+			this.position = offset;
+			this.end = offset + length;
+		}
+
+		/**
+		 * Reads a value of at most 32 bits.
+		 */
+		int read(int bitCount) {
+			if (bitCount == 0) {
+				return 0;
+			}
+			while (this.pendingBits < bitCount) {
+				if (this.position >= this.end) {
+					throw new IllegalArgumentException("Column ends unexpectedly");
+				}
+				this.pending = (this.pending << 8) | (this.bytes[this.position++] & 0xFF);
+				this.pendingBits += 8;
+			}
+			this.pendingBits -= bitCount;
+			return (int) ((this.pending >>> this.pendingBits) & (0xFFFFFFFFL >>> (32 - bitCount)));
+		}
+
+		int readVarint() {
+			int value = 0;
+			for (int shift = 0; shift < 35; shift += 7) {
+				int next = read(8);
+				value |= (next & 0x7F) << shift;
+				if ((next & 0x80) == 0) {
+					return value;
+				}
+			}
+			throw new IllegalArgumentException("Malformed variable-length integer");
+		}
+	}
+
+}
@@ -0,0 +1,454 @@
+package com.autosportLabs.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+
+/**
+ * The compressed data file format.
+ *
+ * Frames are stored in blocks of a fixed number of frames. Within a block, the frames are
+ * stored column-wise: each column holds one field (such as an analog channel or a sample's
+ * validity byte) across every sample of every frame in the block, encoded by the ColumnCodec
+ * that stores it in the fewest bytes. Every byte of a frame belongs to a column, so frames
+ * read back exactly as written.
+ *
+ * Layout (big-endian):
+ *   "RCAP", version (1 byte)
+ *   configuration length (int), configuration JSON (UTF-8)
+ *   frame count (int), frames per block (int)
+ *   blocks
+ *   block index: position (long) and length (int) of each block
+ *   block index position (long)
+ *
+ * A legacy data file starts with the length of its configuration JSON, then the JSON itself,
+ * which cannot begin with "AP"; the two formats are told apart by the first four bytes.
+ */
+final class CompressedDataFile {
+
+	static final int DEFAULT_FRAMES_PER_BLOCK = 64;
+
+	private static final byte[] MAGIC = {'R', 'C', 'A', 'P'};
+	private static final byte VERSION = 1;
+	private static final int HEADER_BYTES = MAGIC.length + 1 + 4;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final String configurationJSON;
+	private final int frameCount;
+	private final int framesPerBlock;
+	private final long[] blockPositions;
+	private final int[] blockLengths;
+
+	/**
+	 * Reads the header and block index of a compressed data file.
+	 * @param file the data file; it remains the caller's to close
+	 * @throws IOException
+	 */
+	CompressedDataFile(RandomAccessFile file) throws IOException {
+		if (!isCompressed(file)) {
+			throw new IOException("Not a compressed data file");
+		}
+		file.seek(MAGIC.length);
+		int version = file.readUnsignedByte();
+		if (version != VERSION) {
+			throw new IOException(String.format("Unsupported compressed data file version %s", version));
+		}
+		byte[] configuration = new byte[file.readInt()];
+		file.readFully(configuration);
+		this.configurationJSON = new String(configuration, "UTF-8");
+		this.frameCount = file.readInt();
+		this.framesPerBlock = file.readInt();
+
+		file.seek(file.length() - 8);
+		file.seek(file.readLong());
+		int blockCount = (this.frameCount + this.framesPerBlock - 1) / this.framesPerBlock;
+		this.blockPositions = new long[blockCount];
+		this.blockLengths = new int[blockCount];
+		for (int block = 0; block < blockCount; block++) {
+			this.blockPositions[block] = file.readLong();
+			this.blockLengths[block] = file.readInt();
+		}
+		this.file = file;
+		this.channel = file.getChannel();
+	}
+
+	/**
+	 * @return true if the file starts as a compressed data file
+	 */
+	static boolean isCompressed(RandomAccessFile file) throws IOException {
+		if (file.length() < HEADER_BYTES) {
+			return false;
+		}
+		byte[] magic = new byte[MAGIC.length];
+		file.seek(0);
+		file.readFully(magic);
+		file.seek(0);
+		for (int i = 0; i < MAGIC.length; i++) {
+			if (magic[i] != MAGIC[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	void close() throws IOException {
+		this.file.close();
+	}
+	
+	String getConfigurationJSON() {
+		return this.configurationJSON;
+	}
+
+	int getFrameCount() {
+		return this.frameCount;
+	}
+
+	int getFramesPerBlock() {
+		return this.framesPerBlock;
+	}
+
+	int getBlockCount() {
+		return this.blockPositions.length;
+	}
+
+	/**
+	 * Decodes a block's frames into consecutive frames of a buffer.
+	 * @param block the block index
+	 * @param columns the columns of the file's configuration, from columnsFor()
+	 * @param frameBytes the number of bytes used per Frame
+	 * @param destination the buffer to decode into
+	 * @param offset the position of the block's first frame in the destination
+	 * @return the number of frames decoded
+	 * @throws IOException
+	 */
+	int readBlock(int block, List<Column> columns, int frameBytes, ByteBuffer destination, int offset) throws IOException {
+		ByteBuffer encoded = ByteBuffer.allocate(this.blockLengths[block]);
+		long position = this.blockPositions[block];
+		while (encoded.hasRemaining()) {
+			if (this.channel.read(encoded, position + encoded.position()) < 0) {
+				throw new IOException("Unexpected end of data file");
+			}
+		}
+		int blockFrames = Math.min(this.framesPerBlock, this.frameCount - block * this.framesPerBlock);
+		decodeBlock(encoded.array(), columns, frameBytes, blockFrames, destination, offset);
+		return blockFrames;
+	}
+
+	/**
+	 * Reads every frame into a frame store.
+	 */
+	void readFrames(List<Column> columns, int frameBytes, FrameStore store) throws IOException {
+		ByteBuffer blockFrames = ByteBuffer.allocate(this.framesPerBlock * frameBytes);
+		for (int block = 0; block < getBlockCount(); block++) {
+			int count = readBlock(block, columns, frameBytes, blockFrames, 0);
+			for (int i = 0; i < count; i++) {
+				int frameIndex = block * this.framesPerBlock + i;
+				ByteBuffer source = blockFrames.duplicate();
+				source.limit((i + 1) * frameBytes);
+				source.position(i * frameBytes);
+				ByteBuffer frame = store.getBufferForWrite(frameIndex).duplicate();
+				frame.position(store.getOffset(frameIndex));
+				frame.put(source);
+			}
+		}
+	}
+
+	/**
+	 * Writes a DataManager's frames to a new compressed data file.
+	 * @param manager the DataManager
+	 * @param dataFile the file to create; any existing content is replaced
+	 * @param framesPerBlock the number of frames in each block
+	 * @throws IOException
+	 */
+	static void write(DataManager manager, File dataFile, int framesPerBlock) throws IOException {
+		if (framesPerBlock < 1) {
+			throw new IllegalArgumentException(String.format("Invalid frames per block %s", framesPerBlock));
+		}
+		List<Column> columns = columnsFor(manager);
+		int frameBytes = manager.getFrameByteCount();
+		int frameCount = manager.getFrameCount();
+		FrameStore store = manager.getFrameStore();
+
+		RandomAccessFile file = new RandomAccessFile(dataFile, "rw");
+		try {
+			file.setLength(0);
+			file.write(MAGIC);
+			file.writeByte(VERSION);
+			byte[] configuration = manager.getConfigurationJSON().getBytes("UTF-8");
+			file.writeInt(configuration.length);
+			file.write(configuration);
+			file.writeInt(frameCount);
+			file.writeInt(framesPerBlock);
+
+			// Gather each block's frames into one buffer, then encode it
+			int blockCount = (frameCount + framesPerBlock - 1) / framesPerBlock;
+			long[] positions = new long[blockCount];
+			int[] lengths = new int[blockCount];
+			ByteBuffer blockFrames = ByteBuffer.allocate(framesPerBlock * frameBytes);
+			BlockEncoder encoder = new BlockEncoder();
+			for (int block = 0; block < blockCount; block++) {
+				int firstFrame = block * framesPerBlock;
+				int count = Math.min(framesPerBlock, frameCount - firstFrame);
+				for (int i = 0; i < count; i++) {
+					ByteBuffer frame = store.getBuffer(firstFrame + i).duplicate();
+					int frameOffset = store.getOffset(firstFrame + i);
+					frame.limit(frameOffset + frameBytes);
+					frame.position(frameOffset);
+					blockFrames.position(i * frameBytes);
+					blockFrames.put(frame);
+				}
+				positions[block] = file.getFilePointer();
+				lengths[block] = encoder.encode(blockFrames, frameBytes, columns, count);
+				file.write(encoder.output.getBytes(), 0, lengths[block]);
+			}
+
+			long indexPosition = file.getFilePointer();
+			for (int block = 0; block < blockCount; block++) {
+				file.writeLong(positions[block]);
+				file.writeInt(lengths[block]);
+			}
+			file.writeLong(indexPosition);
+		} finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * Divides a frame into columns: for each group, one column per 4-byte word of each channel of
+	 * 4 or 8 bytes (analog, int32 and double channels), then one per remaining byte of the sample set
+	 * (the validity byte first); then one column for each run of frame bytes outside every group.
+	 */
+	@SuppressWarnings("rawtypes")
+	static List<Column> columnsFor(DataManager manager) {
+		List<Column> columns = new ArrayList<Column>();
+		boolean[] frameCovered = new boolean[manager.getFrameByteCount()];
+
+		for (DataChannelGroup group : manager.getDataChannelGroups()) {
+			int sampleBytes = group.getSampleBytes();
+			boolean[] sampleCovered = new boolean[sampleBytes];
+
+			// Channels of whole words, in byte order
+			List<DataChannel> channels = new ArrayList<DataChannel>();
+			for (Enumeration<DataChannel> e = manager.enumerateDataChannels(); e.hasMoreElements();) {
+				DataChannel channel = e.nextElement();
+				int byteCount = channel.getByteCount();
+				if (channel.getGroup() == group && (byteCount == 4 || byteCount == 8)
+						&& channel.byteOffset >= 0 && channel.byteOffset + byteCount <= sampleBytes) {
+					channels.add(channel);
+				}
+			}
+			Collections.sort(channels, new Comparator<DataChannel>() {
+				public int compare(DataChannel a, DataChannel b) {
+					return a.byteOffset - b.byteOffset;
+				}
+			});
+			for (DataChannel channel : channels) {
+				for (int word = 0; word < channel.getByteCount(); word += 4) {
+					columns.add(new Column(group.getByteOffset() + channel.byteOffset + word, sampleBytes, group.getSampleRate(), 4));
+				}
+				for (int i = 0; i < channel.getByteCount(); i++) {
+					sampleCovered[channel.byteOffset + i] = true;
+				}
+			}
+
+			// Every other byte of the sample set
+			for (int i = 0; i < sampleBytes; i++) {
+				if (!sampleCovered[i]) {
+					columns.add(new Column(group.getByteOffset() + i, sampleBytes, group.getSampleRate(), 1));
+				}
+			}
+			for (int i = group.getByteOffset(); i < group.getByteOffset() + sampleBytes * group.getSampleRate() && i < frameCovered.length; i++) {
+				frameCovered[i] = true;
+			}
+		}
+
+		// Runs of bytes outside every group
+		int start = 0;
+		while (start < frameCovered.length) {
+			if (frameCovered[start]) {
+				start++;
+				continue;
+			}
+			int end = start;
+			while (end < frameCovered.length && !frameCovered[end]) {
+				end++;
+			}
+			columns.add(new Column(start, 1, end - start, 1));
+			start = end;
+		}
+		return columns;
+	}
+
+	private static void decodeBlock(byte[] encoded, List<Column> columns, int frameBytes, int frameCount,
+			ByteBuffer destination, int offset) throws IOException {
+		int[] intValues = new int[0];
+		byte[] byteValues = new byte[0];
+		int position = 0;
+		try {
+			for (Column column : columns) {
+				int count = column.count * frameCount;
+				byte codec = encoded[position++];
+				int length = 0;
+				for (int shift = 0;; shift += 7) {
+					int next = encoded[position++];
+					length |= (next & 0x7F) << shift;
+					if ((next & 0x80) == 0) {
+						break;
+					}
+				}
+				ColumnCodec.BitReader reader = new ColumnCodec.BitReader(encoded, position, length);
+				position += length;
+
+				if (column.width == 4) {
+					if (intValues.length < count) {
+						intValues = new int[count];
+					}
+					if (codec == ColumnCodec.XOR) {
+						ColumnCodec.decodeXor(reader, intValues, count);
+					} else if (codec == ColumnCodec.DELTA_OF_DELTA) {
+						ColumnCodec.decodeDeltaOfDelta(reader, intValues, count);
+					} else if (codec == ColumnCodec.RAW) {
+						for (int i = 0; i < count; i++) {
+							intValues[i] = reader.read(32);
+						}
+					} else {
+						throw new IOException(String.format("Unknown column codec %s", codec));
+					}
+					int value = 0;
+					for (int frame = 0; frame < frameCount; frame++) {
+						int base = offset + frame * frameBytes + column.offset;
+						for (int i = 0; i < column.count; i++) {
+							destination.putInt(base + i * column.stride, intValues[value++]);
+						}
+					}
+				} else {
+					if (byteValues.length < count) {
+						byteValues = new byte[count];
+					}
+					if (codec == ColumnCodec.RUN_LENGTH) {
+						ColumnCodec.decodeRunLength(reader, byteValues, count);
+					} else if (codec == ColumnCodec.RAW) {
+						for (int i = 0; i < count; i++) {
+							byteValues[i] = (byte) reader.read(8);
+						}
+					} else {
+						throw new IOException(String.format("Unknown column codec %s", codec));
+					}
+					int value = 0;
+					for (int frame = 0; frame < frameCount; frame++) {
+						int base = offset + frame * frameBytes + column.offset;
+						for (int i = 0; i < column.count; i++) {
+							destination.put(base + i * column.stride, byteValues[value++]);
+						}
+					}
+				}
+			}
+		} catch (RuntimeException e) {
+			throw new IOException("Corrupt compressed block", e);
+		}
+	}
+
+	/**
+	 * One field repeated through a frame: count values of width bytes, the first at offset
+	 * and each following stride bytes after the last.
+	 */
+	static final class Column {
+		final int offset;
+		final int stride;
+		final int count;
+		final int width;
+
+		Column(int offset, int stride, int count, int width) {
+			this.offset = offset;
+			this.stride = stride;
+			this.count = count;
+			this.width = width;
+		}
+	}
+
+	/**
+	 * Encodes blocks, reusing its buffers from block to block.
+	 */
+	private static final class BlockEncoder {
+		final ColumnCodec.BitWriter output = new ColumnCodec.BitWriter();
+		private final ColumnCodec.BitWriter first = new ColumnCodec.BitWriter();
+		private final ColumnCodec.BitWriter second = new ColumnCodec.BitWriter();
+		private int[] intValues = new int[0];
+		private byte[] byteValues = new byte[0];
+
+		/**
+		 * @return the number of bytes of the output
+		 */
+		int encode(ByteBuffer frames, int frameBytes, List<Column> columns, int frameCount) {
+			this.output.reset();
+			for (Column column : columns) {
+				int count = column.count * frameCount;
+				this.first.reset();
+				this.second.reset();
+				byte codec;
+				ColumnCodec.BitWriter chosen;
+
+				if (column.width == 4) {
+					if (this.intValues.length < count) {
+						this.intValues = new int[count];
+					}
+					int value = 0;
+					for (int frame = 0; frame < frameCount; frame++) {
+						int base = frame * frameBytes + column.offset;
+						for (int i = 0; i < column.count; i++) {
+							this.intValues[value++] = frames.getInt(base + i * column.stride);
+						}
+					}
+					ColumnCodec.encodeXor(this.intValues, count, this.first);
+					ColumnCodec.encodeDeltaOfDelta(this.intValues, count, this.second);
+					boolean xorSmaller = this.first.finish() <= this.second.finish();
+					codec = xorSmaller ? ColumnCodec.XOR : ColumnCodec.DELTA_OF_DELTA;
+					chosen = xorSmaller ? this.first : this.second;
+					if (chosen.finish() > count * 4) {
+						chosen.reset();
+						for (int i = 0; i < count; i++) {
+							chosen.write(this.intValues[i], 32);
+						}
+						codec = ColumnCodec.RAW;
+					}
+				} else {
+					if (this.byteValues.length < count) {
+						this.byteValues = new byte[count];
+					}
+					int value = 0;
+					for (int frame = 0; frame < frameCount; frame++) {
+						int base = frame * frameBytes + column.offset;
+						for (int i = 0; i < column.count; i++) {
+							this.byteValues[value++] = frames.get(base + i * column.stride);
+						}
+					}
+					ColumnCodec.encodeRunLength(this.byteValues, count, this.first);
+					codec = ColumnCodec.RUN_LENGTH;
+					chosen = this.first;
+					if (chosen.finish() > count) {
+						chosen.reset();
+						for (int i = 0; i < count; i++) {
+							chosen.write(this.byteValues[i], 8);
+						}
+						codec = ColumnCodec.RAW;
+					}
+				}
+
+				int length = chosen.finish();
+				this.output.write(codec, 8);
+				this.output.writeVarint(length);
+				this.output.writeBytes(chosen.getBytes(), length);
+			}
+			return this.output.finish();
+		}
+	}
+
+}
@@ -0,0 +1,157 @@
+package com.autosportLabs.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads frames from a compressed data file on demand, a block at a time.
+ *
+ * The block index locates a frame's block without reading the blocks before it. Decoded blocks
+ * are held in memory up to a byte budget; the least recently used block is evicted to make room.
+ * The store is read-only.
+ *
+ * All methods are synchronized. Each block loaded gets a new buffer, and the buffer of an evicted
+ * block is never reused, so a thread still holding it keeps reading that block's frames.
+ */
+public class CompressedFrameStore implements FrameStore {
+
+	private final CompressedDataFile file;
+	private final List<CompressedDataFile.Column> columns;
+	private final int frameBytes;
+	private final int framesPerBlock;
+	private final int maximumBlocks;
+	private final boolean closeFile;
+
+	// Blocks in least to most recently used order.
+	private final LinkedHashMap<Integer, ByteBuffer> cachedBlocks = new LinkedHashMap<Integer, ByteBuffer>(16, 0.75f, true);
+
+	// The most recently used block, to avoid a map lookup for repeated access to one block.
+	private int lastBlockIndex = -1;
+	private ByteBuffer lastBlock;
+
+	// Statistics
+	private long hitCount = 0;
+	private long missCount = 0;
+	private DataMetrics metrics;		// Records block loads; null while disabled.
+
+	/**
+	 * @param file the compressed data file
+	 * @param columns the columns of the file's configuration
+	 * @param frameBytes the number of bytes used per Frame
+	 * @param cacheBytes the maximum number of bytes of decoded frames to hold (at least one block is held)
+	 * @param closeFile true to close the file when the store is closed
+	 */
+	CompressedFrameStore(CompressedDataFile file, List<CompressedDataFile.Column> columns, int frameBytes, long cacheBytes,
+			boolean closeFile) {
+		this.file = file;
+		this.columns = columns;
+		this.frameBytes = frameBytes;
+		this.framesPerBlock = file.getFramesPerBlock();
+		long blockBytes = (long) this.framesPerBlock * frameBytes;
+		this.maximumBlocks = (int) Math.max(1, Math.min(Integer.MAX_VALUE, cacheBytes / blockBytes));
+		this.closeFile = closeFile;
+	}
+
+	@Override
+	public synchronized ByteBuffer getBuffer(int frameIndex) {
+		if (frameIndex < 0 || frameIndex >= this.file.getFrameCount()) {
+			throw new IndexOutOfBoundsException("Frame " + frameIndex + " is beyond the end of a read-only file");
+		}
+		int blockIndex = frameIndex / this.framesPerBlock;
+		if (blockIndex == this.lastBlockIndex) {
+			this.hitCount++;
+			return this.lastBlock;
+		}
+
+		ByteBuffer block = this.cachedBlocks.get(blockIndex);
+		if (block != null) {
+			this.hitCount++;
+		} else {
+			this.missCount++;
+			block = loadBlock(blockIndex);
+		}
+
+		this.lastBlockIndex = blockIndex;
+		this.lastBlock = block;
+		return block;
+	}
+
+	@Override
+	public ByteBuffer getBufferForWrite(int frameIndex) {
+		throw new UnsupportedOperationException("Compressed data files are read-only");
+	}
+
+	@Override
+	public int getOffset(int frameIndex) {
+		return (frameIndex % this.framesPerBlock) * this.frameBytes;
+	}
+
+	@Override
+	public int getFrameCount() {
+		return this.file.getFrameCount();
+	}
+
+	@Override
+	public void commitFrame(int frameIndex) {
+		throw new UnsupportedOperationException("Compressed data files are read-only");
+	}
+
+	@Override
+	public void flush() {
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		this.cachedBlocks.clear();
+		this.lastBlockIndex = -1;
+		this.lastBlock = null;
+		if (this.closeFile) {
+			this.file.close();
+		}
+	}
+
+	public synchronized long getHitCount() {
+		return this.hitCount;
+	}
+
+	public synchronized long getMissCount() {
+		return this.missCount;
+	}
+
+	/**
+	 * Records the frames decoded from the data file, and the latency of each block decoded.
+	 * @param metrics the metrics; null to disable
+	 */
+	synchronized void setMetrics(DataMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	private ByteBuffer loadBlock(int blockIndex) {
+		// A new buffer each time: readers may still hold the buffer of an evicted block.
+		if (this.cachedBlocks.size() >= this.maximumBlocks) {
+			Iterator<Map.Entry<Integer, ByteBuffer>> eldest = this.cachedBlocks.entrySet().iterator();
+			eldest.next();
+			eldest.remove();
+		}
+		ByteBuffer block = ByteBuffer.allocate(this.framesPerBlock * this.frameBytes);
+
+		long startTime = (this.metrics != null) ? System.nanoTime() : 0;
+		try {
+			this.file.readBlock(blockIndex, this.columns, this.frameBytes, block, 0);
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to read frames from the data file", e);
+		}
+		if (this.metrics != null) {
+			int firstFrame = blockIndex * this.framesPerBlock;
+			this.metrics.framesLoaded.add(Math.min(this.framesPerBlock, this.file.getFrameCount() - firstFrame));
+			this.metrics.frameLoadLatency.recordSince(startTime);
+		}
+		this.cachedBlocks.put(blockIndex, block);
+		return block;
+	}
+
+}
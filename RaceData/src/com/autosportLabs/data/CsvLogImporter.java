@@ -0,0 +1,424 @@
+package com.autosportLabs.data;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Imports CSV-format log files (as recorded by RaceCapture/Pro) into a DataManager.
+ * 
+ * The header row names the columns. A column is imported into the AnalogDataChannel mapped
+ * to it by mapColumn(), or else into the channel with the same name as the column (RaceCapture
+ * headers such as "AccelX"|"G"|-3.0|3.0|25 are matched on the part before the first '|').
+ * Unmapped columns are ignored.
+ * 
+ * Rows are taken to be at the sample rate of the fastest DataChannelGroup imported into; slower
+ * groups take a sample from the rows that fall on their own sample times. A group's sample is
+ * marked valid when at least one of its columns has a value. Values are parsed directly from
+ * the file bytes and stored with the primitive channel accessors, so nothing is allocated per row.
+ */
+public class CsvLogImporter {
+
+	private static final int INITIAL_BUFFER_BYTES = 64 * 1024;
+	private static final Charset ASCII = Charset.forName("ISO-8859-1");
+	
+	// Powers of ten that are exactly representable as floats.
+	private static final float[] POWERS_OF_TEN = {
+		1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f
+	};
+	private static final long MAXIMUM_EXACT_MANTISSA = 1L << 24;
+	
+	private final HashMap<String, String> channelsByColumnName = new HashMap<String, String>();
+	private final HashMap<Integer, String> channelsByColumnIndex = new HashMap<Integer, String>();
+	private boolean commitFrames = true;
+	
+	/**
+	 * Imports the column with the given header name into a channel.
+	 * @param columnName the column's name in the header row
+	 * @param channelName the name of the AnalogDataChannel to receive the values
+	 */
+	public void mapColumn(String columnName, String channelName) {
+		this.channelsByColumnName.put(columnName, channelName);
+	}
+	
+	/**
+	 * Imports the column at the given position into a channel, whatever its header name.
+	 * @param columnIndex the column's position (from 0)
+	 * @param channelName the name of the AnalogDataChannel to receive the values
+	 */
+	public void mapColumn(int columnIndex, String channelName) {
+		this.channelsByColumnIndex.put(columnIndex, channelName);
+	}
+	
+	/**
+	 * Sets whether each frame is passed to DataManager.writeFrame() once all its rows are imported.
+	 * The default is true.
+	 */
+	public void setCommitFrames(boolean commitFrames) {
+		this.commitFrames = commitFrames;
+	}
+	
+	/**
+	 * Imports a log file, starting at sample index 0.
+	 * @param logFile the CSV log file
+	 * @param manager the DataManager to receive the data
+	 * @return the import statistics
+	 * @throws Exception if the file cannot be read, or a mapped channel is not an AnalogDataChannel
+	 */
+	public ImportStatistics importLog(File logFile, DataManager manager) throws Exception {
+		long start = System.nanoTime();
+		InputStream input = new FileInputStream(logFile);
+		try {
+			RowImporter rows = new RowImporter(manager);
+			byte[] buffer = new byte[INITIAL_BUFFER_BYTES];
+			int filled = 0;
+			
+			while (true) {
+				if (filled == buffer.length) {
+					// A single line fills the buffer; make room for the rest of it.
+					byte[] larger = new byte[buffer.length * 2];
+					System.arraycopy(buffer, 0, larger, 0, filled);
+					buffer = larger;
+				}
+				
+				int count = input.read(buffer, filled, buffer.length - filled);
+				if (count < 0) {
+					if (filled > 0) {
+						rows.processLine(buffer, 0, filled);
+					}
+					break;
+				}
+				filled += count;
+				
+				// Process each complete line, then move any partial line to the start of the buffer.
+				int lineStart = 0;
+				for (int index = 0; index < filled; index++) {
+					if (buffer[index] == '\n') {
+						rows.processLine(buffer, lineStart, index);
+						lineStart = index + 1;
+					}
+				}
+				System.arraycopy(buffer, lineStart, buffer, 0, filled - lineStart);
+				filled -= lineStart;
+			}
+			
+			rows.finish();
+			if (manager.getMetrics() != null) {
+				manager.getMetrics().valuesIngested.add(rows.valueCount);
+			}
+			return new ImportStatistics(logFile, rows.rowCount, rows.valueCount, System.nanoTime() - start);
+		} finally {
+			input.close();
+		}
+	}
+	
+	/**
+	 * Converts log files to memory-mapped .rcap data files, each with its own DataManager.
+	 * Each data file is written beside its log file, with the extension replaced by ".rcap".
+	 * @param logFiles the CSV log files
+	 * @param configurationJSON the Configuration Definition, in JSON format, for every file
+	 * @param threadCount the number of files to convert at once
+	 * @return the import statistics, in the same order as the log files
+	 * @throws Exception if any conversion failed
+	 */
+	public ImportStatistics[] convertLogs(File[] logFiles, final String configurationJSON, int threadCount) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threadCount));
+		try {
+			ArrayList<Future<ImportStatistics>> results = new ArrayList<Future<ImportStatistics>>();
+			for (final File logFile : logFiles) {
+				results.add(executor.submit(new Callable<ImportStatistics>() {
+					@Override
+					public ImportStatistics call() throws Exception {
+						DataManager manager = new DataManager(configurationJSON);
+						manager.setNewMappedDataFile(dataFileFor(logFile), DurabilityPolicy.onFlush());
+						try {
+							return importLog(logFile, manager);
+						} finally {
+							manager.close();
+						}
+					}
+				}));
+			}
+			
+			ImportStatistics[] statistics = new ImportStatistics[logFiles.length];
+			for (int fileIndex = 0; fileIndex < logFiles.length; fileIndex++) {
+				try {
+					statistics[fileIndex] = results.get(fileIndex).get();
+				} catch (ExecutionException e) {
+					throw new Exception("Unable to convert " + logFiles[fileIndex], e.getCause());
+				}
+			}
+			return statistics;
+		} finally {
+			executor.shutdown();
+		}
+	}
+	
+	/**
+	 * Gets the data file a log file is converted to by convertLogs().
+	 */
+	public static File dataFileFor(File logFile) {
+		String name = logFile.getName();
+		int extension = name.lastIndexOf('.');
+		if (extension > 0) {
+			name = name.substring(0, extension);
+		}
+		return new File(logFile.getParentFile(), name + ".rcap");
+	}
+	
+	/**
+	 * Parses a decimal number from ASCII bytes, with the same result as Float.parseFloat().
+	 * Numbers of up to 7 significant digits with small exponents (which covers logged sensor values)
+	 * are converted exactly with a single float operation; anything else falls back to Float.parseFloat().
+	 * @param bytes the bytes holding the number
+	 * @param start the position of the first byte (inclusive)
+	 * @param end the position after the last byte (exclusive)
+	 * @return the number
+	 * @throws NumberFormatException if the bytes are not a number
+	 */
+	public static float parseFloat(byte[] bytes, int start, int end) {
+		int index = start;
+		boolean negative = false;
+		if (index < end && (bytes[index] == '-' || bytes[index] == '+')) {
+			negative = (bytes[index] == '-');
+			index++;
+		}
+		
+		long mantissa = 0;
+		int exponent = 0;
+		boolean seenDigit = false;
+		boolean seenPoint = false;
+		for (; index < end; index++) {
+			byte character = bytes[index];
+			if (character >= '0' && character <= '9') {
+				seenDigit = true;
+				if (mantissa > MAXIMUM_EXACT_MANTISSA) {
+					return parseFloatSlowly(bytes, start, end);
+				}
+				mantissa = (mantissa * 10) + (character - '0');
+				if (seenPoint) {
+					exponent--;
+				}
+			} else if (character == '.' && !seenPoint) {
+				seenPoint = true;
+			} else {
+				break;
+			}
+		}
+		
+		if (index < end && (bytes[index] == 'e' || bytes[index] == 'E')) {
+			index++;
+			boolean negativeExponent = false;
+			if (index < end && (bytes[index] == '-' || bytes[index] == '+')) {
+				negativeExponent = (bytes[index] == '-');
+				index++;
+			}
+			int explicitExponent = 0;
+			int exponentStart = index;
+			for (; index < end && bytes[index] >= '0' && bytes[index] <= '9' && explicitExponent < 1000; index++) {
+				explicitExponent = (explicitExponent * 10) + (bytes[index] - '0');
+			}
+			if (index == exponentStart) {
+				return parseFloatSlowly(bytes, start, end);
+			}
+			exponent += negativeExponent ? -explicitExponent : explicitExponent;
+		}
+		
+		if (index != end || !seenDigit || mantissa > MAXIMUM_EXACT_MANTISSA
+				|| exponent < -(POWERS_OF_TEN.length - 1) || exponent > (POWERS_OF_TEN.length - 1)) {
+			return parseFloatSlowly(bytes, start, end);
+		}
+		
+		// Both operands are exact, and a single IEEE operation is correctly rounded.
+		float value = (float) mantissa;
+		if (exponent < 0) {
+			value = value / POWERS_OF_TEN[-exponent];
+		} else if (exponent > 0) {
+			value = value * POWERS_OF_TEN[exponent];
+		}
+		return negative ? -value : value;
+	}
+	
+	private static float parseFloatSlowly(byte[] bytes, int start, int end) {
+		return Float.parseFloat(new String(bytes, start, end - start, ASCII));
+	}
+	
+	/**
+	 * The state of one import: the column mapping and the current row.
+	 */
+	private final class RowImporter {
+		
+		private final DataManager manager;
+		
+		private AnalogDataChannel[] columnChannels;	// The channel for each column; null if ignored.
+		private int[] columnGroups;					// The index in groups for each mapped column.
+		private DataChannelGroup[] groups;
+		private SampleRecord[] groupRecords;		// The sample being imported into each group.
+		private boolean[] groupHasValue;			// Whether each group has a value in the current row.
+		private int rowRate;						// The number of rows per frame.
+		
+		private long rowCount = 0;
+		private long valueCount = 0;
+		private int lastFrameIndex = -1;
+		
+		private RowImporter(DataManager manager) {
+			this.manager = manager;
+		}
+		
+		private void processLine(byte[] bytes, int start, int end) throws Exception {
+			if (end > start && bytes[end - 1] == '\r') {
+				end--;
+			}
+			if (this.columnChannels == null) {
+				readHeader(new String(bytes, start, end - start, ASCII));
+				return;
+			}
+			if (end == start) {
+				return;		// Skip blank lines.
+			}
+			
+			int row = (int) this.rowCount;
+			int frameIndex = row / this.rowRate;
+			if (frameIndex != this.lastFrameIndex) {
+				commitFrame();
+				this.lastFrameIndex = frameIndex;
+			}
+			
+			int column = 0;
+			int fieldStart = start;
+			for (int index = start; index <= end; index++) {
+				if (index == end || bytes[index] == ',') {
+					if (column < this.columnChannels.length && this.columnChannels[column] != null && index > fieldStart) {
+						storeValue(bytes, fieldStart, index, column, row);
+					}
+					column++;
+					fieldStart = index + 1;
+				}
+			}
+			
+			for (int groupIndex = 0; groupIndex < this.groups.length; groupIndex++) {
+				if (this.groupHasValue[groupIndex]) {
+					SampleRecord record = this.groupRecords[groupIndex];
+					record.setValid(true);
+					record.commit();
+					this.groups[groupIndex].publishSamples(record.getIndex() + 1);
+					this.groupHasValue[groupIndex] = false;
+				}
+			}
+			this.rowCount++;
+		}
+		
+		private void storeValue(byte[] bytes, int start, int end, int column, int row) throws Exception {
+			DataChannelGroup group = this.groups[this.columnGroups[column]];
+			if ((((long) row) * group.getSampleRate()) % this.rowRate != 0) {
+				return;		// This row does not fall on one of the group's sample times.
+			}
+			
+			float value;
+			try {
+				value = parseFloat(bytes, start, end);
+			} catch (NumberFormatException e) {
+				throw new Exception(String.format("Unable to read row %s, column %s", row + 1, column + 1), e);
+			}
+			
+			SampleRecord record = this.groupRecords[this.columnGroups[column]];
+			if (!this.groupHasValue[this.columnGroups[column]]) {
+				record.moveTo(groupSampleIndex(group, row));
+				this.groupHasValue[this.columnGroups[column]] = true;
+			}
+			record.setFloat(this.columnChannels[column], value);
+			this.valueCount++;
+		}
+		
+		private int groupSampleIndex(DataChannelGroup group, int row) {
+			return (int) ((((long) row) * group.getSampleRate()) / this.rowRate);
+		}
+		
+		private void readHeader(String header) throws Exception {
+			String[] columnNames = header.split(",", -1);
+			this.columnChannels = new AnalogDataChannel[columnNames.length];
+			this.columnGroups = new int[columnNames.length];
+			ArrayList<DataChannelGroup> groupList = new ArrayList<DataChannelGroup>();
+			
+			for (int column = 0; column < columnNames.length; column++) {
+				String channelName = channelNameForColumn(column, columnNames[column]);
+				if (channelName == null) {
+					continue;
+				}
+				
+				DataChannel<?> channel = this.manager.getDataChannel(channelName);
+				if (!(channel instanceof AnalogDataChannel)) {
+					throw new Exception(String.format("Column %s maps to %s, which is not an analog channel", column + 1, channelName));
+				}
+				this.columnChannels[column] = (AnalogDataChannel) channel;
+				
+				DataChannelGroup group = channel.getGroup();
+				int groupIndex = groupList.indexOf(group);
+				if (groupIndex < 0) {
+					groupIndex = groupList.size();
+					groupList.add(group);
+				}
+				this.columnGroups[column] = groupIndex;
+			}
+			
+			if (groupList.isEmpty()) {
+				throw new Exception("No log columns map to a data channel");
+			}
+			this.groups = groupList.toArray(new DataChannelGroup[groupList.size()]);
+			this.groupHasValue = new boolean[this.groups.length];
+			this.groupRecords = new SampleRecord[this.groups.length];
+			for (int groupIndex = 0; groupIndex < this.groups.length; groupIndex++) {
+				this.groupRecords[groupIndex] = new SampleRecord(this.groups[groupIndex]);
+			}
+			this.rowRate = 0;
+			for (DataChannelGroup group : this.groups) {
+				this.rowRate = Math.max(this.rowRate, group.getSampleRate());
+			}
+		}
+		
+		private String channelNameForColumn(int column, String header) {
+			String channelName = channelsByColumnIndex.get(column);
+			if (channelName != null) {
+				return channelName;
+			}
+			
+			// Strip any RaceCapture metadata and quotes: "AccelX"|"G"|-3.0|3.0|25
+			String columnName = header;
+			int separator = columnName.indexOf('|');
+			if (separator >= 0) {
+				columnName = columnName.substring(0, separator);
+			}
+			columnName = columnName.trim();
+			if (columnName.length() >= 2 && columnName.startsWith("\"") && columnName.endsWith("\"")) {
+				columnName = columnName.substring(1, columnName.length() - 1);
+			}
+			
+			channelName = channelsByColumnName.get(columnName);
+			if (channelName != null) {
+				return channelName;
+			}
+			return (this.manager.getDataChannel(columnName) != null) ? columnName : null;
+		}
+		
+		private void commitFrame() throws Exception {
+			if (commitFrames && this.lastFrameIndex >= 0) {
+				this.manager.writeFrame(this.lastFrameIndex);
+			}
+		}
+		
+		private void finish() throws Exception {
+			commitFrame();
+		}
+		
+	}
+	
+}
@@ -4,6 +4,7 @@
 package com.autosportLabs.data;
 
 import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * @author Mike
@@ -17,6 +18,9 @@ public abstract class DataChannel<T> {
 	protected final DataManager manager;
 	protected final DataChannelGroup group;
 	
+	// Count the samples read and written through the channel; null while metrics are disabled.
+	LongAdder readCounter;
+	LongAdder writeCounter;
 	
 	
 	public DataChannel(String name, 
@@ -48,7 +52,21 @@ public abstract class DataChannel<T> {
 	public final String getUnits() {
 		return this.units;
 	}
+	
+	/**
+	 * Gets the DataChannelGroup containing the Data Channel.
+	 * @return the DataChannelGroup
+	 */
+	public final DataChannelGroup getGroup() {
+		return this.group;
+	}
 
+	/**
+	 * Gets the number of bytes holding the channel's value in each sample set, from its byte offset.
+	 * @return the number of bytes
+	 */
+	public abstract int getByteCount();
+	
 	/**
 	 * Sets the value for for the frame and sample indexes.
 	 * @param value the value to set
@@ -56,30 +74,55 @@ public abstract class DataChannel<T> {
 	 * @param sampleIndex the sample index to contain the value
 	 */
 	public final void setValue(T value, int frameIndex, int sampleIndex) {
-		// Determine the location reserved for this DataChannelGroup sample set
-		int offset = this.byteOffset + (sampleIndex * this.group.getSampleBytes());
-				
-		// Get the data from the frame at the location reserved for this DataChannelGroup
-		ByteBuffer frame = this.manager.getFrameBytes(frameIndex);
-		frame.position(offset);
+		// Get the buffer holding the frame at the location reserved for this DataChannelGroup
+		ByteBuffer buffer = this.manager.getFrameBufferForWrite(frameIndex);
 
-		insertValueIntoFrame(value, frame);
+		insertValueIntoFrame(value, buffer, valueOffset(frameIndex, sampleIndex));
+		countWrites(1);
 	}
 	
 	public final T getValue(int frameIndex, int sampleIndex) {
-		// Determine the location reserved for this DataChannelGroup sample set
-		int offset = this.byteOffset + (sampleIndex * this.group.getSampleBytes());
-		
-		// Get the data from the frame at the location reserved for this DataChannelGroup
-		ByteBuffer frame = this.manager.getFrameBytes(frameIndex);
-		frame.position(offset);
-
-		return extractValueFromFrame(frame);
+		countReads(1);
+		int offset = valueOffset(frameIndex, sampleIndex);
+		T value;
+		long stamp;
+		do {
+			// Get the buffer holding the frame at the location reserved for this DataChannelGroup
+			stamp = this.manager.startRead(frameIndex);
+			value = extractValueFromFrame(this.manager.getFrameBuffer(frameIndex), offset);
+		} while (!this.manager.validateRead(stamp));
+		return value;
 	}
 	
-	protected abstract void insertValueIntoFrame(T value, ByteBuffer frame);
+	/**
+	 * Determines the location of this channel's value within a frame. 
+	 * @param sampleIndex the sample index within the frame
+	 * @return the byte offset of the value, relative to the frame's first byte
+	 */
+	protected final int sampleOffset(int sampleIndex) {
+		return this.group.getByteOffset() + this.byteOffset + (sampleIndex * this.group.getSampleBytes());
+	}
 	
-	protected abstract T extractValueFromFrame(ByteBuffer frame);
+	/**
+	 * Determines the location of this channel's value within the buffer holding the frame.
+	 * The frame must already have been obtained with getFrameBuffer().
+	 * @param frameIndex the frame index
+	 * @param sampleIndex the sample index within the frame
+	 * @return the absolute byte offset of the value within the frame's buffer
+	 */
+	protected final int valueOffset(int frameIndex, int sampleIndex) {
+		return this.manager.getFrameOffset(frameIndex) + sampleOffset(sampleIndex);
+	}
+	
+	/**
+	 * Stores the value into the buffer at an absolute offset. The buffer's position is not changed.
+	 */
+	protected abstract void insertValueIntoFrame(T value, ByteBuffer buffer, int offset);
+	
+	/**
+	 * Reads the value from the buffer at an absolute offset. The buffer's position is not changed.
+	 */
+	protected abstract T extractValueFromFrame(ByteBuffer buffer, int offset);
 	
 	public final T getValue(int index) {
 		int frameIndex = index / this.group.getSampleRate();
@@ -93,6 +136,39 @@ public abstract class DataChannel<T> {
 		this.setValue(value, frameIndex, sampleIndex);
 	}
 	
+	/**
+	 * Adds to the count of samples read, if metrics are enabled.
+	 */
+	protected final void countReads(int samples) {
+		LongAdder counter = this.readCounter;
+		if (counter != null) {
+			counter.add(samples);
+		}
+	}
+	
+	/**
+	 * Adds to the count of samples written, if metrics are enabled.
+	 */
+	protected final void countWrites(int samples) {
+		LongAdder counter = this.writeCounter;
+		if (counter != null) {
+			counter.add(samples);
+		}
+	}
+	
+	/**
+	 * Checks a bulk transfer's sample index range against the array it uses.
+	 */
+	protected static void checkRange(int fromIndex, int toIndex, int arrayLength, int arrayOffset) {
+		if (fromIndex < 0 || toIndex < fromIndex) {
+			throw new IndexOutOfBoundsException(String.format("Invalid sample range %s to %s", fromIndex, toIndex));
+		}
+		if (arrayOffset < 0 || arrayOffset + (toIndex - fromIndex) > arrayLength) {
+			throw new IndexOutOfBoundsException(String.format("Array of length %s cannot hold %s samples from offset %s",
+					arrayLength, toIndex - fromIndex, arrayOffset));
+		}
+	}
+	
 	public boolean isValid(int frameIndex, int sampleIndex) {
 		return false;
 	}
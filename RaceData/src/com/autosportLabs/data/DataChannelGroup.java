@@ -1,6 +1,10 @@
 package com.autosportLabs.data;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
 
 public class DataChannelGroup {
 
@@ -12,6 +16,17 @@ public class DataChannelGroup {
 	
 	private final byte validBit = 0x01;
 	private final byte validBitMask = (byte) (~validBit);
+	
+	// The number of samples the writer has made visible to reader threads.
+	private volatile int publishedSampleCount = 0;
+	
+	// The operators deriving channels from this group's samples, run by publishSamples().
+	private StreamOperator[] streamOperators = new StreamOperator[0];
+	// The summaries of this group's channels, updated by publishSamples(); set by the DataManager.
+	private ChannelSummary[] channelSummaries = new ChannelSummary[0];
+	
+	// A bitmap of the samples' validity, kept up to date by the methods that write validity.
+	private final ValidityIndex validityIndex;
 		
 	public DataChannelGroup(String name, int sampleRate, int byteOffset, int sampleBytes, DataManager manager) {
 		this.name = name;
@@ -19,6 +34,7 @@ public class DataChannelGroup {
 		this.byteOffset = byteOffset;
 		this.sampleBytes = sampleBytes;
 		this.manager = manager;
+		this.validityIndex = new ValidityIndex(this, manager);
 	}
 	
 	public String getName() {
@@ -33,6 +49,17 @@ public class DataChannelGroup {
 		return this.sampleBytes;
 	}
 	
+	DataManager getManager() {
+		return this.manager;
+	}
+	
+	/**
+	 * @return the location of the group's first sample set, relative to the frame's first byte
+	 */
+	public int getByteOffset() {
+		return this.byteOffset;
+	}
+	
 	public void setBytesForFrame(byte[] bytes, int frameIndex) throws Exception {
 		// Check to ensure the data received is the correct length
 		int expectedBytes = this.sampleBytes * this.sampleRate;
@@ -42,9 +69,10 @@ public class DataChannelGroup {
 		}	
 		
 		// Put the data in the frame at the location reserved for this DataChannelGroup
-		ByteBuffer frame = this.manager.getFrameBytes(frameIndex);
-		frame.position(this.byteOffset);
-		frame.put(bytes);
+		ByteBuffer buffer = this.manager.getFrameBufferForWrite(frameIndex);
+		int offset = this.manager.getFrameOffset(frameIndex) + this.byteOffset;
+		copyIntoBuffer(bytes, buffer, offset);
+		this.validityIndex.indexFrame(frameIndex);
 	}
 	
 	public byte[] getBytesForFrame(int frameIndex) {
@@ -53,9 +81,12 @@ public class DataChannelGroup {
 		byte[] output = new byte[byteCount];
 		
 		// Get the data from the frame at the location reserved for this DataChannelGroup
-		ByteBuffer frame = this.manager.getFrameBytes(frameIndex);
-		frame.position(this.byteOffset);
-		frame.get(output);		// transfers the data into the output array
+		int offset = this.manager.getFrameOffset(frameIndex) + this.byteOffset;
+		long stamp;
+		do {
+			stamp = this.manager.startRead(frameIndex);
+			copyFromBuffer(this.manager.getFrameBuffer(frameIndex), offset, output);		// transfers the data into the output array
+		} while (!this.manager.validateRead(stamp));
 		
 		return output;
 	}
@@ -67,13 +98,10 @@ public class DataChannelGroup {
 			throw new Exception(message);
 		}
 		
-		// Determine the location reserved for this DataChannelGroup sample set
-		int offset = this.byteOffset + (sampleIndex * this.sampleBytes);
-		
-		// Put the data in the frame at the location reserved
-		ByteBuffer frame = manager.getFrameBytes(frameIndex);
-		frame.position(offset);
-		frame.put(bytes);
+		// Put the data in the frame at the location reserved for this DataChannelGroup sample set
+		ByteBuffer buffer = this.manager.getFrameBufferForWrite(frameIndex);
+		copyIntoBuffer(bytes, buffer, sampleOffset(frameIndex, sampleIndex));
+		this.validityIndex.set(frameIndex, sampleIndex, (bytes[0] & validBit) == validBit);
 	}
 	
 	public void setBytesForSample(byte[] bytes, int index) throws Exception {
@@ -86,13 +114,13 @@ public class DataChannelGroup {
 		// Prepare the output array
 		byte[] output = new byte[this.sampleBytes];
 		
-		// Determine the location reserved for this DataChannelGroup sample set
-		int offset = this.byteOffset + (sampleIndex * this.sampleBytes);
-		
-		// Get the data from the frame at the location reserved for this DataChannelGroup
-		ByteBuffer frame = this.manager.getFrameBytes(frameIndex);
-		frame.position(offset);
-		frame.get(output);		// transfers the data into the output array
+		// Get the data from the frame at the location reserved for this DataChannelGroup sample set
+		int offset = sampleOffset(frameIndex, sampleIndex);
+		long stamp;
+		do {
+			stamp = this.manager.startRead(frameIndex);
+			copyFromBuffer(this.manager.getFrameBuffer(frameIndex), offset, output);		// transfers the data into the output array
+		} while (!this.manager.validateRead(stamp));
 		
 		return output;
 	}
@@ -103,15 +131,61 @@ public class DataChannelGroup {
 		return this.getBytesForSample(frameIndex, sampleIndex);
 	}
 
+	/**
+	 * Gets a read-only view of the group's sample sets in a frame, the bytes of getBytesForFrame(),
+	 * without copying them. The view shares content with the frame store.
+	 * @return the view, with position 0 at the first sample set
+	 */
+	public ByteBuffer getFrameSlice(int frameIndex) {
+		ByteBuffer buffer = this.manager.getFrameBuffer(frameIndex);
+		int offset = this.manager.getFrameOffset(frameIndex) + this.byteOffset;
+		return DataManager.readOnlySlice(buffer, offset, offset + (this.sampleRate * this.sampleBytes));
+	}
+	
+	/**
+	 * Gets read-only views of the group's sample sets in a range of frames, without copying them.
+	 * @param fromFrame the first frame index (inclusive)
+	 * @param toFrame the last frame index (exclusive)
+	 * @return the views, in frame order; sample sets adjacent in memory share a view
+	 */
+	public ByteBuffer[] getFrameSlices(int fromFrame, int toFrame) {
+		return this.manager.getRegionSlices(fromFrame, toFrame, this.byteOffset, this.sampleRate * this.sampleBytes);
+	}
+	
+	/**
+	 * Gets a read-only view of a sample set, the bytes of getBytesForSample(), without copying it.
+	 * @return the view, with position 0 at the sample set's first byte
+	 */
+	public ByteBuffer getSampleSlice(int frameIndex, int sampleIndex) {
+		ByteBuffer buffer = this.manager.getFrameBuffer(frameIndex);
+		int offset = sampleOffset(frameIndex, sampleIndex);
+		return DataManager.readOnlySlice(buffer, offset, offset + this.sampleBytes);
+	}
+	
+	public ByteBuffer getSampleSlice(int index) {
+		int frameIndex = index / this.getSampleRate();
+		int sampleIndex = index % this.getSampleRate();
+		return this.getSampleSlice(frameIndex, sampleIndex);
+	}
+	
+	/**
+	 * Writes the group's sample sets in a range of frames to a channel straight from the frame
+	 * store, gathering them in as few writes as the channel allows.
+	 * @param fromFrame the first frame index (inclusive)
+	 * @param toFrame the last frame index (exclusive)
+	 * @param channel the channel, in blocking mode
+	 * @return the number of bytes written
+	 * @throws IOException
+	 */
+	public long writeFrames(int fromFrame, int toFrame, WritableByteChannel channel) throws IOException {
+		return DataManager.writeFully(getFrameSlices(fromFrame, toFrame), channel);
+	}
+	
 	public void setValid(boolean isValid, int frameIndex, int sampleIndex) {	
-		// Determine the location reserved for this DataChannelGroup sample set
 		// Validity for sample set is Byte 0, Bit 0.
-		int offset = this.byteOffset + (sampleIndex * this.sampleBytes);
-		
-		// Get the data from the frame at the location reserved for this DataChannelGroup
-		ByteBuffer frame = this.manager.getFrameBytes(frameIndex);
-		frame.position(offset);
-		byte containingByte = frame.get();
+		ByteBuffer buffer = this.manager.getFrameBufferForWrite(frameIndex);
+		int offset = sampleOffset(frameIndex, sampleIndex);
+		byte containingByte = buffer.get(offset);
 		
 		// Set or Clear the validity bit 
 		byte newByte;
@@ -122,8 +196,8 @@ public class DataChannelGroup {
 		}
 		
 		// Store the value back into the frame
-		frame.position(offset);
-		frame.put(newByte);
+		buffer.put(offset, newByte);
+		this.validityIndex.set(frameIndex, sampleIndex, isValid);
 	}
 	
 	public void setValid(boolean isValid, int index) {
@@ -133,14 +207,14 @@ public class DataChannelGroup {
 	}
 	
 	public boolean isValid (int frameIndex, int sampleIndex) {
-		// Determine the location reserved for this DataChannelGroup sample set
 		// Validity for sample set is Byte 0, Bit 0.
-		int offset = this.byteOffset + (sampleIndex * this.sampleBytes);
-		
-		// Get the data from the frame at the location reserved for this DataChannelGroup
-		ByteBuffer frame = this.manager.getFrameBytes(frameIndex);
-		frame.position(offset);
-		byte containingByte = frame.get();
+		int offset = sampleOffset(frameIndex, sampleIndex);
+		byte containingByte;
+		long stamp;
+		do {
+			stamp = this.manager.startRead(frameIndex);
+			containingByte = this.manager.getFrameBuffer(frameIndex).get(offset);
+		} while (!this.manager.validateRead(stamp));
 
 		return ((containingByte & validBit) == validBit);
 	}
@@ -151,4 +225,319 @@ public class DataChannelGroup {
 		return this.isValid(frameIndex, sampleIndex);
 	}
 	
+	/**
+	 * Reads the validity of a range of sample indexes into a bitmap.
+	 * Bit (k % 64) of bitmap[k / 64] is set if sample (fromIndex + k) is valid; bits beyond the
+	 * range are cleared in the words written.
+	 * @param fromIndex the first sample index (inclusive)
+	 * @param toIndex the last sample index (exclusive)
+	 * @param bitmap the array to receive the bits; it must hold at least (toIndex - fromIndex + 63) / 64 words
+	 * @return the number of valid samples in the range
+	 */
+	public int readValidity(int fromIndex, int toIndex, long[] bitmap) {
+		checkRange(fromIndex, toIndex);
+		int sampleCount = toIndex - fromIndex;
+		if (bitmap.length < (sampleCount + 63) / 64) {
+			throw new IndexOutOfBoundsException(String.format("Invalid sample range %s to %s", fromIndex, toIndex));
+		}
+		int validCount;
+		long stamp;
+		do {
+			stamp = this.manager.startRead(fromIndex / this.sampleRate);
+			validCount = copyValidity(fromIndex, toIndex, bitmap);
+		} while (!this.manager.validateRead(stamp));
+		return validCount;
+	}
+	
+	/**
+	 * Copies the bits of readValidity() from the validity index, a word at a time.
+	 */
+	private int copyValidity(int fromIndex, int toIndex, long[] bitmap) {
+		int sampleCount = toIndex - fromIndex;
+		Arrays.fill(bitmap, 0, (sampleCount + 63) / 64, 0L);
+		
+		// Copy the bits a word of the index at a time
+		int frameIndex = fromIndex / this.sampleRate;
+		int sampleIndex = fromIndex % this.sampleRate;
+		int bitIndex = 0;
+		int validCount = 0;
+		while (bitIndex < sampleCount) {
+			int wordIndex = sampleIndex >>> 6;
+			int count = Math.min(sampleCount - bitIndex, Math.min(this.sampleRate, (wordIndex + 1) * 64) - sampleIndex);
+			long bits = this.validityIndex.frameWord(frameIndex, wordIndex) >>> sampleIndex;	// the shift uses the low 6 bits
+			if (count < 64) {
+				bits &= (1L << count) - 1;
+			}
+			
+			bitmap[bitIndex >>> 6] |= bits << bitIndex;
+			int shift = 64 - (bitIndex & 63);
+			if (shift < count) {
+				bitmap[(bitIndex >>> 6) + 1] |= bits >>> shift;
+			}
+			validCount += Long.bitCount(bits);
+			
+			bitIndex += count;
+			sampleIndex += count;
+			if (sampleIndex == this.sampleRate) {
+				frameIndex++;
+				sampleIndex = 0;
+			}
+		}
+		return validCount;
+	}
+	
+	/**
+	 * Finds the next valid sample, skipping invalid samples a word (64 samples) at a time.
+	 * To visit the valid samples of a range:
+	 * <pre>
+	 * for (int index = group.nextValid(fromIndex, toIndex); index >= 0; index = group.nextValid(index + 1, toIndex)) { ... }
+	 * </pre>
+	 * @param fromIndex the first sample index to consider (inclusive)
+	 * @param toIndex the last sample index to consider (exclusive)
+	 * @return the index of the first valid sample in the range, or -1 if there is none
+	 */
+	public int nextValid(int fromIndex, int toIndex) {
+		checkRange(fromIndex, toIndex);
+		int found;
+		long stamp;
+		do {
+			stamp = this.manager.startRead(fromIndex / this.sampleRate);
+			found = this.validityIndex.nextValid(fromIndex, toIndex);
+		} while (!this.manager.validateRead(stamp));
+		return found;
+	}
+	
+	/**
+	 * Finds the next invalid (missing) sample, skipping valid samples a word at a time.
+	 * @param fromIndex the first sample index to consider (inclusive)
+	 * @param toIndex the last sample index to consider (exclusive)
+	 * @return the index of the first invalid sample in the range, or -1 if there is none
+	 */
+	public int nextInvalid(int fromIndex, int toIndex) {
+		checkRange(fromIndex, toIndex);
+		int found;
+		long stamp;
+		do {
+			stamp = this.manager.startRead(fromIndex / this.sampleRate);
+			found = this.validityIndex.nextInvalid(fromIndex, toIndex);
+		} while (!this.manager.validateRead(stamp));
+		return found;
+	}
+	
+	/**
+	 * Counts the valid samples of a range, a word at a time.
+	 * @param fromIndex the first sample index (inclusive)
+	 * @param toIndex the last sample index (exclusive)
+	 * @return the number of valid samples in the range
+	 */
+	public int validCount(int fromIndex, int toIndex) {
+		checkRange(fromIndex, toIndex);
+		int count;
+		long stamp;
+		do {
+			stamp = this.manager.startRead(fromIndex / this.sampleRate);
+			count = this.validityIndex.validCount(fromIndex, toIndex);
+		} while (!this.manager.validateRead(stamp));
+		return count;
+	}
+	
+	/**
+	 * Rebuilds the validity index of frames from their contents. The group's own methods, its
+	 * channels, SampleRecord and SampleCodec keep the index up to date; a writer that changes
+	 * frames through the FrameStore directly calls this afterwards, before publishing the samples.
+	 * @param fromFrame the first frame index (inclusive)
+	 * @param toFrame the last frame index (exclusive)
+	 */
+	public void indexValidity(int fromFrame, int toFrame) {
+		for (int frameIndex = fromFrame; frameIndex < toFrame; frameIndex++) {
+			this.validityIndex.indexFrame(frameIndex);
+		}
+	}
+	
+	/**
+	 * Limits the validity index to a number of frames, for a frame store that holds only the most recent frames.
+	 * @param frames the number of frames; 0 for no limit
+	 */
+	void setValidityIndexFrames(int frames) {
+		this.validityIndex.setSlotCount(frames);
+	}
+	
+	/**
+	 * Records the validity of a sample set written into its frame by other classes of the package.
+	 */
+	void validityWritten(int frameIndex, int sampleIndex, boolean isValid) {
+		this.validityIndex.set(frameIndex, sampleIndex, isValid);
+	}
+	
+	/**
+	 * Sets the validity of a range of sample indexes from a bitmap, in the layout used by readValidity().
+	 * @param bitmap the bits to store
+	 * @param fromIndex the first sample index (inclusive)
+	 * @param toIndex the last sample index (exclusive)
+	 */
+	public void writeValidity(long[] bitmap, int fromIndex, int toIndex) {
+		int sampleCount = toIndex - fromIndex;
+		if (fromIndex < 0 || sampleCount < 0 || bitmap.length < (sampleCount + 63) / 64) {
+			throw new IndexOutOfBoundsException(String.format("Invalid sample range %s to %s", fromIndex, toIndex));
+		}
+		
+		int frameIndex = fromIndex / this.sampleRate;
+		int sampleIndex = fromIndex % this.sampleRate;
+		int bitIndex = 0;
+		
+		while (bitIndex < sampleCount) {
+			ByteBuffer buffer = this.manager.getFrameBufferForWrite(frameIndex);
+			int offset = sampleOffset(frameIndex, sampleIndex);
+			int count = Math.min(sampleCount - bitIndex, this.sampleRate - sampleIndex);
+			
+			for (int step = 0; step < count; step++) {
+				byte containingByte = buffer.get(offset);
+				boolean isValid = (bitmap[bitIndex >>> 6] & (1L << bitIndex)) != 0;
+				if (isValid) {
+					buffer.put(offset, (byte) (containingByte | validBit));
+				} else {
+					buffer.put(offset, (byte) (containingByte & validBitMask));
+				}
+				this.validityIndex.set(frameIndex, sampleIndex + step, isValid);
+				offset += this.sampleBytes;
+				bitIndex++;
+			}
+			
+			frameIndex++;
+			sampleIndex = 0;
+		}
+	}
+	
+	/**
+	 * Publishes the samples written so far to reader threads.
+	 * 
+	 * The writer calls this after it has completely written a sample (values and validity).
+	 * Every change made before the call is visible to a reader that then sees the new count
+	 * from getPublishedSampleCount(). The count never decreases.
+	 * Any StreamOperators attached to the group process the new samples, and any ChannelSummaries
+	 * of its channels summarize the frames completed, before the call returns.
+	 * @param sampleCount the number of samples (from index 0) that are complete
+	 */
+	public void publishSamples(int sampleCount) {
+		if (sampleCount > this.publishedSampleCount) {
+			this.publishedSampleCount = sampleCount;
+			for (StreamOperator operator : this.streamOperators) {
+				operator.advance(sampleCount);
+			}
+			for (ChannelSummary summary : this.channelSummaries) {
+				summary.summarizeTo(sampleCount / this.sampleRate);
+			}
+		}
+	}
+	
+	/**
+	 * Publishes changes to samples already published, such as missing samples filled in by a
+	 * telemetry backfill, which the rule above otherwise forbids.
+	 * 
+	 * Readers may be reading the samples as they change, so the writer makes the changes between
+	 * beginRevision() and endRevision(); a validated read (see DataManager.startRead()) that
+	 * overlaps them is repeated, so it sees each sample either before or after the change. This
+	 * call then passes the revision to the StreamOperators and ChannelSummaries, which process the
+	 * changed samples again.
+	 * @param fromIndex the first sample index changed (inclusive)
+	 * @param toIndex the last sample index changed (exclusive); samples from the published count on are ignored
+	 */
+	public void reviseSamples(int fromIndex, int toIndex) {
+		checkRange(fromIndex, toIndex);
+		int published = this.publishedSampleCount;
+		toIndex = Math.min(toIndex, published);
+		if (fromIndex >= toIndex) {
+			return;
+		}
+		for (StreamOperator operator : this.streamOperators) {
+			operator.revise(fromIndex);
+		}
+		for (ChannelSummary summary : this.channelSummaries) {
+			summary.framesRevised(fromIndex / this.sampleRate, ((toIndex - 1) / this.sampleRate) + 1);
+		}
+	}
+	
+	/**
+	 * Starts changing samples already published; readers repeat reads that overlap the change.
+	 * The writer must not read samples, or get frame buffers for write, until endRevision(): take
+	 * the buffers first.
+	 * @return the stamp to pass to endRevision()
+	 */
+	public long beginRevision() {
+		return this.manager.beginRevision();
+	}
+	
+	/**
+	 * Ends changing samples already published, started with beginRevision().
+	 */
+	public void endRevision(long stamp) {
+		this.manager.endRevision(stamp);
+	}
+	
+	void setChannelSummaries(ChannelSummary[] summaries) {
+		this.channelSummaries = summaries;
+	}
+	
+	void addStreamOperator(StreamOperator operator) {
+		StreamOperator[] operators = Arrays.copyOf(this.streamOperators, this.streamOperators.length + 1);
+		operators[operators.length - 1] = operator;
+		this.streamOperators = operators;
+	}
+	
+	void removeStreamOperator(StreamOperator operator) {
+		ArrayList<StreamOperator> operators = new ArrayList<StreamOperator>(Arrays.asList(this.streamOperators));
+		operators.remove(operator);
+		this.streamOperators = operators.toArray(new StreamOperator[operators.size()]);
+	}
+	
+	/**
+	 * Gets the number of samples a reader thread may safely read. Samples with an index below
+	 * this count are complete, and will not be torn by the writer.
+	 * @return the number of published samples
+	 */
+	public int getPublishedSampleCount() {
+		return this.publishedSampleCount;
+	}
+	
+	private void checkRange(int fromIndex, int toIndex) {
+		if (fromIndex < 0 || toIndex < fromIndex) {
+			throw new IndexOutOfBoundsException(String.format("Invalid sample range %s to %s", fromIndex, toIndex));
+		}
+	}
+	
+	/**
+	 * Determines the location of a sample set within the buffer holding the frame.
+	 * The frame must already have been obtained from the DataManager.
+	 */
+	private int sampleOffset(int frameIndex, int sampleIndex) {
+		return this.manager.getFrameOffset(frameIndex) + this.byteOffset + (sampleIndex * this.sampleBytes);
+	}
+	
+	/**
+	 * Copies bytes out of a buffer without changing the buffer's position, so
+	 * concurrent readers of the same buffer do not interfere with each other.
+	 */
+	static void copyFromBuffer(ByteBuffer buffer, int offset, byte[] output) {
+		if (buffer.hasArray()) {
+			System.arraycopy(buffer.array(), buffer.arrayOffset() + offset, output, 0, output.length);
+		} else {
+			ByteBuffer view = buffer.duplicate();
+			view.position(offset);
+			view.get(output);
+		}
+	}
+	
+	/**
+	 * Copies bytes into a buffer without changing the buffer's position.
+	 */
+	static void copyIntoBuffer(byte[] bytes, ByteBuffer buffer, int offset) {
+		if (buffer.hasArray()) {
+			System.arraycopy(bytes, 0, buffer.array(), buffer.arrayOffset() + offset, bytes.length);
+		} else {
+			ByteBuffer view = buffer.duplicate();
+			view.position(offset);
+			view.put(bytes);
+		}
+	}
+	
 }
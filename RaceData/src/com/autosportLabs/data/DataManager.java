@@ -2,18 +2,45 @@ package com.autosportLabs.data;
 
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Dictionary;
+import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.StampedLock;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+/**
+ * Holds the Data Frames for a data stream configuration, and the DataChannelGroups and
+ * DataChannels used to access them.
+ * 
+ * Concurrency: a DataManager supports one writer thread and any number of reader threads.
+ * All frame access uses absolute buffer positions, so readers never disturb each other.
+ * The frame store publishes new frames through a volatile frame count, and each
+ * DataChannelGroup publishes completed samples through a volatile sample count: the writer
+ * calls DataChannelGroup.publishSamples() after writing a sample, and readers only read samples
+ * below DataChannelGroup.getPublishedSampleCount(). Published samples must not be changed.
+ * The frames that change under readers anyway, the oldest frames of a live-mode ring as it
+ * evicts them, are changed under a sequence lock: the channels' and groups' getters read
+ * optimistically and check the read afterwards, so they repeat a read that overlapped a change,
+ * and throw FrameEvictedException for a frame evicted meanwhile. Zero-copy slices are not checked.
+ * Configuration changes (setting data files, enabling batched writes, closing) are made by
+ * the writer while no readers are active.
+ */
 @SuppressWarnings("rawtypes")	// DataChannel is generic, but concrete classes identify the data type.
 public class DataManager {
 
 	// Data store
-	private ArrayList<ByteBuffer> dataFrames = new ArrayList<ByteBuffer>();
+	private FrameStore frameStore;
+	private final StampedLock frameChanges = new StampedLock();	// Held for write while frames change under readers.
 	
 	// Configuration Information
 	private String configurationJSON;			// The Configuration Definition, in JSON format.
@@ -21,19 +48,71 @@ public class DataManager {
 	private int frameBytes;						// The number of bytes used per Frame.
 	
 	private Dictionary<String, DataChannelGroup> dataChannelGroups;
+	private List<DataChannelGroup> orderedDataChannelGroups;	// In configuration order.
 	private Dictionary<String, DataChannel> dataChannels;
+	private Dictionary<String, DataChannel> derivedDataChannels = new Hashtable<String, DataChannel>();	// Outputs of StreamOperators.
 	
 	private RandomAccessFile storageFile;		// an associated data storage file.
 	private long storageFileDataOffset;			// The offset for the start of binary data
 												// (after the JSON configuration definition)
+	private FrameWriter frameWriter;			// Writes frames to the storage file in batches, if enabled.
+	private FrameIndex.Writer frameIndexWriter;	// Records each committed frame in an index file, if enabled.
+	private FrameJournal.Writer frameJournal;	// Appends committed frames to a journal, if enabled.
+	private Map<String, ChannelSummary> channelSummaries;	// Summaries of each AnalogDataChannel, if enabled.
+	private DataMetrics metrics = DataMetrics.getDefault();	// Counters and latencies; null while disabled.
+	
+	// The decoded frames held in memory when a compressed data file is opened by a mapped DataManager.
+	private static final long COMPRESSED_CACHE_BYTES = 16 * 1024 * 1024;
 	
 	public DataManager(String configurationJSON) throws Exception {
 		this.configurationJSON = configurationJSON;
 		
 		initializeDataStreamConfiguration();
+		
+		this.frameStore = new ArenaFrameStore(this.frameBytes);
+	}
+	
+	/**
+	 * Creates an in-memory DataManager with space reserved for a session of the expected duration.
+	 * @param configurationJSON the Configuration Definition, in JSON format
+	 * @param expectedDuration the expected session duration (in milliseconds)
+	 * @param offHeap true to hold the frames in direct (off-heap) memory
+	 * @throws Exception
+	 */
+	public DataManager(String configurationJSON, long expectedDuration, boolean offHeap) throws Exception {
+		this.configurationJSON = configurationJSON;
+		
+		initializeDataStreamConfiguration();
+		
+		int expectedFrames = (int) Math.min(Integer.MAX_VALUE, (expectedDuration + this.framePeriod - 1) / this.framePeriod);
+		this.frameStore = new ArenaFrameStore(this.frameBytes, expectedFrames, offHeap);
 	}
 	
+	/**
+	 * Loads a data file into memory. Both the legacy and compressed formats are read.
+	 * Frames passed to writeFrame() later are written back to a legacy data file; the frames of a
+	 * compressed data file are held in memory only, until setNewDataFile() is called.
+	 * Only complete frames of a legacy data file are loaded. After a crash, use
+	 * FrameIndex.recover() to find the intact frames and the bytes of any torn frame.
+	 * @param dataFile the data file
+	 * @throws Exception
+	 */
 	public DataManager(RandomAccessFile dataFile) throws Exception {
+		if (CompressedDataFile.isCompressed(dataFile)) {
+			CompressedDataFile compressedFile = new CompressedDataFile(dataFile);
+			this.configurationJSON = compressedFile.getConfigurationJSON();
+			
+			initializeDataStreamConfiguration();
+			
+			this.frameStore = new ArenaFrameStore(this.frameBytes, compressedFile.getFrameCount(), false);
+			compressedFile.readFrames(CompressedDataFile.columnsFor(this), this.frameBytes, this.frameStore);
+			if (this.metrics != null) {
+				this.metrics.framesLoaded.add(compressedFile.getFrameCount());
+			}
+			buildValidityIndex();
+			return;
+		}
+		
 		this.storageFile = dataFile;
 		this.storageFile.seek(0);	// ensure at position 0
 		
@@ -44,16 +123,99 @@ public class DataManager {
 		
 		//Load data into frames
 		int frameCount = (int) ((this.storageFile.length() - this.storageFileDataOffset) / this.frameBytes);
+		this.frameStore = new ArenaFrameStore(this.frameBytes, frameCount, false);
 		
+		FileChannel channel = this.storageFile.getChannel();
+		DataMetrics metrics = this.metrics;
 		for (int frameIndex = 0; frameIndex < frameCount; frameIndex++) {
-			ByteBuffer frame = this.getFrameBytes(frameIndex);
-			if (frame.hasArray()) {
-				byte[] bytes = frame.array();
-				this.storageFile.read(bytes);
-			} else {
-				throw new Exception("Unable to get Frame as array");
+			long startTime = (metrics != null) ? System.nanoTime() : 0;
+			ByteBuffer frame = this.getFrameBytesForWrite(frameIndex).duplicate();
+			frame.clear();
+			long position = this.storageFileDataOffset + ((long) this.frameBytes * frameIndex);
+			while (frame.hasRemaining()) {
+				if (channel.read(frame, position + frame.position()) < 0) {
+					throw new EOFException("Unexpected end of data file");
+				}
+			}
+			if (metrics != null) {
+				metrics.framesLoaded.increment();
+				metrics.frameLoadLatency.recordSince(startTime);
 			}
 		}
+		buildValidityIndex();
+	}
+	
+	/**
+	 * Opens an existing data file with its frames memory-mapped, rather than loaded into the heap.
+	 * Opening takes the same time regardless of the file size; frames are paged in as they are used.
+	 * @param dataFile the data file
+	 * @param readOnly true to open for reading only. Otherwise frames may be changed or added.
+	 * @param durability when to force committed frames to storage
+	 * @throws Exception
+	 */
+	public DataManager(File dataFile, boolean readOnly, DurabilityPolicy durability) throws Exception {
+		RandomAccessFile file = new RandomAccessFile(dataFile, readOnly ? "r" : "rw");
+		try {
+			if (CompressedDataFile.isCompressed(file)) {
+				// Compressed frames cannot be mapped; decode them a block at a time instead.
+				if (!readOnly) {
+					throw new Exception(String.format("%s is compressed, and can only be opened read-only", dataFile));
+				}
+				openCompressed(file, COMPRESSED_CACHE_BYTES, true);
+				return;
+			}
+			file.seek(0);
+			
+			this.configurationJSON = file.readUTF();
+			long dataOffset = file.getFilePointer();
+			this.storageFileDataOffset = dataOffset;
+			
+			initializeDataStreamConfiguration();
+			
+			this.frameStore = new MappedFrameStore(file, dataOffset, this.frameBytes, readOnly, durability);
+		} catch (Exception e) {
+			// The file is only owned by the frame store once it has been created.
+			file.close();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Opens an existing data file, loading frames from it only as they are used.
+	 * At most cacheBytes of frames are held in memory; the least recently used frames are
+	 * evicted (and written back to the file if changed) to make room. Frames being changed are held
+	 * until passed to writeFrame().
+	 * @param dataFile the data file; it remains the caller's to close, after close() is called 
+	 * @param cacheBytes the maximum number of bytes of frames to hold in memory
+	 * @throws Exception
+	 */
+	public DataManager(RandomAccessFile dataFile, long cacheBytes) throws Exception {
+		if (CompressedDataFile.isCompressed(dataFile)) {
+			openCompressed(dataFile, cacheBytes, false);
+			return;
+		}
+		dataFile.seek(0);	// ensure at position 0
+		
+		this.configurationJSON = dataFile.readUTF();
+		long dataOffset = dataFile.getFilePointer();
+		
+		initializeDataStreamConfiguration();
+		
+		this.frameStore = new CachedFrameStore(dataFile, dataOffset, this.frameBytes, cacheBytes);
+		attachFrameStoreMetrics();
+	}
+	
+	/**
+	 * Opens a compressed data file, read-only, decoding blocks of frames as they are used.
+	 */
+	private void openCompressed(RandomAccessFile file, long cacheBytes, boolean closeFile) throws Exception {
+		CompressedDataFile compressedFile = new CompressedDataFile(file);
+		this.configurationJSON = compressedFile.getConfigurationJSON();
+		
+		initializeDataStreamConfiguration();
+		
+		this.frameStore = new CompressedFrameStore(compressedFile, CompressedDataFile.columnsFor(this), this.frameBytes, cacheBytes, closeFile);
+		attachFrameStoreMetrics();
 	}
 	
 	/**
@@ -65,6 +227,7 @@ public class DataManager {
 		// Load the JSON data
 		
 		dataChannelGroups = new Hashtable<String, DataChannelGroup>();
+		ArrayList<DataChannelGroup> groupList = new ArrayList<DataChannelGroup>();
 		dataChannels = new Hashtable<String, DataChannel>();
 		
 		try {
@@ -80,44 +243,113 @@ public class DataManager {
 			for (JsonNode groupNode: groupNodes) {
 				String groupName = groupNode.path("groupName").asText();
 				int groupRate = groupNode.path("groupSampleRate").asInt();
-				int groupOffset = groupNode.path("groupOffset").asInt();
+				// Accept both spellings of the group offset; earlier definitions used "groupOffset".
+				int groupOffset = groupNode.has("groupByteOffset")
+						? groupNode.path("groupByteOffset").asInt()
+						: groupNode.path("groupOffset").asInt();
 				int groupSampleBytes = groupNode.path("groupSampleBytes").asInt();
 	
 				DataChannelGroup newGroup = new DataChannelGroup(groupName, groupRate, groupOffset, groupSampleBytes, this);
 				
 				JsonNode channelNodes = groupNode.path("groupChannels");
 				
+				// The bits of each byte of the sample set in use; bit 0 of byte 0 is the validity bit.
+				int[] usedBits = new int[Math.max(1, groupSampleBytes)];
+				usedBits[0] = 0x01;
+				
 				for (JsonNode channelNode : channelNodes) {
-					String channelType = channelNode.path("channelType").asText();
-					String channelName = channelNode.path("channelName").asText();
-					String channelUnits = channelNode.path("channelUnits").asText();
-					int channelByteOffset = channelNode.path("channelByteOffset").asInt();
-					
-					DataChannel newChannel; 
-					
-					if (channelType.equals("analog")) {
-						newChannel = new AnalogDataChannel(channelName,
-								channelUnits,
-								channelByteOffset,
-								this,
-								newGroup);
-					}
-					// handle other types here!
-					else {
-						throw new Exception("Unknown Channel type: " + channelType);
+					DataChannel<?> newChannel = createDataChannel(channelNode, newGroup);
+					reserveChannelBytes(newChannel, usedBits);
+					if (this.dataChannels.get(newChannel.getName()) != null) {
+						throw new Exception(String.format("A channel named %s already exists", newChannel.getName()));
 					}
-					 this.dataChannels.put(channelName,	newChannel);
+					 this.dataChannels.put(newChannel.getName(),	newChannel);
 					
 				}
 				
 				this.dataChannelGroups.put(groupName, newGroup);
+				groupList.add(newGroup);
 			}
+			this.orderedDataChannelGroups = Collections.unmodifiableList(groupList);
+			attachChannelMetrics();
 			
 			
 		
 		}
 		catch (Exception e) {
-			throw new Exception("Unable to read configuration definition.", e.getCause());
+			throw new Exception("Unable to read configuration definition.", e);
+		}
+	}
+	
+	/**
+	 * Creates a channel from its definition. The channel types are:
+	 * "analog" (a 4-byte float); "double" (an 8-byte double); "int8", "uint8", "int16", "uint16"
+	 * and "int32" (integers); "scaled" (an integer count of "channelStorage" type, read as count
+	 * times "channelGain" plus "channelOffset"); "boolean" (bit "channelBitOffset", 0 to 7, of
+	 * the byte); and "enum" (the ordinal of one of the labels in "channelValues").
+	 */
+	private DataChannel<?> createDataChannel(JsonNode channelNode, DataChannelGroup group) throws Exception {
+		String channelType = channelNode.path("channelType").asText();
+		String channelName = channelNode.path("channelName").asText();
+		String channelUnits = channelNode.path("channelUnits").asText();
+		int channelByteOffset = channelNode.path("channelByteOffset").asInt();
+		
+		if (channelType.equals("analog")) {
+			return new AnalogDataChannel(channelName, channelUnits, channelByteOffset, this, group);
+		}
+		if (channelType.equals("double")) {
+			return new DoubleDataChannel(channelName, channelUnits, channelByteOffset, this, group);
+		}
+		IntegerType integerType = IntegerType.forTypeName(channelType);
+		if (integerType != null) {
+			return new IntegerDataChannel(channelName, channelUnits, channelByteOffset, integerType, this, group);
+		}
+		if (channelType.equals("scaled")) {
+			String storageName = channelNode.path("channelStorage").asText();
+			IntegerType storage = IntegerType.forTypeName(storageName);
+			if (storage == null) {
+				throw new Exception(String.format("Unknown storage %s for channel %s", storageName, channelName));
+			}
+			return new ScaledDataChannel(channelName, channelUnits, channelByteOffset, storage,
+					channelNode.path("channelGain").asDouble(1.0), channelNode.path("channelOffset").asDouble(0.0), this, group);
+		}
+		if (channelType.equals("boolean")) {
+			int bitOffset = channelNode.path("channelBitOffset").asInt();
+			if (bitOffset < 0 || bitOffset > 7) {
+				throw new Exception(String.format("Invalid bit offset %s for channel %s", bitOffset, channelName));
+			}
+			return new BooleanDataChannel(channelName, channelUnits, channelByteOffset, bitOffset, this, group);
+		}
+		if (channelType.equals("enum")) {
+			List<String> labels = new ArrayList<String>();
+			for (JsonNode labelNode : channelNode.path("channelValues")) {
+				labels.add(labelNode.asText());
+			}
+			return new EnumDataChannel(channelName, channelUnits, channelByteOffset, labels, this, group);
+		}
+		throw new Exception("Unknown Channel type: " + channelType);
+	}
+	
+	/**
+	 * Checks that a channel lies within its group's sample set, and overlaps neither the validity
+	 * bit nor an earlier channel, then marks its bytes (or, for a boolean channel, its bit) in use.
+	 * @param usedBits the bits of each byte of the sample set in use
+	 */
+	private static void reserveChannelBytes(DataChannel<?> channel, int[] usedBits) throws Exception {
+		DataChannelGroup group = channel.getGroup();
+		int start = channel.byteOffset;
+		int end = start + channel.getByteCount();
+		if (start < 0 || end > group.getSampleBytes()) {
+			throw new Exception(String.format("Channel %s (bytes %s to %s) does not fit the %s bytes of group %s's samples",
+					channel.getName(), start, end - 1, group.getSampleBytes(), group.getName()));
+		}
+		int bits = (channel instanceof BooleanDataChannel) ? (0x01 << ((BooleanDataChannel) channel).getBitOffset()) : 0xFF;
+		for (int i = start; i < end; i++) {
+			if ((usedBits[i] & bits) != 0) {
+				throw new Exception(String.format("Channel %s overlaps another channel or the validity bit at byte %s of group %s",
+						channel.getName(), i, group.getName()));
+			}
+			usedBits[i] |= bits;
 		}
 	}
 
@@ -128,16 +360,614 @@ public class DataManager {
 		this.storageFileDataOffset = this.storageFile.getFilePointer();
 	}
 	
-	public void writeFrame(int frameIndex) throws Exception {
-		long position = this.storageFileDataOffset + (this.frameBytes * frameIndex);
-		this.storageFile.seek(position);
-		ByteBuffer frame = this.dataFrames.get(frameIndex); 
+	/**
+	 * Writes frames to the data file set by setNewDataFile() in batches from a background thread,
+	 * rather than with one write per writeFrame() call. A frame must not be changed after writeFrame()
+	 * until flush() has been called.
+	 * @param batchBytes commit once at least this many bytes of frames are waiting
+	 * @param maximumDelay commit once a frame has waited this long (in milliseconds)
+	 * @param forceOnCommit true to force the file to the storage device after each commit
+	 */
+	public void enableBatchedWrites(int batchBytes, long maximumDelay, boolean forceOnCommit) {
+		if (this.storageFile == null) {
+			throw new IllegalStateException("No data file has been set");
+		}
+		if (this.frameWriter != null) {
+			throw new IllegalStateException("Batched writes are already enabled");
+		}
+		if (this.frameJournal != null) {
+			throw new IllegalStateException("Frames are written to a journal");
+		}
+		this.frameWriter = new FrameWriter(this.storageFile.getChannel(), this.storageFileDataOffset,
+				this.frameBytes, batchBytes, maximumDelay, forceOnCommit);
+	}
+	
+	/**
+	 * @return the batched frame writer; null if batched writes are not enabled
+	 */
+	public FrameWriter getFrameWriter() {
+		return this.frameWriter;
+	}
+	
+	/**
+	 * Creates a new data file and moves the frames into a memory mapping of it.
+	 * Subsequent frame changes are made directly in the file; writeFrame() commits
+	 * them according to the durability policy.
+	 * @param dataFile the data file to create; any existing content is replaced
+	 * @param durability when to force committed frames to storage
+	 * @throws IOException
+	 */
+	public void setNewMappedDataFile(File dataFile, DurabilityPolicy durability) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(dataFile, "rw");
+		file.setLength(0);
+		file.writeUTF(this.configurationJSON);
+		long dataOffset = file.getFilePointer();
+		
+		FrameStore mappedStore = new MappedFrameStore(file, dataOffset, this.frameBytes, false, durability);
+		
+		// Carry over any frames already held.
+		FrameStore previousStore = this.frameStore;
+		for (int frameIndex = getFirstFrameIndex(); frameIndex < previousStore.getFrameCount(); frameIndex++) {
+			copyFrame(previousStore, mappedStore, frameIndex);
+			mappedStore.commitFrame(frameIndex);
+		}
+		
+		closeFrameWriter();
+		closeFrameIndex();
+		this.frameStore = mappedStore;
+		this.storageFile = null;
+		this.storageFileDataOffset = dataOffset;
+		previousStore.close();
+	}
+	
+	/**
+	 * Gets read-only views of a range of frames, without copying them. Consecutive frames held
+	 * next to each other in memory share a view, so there are usually far fewer views than frames.
+	 * The views share content with the frame store, and follow its rules for readers.
+	 * @param fromFrame the first frame index (inclusive)
+	 * @param toFrame the last frame index (exclusive)
+	 * @return the views, in frame order, each with position 0 at its first byte
+	 */
+	public ByteBuffer[] getFrameSlices(int fromFrame, int toFrame) {
+		return getRegionSlices(fromFrame, toFrame, 0, this.frameBytes);
+	}
+	
+	/**
+	 * Writes a range of frames to a channel straight from the frame store, gathering them in as
+	 * few writes as the channel allows.
+	 * @param fromFrame the first frame index (inclusive)
+	 * @param toFrame the last frame index (exclusive)
+	 * @param channel the channel, in blocking mode
+	 * @return the number of bytes written
+	 * @throws IOException
+	 */
+	public long writeFrames(int fromFrame, int toFrame, WritableByteChannel channel) throws IOException {
+		return writeFully(getFrameSlices(fromFrame, toFrame), channel);
+	}
+	
+	/**
+	 * Copies a range of frames to a channel, such as a socket or another file. Frames of a
+	 * memory-mapped data file are transferred by FileChannel.transferTo(), which the operating system
+	 * can do without copying them through the heap. Other frames are written from memory by
+	 * writeFrames(), including those loaded from a legacy data file, since the file holds only the
+	 * frames passed to writeFrame().
+	 * @param fromFrame the first frame index (inclusive)
+	 * @param toFrame the last frame index (exclusive)
+	 * @param channel the channel, in blocking mode
+	 * @return the number of bytes copied
+	 * @throws IOException
+	 */
+	public long transferFrames(int fromFrame, int toFrame, WritableByteChannel channel) throws IOException {
+		if (fromFrame < 0 || toFrame < fromFrame || toFrame > this.getFrameCount()) {
+			throw new IndexOutOfBoundsException(String.format("Invalid frame range %s to %s", fromFrame, toFrame));
+		}
+		if (!(this.frameStore instanceof MappedFrameStore)) {
+			return writeFrames(fromFrame, toFrame, channel);
+		}
 		
-		if ( frame.hasArray() ) {
-			byte[] bytes = frame.array();
-			this.storageFile.write(bytes);
+		MappedFrameStore mappedStore = (MappedFrameStore) this.frameStore;
+		FileChannel file = mappedStore.getChannel();
+		long position = mappedStore.getDataOffset() + ((long) this.frameBytes * fromFrame);
+		long count = (long) this.frameBytes * (toFrame - fromFrame);
+		long transferred = 0;
+		while (transferred < count) {
+			long bytes = file.transferTo(position + transferred, count - transferred, channel);
+			if (bytes <= 0) {
+				throw new EOFException(String.format("Frames %s to %s are not all in the data file", fromFrame, toFrame));
+			}
+			transferred += bytes;
+		}
+		return transferred;
+	}
+	
+	/**
+	 * Copies the configuration and all frames to a new legacy data file, which can be loaded like
+	 * the original. See transferFrames() for how the frames are copied.
+	 * @param dataFile the data file to create; any existing content is replaced
+	 * @throws IOException
+	 */
+	public void exportDataFile(File dataFile) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(dataFile, "rw");
+		try {
+			file.setLength(0);
+			file.writeUTF(this.configurationJSON);
+			FileChannel channel = file.getChannel();
+			channel.position(file.getFilePointer());
+			transferFrames(0, this.getFrameCount(), channel);
+		} finally {
+			file.close();
+		}
+	}
+	
+	/**
+	 * Gets read-only views of the same region of each frame of a range, coalescing regions that
+	 * are adjacent in memory.
+	 * @param regionOffset the location of the region, relative to the frame's first byte
+	 * @param regionBytes the length of the region
+	 */
+	ByteBuffer[] getRegionSlices(int fromFrame, int toFrame, int regionOffset, int regionBytes) {
+		if (fromFrame < 0 || toFrame < fromFrame) {
+			throw new IndexOutOfBoundsException(String.format("Invalid frame range %s to %s", fromFrame, toFrame));
+		}
+		List<ByteBuffer> slices = new ArrayList<ByteBuffer>();
+		ByteBuffer runBuffer = null;
+		int runStart = 0;
+		int runEnd = 0;
+		for (int frameIndex = fromFrame; frameIndex < toFrame; frameIndex++) {
+			ByteBuffer buffer = this.frameStore.getBuffer(frameIndex);
+			int start = this.frameStore.getOffset(frameIndex) + regionOffset;
+			if (buffer == runBuffer && start == runEnd) {
+				runEnd += regionBytes;
+				continue;
+			}
+			if (runBuffer != null) {
+				slices.add(readOnlySlice(runBuffer, runStart, runEnd));
+			}
+			runBuffer = buffer;
+			runStart = start;
+			runEnd = start + regionBytes;
+		}
+		if (runBuffer != null) {
+			slices.add(readOnlySlice(runBuffer, runStart, runEnd));
+		}
+		return slices.toArray(new ByteBuffer[slices.size()]);
+	}
+	
+	static ByteBuffer readOnlySlice(ByteBuffer buffer, int start, int end) {
+		ByteBuffer view = buffer.asReadOnlyBuffer();
+		view.limit(end);
+		view.position(start);
+		return view.slice();
+	}
+	
+	/**
+	 * Writes all of the buffers to a channel, as a gathering write where the channel supports it.
+	 * @return the number of bytes written
+	 */
+	static long writeFully(ByteBuffer[] buffers, WritableByteChannel channel) throws IOException {
+		long written = 0;
+		if (channel instanceof GatheringByteChannel) {
+			GatheringByteChannel gathering = (GatheringByteChannel) channel;
+			int first = 0;
+			while (first < buffers.length) {
+				written += gathering.write(buffers, first, buffers.length - first);
+				while (first < buffers.length && !buffers[first].hasRemaining()) {
+					first++;
+				}
+			}
 		} else {
-			throw new Exception("Unable to get Frame as array");
+			for (ByteBuffer buffer : buffers) {
+				while (buffer.hasRemaining()) {
+					written += channel.write(buffer);
+				}
+			}
+		}
+		return written;
+	}
+	
+	/**
+	 * Holds only the most recent frames in memory, in a circular buffer allocated now, so a live
+	 * session of any length uses bounded memory. Frames keep their absolute frame indexes; requests
+	 * for older frames throw FrameEvictedException, and reads of frames not yet written throw
+	 * IndexOutOfBoundsException (see RingFrameStore). The most recent of the
+	 * frames already held are kept. StreamOperator outputs are limited to the same number of frames.
+	 * With batched writes, a frame passed to writeFrame() must be flushed before it is evicted.
+	 * Call while no readers are active.
+	 * @param retainedFrames the number of frames to hold
+	 * @param spillToDataFile true to write changed frames to the data file set by setNewDataFile()
+	 * as they are evicted, for writers (such as telemetry receivers) that do not call writeFrame()
+	 * @throws IOException
+	 */
+	public void enableLiveMode(int retainedFrames, boolean spillToDataFile) throws IOException {
+		if (spillToDataFile && this.storageFile == null) {
+			throw new IllegalStateException("No data file has been set");
+		}
+		if (!(this.frameStore instanceof ArenaFrameStore || this.frameStore instanceof RingFrameStore)) {
+			throw new IllegalStateException("Live mode needs frames held in memory");
+		}
+		boolean direct = this.frameStore instanceof ArenaFrameStore && ((ArenaFrameStore) this.frameStore).isDirect();
+		FrameStore liveStore = new RingFrameStore(this.frameBytes, retainedFrames, direct,
+				spillToDataFile ? this.storageFile.getChannel() : null, this.storageFileDataOffset, this.frameChanges);
+		
+		// Carry over the frames already held; the oldest are evicted (and spilled) as they are copied.
+		FrameStore previousStore = this.frameStore;
+		for (int frameIndex = getFirstFrameIndex(); frameIndex < previousStore.getFrameCount(); frameIndex++) {
+			copyFrame(previousStore, liveStore, frameIndex);
+		}
+		this.frameStore = liveStore;
+		previousStore.close();
+		
+		for (DataChannelGroup group : this.orderedDataChannelGroups) {
+			group.setValidityIndexFrames(retainedFrames);
+		}
+		buildValidityIndex();
+		Enumeration<DataChannel> outputs = this.derivedDataChannels.elements();
+		while (outputs.hasMoreElements()) {
+			outputs.nextElement().manager.enableLiveMode(retainedFrames, false);
+		}
+	}
+	
+	/**
+	 * Holds only the frames of the most recent span of time in memory; see enableLiveMode().
+	 * @param retainedMillis the span to hold (in milliseconds), rounded up to whole frames
+	 * @param spillToDataFile true to write changed frames to the data file as they are evicted
+	 * @throws IOException
+	 */
+	public void enableLiveModeForDuration(long retainedMillis, boolean spillToDataFile) throws IOException {
+		long frames = (retainedMillis + this.framePeriod - 1) / this.framePeriod;
+		enableLiveMode((int) Math.max(1, Math.min(Integer.MAX_VALUE, frames)), spillToDataFile);
+	}
+	
+	/**
+	 * @return the number of frames held in live mode; 0 if not in live mode
+	 */
+	int getLiveFrameLimit() {
+		return this.frameStore instanceof RingFrameStore ? ((RingFrameStore) this.frameStore).getCapacity() : 0;
+	}
+	
+	/**
+	 * Writes all frames to a new data file in the compressed format. The file is read by the
+	 * same constructors as a legacy data file, but only for reading.
+	 * @param dataFile the data file to create; any existing content is replaced
+	 * @throws IOException
+	 */
+	public void writeCompressedDataFile(File dataFile) throws IOException {
+		CompressedDataFile.write(this, dataFile, CompressedDataFile.DEFAULT_FRAMES_PER_BLOCK);
+	}
+	
+	/**
+	 * Writes all frames to a new data file in the compressed format.
+	 * @param dataFile the data file to create; any existing content is replaced
+	 * @param framesPerBlock the number of frames compressed together. Larger blocks compress
+	 * better; smaller blocks decode less to read one frame.
+	 * @throws IOException
+	 */
+	public void writeCompressedDataFile(File dataFile, int framesPerBlock) throws IOException {
+		CompressedDataFile.write(this, dataFile, framesPerBlock);
+	}
+	
+	/**
+	 * Opens the frames of a legacy data file covering a span of time, reading only those frames.
+	 * The frames keep their indexes (and their samples, their sample indexes) from the whole file,
+	 * and frames outside the span are not available. Only frames recorded in the frame index beside
+	 * the data file are read; if there is no usable index, it is rebuilt by FrameIndex.recover(),
+	 * which excludes torn frames.
+	 * @param dataFile the data file
+	 * @param startMillis the start of the span (in milliseconds from the start of the file)
+	 * @param endMillis the end of the span
+	 * @return a read-only DataManager holding the frames of the span
+	 * @throws Exception
+	 */
+	public static DataManager openRange(File dataFile, long startMillis, long endMillis) throws Exception {
+		RandomAccessFile file = new RandomAccessFile(dataFile, "r");
+		try {
+			DataManager manager = new DataManager(file.readUTF());
+			long dataOffset = file.getFilePointer();
+			
+			FrameIndex index = null;
+			File indexFile = FrameIndex.indexFileFor(dataFile);
+			if (indexFile.exists()) {
+				index = FrameIndex.read(indexFile);
+				if (!index.matches(dataOffset, manager.frameBytes, file.length())) {
+					index = null;
+				}
+			}
+			if (index == null) {
+				index = FrameIndex.recover(dataFile);
+			}
+			
+			int firstFrame = Math.min(index.frameAt(startMillis), index.getFrameCount());
+			int endFrame = endMillis <= startMillis ? firstFrame
+					: Math.min(index.frameAt(endMillis - 1) + 1, index.getFrameCount());
+			
+			ByteBuffer frames = ByteBuffer.allocate((endFrame - firstFrame) * manager.frameBytes);
+			FileChannel channel = file.getChannel();
+			long position = index.getFramePosition(firstFrame);
+			while (frames.hasRemaining()) {
+				if (channel.read(frames, position + frames.position()) < 0) {
+					throw new EOFException("Unexpected end of data file");
+				}
+			}
+			
+			manager.frameStore.close();
+			manager.frameStore = new RangeFrameStore(firstFrame, endFrame, manager.frameBytes, frames);
+			
+			// Runs for only the frames of the span, rather than every frame from the start of the file.
+			for (DataChannelGroup group : manager.orderedDataChannelGroups) {
+				group.setValidityIndexFrames(endFrame - firstFrame);
+			}
+			manager.buildValidityIndex();
+			return manager;
+		} finally {
+			file.close();
+		}
+	}
+	
+	/**
+	 * Records each frame passed to writeFrame() in a frame index, after the frame is written.
+	 * Call after the data file is set and before frames are written.
+	 * @param indexFile the index file to create, usually FrameIndex.indexFileFor() the data file
+	 * @throws IOException
+	 */
+	public void enableFrameIndex(File indexFile) throws IOException {
+		if (this.storageFile == null && !(this.frameStore instanceof MappedFrameStore)) {
+			throw new IllegalStateException("No data file has been set");
+		}
+		closeFrameIndex();
+		this.frameIndexWriter = new FrameIndex.Writer(indexFile, this, this.storageFileDataOffset);
+	}
+	
+	/**
+	 * Appends each frame passed to writeFrame() to a journal, rather than writing it in place in the
+	 * data file set by setNewDataFile(). The journal is forced to storage according to the durability
+	 * policy, and compacted into the data file once it reaches compactionBytes, on compactJournal(),
+	 * and on close(). After a crash, call FrameJournal.replay() before opening the data file.
+	 * Call after the data file is set and before frames are written.
+	 * @param journalFile the journal file, usually FrameJournal.journalFileFor() the data file
+	 * @param durability when to force appended frames to storage
+	 * @param compactionBytes compact once the journal's records take at least this many bytes
+	 * @throws IOException
+	 */
+	public void enableJournal(File journalFile, DurabilityPolicy durability, long compactionBytes) throws IOException {
+		if (this.storageFile == null) {
+			throw new IllegalStateException("No data file has been set");
+		}
+		if (this.frameWriter != null) {
+			throw new IllegalStateException("Frames are written in batches");
+		}
+		closeFrameJournal();
+		this.frameJournal = new FrameJournal.Writer(journalFile, this.storageFile.getChannel(),
+				this.storageFileDataOffset, this.frameBytes, durability, compactionBytes);
+	}
+	
+	/**
+	 * Copies the frames appended to the journal into the data file, and empties the journal.
+	 * Does nothing if no journal is enabled.
+	 * @throws IOException
+	 */
+	public void compactJournal() throws IOException {
+		if (this.frameJournal != null) {
+			this.frameJournal.compact();
+		}
+	}
+	
+	public void writeFrame(int frameIndex) throws Exception {
+		DataMetrics metrics = this.metrics;
+		long startTime = (metrics != null) ? System.nanoTime() : 0;
+		
+		if (this.frameJournal != null) {
+			this.frameJournal.append(frameIndex, this.getFrameBytes(frameIndex));
+		} else if (this.frameWriter != null) {
+			this.frameWriter.submit(frameIndex, this.getFrameBytes(frameIndex));
+		} else if (this.storageFile != null) {
+			long position = this.storageFileDataOffset + ((long) this.frameBytes * frameIndex);
+			ByteBuffer frame = this.getFrameBytes(frameIndex).duplicate();
+			frame.clear();
+			
+			// Channel writes work for heap and direct frames alike.
+			FileChannel channel = this.storageFile.getChannel();
+			while (frame.hasRemaining()) {
+				channel.write(frame, position + frame.position());
+			}
+		}
+		this.frameStore.commitFrame(frameIndex);
+		if (this.frameIndexWriter != null) {
+			this.frameIndexWriter.frameCommitted(this.frameStore, frameIndex);
+		}
+		if (this.channelSummaries != null) {
+			for (ChannelSummary summary : this.channelSummaries.values()) {
+				summary.frameCommitted(frameIndex);
+			}
+		}
+		
+		if (metrics != null) {
+			metrics.framesWritten.increment();
+			if (this.storageFile != null || this.frameStore instanceof MappedFrameStore) {
+				metrics.bytesWritten.add(this.frameBytes);
+			}
+			metrics.writeFrameLatency.recordSince(startTime);
+		}
+	}
+	
+	/**
+	 * Records counters and latencies of this DataManager's work in a DataMetrics: the frames
+	 * allocated, written and loaded, the bytes written, the latency of writeFrame() and of loading
+	 * frames, and the samples read and written through each channel. A DataMetrics may be shared
+	 * by several DataManagers. Call before other threads use the DataManager.
+	 * @param metrics the metrics; null to disable metrics
+	 */
+	public void enableMetrics(DataMetrics metrics) {
+		this.metrics = metrics;
+		attachChannelMetrics();
+		attachFrameStoreMetrics();
+	}
+	
+	/**
+	 * @return the metrics recording this DataManager's work; null if metrics are disabled
+	 */
+	public DataMetrics getMetrics() {
+		return this.metrics;
+	}
+	
+	private void attachChannelMetrics() {
+		Enumeration<DataChannel> channels = this.dataChannels.elements();
+		while (channels.hasMoreElements()) {
+			DataChannel<?> channel = channels.nextElement();
+			channel.readCounter = (this.metrics != null) ? this.metrics.counter(DataMetrics.channelReadsName(channel)) : null;
+			channel.writeCounter = (this.metrics != null) ? this.metrics.counter(DataMetrics.channelWritesName(channel)) : null;
+		}
+	}
+	
+	private void attachFrameStoreMetrics() {
+		if (this.frameStore instanceof CachedFrameStore) {
+			((CachedFrameStore) this.frameStore).setMetrics(this.metrics);
+		} else if (this.frameStore instanceof CompressedFrameStore) {
+			((CompressedFrameStore) this.frameStore).setMetrics(this.metrics);
+		}
+	}
+	
+	/**
+	 * Indexes the validity of every group's samples in the frames held, so DataChannelGroup.nextValid()
+	 * and validCount() skip invalid samples a word at a time. Frames loaded into memory are indexed
+	 * when loaded; call this after opening a mapped, cached or compressed data file, whose frames
+	 * are otherwise read sample by sample. Call while no readers are active.
+	 */
+	public void buildValidityIndex() {
+		int firstFrame = getFirstFrameIndex();
+		int frameCount = this.getFrameCount();
+		for (DataChannelGroup group : this.orderedDataChannelGroups) {
+			group.indexValidity(firstFrame, frameCount);
+		}
+	}
+	
+	/**
+	 * Keeps a ChannelSummary of each AnalogDataChannel, summarizing the frames already held
+	 * and then each frame as its samples are published, or as it is passed to writeFrame().
+	 */
+	public void enableChannelSummaries() {
+		attachChannelSummaries(createChannelSummaries());
+		summarizeFrames(0);
+	}
+	
+	/**
+	 * Keeps a ChannelSummary of each AnalogDataChannel, starting from a summary file written by
+	 * writeChannelSummaries(). Frames held beyond those in the file are summarized from the data.
+	 * @param summaryFile the summary file, usually ChannelSummary.summaryFileFor() the data file
+	 * @throws Exception if the file does not match the configuration
+	 */
+	public void loadChannelSummaries(File summaryFile) throws Exception {
+		Map<String, ChannelSummary> summaries = createChannelSummaries();
+		int frameCount = ChannelSummary.readFile(summaryFile, summaries);
+		attachChannelSummaries(summaries);
+		summarizeFrames(Math.min(frameCount, this.getFrameCount()));
+	}
+	
+	/**
+	 * Writes the channel summaries to a summary file, to be read by loadChannelSummaries().
+	 * @param summaryFile the summary file, usually ChannelSummary.summaryFileFor() the data file
+	 * @throws IOException
+	 */
+	public void writeChannelSummaries(File summaryFile) throws IOException {
+		if (this.channelSummaries == null) {
+			throw new IllegalStateException("Channel summaries are not enabled");
+		}
+		ChannelSummary.writeFile(summaryFile, new ArrayList<ChannelSummary>(this.channelSummaries.values()));
+	}
+	
+	/**
+	 * Gets the summary of an AnalogDataChannel.
+	 * @param channelName The name of the AnalogDataChannel
+	 * @return The channel's summary; null if summaries are not enabled or the name is not an AnalogDataChannel.
+	 */
+	public ChannelSummary getChannelSummary(String channelName) {
+		return this.channelSummaries == null ? null : this.channelSummaries.get(channelName);
+	}
+	
+	private Map<String, ChannelSummary> createChannelSummaries() {
+		Map<String, ChannelSummary> summaries = new LinkedHashMap<String, ChannelSummary>();
+		Enumeration<DataChannel> channels = this.dataChannels.elements();
+		while (channels.hasMoreElements()) {
+			DataChannel channel = channels.nextElement();
+			if (channel instanceof AnalogDataChannel) {
+				summaries.put(channel.getName(), new ChannelSummary((AnalogDataChannel) channel));
+			}
+		}
+		return summaries;
+	}
+	
+	/**
+	 * Sets the summaries, and gives each group the summaries of its channels to update as it publishes samples.
+	 */
+	private void attachChannelSummaries(Map<String, ChannelSummary> summaries) {
+		for (DataChannelGroup group : this.orderedDataChannelGroups) {
+			ArrayList<ChannelSummary> groupSummaries = new ArrayList<ChannelSummary>();
+			for (ChannelSummary summary : summaries.values()) {
+				if (summary.getChannel().getGroup() == group) {
+					groupSummaries.add(summary);
+				}
+			}
+			group.setChannelSummaries(groupSummaries.toArray(new ChannelSummary[groupSummaries.size()]));
+		}
+		this.channelSummaries = summaries;
+	}
+	
+	private void summarizeFrames(int fromFrame) {
+		fromFrame = Math.max(fromFrame, getFirstFrameIndex());
+		int frameCount = this.getFrameCount();
+		for (int frameIndex = fromFrame; frameIndex < frameCount; frameIndex++) {
+			for (ChannelSummary summary : this.channelSummaries.values()) {
+				summary.frameCommitted(frameIndex);
+			}
+		}
+	}
+	
+	/**
+	 * Ensures all committed frames have been written to storage.
+	 * @throws IOException
+	 */
+	public void flush() throws IOException {
+		if (this.frameWriter != null) {
+			this.frameWriter.flush();
+		}
+		if (this.frameJournal != null) {
+			this.frameJournal.flush();
+		}
+		this.frameStore.flush();
+		if (this.frameIndexWriter != null) {
+			this.frameIndexWriter.flush();
+		}
+	}
+	
+	/**
+	 * Flushes and releases the frame storage. Files opened by the DataManager are closed;
+	 * a file passed to setNewDataFile() remains the caller's to close.
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		closeFrameWriter();
+		closeFrameJournal();
+		this.frameStore.close();
+		closeFrameIndex();
+	}
+	
+	private void closeFrameJournal() throws IOException {
+		if (this.frameJournal != null) {
+			this.frameJournal.close();
+			this.frameJournal = null;
+		}
+	}
+	
+	private void closeFrameIndex() throws IOException {
+		if (this.frameIndexWriter != null) {
+			this.frameIndexWriter.close();
+			this.frameIndexWriter = null;
+		}
+	}
+	
+	private void closeFrameWriter() throws IOException {
+		if (this.frameWriter != null) {
+			this.frameWriter.close();
+			this.frameWriter = null;
 		}
 	}
 	
@@ -164,6 +994,14 @@ public class DataManager {
 		return dataChannelGroups.get(groupName);				
 	}
 	
+	/**
+	 * Gets all the DataChannelGroups.
+	 * @return the DataChannelGroups, in the order of the configuration definition
+	 */
+	public List<DataChannelGroup> getDataChannelGroups() {
+		return this.orderedDataChannelGroups;
+	}
+	
 	
 	/**
 	 * Gets the DataChannel with the matching name.
@@ -171,21 +1009,208 @@ public class DataManager {
 	 * @return The named DataChannel; null if the name does not exist.
 	 */
 	public DataChannel getDataChannel(String channelName) {
-		return dataChannels.get(channelName);
+		DataChannel channel = dataChannels.get(channelName);
+		return channel != null ? channel : this.derivedDataChannels.get(channelName);
 	}
 	
+	/**
+	 * Registers a StreamOperator's output channel, and attaches the operator to its input's group
+	 * so each sample published from then on is processed. Samples already published are processed now;
+	 * for frames loaded from a data file, publish their samples with DataChannelGroup.publishSamples().
+	 * @param operator the operator; its input must be a channel of this DataManager, or a registered output
+	 * @throws Exception if the input is not a channel of this DataManager, or the output's name is in use
+	 */
+	public void addStreamOperator(StreamOperator operator) throws Exception {
+		AnalogDataChannel input = operator.getInput();
+		if (getDataChannel(input.getName()) != input) {
+			throw new Exception(String.format("Channel %s does not belong to this DataManager", input.getName()));
+		}
+		String outputName = operator.getOutput().getName();
+		if (getDataChannel(outputName) != null) {
+			throw new Exception(String.format("A channel named %s already exists", outputName));
+		}
+		
+		// In live mode, the output holds as many frames as the input, and starts with the oldest input held.
+		DataManager inputManager = input.manager;
+		if (inputManager.getLiveFrameLimit() > 0) {
+			operator.getOutput().manager.enableLiveMode(inputManager.getLiveFrameLimit(), false);
+			operator.skipTo(inputManager.getFirstFrameIndex() * input.getGroup().getSampleRate());
+		}
+		if (this.metrics != null && operator.getOutput().manager.getMetrics() == null) {
+			operator.getOutput().manager.enableMetrics(this.metrics);
+		}
+		this.derivedDataChannels.put(outputName, operator.getOutput());
+		input.getGroup().addStreamOperator(operator);
+		operator.advance(input.getGroup().getPublishedSampleCount());
+	}
+	
+	/**
+	 * Detaches a StreamOperator and removes its output channel. Operators using the output as
+	 * their input stop receiving samples.
+	 */
+	public void removeStreamOperator(StreamOperator operator) {
+		operator.getInput().getGroup().removeStreamOperator(operator);
+		this.derivedDataChannels.remove(operator.getOutput().getName());
+	}
+	
+	Enumeration<DataChannel> enumerateDataChannels() {
+		return this.dataChannels.elements();
+	}
+	
+	/**
+	 * @return the number of bytes used per Frame
+	 */
+	public int getFrameByteCount() {
+		return this.frameBytes;
+	}
+	
+	/**
+	 * @return the number of frames held
+	 */
+	public int getFrameCount() {
+		return this.frameStore.getFrameCount();
+	}
+	
+	/**
+	 * @return the index of the first frame held; only a range of frames (see openRange()) or
+	 * live mode (see enableLiveMode()) starts after 0
+	 */
+	public int getFirstFrameIndex() {
+		if (this.frameStore instanceof RingFrameStore) {
+			return ((RingFrameStore) this.frameStore).getFirstFrame();
+		}
+		return this.frameStore instanceof RangeFrameStore ? ((RangeFrameStore) this.frameStore).getFirstFrame() : 0;
+	}
+	
+	/**
+	 * @return the store holding the frames
+	 */
+	public FrameStore getFrameStore() {
+		return this.frameStore;
+	}
+	
+	/**
+	 * Gets a view of a single frame, with position 0 at the frame's first byte.
+	 * The view shares content with the frame store. 
+	 */
 	ByteBuffer getFrameBytes(int frameIndex) {
-		extendFramesToIndex(frameIndex);
-		return this.dataFrames.get(frameIndex);
+		return frameView(getFrameBuffer(frameIndex), frameIndex);
 	}
 	
-	private void extendFramesToIndex(int frameIndex) {
-		if (frameIndex >= this.dataFrames.size()) {
-			for (int index = this.dataFrames.size() ; index <= frameIndex; index++) {
-				ByteBuffer newFrame = ByteBuffer.allocate(this.frameBytes);
-				this.dataFrames.add(newFrame);
-			}
+	/**
+	 * Gets a view of a single frame that is about to be changed.
+	 */
+	ByteBuffer getFrameBytesForWrite(int frameIndex) {
+		return frameView(getFrameBufferForWrite(frameIndex), frameIndex);
+	}
+	
+	/**
+	 * Gets the buffer containing the frame, creating the frame if needed.
+	 * Use with getFrameOffset() and absolute get/put operations.
+	 */
+	ByteBuffer getFrameBuffer(int frameIndex) {
+		if (this.metrics != null && frameIndex >= this.frameStore.getFrameCount()) {
+			return countFramesAllocated(frameIndex, false);
+		}
+		return this.frameStore.getBuffer(frameIndex);
+	}
+	
+	/**
+	 * Starts a read of a frame by a reader thread. Read the frame (from getFrameBuffer()) after
+	 * this call, then repeat from this call until validateRead() accepts the read:
+	 * <pre>
+	 * do {
+	 *     stamp = manager.startRead(frameIndex);
+	 *     value = manager.getFrameBuffer(frameIndex).getFloat(offset);
+	 * } while (!manager.validateRead(stamp));
+	 * </pre>
+	 * Waits while the writer is changing frames under readers.
+	 * @param frameIndex the first (oldest) frame to be read
+	 * @return the stamp for validateRead()
+	 * @throws FrameEvictedException if the frame is no longer held
+	 */
+	long startRead(int frameIndex) {
+		long stamp;
+		while ((stamp = this.frameChanges.tryOptimisticRead()) == 0) {
+			Thread.yield();
+		}
+		if (this.frameStore instanceof RingFrameStore) {
+			((RingFrameStore) this.frameStore).checkRetained(frameIndex);
+		}
+		return stamp;
+	}
+	
+	/**
+	 * @param stamp the stamp from startRead()
+	 * @return true if no frames were changed under readers since the stamp, so the read is complete
+	 */
+	boolean validateRead(long stamp) {
+		return this.frameChanges.validate(stamp);
+	}
+	
+	/**
+	 * Takes the sequence lock for write while the writer changes frames readers may be reading;
+	 * see DataChannelGroup.beginRevision().
+	 */
+	long beginRevision() {
+		return this.frameChanges.writeLock();
+	}
+	
+	void endRevision(long stamp) {
+		this.frameChanges.unlockWrite(stamp);
+	}
+	
+	/**
+	 * Gets the buffer containing a frame that is about to be changed.
+	 */
+	ByteBuffer getFrameBufferForWrite(int frameIndex) {
+		if (this.metrics != null && frameIndex >= this.frameStore.getFrameCount()) {
+			return countFramesAllocated(frameIndex, true);
+		}
+		return this.frameStore.getBufferForWrite(frameIndex);
+	}
+	
+	/**
+	 * Gets the buffer containing a frame beyond the frames held, counting the frames added.
+	 */
+	private ByteBuffer countFramesAllocated(int frameIndex, boolean forWrite) {
+		int oldCount = this.frameStore.getFrameCount();
+		ByteBuffer buffer = forWrite ? this.frameStore.getBufferForWrite(frameIndex) : this.frameStore.getBuffer(frameIndex);
+		int added = this.frameStore.getFrameCount() - oldCount;
+		if (added > 0) {
+			this.metrics.framesAllocated.add(added);
 		}
+		return buffer;
+	}
+	
+	/**
+	 * Gets the location of the frame's first byte within the buffer from getFrameBuffer().
+	 */
+	int getFrameOffset(int frameIndex) {
+		return this.frameStore.getOffset(frameIndex);
+	}
+	
+	private ByteBuffer frameView(ByteBuffer buffer, int frameIndex) {
+		int offset = this.frameStore.getOffset(frameIndex);
+		if (offset == 0 && buffer.capacity() == this.frameBytes) {
+			return buffer;
+		}
+		
+		ByteBuffer view = buffer.duplicate();
+		view.limit(offset + this.frameBytes);
+		view.position(offset);
+		return view.slice();
+	}
+	
+	private void copyFrame(FrameStore source, FrameStore destination, int frameIndex) {
+		ByteBuffer sourceBuffer = source.getBuffer(frameIndex).duplicate();
+		int sourceOffset = source.getOffset(frameIndex);
+		sourceBuffer.limit(sourceOffset + this.frameBytes);
+		sourceBuffer.position(sourceOffset);
+		
+		ByteBuffer destinationBuffer = destination.getBufferForWrite(frameIndex).duplicate();
+		destinationBuffer.position(destination.getOffset(frameIndex));
+		destinationBuffer.put(sourceBuffer);
 	}
 	
 }
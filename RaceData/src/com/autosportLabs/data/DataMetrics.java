@@ -0,0 +1,253 @@
+package com.autosportLabs.data;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * A registry of counters and latency histograms describing the work of one or more DataManagers.
+ *
+ * Metrics are disabled unless a DataMetrics is given to DataManager.enableMetrics(), or set with
+ * setDefault() before a DataManager is created; while disabled, each instrumented operation costs
+ * one null check. Counters are LongAdders, striped so concurrent readers counting channel reads
+ * do not contend, and latencies are recorded in LatencyHistograms.
+ *
+ * The metrics are read with snapshot(), passed to a MetricsReporter by report() or periodically
+ * by startReporting(), or exported through JMX by registerMBean().
+ */
+public final class DataMetrics implements DataMetricsMXBean {
+
+	/** Frames added to a frame store, whether written or read. */
+	public static final String FRAMES_ALLOCATED = "framesAllocated";
+	/** Frames passed to DataManager.writeFrame(). */
+	public static final String FRAMES_WRITTEN = "framesWritten";
+	/** Bytes of frames written to a data file or its journal by DataManager.writeFrame(). */
+	public static final String BYTES_WRITTEN = "bytesWritten";
+	/** Frames read from a data file. */
+	public static final String FRAMES_LOADED = "framesLoaded";
+	/** Channel values stored by CsvLogImporter and IngestPipeline. */
+	public static final String VALUES_INGESTED = "valuesIngested";
+	/** Samples arriving at a SyncReceiver. */
+	public static final String TELEMETRY_SAMPLES_RECEIVED = "telemetry.samplesReceived";
+	/** Samples a SyncReceiver published without receiving, such as those skipped by a sample interval. */
+	public static final String TELEMETRY_SAMPLES_SKIPPED = "telemetry.samplesSkipped";
+
+	/** The latency of DataManager.writeFrame(). */
+	public static final String WRITE_FRAME_LATENCY = "writeFrame";
+	/** The latency of reading a frame (or a block of compressed frames) from a data file. */
+	public static final String FRAME_LOAD_LATENCY = "frameLoad";
+	/** The latency of an IngestPipeline committing a frame: publishing its samples and writing it. */
+	public static final String INGEST_LATENCY = "ingest";
+
+	private static volatile DataMetrics defaultMetrics;
+
+	private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<String, LongAdder>();
+	private final ConcurrentMap<String, LatencyHistogram> latencies = new ConcurrentHashMap<String, LatencyHistogram>();
+
+	// The metrics of the instrumented operations, held to avoid a lookup per operation.
+	final LongAdder framesAllocated = counter(FRAMES_ALLOCATED);
+	final LongAdder framesWritten = counter(FRAMES_WRITTEN);
+	final LongAdder bytesWritten = counter(BYTES_WRITTEN);
+	final LongAdder framesLoaded = counter(FRAMES_LOADED);
+	final LongAdder valuesIngested = counter(VALUES_INGESTED);
+	final LongAdder telemetrySamplesReceived = counter(TELEMETRY_SAMPLES_RECEIVED);
+	final LongAdder telemetrySamplesSkipped = counter(TELEMETRY_SAMPLES_SKIPPED);
+	final LatencyHistogram writeFrameLatency = latency(WRITE_FRAME_LATENCY);
+	final LatencyHistogram frameLoadLatency = latency(FRAME_LOAD_LATENCY);
+	final LatencyHistogram ingestLatency = latency(INGEST_LATENCY);
+
+	private ScheduledExecutorService reportingExecutor;		// Guarded by this.
+	private ObjectName objectName;							// Guarded by this.
+
+	/**
+	 * @return the DataMetrics given to each DataManager as it is created; null if none
+	 */
+	public static DataMetrics getDefault() {
+		return defaultMetrics;
+	}
+
+	/**
+	 * Sets the DataMetrics given to each DataManager as it is created, so the loading of data files
+	 * is measured too. DataManagers already created are unaffected.
+	 * @param metrics the metrics; null to disable metrics for new DataManagers
+	 */
+	public static void setDefault(DataMetrics metrics) {
+		defaultMetrics = metrics;
+	}
+
+	/**
+	 * Gets a counter, creating it if needed.
+	 * @param name the counter name
+	 * @return the counter
+	 */
+	public LongAdder counter(String name) {
+		LongAdder counter = this.counters.get(name);
+		if (counter == null) {
+			LongAdder created = new LongAdder();
+			counter = this.counters.putIfAbsent(name, created);
+			if (counter == null) {
+				counter = created;
+			}
+		}
+		return counter;
+	}
+
+	/**
+	 * Gets a latency histogram, creating it if needed.
+	 * @param name the histogram name
+	 * @return the histogram
+	 */
+	public LatencyHistogram latency(String name) {
+		LatencyHistogram histogram = this.latencies.get(name);
+		if (histogram == null) {
+			LatencyHistogram created = new LatencyHistogram();
+			histogram = this.latencies.putIfAbsent(name, created);
+			if (histogram == null) {
+				histogram = created;
+			}
+		}
+		return histogram;
+	}
+
+	/**
+	 * @return the name of the counter of a channel's sample reads
+	 */
+	public static String channelReadsName(DataChannel<?> channel) {
+		return "channel." + channel.getName() + ".reads";
+	}
+
+	/**
+	 * @return the name of the counter of a channel's sample writes
+	 */
+	public static String channelWritesName(DataChannel<?> channel) {
+		return "channel." + channel.getName() + ".writes";
+	}
+
+	/**
+	 * @return the current value of every counter and latency histogram
+	 */
+	public MetricsSnapshot snapshot() {
+		SortedMap<String, Long> counterValues = new TreeMap<String, Long>();
+		for (Map.Entry<String, LongAdder> counter : this.counters.entrySet()) {
+			counterValues.put(counter.getKey(), counter.getValue().sum());
+		}
+		SortedMap<String, LatencyHistogram.Snapshot> latencyValues = new TreeMap<String, LatencyHistogram.Snapshot>();
+		for (Map.Entry<String, LatencyHistogram> latency : this.latencies.entrySet()) {
+			latencyValues.put(latency.getKey(), latency.getValue().snapshot());
+		}
+		return new MetricsSnapshot(System.currentTimeMillis(), counterValues, latencyValues);
+	}
+
+	/**
+	 * Passes a snapshot to a reporter.
+	 */
+	public void report(MetricsReporter reporter) {
+		reporter.report(snapshot());
+	}
+
+	/**
+	 * Passes a snapshot to a reporter periodically, from a daemon thread, until stopReporting() is called.
+	 * @param reporter the reporter
+	 * @param period the time between reports (in milliseconds)
+	 */
+	public synchronized void startReporting(final MetricsReporter reporter, long period) {
+		if (this.reportingExecutor != null) {
+			throw new IllegalStateException("Metrics are already being reported");
+		}
+		this.reportingExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "RaceData metrics reporter");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.reportingExecutor.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				report(reporter);
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops the reports started by startReporting().
+	 */
+	public synchronized void stopReporting() {
+		if (this.reportingExecutor != null) {
+			this.reportingExecutor.shutdownNow();
+			this.reportingExecutor = null;
+		}
+	}
+
+	/**
+	 * Registers the metrics with the platform MBean server, as
+	 * "com.autosportLabs.data:type=DataMetrics,name=" followed by the given name.
+	 * @param name the name distinguishing this DataMetrics, such as "capture"
+	 * @return the name registered
+	 * @throws JMException if the name is invalid or already registered
+	 */
+	public synchronized ObjectName registerMBean(String name) throws JMException {
+		if (this.objectName != null) {
+			throw new IllegalStateException(String.format("The metrics are already registered as %s", this.objectName));
+		}
+		ObjectName objectName = new ObjectName("com.autosportLabs.data:type=DataMetrics,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		this.objectName = objectName;
+		return objectName;
+	}
+
+	/**
+	 * Removes the registration made by registerMBean(). Does nothing if the metrics are not registered.
+	 * @throws JMException
+	 */
+	public synchronized void unregisterMBean() throws JMException {
+		if (this.objectName != null) {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.objectName);
+			this.objectName = null;
+		}
+	}
+
+	@Override
+	public Map<String, Long> getCounters() {
+		return snapshot().getCounters();
+	}
+
+	@Override
+	public Map<String, Long> getLatencies() {
+		SortedMap<String, Long> summaries = new TreeMap<String, Long>();
+		for (Map.Entry<String, LatencyHistogram> latency : this.latencies.entrySet()) {
+			String name = latency.getKey();
+			LatencyHistogram.Snapshot snapshot = latency.getValue().snapshot();
+			summaries.put(name + ".count", snapshot.getCount());
+			summaries.put(name + ".mean", Math.round(snapshot.getMean()));
+			summaries.put(name + ".p50", snapshot.getValueAtPercentile(50));
+			summaries.put(name + ".p99", snapshot.getValueAtPercentile(99));
+			summaries.put(name + ".p999", snapshot.getValueAtPercentile(99.9));
+			summaries.put(name + ".max", snapshot.getMax());
+		}
+		return summaries;
+	}
+
+	@Override
+	public void reset() {
+		for (LongAdder counter : this.counters.values()) {
+			counter.reset();
+		}
+		for (LatencyHistogram latency : this.latencies.values()) {
+			latency.reset();
+		}
+	}
+
+}
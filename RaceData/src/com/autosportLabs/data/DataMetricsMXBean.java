@@ -0,0 +1,26 @@
+package com.autosportLabs.data;
+
+import java.util.Map;
+
+/**
+ * The management interface of DataMetrics, registered with DataMetrics.registerMBean().
+ */
+public interface DataMetricsMXBean {
+
+	/**
+	 * @return the value of each counter, by name
+	 */
+	Map<String, Long> getCounters();
+
+	/**
+	 * @return a summary of each latency histogram (in nanoseconds), by histogram name and statistic,
+	 * such as "writeFrame.p99"
+	 */
+	Map<String, Long> getLatencies();
+
+	/**
+	 * Resets every counter and latency histogram to zero.
+	 */
+	void reset();
+
+}
@@ -0,0 +1,67 @@
+package com.autosportLabs.data;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+
+/**
+ * Carries sync messages as UDP datagrams, one message per datagram, such as over loopback.
+ * Messages must fit in a datagram; size the sender and receiver's maximum message bytes to suit.
+ */
+public final class DatagramSyncTransport implements SyncTransport {
+
+	private static final int MAXIMUM_DATAGRAM_BYTES = 65507;
+	
+	private final DatagramSocket socket;
+	private final SocketAddress peer;
+	private final byte[] receiveBuffer = new byte[MAXIMUM_DATAGRAM_BYTES];
+	
+	/**
+	 * @param localAddress the address to receive on
+	 * @param peer the address to send to
+	 * @throws IOException
+	 */
+	public DatagramSyncTransport(InetSocketAddress localAddress, InetSocketAddress peer) throws IOException {
+		this.socket = new DatagramSocket(localAddress);
+		this.peer = peer;
+	}
+	
+	/**
+	 * @return the address this end receives on
+	 */
+	public InetSocketAddress getLocalAddress() {
+		return (InetSocketAddress) this.socket.getLocalSocketAddress();
+	}
+	
+	@Override
+	public void send(ByteBuffer message) throws IOException {
+		byte[] bytes = new byte[message.remaining()];
+		message.duplicate().get(bytes);
+		this.socket.send(new DatagramPacket(bytes, bytes.length, this.peer));
+	}
+	
+	@Override
+	public ByteBuffer receive(long timeout) throws IOException {
+		DatagramPacket packet = new DatagramPacket(this.receiveBuffer, this.receiveBuffer.length);
+		this.socket.setSoTimeout((int) Math.max(1, Math.min(Integer.MAX_VALUE, timeout)));
+		try {
+			this.socket.receive(packet);
+		} catch (SocketTimeoutException e) {
+			return null;
+		}
+		ByteBuffer message = ByteBuffer.allocate(packet.getLength());
+		message.put(this.receiveBuffer, 0, packet.getLength());
+		message.flip();
+		return message;
+	}
+	
+	@Override
+	public void close() {
+		this.socket.close();
+	}
+	
+}
@@ -0,0 +1,60 @@
+package com.autosportLabs.data;
+
+/**
+ * The rate of change of a channel per second, between each valid sample and the valid sample
+ * before it. An output sample is valid if its input sample is valid and follows another.
+ */
+public final class DerivativeOperator extends StreamOperator {
+
+	private int previousIndex = -1;
+	private float previousValue;
+
+	/**
+	 * @param input the channel to differentiate
+	 * @param outputName the name of the output channel
+	 * @param outputUnits the units of the output channel, such as the input's units per second
+	 */
+	public DerivativeOperator(AnalogDataChannel input, String outputName, String outputUnits) throws Exception {
+		super(input, outputName, outputUnits, false);
+	}
+
+	@Override
+	void reset() {
+		this.previousIndex = -1;
+	}
+
+	@Override
+	int stateSize() {
+		return 2;
+	}
+
+	@Override
+	void saveState(double[] state, int offset) {
+		state[offset] = this.previousIndex;
+		state[offset + 1] = this.previousValue;
+	}
+
+	@Override
+	void loadState(double[] state, int offset) {
+		this.previousIndex = (int) state[offset];
+		this.previousValue = (float) state[offset + 1];
+	}
+
+	@Override
+	void process(int fromIndex, int count) {
+		for (int i = 0; i < count; i++) {
+			this.results[i] = 0;
+			if (isValid(i)) {
+				int index = fromIndex + i;
+				float value = this.values[i];
+				if (this.previousIndex >= 0) {
+					this.results[i] = (float) ((value - this.previousValue) / ((index - this.previousIndex) * this.samplePeriod));
+					setResultValid(i);
+				}
+				this.previousIndex = index;
+				this.previousValue = value;
+			}
+		}
+	}
+
+}
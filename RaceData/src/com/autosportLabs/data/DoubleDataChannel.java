@@ -0,0 +1,73 @@
+package com.autosportLabs.data;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A channel of 8-byte double values, for values that need more precision than a float holds,
+ * such as GPS latitude and longitude.
+ */
+public final class DoubleDataChannel extends DataChannel<Double> {
+
+	public DoubleDataChannel(String name, String units, int byteOffset,
+			DataManager manager, DataChannelGroup group) {
+		super(name, units, byteOffset, manager, group);
+	}
+
+	@Override
+	public int getByteCount() {
+		return 8;
+	}
+
+	/**
+	 * Gets the value for the frame and sample indexes, without boxing.
+	 * @param frameIndex the frame index containing the value
+	 * @param sampleIndex the sample index containing the value
+	 * @return the value
+	 */
+	public double getDouble(int frameIndex, int sampleIndex) {
+		countReads(1);
+		int offset = valueOffset(frameIndex, sampleIndex);
+		double value;
+		long stamp;
+		do {
+			stamp = this.manager.startRead(frameIndex);
+			value = this.manager.getFrameBuffer(frameIndex).getDouble(offset);
+		} while (!this.manager.validateRead(stamp));
+		return value;
+	}
+
+	public double getDouble(int index) {
+		int frameIndex = index / this.group.getSampleRate();
+		int sampleIndex = index % this.group.getSampleRate();
+		return this.getDouble(frameIndex, sampleIndex);
+	}
+
+	/**
+	 * Sets the value for the frame and sample indexes, without boxing.
+	 * @param value the value to set
+	 * @param frameIndex the frame index to contain the value
+	 * @param sampleIndex the sample index to contain the value
+	 */
+	public void setDouble(double value, int frameIndex, int sampleIndex) {
+		ByteBuffer buffer = this.manager.getFrameBufferForWrite(frameIndex);
+		buffer.putDouble(valueOffset(frameIndex, sampleIndex), value);
+		countWrites(1);
+	}
+
+	public void setDouble(double value, int index) {
+		int frameIndex = index / this.group.getSampleRate();
+		int sampleIndex = index % this.group.getSampleRate();
+		this.setDouble(value, frameIndex, sampleIndex);
+	}
+
+	@Override
+	protected void insertValueIntoFrame(Double value, ByteBuffer buffer, int offset) {
+		buffer.putDouble(offset, value);
+	}
+
+	@Override
+	protected Double extractValueFromFrame(ByteBuffer buffer, int offset) {
+		return buffer.getDouble(offset);
+	}
+
+}
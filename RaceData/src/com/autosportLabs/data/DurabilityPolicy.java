@@ -0,0 +1,75 @@
+package com.autosportLabs.data;
+
+/**
+ * Determines how often a file-backed FrameStore forces committed frames to the storage device.
+ * 
+ * Forcing on every frame gives the strongest guarantee but limits the logging rate on slow
+ * storage. Forcing less often trades the number of frames that may be lost on a power cut
+ * for throughput. Frames are always forced on flush() and close().
+ */
+public final class DurabilityPolicy {
+
+	private final int frameInterval;		// Force after this many committed frames; 0 to ignore.
+	private final long timeInterval;		// Force after this many milliseconds; 0 to ignore.
+	
+	private DurabilityPolicy(int frameInterval, long timeInterval) {
+		this.frameInterval = frameInterval;
+		this.timeInterval = timeInterval;
+	}
+	
+	/**
+	 * Leaves writing to the operating system; frames are only forced on flush() or close().
+	 */
+	public static DurabilityPolicy onFlush() {
+		return new DurabilityPolicy(0, 0);
+	}
+	
+	/**
+	 * Forces committed frames to storage after every frame.
+	 */
+	public static DurabilityPolicy everyFrame() {
+		return new DurabilityPolicy(1, 0);
+	}
+	
+	/**
+	 * Forces committed frames to storage after the given number of frames.
+	 * @param frameInterval the number of frames between each force
+	 */
+	public static DurabilityPolicy everyFrames(int frameInterval) {
+		if (frameInterval < 1) {
+			throw new IllegalArgumentException("Frame interval must be at least 1");
+		}
+		return new DurabilityPolicy(frameInterval, 0);
+	}
+	
+	/**
+	 * Forces committed frames to storage once the given time has elapsed since the last force.
+	 * @param timeInterval the time (in milliseconds) between each force
+	 */
+	public static DurabilityPolicy everyMillis(long timeInterval) {
+		if (timeInterval < 1) {
+			throw new IllegalArgumentException("Time interval must be at least 1 millisecond");
+		}
+		return new DurabilityPolicy(0, timeInterval);
+	}
+	
+	/**
+	 * Determines whether committed frames should now be forced to storage.
+	 * @param framesSinceForce the number of frames committed since the last force
+	 * @param millisSinceForce the time (in milliseconds) since the last force
+	 * @return true if the frames should be forced
+	 */
+	public boolean shouldForce(int framesSinceForce, long millisSinceForce) {
+		if (framesSinceForce == 0) {
+			return false;
+		}
+		if (this.frameInterval > 0 && framesSinceForce >= this.frameInterval) {
+			return true;
+		}
+		if (this.timeInterval > 0 && millisSinceForce >= this.timeInterval) {
+			return true;
+		}
+		return false;
+	}
+	
+}
@@ -0,0 +1,122 @@
+package com.autosportLabs.data;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A channel holding one of a fixed list of labels, such as a gear position or a flag state.
+ * Each value is stored as its ordinal in the list: in one byte for up to 256 labels, otherwise two.
+ * A blank frame holds the first label.
+ */
+public final class EnumDataChannel extends DataChannel<String> {
+
+	private final List<String> labels;
+	private final IntegerType storage;
+
+	/**
+	 * @param labels the labels, in ordinal order; at least one, and at most 65536
+	 */
+	public EnumDataChannel(String name, String units, int byteOffset, List<String> labels,
+			DataManager manager, DataChannelGroup group) {
+		super(name, units, byteOffset, manager, group);
+		if (labels.isEmpty() || labels.size() > IntegerType.UINT16.getMaximum() + 1) {
+			throw new IllegalArgumentException(String.format("Invalid number of values (%s) for channel %s", labels.size(), name));
+		}
+		this.labels = Collections.unmodifiableList(new ArrayList<String>(labels));
+		this.storage = (labels.size() <= IntegerType.UINT8.getMaximum() + 1) ? IntegerType.UINT8 : IntegerType.UINT16;
+	}
+
+	/**
+	 * @return the labels, in ordinal order
+	 */
+	public List<String> getLabels() {
+		return this.labels;
+	}
+
+	/**
+	 * @return the ordinal of a label; -1 if it is not one of the channel's labels
+	 */
+	public int ordinalOf(String label) {
+		return this.labels.indexOf(label);
+	}
+
+	IntegerType getStorage() {
+		return this.storage;
+	}
+
+	@Override
+	public int getByteCount() {
+		return this.storage.getByteCount();
+	}
+
+	/**
+	 * Gets the ordinal of the value for the frame and sample indexes.
+	 * @param frameIndex the frame index containing the value
+	 * @param sampleIndex the sample index containing the value
+	 * @return the ordinal
+	 */
+	public int getOrdinal(int frameIndex, int sampleIndex) {
+		countReads(1);
+		int offset = valueOffset(frameIndex, sampleIndex);
+		int value;
+		long stamp;
+		do {
+			stamp = this.manager.startRead(frameIndex);
+			value = this.storage.read(this.manager.getFrameBuffer(frameIndex), offset);
+		} while (!this.manager.validateRead(stamp));
+		return value;
+	}
+
+	public int getOrdinal(int index) {
+		int frameIndex = index / this.group.getSampleRate();
+		int sampleIndex = index % this.group.getSampleRate();
+		return this.getOrdinal(frameIndex, sampleIndex);
+	}
+
+	/**
+	 * Sets the value for the frame and sample indexes by its ordinal.
+	 * @param ordinal the ordinal of the label
+	 * @param frameIndex the frame index to contain the value
+	 * @param sampleIndex the sample index to contain the value
+	 * @throws IllegalArgumentException if the ordinal is not that of a label
+	 */
+	public void setOrdinal(int ordinal, int frameIndex, int sampleIndex) {
+		checkOrdinal(ordinal);
+		ByteBuffer buffer = this.manager.getFrameBufferForWrite(frameIndex);
+		this.storage.write(buffer, valueOffset(frameIndex, sampleIndex), ordinal);
+		countWrites(1);
+	}
+
+	public void setOrdinal(int ordinal, int index) {
+		int frameIndex = index / this.group.getSampleRate();
+		int sampleIndex = index % this.group.getSampleRate();
+		this.setOrdinal(ordinal, frameIndex, sampleIndex);
+	}
+
+	/**
+	 * @return the label of the value stored; null if the stored ordinal is not that of a label
+	 */
+	@Override
+	protected String extractValueFromFrame(ByteBuffer buffer, int offset) {
+		int ordinal = this.storage.read(buffer, offset);
+		return ordinal < this.labels.size() ? this.labels.get(ordinal) : null;
+	}
+
+	@Override
+	protected void insertValueIntoFrame(String value, ByteBuffer buffer, int offset) {
+		int ordinal = this.labels.indexOf(value);
+		if (ordinal < 0) {
+			throw new IllegalArgumentException(String.format("%s is not a value of channel %s", value, this.name));
+		}
+		this.storage.write(buffer, offset, ordinal);
+	}
+
+	void checkOrdinal(int ordinal) {
+		if (ordinal < 0 || ordinal >= this.labels.size()) {
+			throw new IllegalArgumentException(String.format("%s is not an ordinal of channel %s", ordinal, this.name));
+		}
+	}
+
+}
@@ -0,0 +1,76 @@
+package com.autosportLabs.data;
+
+/**
+ * An exponentially weighted moving average of a channel. Each valid sample moves the average
+ * towards it by a fixed fraction; invalid samples leave the average unchanged, and their output
+ * samples are invalid.
+ */
+public final class EwmaOperator extends StreamOperator {
+
+	private final double alpha;
+	private double average;
+	private boolean started = false;
+
+	/**
+	 * @param input the channel to average
+	 * @param outputName the name of the output channel, which has the input's units
+	 * @param alpha the weight of each new sample, from 0 (exclusive) to 1 (inclusive)
+	 */
+	public EwmaOperator(AnalogDataChannel input, String outputName, double alpha) throws Exception {
+		super(input, outputName, input.getUnits(), false);
+		if (!(alpha > 0 && alpha <= 1)) {
+			throw new Exception(String.format("Invalid weight %s", alpha));
+		}
+		this.alpha = alpha;
+	}
+
+	/**
+	 * Creates an average whose step response reaches 63% in the given time.
+	 * @param timeConstant the time constant, in seconds
+	 */
+	public static EwmaOperator withTimeConstant(AnalogDataChannel input, String outputName, double timeConstant) throws Exception {
+		int sampleRate = input.getGroup().getSampleRate();
+		double samplePeriod = input.manager.getFramePeriod() / (1000.0 * sampleRate);
+		return new EwmaOperator(input, outputName, 1 - Math.exp(-samplePeriod / timeConstant));
+	}
+
+	@Override
+	void reset() {
+		this.average = 0;
+		this.started = false;
+	}
+
+	@Override
+	int stateSize() {
+		return 2;
+	}
+
+	@Override
+	void saveState(double[] state, int offset) {
+		state[offset] = this.average;
+		state[offset + 1] = this.started ? 1 : 0;
+	}
+
+	@Override
+	void loadState(double[] state, int offset) {
+		this.average = state[offset];
+		this.started = state[offset + 1] != 0;
+	}
+
+	@Override
+	void process(int fromIndex, int count) {
+		for (int i = 0; i < count; i++) {
+			if (isValid(i)) {
+				if (this.started) {
+					this.average += this.alpha * (this.values[i] - this.average);
+				} else {
+					this.average = this.values[i];
+					this.started = true;
+				}
+				setResultValid(i);
+			}
+			this.results[i] = (float) this.average;
+		}
+	}
+
+}
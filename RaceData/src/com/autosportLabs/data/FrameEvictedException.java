@@ -0,0 +1,38 @@
+package com.autosportLabs.data;
+
+/**
+ * Thrown when a frame is requested that a RingFrameStore no longer holds, because newer
+ * frames have taken its place.
+ */
+public class FrameEvictedException extends IndexOutOfBoundsException {
+
+	private static final long serialVersionUID = 1L;
+	
+	private final int frameIndex;
+	private final int firstFrame;
+	
+	/**
+	 * @param frameIndex the frame index requested
+	 * @param firstFrame the index of the oldest frame still held
+	 */
+	public FrameEvictedException(int frameIndex, int firstFrame) {
+		super(String.format("Frame %s has been evicted; the oldest frame held is %s", frameIndex, firstFrame));
+		this.frameIndex = frameIndex;
+		this.firstFrame = firstFrame;
+	}
+	
+	/**
+	 * @return the frame index requested
+	 */
+	public int getFrameIndex() {
+		return this.frameIndex;
+	}
+	
+	/**
+	 * @return the index of the oldest frame held when the frame was requested
+	 */
+	public int getFirstFrame() {
+		return this.firstFrame;
+	}
+	
+}
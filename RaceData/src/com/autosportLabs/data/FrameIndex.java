@@ -0,0 +1,405 @@
+package com.autosportLabs.data;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * An index of the frames of a legacy data file, kept beside it in a file of the same name
+ * with ".idx" appended.
+ *
+ * For each committed frame, the index records a CRC-32 checksum of the frame bytes and the
+ * number of valid samples of each DataChannelGroup. Frame times follow from the frame period,
+ * so the index maps a time to a frame and its position in the data file without reading the
+ * data file.
+ *
+ * A DataManager appends to the index in writeFrame(), after the frame itself has been written,
+ * once enableFrameIndex() is called. After a crash, recover() checks the data file against the
+ * index and stops at the first frame that is incomplete or does not match its checksum; frames
+ * after the last one indexed were never committed, and are not counted.
+ *
+ * Layout (big-endian): "RIDX", version (1 byte), frame period (int), frame bytes (int),
+ * data offset (long), group count (int); then for each frame, the checksum (int) and each
+ * group's valid sample count (int).
+ */
+public final class FrameIndex {
+
+	private static final byte[] MAGIC = {'R', 'I', 'D', 'X'};
+	private static final byte VERSION = 1;
+	private static final int HEADER_BYTES = MAGIC.length + 1 + 4 + 4 + 8 + 4;
+	private static final int SCAN_BYTES = 4 * 1024 * 1024;
+
+	private final int framePeriod;
+	private final int frameBytes;
+	private final long dataOffset;
+	private final int groupCount;
+	private final int frameCount;
+	private final int[] checksums;
+	private final int[] validCounts;			// frameIndex * groupCount + groupIndex
+	private final long tornBytes;
+
+	private FrameIndex(int framePeriod, int frameBytes, long dataOffset, int groupCount, int frameCount,
+			int[] checksums, int[] validCounts, long tornBytes) {
+		this.framePeriod = framePeriod;
+		this.frameBytes = frameBytes;
+		this.dataOffset = dataOffset;
+		this.groupCount = groupCount;
+		this.frameCount = frameCount;
+		this.checksums = checksums;
+		this.validCounts = validCounts;
+		this.tornBytes = tornBytes;
+	}
+
+	/**
+	 * @return the index file kept beside a data file
+	 */
+	public static File indexFileFor(File dataFile) {
+		return new File(dataFile.getPath() + ".idx");
+	}
+
+	/**
+	 * Reads an index file. An incomplete last record is ignored.
+	 * @param indexFile the index file
+	 * @return the index
+	 * @throws IOException if the file is not an index
+	 */
+	public static FrameIndex read(File indexFile) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(indexFile, "r");
+		try {
+			ByteBuffer contents = ByteBuffer.allocate((int) file.length());
+			FileChannel channel = file.getChannel();
+			while (contents.hasRemaining()) {
+				if (channel.read(contents, contents.position()) < 0) {
+					throw new EOFException("Unexpected end of index file");
+				}
+			}
+			contents.flip();
+			return parse(contents, indexFile);
+		} finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * Scans a legacy data file to find its intact frames, and writes a new index for them.
+	 * If an index exists, each indexed frame is checked against its checksum, and the scan stops at
+	 * the first that does not match; otherwise every complete frame is taken as intact.
+	 * The data file is not changed.
+	 * @param dataFile the data file
+	 * @return the index of the intact frames
+	 * @throws Exception
+	 */
+	public static FrameIndex recover(File dataFile) throws Exception {
+		File indexFile = indexFileFor(dataFile);
+		FrameIndex previous = null;
+		if (indexFile.exists()) {
+			try {
+				previous = read(indexFile);
+			} catch (IOException e) {
+				previous = null;	// Unreadable; rebuild it from the data alone
+			}
+		}
+
+		RandomAccessFile file = new RandomAccessFile(dataFile, "r");
+		FrameIndex index;
+		try {
+			String configurationJSON = file.readUTF();
+			long dataOffset = file.getFilePointer();
+			DataManager layout = new DataManager(configurationJSON);
+			List<DataChannelGroup> groups = layout.getDataChannelGroups();
+			int frameBytes = layout.getFrameByteCount();
+			if (previous != null && (previous.dataOffset != dataOffset || previous.frameBytes != frameBytes
+					|| previous.groupCount != groups.size())) {
+				previous = null;	// Not this file's index
+			}
+
+			long dataBytes = file.length() - dataOffset;
+			int completeFrames = (int) Math.min(Integer.MAX_VALUE, dataBytes / frameBytes);
+			int limit = previous == null ? completeFrames : Math.min(completeFrames, previous.frameCount);
+			int[] checksums = new int[limit];
+			int[] validCounts = new int[limit * groups.size()];
+
+			// Read whole frames in large runs
+			FileChannel channel = file.getChannel();
+			int framesPerScan = Math.max(1, SCAN_BYTES / frameBytes);
+			ByteBuffer scan = ByteBuffer.allocate(framesPerScan * frameBytes);
+			CRC32 crc = new CRC32();
+			int frameIndex = 0;
+			scanning:
+			while (frameIndex < limit) {
+				int count = Math.min(framesPerScan, limit - frameIndex);
+				scan.clear();
+				scan.limit(count * frameBytes);
+				long position = dataOffset + (long) frameIndex * frameBytes;
+				while (scan.hasRemaining()) {
+					if (channel.read(scan, position + scan.position()) < 0) {
+						break scanning;
+					}
+				}
+				for (int i = 0; i < count; i++, frameIndex++) {
+					int checksum = checksum(crc, scan.array(), i * frameBytes, frameBytes);
+					if (previous != null && previous.checksums[frameIndex] != checksum) {
+						break scanning;		// The first torn frame
+					}
+					checksums[frameIndex] = checksum;
+					countValid(scan, i * frameBytes, groups, validCounts, frameIndex * groups.size());
+				}
+			}
+
+			long tornBytes = dataBytes - (long) frameIndex * frameBytes;
+			index = new FrameIndex(layout.getFramePeriod(), frameBytes, dataOffset, groups.size(), frameIndex,
+					checksums, validCounts, tornBytes);
+		} finally {
+			file.close();
+		}
+		index.write(indexFile);
+		return index;
+	}
+
+	/**
+	 * @return the number of intact frames indexed
+	 */
+	public int getFrameCount() {
+		return this.frameCount;
+	}
+
+	/**
+	 * @return the Frame Period (in milliseconds)
+	 */
+	public int getFramePeriod() {
+		return this.framePeriod;
+	}
+
+	/**
+	 * @return the number of bytes in the data file after the last intact frame, found by recover().
+	 * They belong to torn or uncommitted frames. Zero for an index that was read.
+	 */
+	public long getTornBytes() {
+		return this.tornBytes;
+	}
+
+	/**
+	 * @return the index of the frame holding the given time (in milliseconds from the start)
+	 */
+	public int frameAt(long millis) {
+		return (int) (Math.max(0, millis) / this.framePeriod);
+	}
+
+	/**
+	 * @return the position of a frame's first byte in the data file
+	 */
+	public long getFramePosition(int frameIndex) {
+		return this.dataOffset + ((long) frameIndex * this.frameBytes);
+	}
+
+	/**
+	 * @return the CRC-32 checksum of the frame's bytes
+	 */
+	public int getChecksum(int frameIndex) {
+		checkFrame(frameIndex);
+		return this.checksums[frameIndex];
+	}
+
+	/**
+	 * @param groupIndex the group's position in the configuration
+	 * @param frameIndex the frame index
+	 * @return the number of valid samples of the group in the frame
+	 */
+	public int getValidSampleCount(int groupIndex, int frameIndex) {
+		checkFrame(frameIndex);
+		return this.validCounts[frameIndex * this.groupCount + groupIndex];
+	}
+
+	/**
+	 * @param groupIndex the group's position in the configuration
+	 * @param fromFrame the first frame index (inclusive)
+	 * @param toFrame the last frame index (exclusive)
+	 * @return the number of valid samples of the group in the frames
+	 */
+	public long getValidSampleCount(int groupIndex, int fromFrame, int toFrame) {
+		long count = 0;
+		for (int frameIndex = fromFrame; frameIndex < toFrame; frameIndex++) {
+			count += getValidSampleCount(groupIndex, frameIndex);
+		}
+		return count;
+	}
+
+	/**
+	 * Checks whether this index can describe a data file: the same layout, and all the indexed
+	 * frames present. Any bytes after the indexed frames were never committed.
+	 */
+	boolean matches(long dataOffset, int frameBytes, long dataFileLength) {
+		return this.dataOffset == dataOffset && this.frameBytes == frameBytes
+				&& dataFileLength >= getFramePosition(this.frameCount);
+	}
+
+	private void checkFrame(int frameIndex) {
+		if (frameIndex < 0 || frameIndex >= this.frameCount) {
+			throw new IndexOutOfBoundsException("Frame " + frameIndex + " is not indexed");
+		}
+	}
+
+	private void write(File indexFile) throws IOException {
+		ByteBuffer contents = ByteBuffer.allocate(HEADER_BYTES + (this.frameCount * 4 * (1 + this.groupCount)));
+		putHeader(contents, this.framePeriod, this.frameBytes, this.dataOffset, this.groupCount);
+		for (int frameIndex = 0; frameIndex < this.frameCount; frameIndex++) {
+			contents.putInt(this.checksums[frameIndex]);
+			for (int groupIndex = 0; groupIndex < this.groupCount; groupIndex++) {
+				contents.putInt(this.validCounts[frameIndex * this.groupCount + groupIndex]);
+			}
+		}
+		contents.flip();
+
+		RandomAccessFile file = new RandomAccessFile(indexFile, "rw");
+		try {
+			file.setLength(0);
+			FileChannel channel = file.getChannel();
+			while (contents.hasRemaining()) {
+				channel.write(contents, contents.position());
+			}
+		} finally {
+			file.close();
+		}
+	}
+
+	private static FrameIndex parse(ByteBuffer contents, File indexFile) throws IOException {
+		if (contents.remaining() < HEADER_BYTES) {
+			throw new IOException(String.format("%s is not a frame index", indexFile));
+		}
+		for (int i = 0; i < MAGIC.length; i++) {
+			if (contents.get() != MAGIC[i]) {
+				throw new IOException(String.format("%s is not a frame index", indexFile));
+			}
+		}
+		int version = contents.get();
+		if (version != VERSION) {
+			throw new IOException(String.format("Unsupported frame index version %s", version));
+		}
+		int framePeriod = contents.getInt();
+		int frameBytes = contents.getInt();
+		long dataOffset = contents.getLong();
+		int groupCount = contents.getInt();
+
+		int frameCount = contents.remaining() / (4 * (1 + groupCount));
+		int[] checksums = new int[frameCount];
+		int[] validCounts = new int[frameCount * groupCount];
+		for (int frameIndex = 0; frameIndex < frameCount; frameIndex++) {
+			checksums[frameIndex] = contents.getInt();
+			for (int groupIndex = 0; groupIndex < groupCount; groupIndex++) {
+				validCounts[frameIndex * groupCount + groupIndex] = contents.getInt();
+			}
+		}
+		return new FrameIndex(framePeriod, frameBytes, dataOffset, groupCount, frameCount, checksums, validCounts, 0);
+	}
+
+	private static void putHeader(ByteBuffer buffer, int framePeriod, int frameBytes, long dataOffset, int groupCount) {
+		buffer.put(MAGIC);
+		buffer.put(VERSION);
+		buffer.putInt(framePeriod);
+		buffer.putInt(frameBytes);
+		buffer.putLong(dataOffset);
+		buffer.putInt(groupCount);
+	}
+
+	private static int checksum(CRC32 crc, byte[] bytes, int offset, int length) {
+		crc.reset();
+		crc.update(bytes, offset, length);
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * Counts the valid samples of each group in a frame.
+	 */
+	private static void countValid(ByteBuffer buffer, int frameOffset, List<DataChannelGroup> groups, int[] counts, int countsOffset) {
+		for (int groupIndex = 0; groupIndex < groups.size(); groupIndex++) {
+			DataChannelGroup group = groups.get(groupIndex);
+			int offset = frameOffset + group.getByteOffset();
+			int valid = 0;
+			for (int sample = 0; sample < group.getSampleRate(); sample++) {
+				valid += buffer.get(offset) & 0x01;
+				offset += group.getSampleBytes();
+			}
+			counts[countsOffset + groupIndex] = valid;
+		}
+	}
+
+	/**
+	 * Appends the record of each frame as it is committed.
+	 */
+	static final class Writer {
+
+		private final RandomAccessFile file;
+		private final FileChannel channel;
+		private final List<DataChannelGroup> groups;
+		private final int frameBytes;
+		private final int recordBytes;
+		private final byte[] frame;
+		private final int[] counts;
+		private final ByteBuffer record;
+		private final CRC32 crc = new CRC32();
+		private int frameCount = 0;
+
+		/**
+		 * Creates a new index file.
+		 */
+		Writer(File indexFile, DataManager manager, long dataOffset) throws IOException {
+			this.groups = manager.getDataChannelGroups();
+			this.frameBytes = manager.getFrameByteCount();
+			this.recordBytes = 4 * (1 + this.groups.size());
+			this.frame = new byte[this.frameBytes];
+			this.counts = new int[this.groups.size()];
+			this.record = ByteBuffer.allocate(this.recordBytes);
+
+			this.file = new RandomAccessFile(indexFile, "rw");
+			this.file.setLength(0);
+			this.channel = this.file.getChannel();
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+			putHeader(header, manager.getFramePeriod(), this.frameBytes, dataOffset, this.groups.size());
+			header.flip();
+			writeFully(header, 0);
+		}
+
+		/**
+		 * Records a committed frame, and any frames before it not yet recorded.
+		 * A frame committed again has its record replaced.
+		 */
+		void frameCommitted(FrameStore store, int frameIndex) throws IOException {
+			for (int index = Math.min(frameIndex, this.frameCount); index <= frameIndex; index++) {
+				ByteBuffer buffer = store.getBuffer(index).duplicate();
+				buffer.position(store.getOffset(index));
+				buffer.get(this.frame);
+				ByteBuffer frameBuffer = ByteBuffer.wrap(this.frame);
+				countValid(frameBuffer, 0, this.groups, this.counts, 0);
+
+				this.record.clear();
+				this.record.putInt(checksum(this.crc, this.frame, 0, this.frameBytes));
+				for (int count : this.counts) {
+					this.record.putInt(count);
+				}
+				this.record.flip();
+				writeFully(this.record, HEADER_BYTES + ((long) index * this.recordBytes));
+			}
+			this.frameCount = Math.max(this.frameCount, frameIndex + 1);
+		}
+
+		void flush() throws IOException {
+			this.channel.force(false);
+		}
+
+		void close() throws IOException {
+			this.file.close();
+		}
+
+		private void writeFully(ByteBuffer buffer, long position) throws IOException {
+			while (buffer.hasRemaining()) {
+				this.channel.write(buffer, position + buffer.position());
+			}
+		}
+	}
+
+}
@@ -0,0 +1,301 @@
+package com.autosportLabs.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal of the frames committed to a legacy data file, kept beside it in a file
+ * of the same name with ".jnl" appended.
+ *
+ * Once DataManager.enableJournal() is called, writeFrame() appends each frame to the journal as a
+ * record, rather than writing it in place in the data file, and the journal is forced to storage
+ * according to a DurabilityPolicy rather than on every frame. A record carries a sequence number
+ * and a CRC-32 checksum, so a record torn by a power cut, and anything after it, is recognized and
+ * ignored. Compaction copies the records into the data file, forces it, and empties the journal;
+ * it runs whenever the journal grows past a size, and on close.
+ *
+ * After a crash, replay() completes the compaction before the data file is opened: the data file
+ * then holds every frame up to the last intact record.
+ *
+ * Layout (big-endian): "RJNL", version (1 byte), frame bytes (int), data offset (long), first
+ * sequence number (long); then for each record, the sequence number (long), the frame index
+ * (int), the frame bytes, and the checksum (int) of all of these.
+ */
+public final class FrameJournal {
+
+	private static final byte[] MAGIC = {'R', 'J', 'N', 'L'};
+	private static final byte VERSION = 1;
+	private static final int HEADER_BYTES = MAGIC.length + 1 + 4 + 8 + 8;
+	private static final int RECORD_OVERHEAD = 8 + 4 + 4;
+
+	private final int recordCount;
+	private final long tornBytes;
+
+	private FrameJournal(int recordCount, long tornBytes) {
+		this.recordCount = recordCount;
+		this.tornBytes = tornBytes;
+	}
+
+	/**
+	 * @return the journal file kept beside a data file
+	 */
+	public static File journalFileFor(File dataFile) {
+		return new File(dataFile.getPath() + ".jnl");
+	}
+
+	/**
+	 * Copies the intact records of a data file's journal into the data file, and empties the journal.
+	 * Call before opening a data file that was written with a journal. Does nothing if there is no journal.
+	 * @param dataFile the data file
+	 * @return the result of the replay
+	 * @throws Exception if the journal does not belong to the data file
+	 */
+	public static FrameJournal replay(File dataFile) throws Exception {
+		File journalFile = journalFileFor(dataFile);
+		if (!journalFile.exists()) {
+			return new FrameJournal(0, 0);
+		}
+		RandomAccessFile file = new RandomAccessFile(dataFile, "rw");
+		try {
+			DataManager layout = new DataManager(file.readUTF());
+			long dataOffset = file.getFilePointer();
+			Writer journal = new Writer(journalFile, file.getChannel(), dataOffset, layout.getFrameByteCount(),
+					DurabilityPolicy.onFlush(), Long.MAX_VALUE);
+			journal.close();
+			return new FrameJournal(journal.replayedCount, journal.replayedTornBytes);
+		} finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * @return the number of records copied into the data file by replay()
+	 */
+	public int getRecordCount() {
+		return this.recordCount;
+	}
+
+	/**
+	 * @return the number of bytes after the last intact record, found by replay(). They belong to
+	 * a torn record, or to records never completely written.
+	 */
+	public long getTornBytes() {
+		return this.tornBytes;
+	}
+
+	/**
+	 * Appends each committed frame to the journal, and compacts it into the data file.
+	 */
+	static final class Writer {
+
+		private final RandomAccessFile file;
+		private final FileChannel channel;
+		private final FileChannel dataChannel;
+		private final long dataOffset;
+		private final int frameBytes;
+		private final int recordBytes;
+		private final DurabilityPolicy durability;
+		private final long compactionBytes;
+		private final ByteBuffer record;
+		private final CRC32 crc = new CRC32();
+
+		private long firstSequence = 0;				// The sequence number of the first record.
+		private long nextSequence = 0;
+		private long end;								// The position after the last record.
+		private int framesSinceForce = 0;
+		private long lastForceTime = System.currentTimeMillis();
+
+		// Found by the replay of existing records on opening.
+		private int replayedCount;
+		private long replayedTornBytes;
+
+		/**
+		 * Opens a journal, first compacting any records it holds, or creates it.
+		 * @param journalFile the journal file
+		 * @param dataChannel the data file's channel; it remains the caller's to close
+		 * @param dataOffset the position of the first frame in the data file
+		 * @param frameBytes the number of bytes used per Frame
+		 * @param durability when to force appended records to storage
+		 * @param compactionBytes compact once the records take at least this many bytes
+		 */
+		Writer(File journalFile, FileChannel dataChannel, long dataOffset, int frameBytes,
+				DurabilityPolicy durability, long compactionBytes) throws IOException {
+			this.dataChannel = dataChannel;
+			this.dataOffset = dataOffset;
+			this.frameBytes = frameBytes;
+			this.recordBytes = RECORD_OVERHEAD + frameBytes;
+			this.durability = durability;
+			this.compactionBytes = compactionBytes;
+			this.record = ByteBuffer.allocate(this.recordBytes);
+
+			this.file = new RandomAccessFile(journalFile, "rw");
+			this.channel = this.file.getChannel();
+			this.end = this.channel.size();
+			long recordsBytes = 0;
+			if (this.end >= HEADER_BYTES) {
+				readHeader(journalFile);
+				recordsBytes = this.end - HEADER_BYTES;
+			}
+			this.replayedCount = compact();
+			this.replayedTornBytes = recordsBytes - ((long) this.replayedCount * this.recordBytes);
+		}
+
+		/**
+		 * Appends a frame to the journal, forcing or compacting the journal if it is due.
+		 * @param frame a view of the frame, with position 0 at the frame's first byte
+		 */
+		void append(int frameIndex, ByteBuffer frame) throws IOException {
+			ByteBuffer view = frame.duplicate();
+			view.clear();
+			this.record.clear();
+			this.record.putLong(this.nextSequence);
+			this.record.putInt(frameIndex);
+			this.record.put(view);
+			this.record.putInt(checksum(this.crc, this.record.array(), this.recordBytes - 4));
+			this.record.flip();
+			writeFully(this.channel, this.record, this.end);
+			this.end += this.recordBytes;
+			this.nextSequence++;
+			this.framesSinceForce++;
+
+			if (this.end - HEADER_BYTES >= this.compactionBytes) {
+				compact();
+			} else {
+				long now = System.currentTimeMillis();
+				if (this.durability.shouldForce(this.framesSinceForce, now - this.lastForceTime)) {
+					force(now);
+				}
+			}
+		}
+
+		/**
+		 * Forces the appended records to storage.
+		 */
+		void flush() throws IOException {
+			force(System.currentTimeMillis());
+		}
+
+		/**
+		 * Copies the intact records into the data file, forces it, and empties the journal.
+		 * @return the number of records copied
+		 */
+		int compact() throws IOException {
+			// The journal is forced first, so the data file never holds a frame the journal could lose.
+			force(System.currentTimeMillis());
+
+			int applied = 0;
+			long position = HEADER_BYTES;
+			long expectedSequence = this.firstSequence;
+			while (position + this.recordBytes <= this.end) {
+				this.record.clear();
+				readFully(this.channel, this.record, position);
+				if (this.record.getLong(0) != expectedSequence
+						|| this.record.getInt(this.recordBytes - 4) != checksum(this.crc, this.record.array(), this.recordBytes - 4)) {
+					break;		// The first torn record; nothing after it was committed.
+				}
+				int frameIndex = this.record.getInt(8);
+				this.record.limit(12 + this.frameBytes);
+				this.record.position(12);
+				writeFully(this.dataChannel, this.record, this.dataOffset + ((long) this.frameBytes * frameIndex));
+				position += this.recordBytes;
+				expectedSequence++;
+				applied++;
+			}
+			if (applied > 0) {
+				this.dataChannel.force(false);
+			}
+
+			// Start afresh: the new first sequence number makes any records left behind unreadable.
+			this.firstSequence = expectedSequence;
+			this.nextSequence = expectedSequence;
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+			header.put(MAGIC);
+			header.put(VERSION);
+			header.putInt(this.frameBytes);
+			header.putLong(this.dataOffset);
+			header.putLong(this.nextSequence);
+			header.flip();
+			writeFully(this.channel, header, 0);
+			this.channel.truncate(HEADER_BYTES);
+			this.channel.force(true);
+			this.end = HEADER_BYTES;
+			return applied;
+		}
+
+		/**
+		 * Compacts the journal and closes it.
+		 */
+		void close() throws IOException {
+			try {
+				compact();
+			} finally {
+				this.file.close();
+			}
+		}
+
+		private void readHeader(File journalFile) throws IOException {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+			readFully(this.channel, header, 0);
+			header.flip();
+			for (int i = 0; i < MAGIC.length; i++) {
+				if (header.get() != MAGIC[i]) {
+					this.file.close();
+					throw new IOException(String.format("%s is not a frame journal", journalFile));
+				}
+			}
+			int version = header.get();
+			if (version != VERSION) {
+				this.file.close();
+				throw new IOException(String.format("Unsupported frame journal version %s", version));
+			}
+			int journalFrameBytes = header.getInt();
+			long journalDataOffset = header.getLong();
+			if (journalFrameBytes != this.frameBytes || journalDataOffset != this.dataOffset) {
+				this.file.close();
+				throw new IOException(String.format("%s is not the journal of this data file", journalFile));
+			}
+			this.firstSequence = header.getLong();
+		}
+
+		private void force(long now) throws IOException {
+			if (this.framesSinceForce > 0) {
+				this.channel.force(false);
+				this.framesSinceForce = 0;
+			}
+			this.lastForceTime = now;
+		}
+	}
+
+	private static int checksum(CRC32 crc, byte[] bytes, int length) {
+		crc.reset();
+		crc.update(bytes, 0, length);
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * Writes the remaining bytes of a buffer at a position in a file.
+	 */
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+	}
+
+	/**
+	 * Fills the remainder of a buffer from a position in a file.
+	 */
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int count = channel.read(buffer, position);
+			if (count < 0) {
+				throw new IOException("Unexpected end of frame journal");
+			}
+			position += count;
+		}
+	}
+
+}
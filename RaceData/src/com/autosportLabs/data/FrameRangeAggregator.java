@@ -0,0 +1,36 @@
+package com.autosportLabs.data;
+
+/**
+ * Computes a result over a range of frames, in pieces that can be computed in parallel and merged.
+ * See ParallelAnalytics.
+ *
+ * aggregate() may be called from several threads at once, for different ranges, so it must only read
+ * the DataManager and keep its working state local. merge() must be associative; it is always passed
+ * the result of the earlier frames (or the earlier DataManager) first, so results need not be commutative.
+ * @param <R> the type of the result
+ */
+public interface FrameRangeAggregator<R> {
+
+	/**
+	 * @return the result of no frames
+	 */
+	R identity();
+
+	/**
+	 * Computes the result of a range of frames.
+	 * @param manager the DataManager holding the frames
+	 * @param fromFrame the first frame index (inclusive)
+	 * @param toFrame the last frame index (exclusive)
+	 * @return the result
+	 */
+	R aggregate(DataManager manager, int fromFrame, int toFrame);
+
+	/**
+	 * Combines the results of two consecutive ranges.
+	 * @param earlier the result of the earlier frames
+	 * @param later the result of the later frames
+	 * @return the combined result
+	 */
+	R merge(R earlier, R later);
+
+}
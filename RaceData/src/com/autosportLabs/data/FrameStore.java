@@ -0,0 +1,64 @@
+package com.autosportLabs.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Holds the Data Frames for a DataManager.
+ * 
+ * A frame is addressed as a region of a backing buffer: getBuffer() returns the buffer
+ * containing the frame, and getOffset() returns the position of the frame's first byte
+ * within that buffer. Callers must use absolute get/put operations, so the buffer's
+ * position is never relied upon.
+ */
+public interface FrameStore {
+
+	/**
+	 * Gets the buffer containing the frame, creating the frame (and any before it) if needed.
+	 * @param frameIndex the frame index
+	 * @return the buffer containing the frame
+	 */
+	ByteBuffer getBuffer(int frameIndex);
+	
+	/**
+	 * Gets the buffer containing a frame that is about to be changed, creating the frame if needed.
+	 * Stores that hold only some of the frames in memory use this to know which frames must be
+	 * written back.
+	 * @param frameIndex the frame index
+	 * @return the buffer containing the frame
+	 */
+	ByteBuffer getBufferForWrite(int frameIndex);
+	
+	/**
+	 * Gets the location of the frame within the buffer returned by getBuffer().
+	 * @param frameIndex the frame index
+	 * @return the offset of the frame's first byte
+	 */
+	int getOffset(int frameIndex);
+	
+	/**
+	 * @return the number of frames held
+	 */
+	int getFrameCount();
+	
+	/**
+	 * Signals that the frame is complete. Stores backed by a file use this to apply
+	 * their durability policy.
+	 * @param frameIndex the frame index
+	 * @throws IOException
+	 */
+	void commitFrame(int frameIndex) throws IOException;
+	
+	/**
+	 * Ensures all committed frames have been written to storage.
+	 * @throws IOException
+	 */
+	void flush() throws IOException;
+	
+	/**
+	 * Flushes and releases any storage held by the store.
+	 * @throws IOException
+	 */
+	void close() throws IOException;
+	
+}
@@ -0,0 +1,316 @@
+package com.autosportLabs.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+
+/**
+ * Writes completed frames to a data file from a background thread.
+ * 
+ * Submitted frames are queued, and committed as a batch once enough bytes are waiting or the
+ * oldest waiting frame reaches the maximum delay. Each run of consecutive frames in a batch
+ * is written with a single gather write, and (optionally) the file is forced once per batch
+ * rather than once per frame.
+ * 
+ * A submitted frame must not be changed until it has been written; flush() waits for this.
+ */
+public class FrameWriter implements Runnable {
+
+	private final FileChannel channel;
+	private final long dataOffset;				// The offset for the start of binary data
+	private final int frameBytes;
+	private final int batchBytes;
+	private final long maximumDelay;
+	private final boolean forceOnCommit;
+	private final Thread thread;
+	
+	// Guarded by this.
+	private ArrayList<PendingFrame> pendingFrames = new ArrayList<PendingFrame>();
+	private long pendingBytes = 0;
+	private long oldestPendingTime = 0;
+	private boolean flushRequested = false;
+	private boolean closed = false;
+	private IOException failure = null;
+	
+	// Statistics, guarded by this.
+	private long submittedCount = 0;
+	private long writtenCount = 0;
+	private long batchCount = 0;
+	private int maximumQueueDepth = 0;
+	private long lastWriteLatency = 0;
+	private long maximumWriteLatency = 0;
+	private long totalWriteLatency = 0;
+	
+	/**
+	 * Creates the writer and starts its thread.
+	 * @param channel the data file channel
+	 * @param dataOffset the position of the first frame in the file
+	 * @param frameBytes the number of bytes used per Frame
+	 * @param batchBytes commit once at least this many bytes of frames are waiting
+	 * @param maximumDelay commit once a frame has waited this long (in milliseconds)
+	 * @param forceOnCommit true to force the file to the storage device after each commit
+	 */
+	public FrameWriter(FileChannel channel, long dataOffset, int frameBytes, int batchBytes, long maximumDelay,
+			boolean forceOnCommit) {
+		this.channel = channel;
+		this.dataOffset = dataOffset;
+		this.frameBytes = frameBytes;
+		this.batchBytes = batchBytes;
+		this.maximumDelay = maximumDelay;
+		this.forceOnCommit = forceOnCommit;
+		
+		this.thread = new Thread(this, "RaceData frame writer");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+	
+	/**
+	 * Queues a completed frame to be written.
+	 * @param frameIndex the frame index
+	 * @param frame a view of the frame, with position 0 at the frame's first byte
+	 * @throws IOException if an earlier write failed
+	 */
+	public synchronized void submit(int frameIndex, ByteBuffer frame) throws IOException {
+		checkFailure();
+		if (this.closed) {
+			throw new IllegalStateException("The frame writer is closed");
+		}
+		
+		ByteBuffer view = frame.duplicate();
+		view.clear();
+		
+		if (this.pendingFrames.isEmpty()) {
+			this.oldestPendingTime = System.currentTimeMillis();
+			notifyAll();	// The writer may be waiting indefinitely for a first frame.
+		}
+		this.pendingFrames.add(new PendingFrame(frameIndex, view));
+		this.pendingBytes += this.frameBytes;
+		this.submittedCount++;
+		this.maximumQueueDepth = Math.max(this.maximumQueueDepth, this.pendingFrames.size());
+		
+		if (this.pendingBytes >= this.batchBytes) {
+			notifyAll();
+		}
+	}
+	
+	/**
+	 * Waits until every frame submitted before this call has been written (and forced, if enabled).
+	 * @throws IOException if a write failed
+	 */
+	public synchronized void flush() throws IOException {
+		long target = this.submittedCount;
+		this.flushRequested = true;
+		notifyAll();
+		
+		try {
+			while (this.writtenCount < target && this.failure == null) {
+				wait();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while flushing frames");
+		}
+		checkFailure();
+	}
+	
+	/**
+	 * Writes any waiting frames and stops the writer thread. The file remains open.
+	 * @throws IOException if a write failed
+	 */
+	public void close() throws IOException {
+		synchronized (this) {
+			this.closed = true;
+			notifyAll();
+		}
+		try {
+			this.thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while closing the frame writer");
+		}
+		synchronized (this) {
+			checkFailure();
+		}
+	}
+	
+	/**
+	 * @return the number of frames waiting to be written
+	 */
+	public synchronized int getQueueDepth() {
+		return this.pendingFrames.size();
+	}
+	
+	/**
+	 * @return the largest number of frames that have been waiting at once
+	 */
+	public synchronized int getMaximumQueueDepth() {
+		return this.maximumQueueDepth;
+	}
+	
+	/**
+	 * @return the number of frames written
+	 */
+	public synchronized long getWrittenCount() {
+		return this.writtenCount;
+	}
+	
+	/**
+	 * @return the number of batches committed
+	 */
+	public synchronized long getBatchCount() {
+		return this.batchCount;
+	}
+	
+	/**
+	 * @return the time (in nanoseconds) taken to write and force the most recent batch
+	 */
+	public synchronized long getLastWriteLatency() {
+		return this.lastWriteLatency;
+	}
+	
+	/**
+	 * @return the longest time (in nanoseconds) taken to write and force a batch
+	 */
+	public synchronized long getMaximumWriteLatency() {
+		return this.maximumWriteLatency;
+	}
+	
+	/**
+	 * @return the average time (in nanoseconds) taken to write and force a batch
+	 */
+	public synchronized long getAverageWriteLatency() {
+		return (this.batchCount == 0) ? 0 : (this.totalWriteLatency / this.batchCount);
+	}
+	
+	@Override
+	public void run() {
+		while (true) {
+			ArrayList<PendingFrame> batch;
+			
+			synchronized (this) {
+				try {
+					while (!isBatchReady()) {
+						if (this.closed && this.pendingFrames.isEmpty()) {
+							return;
+						}
+						if (this.pendingFrames.isEmpty()) {
+							wait();
+						} else {
+							long remaining = this.oldestPendingTime + this.maximumDelay - System.currentTimeMillis();
+							wait(Math.max(1, remaining));
+						}
+					}
+				} catch (InterruptedException e) {
+					this.failure = new IOException("Frame writer interrupted");
+					notifyAll();
+					return;
+				}
+				
+				batch = this.pendingFrames;
+				this.pendingFrames = new ArrayList<PendingFrame>();
+				this.pendingBytes = 0;
+				this.flushRequested = false;
+			}
+			
+			long start = System.nanoTime();
+			IOException batchFailure = null;
+			try {
+				writeBatch(batch);
+				if (this.forceOnCommit) {
+					this.channel.force(false);
+				}
+			} catch (IOException e) {
+				batchFailure = e;
+			}
+			long latency = System.nanoTime() - start;
+			
+			synchronized (this) {
+				if (batchFailure != null) {
+					this.failure = batchFailure;
+					notifyAll();
+					return;
+				}
+				this.writtenCount += batch.size();
+				this.batchCount++;
+				this.lastWriteLatency = latency;
+				this.maximumWriteLatency = Math.max(this.maximumWriteLatency, latency);
+				this.totalWriteLatency += latency;
+				notifyAll();
+			}
+		}
+	}
+	
+	private boolean isBatchReady() {
+		if (this.pendingFrames.isEmpty()) {
+			return false;
+		}
+		return this.closed
+				|| this.flushRequested
+				|| this.pendingBytes >= this.batchBytes
+				|| System.currentTimeMillis() - this.oldestPendingTime >= this.maximumDelay;
+	}
+	
+	private void writeBatch(ArrayList<PendingFrame> batch) throws IOException {
+		// The sort is stable, so a frame submitted twice is written once, from its latest view.
+		Collections.sort(batch, new Comparator<PendingFrame>() {
+			@Override
+			public int compare(PendingFrame first, PendingFrame second) {
+				return (first.frameIndex < second.frameIndex) ? -1 : ((first.frameIndex == second.frameIndex) ? 0 : 1);
+			}
+		});
+		
+		ArrayList<ByteBuffer> run = new ArrayList<ByteBuffer>();
+		int runStart = -1;
+		int previousIndex = -1;
+		
+		for (int batchIndex = 0; batchIndex < batch.size(); batchIndex++) {
+			PendingFrame pending = batch.get(batchIndex);
+			if (batchIndex + 1 < batch.size() && batch.get(batchIndex + 1).frameIndex == pending.frameIndex) {
+				continue;
+			}
+			
+			if (!run.isEmpty() && pending.frameIndex != previousIndex + 1) {
+				writeRun(runStart, run);
+				run.clear();
+			}
+			if (run.isEmpty()) {
+				runStart = pending.frameIndex;
+			}
+			run.add(pending.frame);
+			previousIndex = pending.frameIndex;
+		}
+		if (!run.isEmpty()) {
+			writeRun(runStart, run);
+		}
+	}
+	
+	private void writeRun(int firstFrameIndex, ArrayList<ByteBuffer> run) throws IOException {
+		ByteBuffer[] buffers = run.toArray(new ByteBuffer[run.size()]);
+		long remaining = (long) buffers.length * this.frameBytes;
+		
+		this.channel.position(this.dataOffset + ((long) this.frameBytes * firstFrameIndex));
+		while (remaining > 0) {
+			remaining -= this.channel.write(buffers);
+		}
+	}
+	
+	private void checkFailure() throws IOException {
+		if (this.failure != null) {
+			throw new IOException("Unable to write frames to the data file", this.failure);
+		}
+	}
+	
+	private static final class PendingFrame {
+		private final int frameIndex;
+		private final ByteBuffer frame;
+		
+		private PendingFrame(int frameIndex, ByteBuffer frame) {
+			this.frameIndex = frameIndex;
+			this.frame = frame;
+		}
+	}
+	
+}
@@ -0,0 +1,57 @@
+package com.autosportLabs.data;
+
+import java.io.File;
+
+/**
+ * The outcome of importing one log file.
+ */
+public final class ImportStatistics {
+
+	private final File logFile;
+	private final long rowCount;
+	private final long valueCount;
+	private final long elapsedNanos;
+	
+	public ImportStatistics(File logFile, long rowCount, long valueCount, long elapsedNanos) {
+		this.logFile = logFile;
+		this.rowCount = rowCount;
+		this.valueCount = valueCount;
+		this.elapsedNanos = elapsedNanos;
+	}
+	
+	public File getLogFile() {
+		return this.logFile;
+	}
+	
+	/**
+	 * @return the number of data rows imported (excluding the header)
+	 */
+	public long getRowCount() {
+		return this.rowCount;
+	}
+	
+	/**
+	 * @return the number of channel values stored
+	 */
+	public long getValueCount() {
+		return this.valueCount;
+	}
+	
+	/**
+	 * @return the time taken (in nanoseconds)
+	 */
+	public long getElapsedNanos() {
+		return this.elapsedNanos;
+	}
+	
+	public double getRowsPerSecond() {
+		return (this.elapsedNanos == 0) ? 0 : (this.rowCount * 1e9) / this.elapsedNanos;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("%s: %d rows in %d ms (%.0f rows/sec)", this.logFile.getName(), this.rowCount,
+				this.elapsedNanos / 1000000, this.getRowsPerSecond());
+	}
+	
+}
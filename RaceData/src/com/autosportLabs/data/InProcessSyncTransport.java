@@ -0,0 +1,55 @@
+package com.autosportLabs.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Carries sync messages between two ends in the same process, through queues.
+ */
+public final class InProcessSyncTransport implements SyncTransport {
+
+	private final BlockingQueue<ByteBuffer> inbound = new LinkedBlockingQueue<ByteBuffer>();
+	private InProcessSyncTransport peer;
+	
+	private InProcessSyncTransport() {
+	}
+	
+	/**
+	 * Creates two connected ends; messages sent from one are received by the other.
+	 */
+	public static InProcessSyncTransport[] createPair() {
+		InProcessSyncTransport first = new InProcessSyncTransport();
+		InProcessSyncTransport second = new InProcessSyncTransport();
+		first.peer = second;
+		second.peer = first;
+		return new InProcessSyncTransport[] {first, second};
+	}
+	
+	@Override
+	public void send(ByteBuffer message) {
+		// Copy, as the sender may reuse the buffer.
+		ByteBuffer copy = ByteBuffer.allocate(message.remaining());
+		copy.put(message.duplicate());
+		copy.flip();
+		this.peer.inbound.add(copy);
+	}
+	
+	@Override
+	public ByteBuffer receive(long timeout) throws IOException {
+		try {
+			return this.inbound.poll(timeout, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for a message");
+		}
+	}
+	
+	@Override
+	public void close() {
+		this.inbound.clear();
+	}
+	
+}
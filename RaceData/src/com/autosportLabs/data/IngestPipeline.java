@@ -0,0 +1,262 @@
+package com.autosportLabs.data;
+
+import java.util.ArrayList;
+
+/**
+ * Routes timestamped samples for any channel into the slots of its DataChannelGroup, for groups
+ * at different sample rates sharing the same frames, and commits each frame once it is complete.
+ * 
+ * A sample is aligned to the nearest slot of its group (the group's sample times are
+ * framePeriod / sampleRate apart); if two samples align to one slot, the later one wins. Each group
+ * keeps a watermark of the latest sample time it has received. A frame is committed (its samples
+ * published and DataManager.writeFrame() called) once every group's watermark has passed the
+ * end of the frame, or, if a group has gone quiet, once any group's watermark is more than the
+ * maximum lateness past it. Samples for frames already committed are dropped, and counted.
+ * drain() checks for closed frames once every SampleSource has been emptied, so a source drained
+ * early cannot push the deadline past samples still waiting in a later one.
+ * 
+ * The pipeline itself is driven by a single ingest thread and takes no locks. Producers on other
+ * threads each use their own SampleSource, which the ingest thread empties with drain().
+ */
+public class IngestPipeline {
+
+	private final DataManager manager;
+	private final long framePeriodMicros;
+	private final long maximumLateness;
+	
+	private final ArrayList<AnalogDataChannel> channels = new ArrayList<AnalogDataChannel>();
+	private final ArrayList<DataChannelGroup> groups = new ArrayList<DataChannelGroup>();
+	private final ArrayList<SampleSource> sources = new ArrayList<SampleSource>();
+	
+	// Per registered channel, for lookup without boxing.
+	private AnalogDataChannel[] channelArray = new AnalogDataChannel[0];
+	private int[] channelGroups = new int[0];
+	
+	// Per group.
+	private long[] watermarks = new long[0];
+	
+	private int lastCommittedFrame = -1;
+	private long maximumWatermark = Long.MIN_VALUE;
+	private boolean draining = false;		// True while drain() holds back commits until every source is emptied.
+	
+	// Statistics
+	private long sampleCount = 0;
+	private long lateSampleCount = 0;
+	private long committedFrameCount = 0;
+	private long deadlineCommitCount = 0;
+	
+	/**
+	 * @param manager the DataManager to receive the samples
+	 * @param maximumLateness how long (in microseconds) past the end of a frame to wait for a quiet group
+	 */
+	public IngestPipeline(DataManager manager, long maximumLateness) {
+		this.manager = manager;
+		this.framePeriodMicros = manager.getFramePeriod() * 1000L;
+		this.maximumLateness = maximumLateness;
+	}
+	
+	/**
+	 * Registers a channel to receive samples. A frame is not committed until every registered
+	 * channel's group has passed it (or the maximum lateness has expired).
+	 * @param channel the channel
+	 * @return the id used to offer samples for the channel
+	 */
+	public int registerChannel(AnalogDataChannel channel) {
+		DataChannelGroup group = channel.getGroup();
+		int groupIndex = this.groups.indexOf(group);
+		if (groupIndex < 0) {
+			groupIndex = this.groups.size();
+			this.groups.add(group);
+			long[] newWatermarks = new long[this.groups.size()];
+			System.arraycopy(this.watermarks, 0, newWatermarks, 0, this.watermarks.length);
+			newWatermarks[groupIndex] = Long.MIN_VALUE;
+			this.watermarks = newWatermarks;
+		}
+		
+		this.channels.add(channel);
+		this.channelArray = this.channels.toArray(new AnalogDataChannel[this.channels.size()]);
+		int[] newChannelGroups = new int[this.channels.size()];
+		System.arraycopy(this.channelGroups, 0, newChannelGroups, 0, this.channelGroups.length);
+		newChannelGroups[this.channels.size() - 1] = groupIndex;
+		this.channelGroups = newChannelGroups;
+		
+		return this.channels.size() - 1;
+	}
+	
+	/**
+	 * Creates a queue for a producer thread to offer samples from.
+	 * @param capacity the number of samples the queue can hold
+	 * @return the source
+	 */
+	public SampleSource createSource(int capacity) {
+		SampleSource source = new SampleSource(this, capacity);
+		this.sources.add(source);
+		return source;
+	}
+	
+	/**
+	 * Stores a sample directly. Called on the ingest thread only.
+	 * @param channelId the channel id from registerChannel()
+	 * @param timestamp the time of the sample (in microseconds since the session start)
+	 * @param value the value
+	 * @throws Exception if a completed frame cannot be written
+	 */
+	public void offer(int channelId, long timestamp, float value) throws Exception {
+		int groupIndex = this.channelGroups[channelId];
+		DataChannelGroup group = this.groups.get(groupIndex);
+		this.sampleCount++;
+		
+		int sampleRate = group.getSampleRate();
+		long index = slotIndex(timestamp, sampleRate);
+		int frameIndex = (int) (index / sampleRate);
+		
+		if (timestamp < 0 || frameIndex <= this.lastCommittedFrame) {
+			this.lateSampleCount++;
+		} else {
+			int sampleIndex = (int) (index % sampleRate);
+			this.channelArray[channelId].setFloat(value, frameIndex, sampleIndex);
+			group.setValid(true, frameIndex, sampleIndex);
+			DataMetrics metrics = this.manager.getMetrics();
+			if (metrics != null) {
+				metrics.valuesIngested.increment();
+			}
+		}
+		
+		if (timestamp > this.watermarks[groupIndex]) {
+			this.watermarks[groupIndex] = timestamp;
+			if (timestamp > this.maximumWatermark) {
+				this.maximumWatermark = timestamp;
+			}
+			if (!this.draining) {
+				commitClosedFrames();
+			}
+		}
+	}
+	
+	/**
+	 * Moves the samples waiting in every SampleSource into the frames. Called on the ingest thread only.
+	 * @return the number of samples drained
+	 * @throws Exception if a completed frame cannot be written
+	 */
+	public int drain() throws Exception {
+		int count = 0;
+		this.draining = true;
+		try {
+			for (int sourceIndex = 0; sourceIndex < this.sources.size(); sourceIndex++) {
+				count += this.sources.get(sourceIndex).drain();
+			}
+		} finally {
+			this.draining = false;
+		}
+		commitClosedFrames();
+		return count;
+	}
+	
+	/**
+	 * Drains the sources, then commits every frame that has received samples.
+	 * @throws Exception if a frame cannot be written
+	 */
+	public void finish() throws Exception {
+		drain();
+		if (this.maximumWatermark < 0) {
+			return;
+		}
+		
+		// The last frame with a sample in any group.
+		int lastFrame = -1;
+		for (int groupIndex = 0; groupIndex < this.groups.size(); groupIndex++) {
+			if (this.watermarks[groupIndex] >= 0) {
+				int sampleRate = this.groups.get(groupIndex).getSampleRate();
+				lastFrame = Math.max(lastFrame, (int) (slotIndex(this.watermarks[groupIndex], sampleRate) / sampleRate));
+			}
+		}
+		while (this.lastCommittedFrame < lastFrame) {
+			commitFrame(this.lastCommittedFrame + 1);
+		}
+	}
+	
+	/**
+	 * @return the index of the last frame committed; -1 if none
+	 */
+	public int getLastCommittedFrame() {
+		return this.lastCommittedFrame;
+	}
+	
+	/**
+	 * @return the number of samples offered
+	 */
+	public long getSampleCount() {
+		return this.sampleCount;
+	}
+	
+	/**
+	 * @return the number of samples dropped because their frame had already been committed
+	 */
+	public long getLateSampleCount() {
+		return this.lateSampleCount;
+	}
+	
+	/**
+	 * @return the number of frames committed
+	 */
+	public long getCommittedFrameCount() {
+		return this.committedFrameCount;
+	}
+	
+	/**
+	 * @return the number of frames committed because the maximum lateness expired, rather than because every group had passed them
+	 */
+	public long getDeadlineCommitCount() {
+		return this.deadlineCommitCount;
+	}
+	
+	/**
+	 * Aligns a time to the nearest sample slot of a group, as a sample index from the session start.
+	 */
+	private long slotIndex(long timestamp, int sampleRate) {
+		return ((2 * timestamp * sampleRate) + this.framePeriodMicros) / (2 * this.framePeriodMicros);
+	}
+	
+	private void commitClosedFrames() throws Exception {
+		while (true) {
+			int frameIndex = this.lastCommittedFrame + 1;
+			
+			// A sample at or after the frame's end time aligns to a later frame, so once every
+			// group's watermark has reached it, no further (in order) sample can land in this frame.
+			long frameEnd = (frameIndex + 1) * this.framePeriodMicros;
+			
+			boolean allClosed = true;
+			for (int groupIndex = 0; groupIndex < this.watermarks.length; groupIndex++) {
+				if (this.watermarks[groupIndex] < frameEnd) {
+					allClosed = false;
+					break;
+				}
+			}
+			
+			if (allClosed) {
+				commitFrame(frameIndex);
+			} else if (this.maximumWatermark >= frameEnd + this.maximumLateness) {
+				this.deadlineCommitCount++;
+				commitFrame(frameIndex);
+			} else {
+				return;
+			}
+		}
+	}
+	
+	private void commitFrame(int frameIndex) throws Exception {
+		DataMetrics metrics = this.manager.getMetrics();
+		long startTime = (metrics != null) ? System.nanoTime() : 0;
+		for (int groupIndex = 0; groupIndex < this.groups.size(); groupIndex++) {
+			DataChannelGroup group = this.groups.get(groupIndex);
+			group.publishSamples((frameIndex + 1) * group.getSampleRate());
+		}
+		this.manager.writeFrame(frameIndex);
+		this.lastCommittedFrame = frameIndex;
+		this.committedFrameCount++;
+		if (metrics != null) {
+			metrics.ingestLatency.recordSince(startTime);
+		}
+	}
+	
+}
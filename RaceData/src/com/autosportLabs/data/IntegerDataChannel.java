@@ -0,0 +1,89 @@
+package com.autosportLabs.data;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A channel of integer values, such as ADC counts or CAN fields, stored in 1, 2 or 4 bytes.
+ */
+public final class IntegerDataChannel extends DataChannel<Integer> {
+
+	private final IntegerType type;
+
+	public IntegerDataChannel(String name, String units, int byteOffset, IntegerType type,
+			DataManager manager, DataChannelGroup group) {
+		super(name, units, byteOffset, manager, group);
+		this.type = type;
+	}
+
+	public IntegerType getType() {
+		return this.type;
+	}
+
+	@Override
+	public int getByteCount() {
+		return this.type.getByteCount();
+	}
+
+	/**
+	 * Gets the value for the frame and sample indexes, without boxing.
+	 * @param frameIndex the frame index containing the value
+	 * @param sampleIndex the sample index containing the value
+	 * @return the value
+	 */
+	public int getInt(int frameIndex, int sampleIndex) {
+		countReads(1);
+		int offset = valueOffset(frameIndex, sampleIndex);
+		int value;
+		long stamp;
+		do {
+			stamp = this.manager.startRead(frameIndex);
+			value = this.type.read(this.manager.getFrameBuffer(frameIndex), offset);
+		} while (!this.manager.validateRead(stamp));
+		return value;
+	}
+
+	public int getInt(int index) {
+		int frameIndex = index / this.group.getSampleRate();
+		int sampleIndex = index % this.group.getSampleRate();
+		return this.getInt(frameIndex, sampleIndex);
+	}
+
+	/**
+	 * Sets the value for the frame and sample indexes, without boxing.
+	 * @param value the value to set
+	 * @param frameIndex the frame index to contain the value
+	 * @param sampleIndex the sample index to contain the value
+	 * @throws IllegalArgumentException if the value is out of the type's range
+	 */
+	public void setInt(int value, int frameIndex, int sampleIndex) {
+		checkValue(value);
+		ByteBuffer buffer = this.manager.getFrameBufferForWrite(frameIndex);
+		this.type.write(buffer, valueOffset(frameIndex, sampleIndex), value);
+		countWrites(1);
+	}
+
+	public void setInt(int value, int index) {
+		int frameIndex = index / this.group.getSampleRate();
+		int sampleIndex = index % this.group.getSampleRate();
+		this.setInt(value, frameIndex, sampleIndex);
+	}
+
+	@Override
+	protected void insertValueIntoFrame(Integer value, ByteBuffer buffer, int offset) {
+		checkValue(value);
+		this.type.write(buffer, offset, value);
+	}
+
+	@Override
+	protected Integer extractValueFromFrame(ByteBuffer buffer, int offset) {
+		return this.type.read(buffer, offset);
+	}
+
+	void checkValue(int value) {
+		if (value < this.type.getMinimum() || value > this.type.getMaximum()) {
+			throw new IllegalArgumentException(String.format("%s is out of range for %s channel %s",
+					value, this.type.getTypeName(), this.name));
+		}
+	}
+
+}
@@ -0,0 +1,108 @@
+package com.autosportLabs.data;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The storage of an integer channel value: its width, and whether it is signed.
+ * Values are big-endian, as are all values in a frame.
+ */
+public enum IntegerType {
+
+	INT8("int8", 1, true),
+	UINT8("uint8", 1, false),
+	INT16("int16", 2, true),
+	UINT16("uint16", 2, false),
+	INT32("int32", 4, true);
+
+	private final String typeName;
+	private final int byteCount;
+	private final boolean signed;
+
+	private IntegerType(String typeName, int byteCount, boolean signed) {
+		this.typeName = typeName;
+		this.byteCount = byteCount;
+		this.signed = signed;
+	}
+
+	/**
+	 * @return the name used in the Configuration Definition, such as "int16"
+	 */
+	public String getTypeName() {
+		return this.typeName;
+	}
+
+	public int getByteCount() {
+		return this.byteCount;
+	}
+
+	public boolean isSigned() {
+		return this.signed;
+	}
+
+	/**
+	 * @return the smallest value that can be stored
+	 */
+	public int getMinimum() {
+		if (this.byteCount == 4) {
+			return Integer.MIN_VALUE;
+		}
+		return this.signed ? -(1 << ((this.byteCount * 8) - 1)) : 0;
+	}
+
+	/**
+	 * @return the largest value that can be stored
+	 */
+	public int getMaximum() {
+		if (this.byteCount == 4) {
+			return Integer.MAX_VALUE;
+		}
+		return this.signed ? (1 << ((this.byteCount * 8) - 1)) - 1 : (1 << (this.byteCount * 8)) - 1;
+	}
+
+	/**
+	 * @return the type with a name used in the Configuration Definition; null if there is none
+	 */
+	public static IntegerType forTypeName(String typeName) {
+		for (IntegerType type : values()) {
+			if (type.typeName.equals(typeName)) {
+				return type;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Reads a value from a buffer at an absolute offset.
+	 */
+	int read(ByteBuffer buffer, int offset) {
+		switch (this) {
+		case INT8:
+			return buffer.get(offset);
+		case UINT8:
+			return buffer.get(offset) & 0xFF;
+		case INT16:
+			return buffer.getShort(offset);
+		case UINT16:
+			return buffer.getShort(offset) & 0xFFFF;
+		default:
+			return buffer.getInt(offset);
+		}
+	}
+
+	/**
+	 * Writes a value, which must be within range, to a buffer at an absolute offset.
+	 */
+	void write(ByteBuffer buffer, int offset, int value) {
+		switch (this.byteCount) {
+		case 1:
+			buffer.put(offset, (byte) value);
+			break;
+		case 2:
+			buffer.putShort(offset, (short) value);
+			break;
+		default:
+			buffer.putInt(offset, value);
+		}
+	}
+
+}
@@ -0,0 +1,67 @@
+package com.autosportLabs.data;
+
+/**
+ * The running integral of a channel over time, from its first valid sample, by the trapezoidal
+ * rule between consecutive valid samples. Invalid samples are bridged by the line between the valid
+ * samples around them. An output sample is valid once the integral has started.
+ */
+public final class IntegralOperator extends StreamOperator {
+
+	private double integral = 0;
+	private int previousIndex = -1;
+	private float previousValue;
+
+	/**
+	 * @param input the channel to integrate
+	 * @param outputName the name of the output channel
+	 * @param outputUnits the units of the output channel, such as the input's units times seconds
+	 */
+	public IntegralOperator(AnalogDataChannel input, String outputName, String outputUnits) throws Exception {
+		super(input, outputName, outputUnits, false);
+	}
+
+	@Override
+	void reset() {
+		this.integral = 0;
+		this.previousIndex = -1;
+	}
+
+	@Override
+	int stateSize() {
+		return 3;
+	}
+
+	@Override
+	void saveState(double[] state, int offset) {
+		state[offset] = this.integral;
+		state[offset + 1] = this.previousIndex;
+		state[offset + 2] = this.previousValue;
+	}
+
+	@Override
+	void loadState(double[] state, int offset) {
+		this.integral = state[offset];
+		this.previousIndex = (int) state[offset + 1];
+		this.previousValue = (float) state[offset + 2];
+	}
+
+	@Override
+	void process(int fromIndex, int count) {
+		for (int i = 0; i < count; i++) {
+			if (isValid(i)) {
+				int index = fromIndex + i;
+				float value = this.values[i];
+				if (this.previousIndex >= 0) {
+					this.integral += (value + this.previousValue) * 0.5 * (index - this.previousIndex) * this.samplePeriod;
+				}
+				this.previousIndex = index;
+				this.previousValue = value;
+			}
+			if (this.previousIndex >= 0) {
+				setResultValid(i);
+			}
+			this.results[i] = (float) this.integral;
+		}
+	}
+
+}
@@ -0,0 +1,161 @@
+package com.autosportLabs.data;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of latencies (in nanoseconds), with buckets of bounded relative width in the manner
+ * of HdrHistogram, so percentiles are within about 6% of the recorded values at any magnitude.
+ *
+ * Values below 32 have a bucket each; above that, each power of two is divided into 16 buckets.
+ * The buckets are allocated once, and recording is lock-free, so any number of threads may record
+ * while others take snapshots.
+ */
+public final class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;		// The buckets per power of two.
+	private static final int LINEAR_BUCKETS = 2 * SUB_BUCKETS;			// The buckets of one value each.
+	private static final int BUCKET_COUNT = LINEAR_BUCKETS + ((63 - SUB_BUCKET_BITS - 1) * SUB_BUCKETS);
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong(0);
+
+	/**
+	 * Records a latency.
+	 * @param nanoseconds the latency; negative values are recorded as 0
+	 */
+	public void record(long nanoseconds) {
+		long value = Math.max(0, nanoseconds);
+		this.buckets.incrementAndGet(bucketIndex(value));
+		this.count.increment();
+		this.sum.add(value);
+		long currentMax = this.max.get();
+		while (value > currentMax && !this.max.compareAndSet(currentMax, value)) {
+			currentMax = this.max.get();
+		}
+	}
+
+	/**
+	 * Records the time since a start time.
+	 * @param startTime a System.nanoTime() value
+	 */
+	public void recordSince(long startTime) {
+		record(System.nanoTime() - startTime);
+	}
+
+	/**
+	 * Discards the recorded latencies. Latencies recorded meanwhile may be kept in part.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			this.buckets.set(i, 0);
+		}
+		this.count.reset();
+		this.sum.reset();
+		this.max.set(0);
+	}
+
+	/**
+	 * @return a copy of the recorded latencies
+	 */
+	public Snapshot snapshot() {
+		long[] counts = new long[BUCKET_COUNT];
+		long total = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			counts[i] = this.buckets.get(i);
+			total += counts[i];
+		}
+		return new Snapshot(counts, total, this.sum.sum(), this.max.get());
+	}
+
+	static int bucketIndex(long value) {
+		if (value < LINEAR_BUCKETS) {
+			return (int) value;
+		}
+		int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+		return LINEAR_BUCKETS + ((shift - 1) * SUB_BUCKETS) + (int) ((value >>> shift) - SUB_BUCKETS);
+	}
+
+	/**
+	 * @return the highest value recorded in a bucket
+	 */
+	static long bucketHighestValue(int index) {
+		if (index < LINEAR_BUCKETS) {
+			return index;
+		}
+		int shift = ((index - LINEAR_BUCKETS) / SUB_BUCKETS) + 1;
+		long subBucket = ((index - LINEAR_BUCKETS) % SUB_BUCKETS) + SUB_BUCKETS;
+		return ((subBucket + 1) << shift) - 1;
+	}
+
+	/**
+	 * The latencies recorded by a LatencyHistogram at one time.
+	 */
+	public static final class Snapshot {
+
+		private final long[] counts;
+		private final long count;
+		private final long sum;
+		private final long max;
+
+		private Snapshot(long[] counts, long count, long sum, long max) {
+			this.counts = counts;
+			this.count = count;
+			this.sum = sum;
+			this.max = max;
+		}
+
+		/**
+		 * @return the number of latencies recorded
+		 */
+		public long getCount() {
+			return this.count;
+		}
+
+		/**
+		 * @return the mean latency (in nanoseconds); 0 if none were recorded
+		 */
+		public double getMean() {
+			return this.count == 0 ? 0 : (double) this.sum / this.count;
+		}
+
+		/**
+		 * @return the highest latency (in nanoseconds)
+		 */
+		public long getMax() {
+			return this.max;
+		}
+
+		/**
+		 * Gets a latency that the given percentage of recorded latencies do not exceed, to the
+		 * precision of the buckets.
+		 * @param percentile the percentage, from 0 to 100
+		 * @return the latency (in nanoseconds); 0 if none were recorded
+		 */
+		public long getValueAtPercentile(double percentile) {
+			if (this.count == 0) {
+				return 0;
+			}
+			long target = Math.max(1, (long) Math.ceil(Math.min(100.0, percentile) / 100.0 * this.count));
+			long seen = 0;
+			for (int i = 0; i < this.counts.length; i++) {
+				seen += this.counts[i];
+				if (seen >= target) {
+					return Math.min(bucketHighestValue(i), this.max);
+				}
+			}
+			return this.max;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("count=%s mean=%.0fns p50=%sns p99=%sns max=%sns", this.count, getMean(),
+					getValueAtPercentile(50), getValueAtPercentile(99), this.max);
+		}
+	}
+
+}
@@ -0,0 +1,69 @@
+package com.autosportLabs.data;
+
+import java.util.Arrays;
+
+/**
+ * Maps a channel through a table, interpolating linearly between the table's points, such as
+ * a sensor calibration curve. Values beyond the table take the output of its nearest end.
+ * An output sample is valid where the input is valid.
+ */
+public final class LookupOperator extends StreamOperator {
+
+	private final float[] inputs;
+	private final float[] outputs;
+
+	/**
+	 * @param input the channel to map
+	 * @param outputName the name of the output channel
+	 * @param outputUnits the units of the output channel
+	 * @param inputs the input values of the table's points, in increasing order
+	 * @param outputs the output values of the table's points
+	 */
+	public LookupOperator(AnalogDataChannel input, String outputName, String outputUnits, float[] inputs, float[] outputs)
+			throws Exception {
+		super(input, outputName, outputUnits, false);
+		if (inputs.length == 0 || inputs.length != outputs.length) {
+			throw new Exception(String.format("A table of %s inputs and %s outputs is invalid", inputs.length, outputs.length));
+		}
+		for (int i = 1; i < inputs.length; i++) {
+			if (!(inputs[i] > inputs[i - 1])) {
+				throw new Exception(String.format("Table inputs are not increasing at point %s", i));
+			}
+		}
+		this.inputs = inputs.clone();
+		this.outputs = outputs.clone();
+	}
+
+	@Override
+	void reset() {
+		// No state between samples.
+	}
+
+	@Override
+	void process(int fromIndex, int count) {
+		int last = this.inputs.length - 1;
+		for (int i = 0; i < count; i++) {
+			this.results[i] = 0;
+			if (isValid(i)) {
+				float value = this.values[i];
+				if (value <= this.inputs[0]) {
+					this.results[i] = this.outputs[0];
+				} else if (value >= this.inputs[last]) {
+					this.results[i] = this.outputs[last];
+				} else {
+					int point = Arrays.binarySearch(this.inputs, value);
+					if (point >= 0) {
+						this.results[i] = this.outputs[point];
+					} else {
+						int upper = -point - 1;
+						int lower = upper - 1;
+						float fraction = (value - this.inputs[lower]) / (this.inputs[upper] - this.inputs[lower]);
+						this.results[i] = this.outputs[lower] + fraction * (this.outputs[upper] - this.outputs[lower]);
+					}
+				}
+				setResultValid(i);
+			}
+		}
+	}
+
+}
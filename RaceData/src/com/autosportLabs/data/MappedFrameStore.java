@@ -0,0 +1,318 @@
+package com.autosportLabs.data;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * Holds the frames directly in a memory-mapped data file.
+ * 
+ * The file is mapped in chunks of whole frames, on demand, so opening a file takes the same
+ * time regardless of its size. Writes to a frame go straight into the mapping; the
+ * DurabilityPolicy decides when the mapping is forced to the storage device.
+ * 
+ * Mapping a chunk grows the file to the end of the chunk, so while the file is open for writing
+ * it also holds a trailer after the last chunk recording the number of frames committed and
+ * forced to storage, brought up to date whenever the mapping is forced. close() releases the mappings and trims the file to
+ * the frames in use; if the process ends first, opening the file again trims it to the frames
+ * the trailer records, rather than reading the padding as blank frames.
+ * 
+ * Mapping and growth are synchronized, and the chunks and frame count are published through
+ * volatile fields, so reader threads may access frames while a single writer adds more.
+ */
+public class MappedFrameStore implements FrameStore {
+
+	private static final int CHUNK_BYTES = 64 * 1024 * 1024;
+	private static final long TRAILER_MAGIC = 0x5244434F554E5431L;	// "RDCOUNT1"
+	private static final int TRAILER_BYTES = 16;	// the magic, then the number of frames forced
+	
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final long dataOffset;				// The offset for the start of binary data
+	private final int frameBytes;
+	private final int framesPerChunk;
+	private final boolean readOnly;
+	private final DurabilityPolicy durability;
+	
+	private volatile MappedByteBuffer[] chunks = new MappedByteBuffer[0];	// Replaced (never changed) when a chunk is mapped.
+	private volatile int frameCount;			// The high-water mark of frames in use.
+	
+	// Guarded by this.
+	private boolean[] dirtyChunks = new boolean[0];
+	private int framesSinceForce = 0;
+	private long lastForceTime = System.currentTimeMillis();
+	private int committedFrameCount;			// One past the highest frame committed.
+	private int forcedFrameCount;				// The committed frames as of the last force, recorded by the trailer.
+	private long dataEnd;						// The end of the frames (and padding) in the file.
+	private long trailerPosition = -1;			// The position of the trailer; -1 if there is none.
+	
+	/**
+	 * Creates a store over frames already in (or to be added to) the file.
+	 * @param file the data file; it is owned (and closed) by the store
+	 * @param dataOffset the position of the first frame in the file
+	 * @param frameBytes the number of bytes used per Frame
+	 * @param readOnly true to map the file read-only
+	 * @param durability when to force committed frames to storage
+	 * @throws IOException
+	 */
+	public MappedFrameStore(RandomAccessFile file, long dataOffset, int frameBytes, boolean readOnly,
+			DurabilityPolicy durability) throws IOException {
+		this.file = file;
+		this.channel = file.getChannel();
+		this.dataOffset = dataOffset;
+		this.frameBytes = frameBytes;
+		this.framesPerChunk = Math.max(1, CHUNK_BYTES / frameBytes);
+		this.readOnly = readOnly;
+		this.durability = durability;
+		
+		// Only complete frames are counted, unless a trailer records fewer frames committed.
+		long size = this.channel.size();
+		this.frameCount = (int) ((size - this.dataOffset) / this.frameBytes);
+		long recoveredFrames = readTrailer(size);
+		if (recoveredFrames >= 0) {
+			this.frameCount = (int) recoveredFrames;
+			if (!readOnly) {
+				size = this.dataOffset + (recoveredFrames * this.frameBytes);
+				this.channel.truncate(size);
+			}
+		}
+		this.committedFrameCount = this.frameCount;
+		this.forcedFrameCount = this.frameCount;
+		this.dataEnd = size;
+	}
+	
+	@Override
+	public ByteBuffer getBuffer(int frameIndex) {
+		if (frameIndex >= this.frameCount) {
+			extendFramesToIndex(frameIndex);
+		}
+		
+		int chunkIndex = frameIndex / this.framesPerChunk;
+		MappedByteBuffer[] currentChunks = this.chunks;
+		if (chunkIndex < currentChunks.length && currentChunks[chunkIndex] != null) {
+			return currentChunks[chunkIndex];
+		}
+		return mapChunk(chunkIndex);
+	}
+	
+	@Override
+	public ByteBuffer getBufferForWrite(int frameIndex) {
+		return getBuffer(frameIndex);
+	}
+	
+	/**
+	 * @return the channel of the data file, for transferring frames without mapping them
+	 */
+	FileChannel getChannel() {
+		return this.channel;
+	}
+	
+	/**
+	 * @return the position of the first frame in the data file
+	 */
+	long getDataOffset() {
+		return this.dataOffset;
+	}
+	
+	@Override
+	public int getOffset(int frameIndex) {
+		return (frameIndex % this.framesPerChunk) * this.frameBytes;
+	}
+	
+	@Override
+	public int getFrameCount() {
+		return this.frameCount;
+	}
+	
+	@Override
+	public synchronized void commitFrame(int frameIndex) throws IOException {
+		this.committedFrameCount = Math.max(this.committedFrameCount, frameIndex + 1);
+		int chunkIndex = frameIndex / this.framesPerChunk;
+		if (chunkIndex < this.dirtyChunks.length) {
+			this.dirtyChunks[chunkIndex] = true;
+		}
+		this.framesSinceForce++;
+		
+		long now = System.currentTimeMillis();
+		if (this.durability.shouldForce(this.framesSinceForce, now - this.lastForceTime)) {
+			forceDirtyChunks(now);
+		}
+	}
+	
+	@Override
+	public synchronized void flush() throws IOException {
+		forceDirtyChunks(System.currentTimeMillis());
+	}
+	
+	/**
+	 * Forces the frames to storage, releases the mappings, and trims the file to the frames in use.
+	 * Buffers from getBuffer() must not be used afterwards.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (!this.readOnly) {
+			this.committedFrameCount = Math.max(this.committedFrameCount, this.frameCount);
+			forceDirtyChunks(System.currentTimeMillis());
+			
+			// The mapping grows the file a chunk at a time; trim it back to the frames in use, once
+			// the mappings are released. If they cannot be, the trailer lets the next open trim it.
+			MappedByteBuffer[] mappedChunks = this.chunks;
+			this.chunks = new MappedByteBuffer[0];
+			boolean released = true;
+			for (MappedByteBuffer chunk : mappedChunks) {
+				if (chunk != null) {
+					released &= unmap(chunk);
+				}
+			}
+			if (released) {
+				this.channel.truncate(this.dataOffset + ((long) this.frameCount * this.frameBytes));
+			}
+		}
+		this.file.close();
+	}
+	
+	private synchronized void extendFramesToIndex(int frameIndex) {
+		if (frameIndex < this.frameCount) {
+			return;		// Another thread has already extended the frames.
+		}
+		if (this.readOnly) {
+			throw new IndexOutOfBoundsException("Frame " + frameIndex + " is beyond the end of a read-only file");
+		}
+		this.frameCount = frameIndex + 1;
+	}
+	
+	private synchronized MappedByteBuffer mapChunk(int chunkIndex) {
+		if (chunkIndex < this.chunks.length && this.chunks[chunkIndex] != null) {
+			return this.chunks[chunkIndex];		// Another thread has already mapped the chunk.
+		}
+		
+		// Chunks are published by replacing the array, so readers never see a partly updated array.
+		int newLength = Math.max(chunkIndex + 1, this.chunks.length);
+		MappedByteBuffer[] newChunks = new MappedByteBuffer[newLength];
+		System.arraycopy(this.chunks, 0, newChunks, 0, this.chunks.length);
+		if (newLength > this.dirtyChunks.length) {
+			boolean[] newDirtyChunks = new boolean[newLength];
+			System.arraycopy(this.dirtyChunks, 0, newDirtyChunks, 0, this.dirtyChunks.length);
+			this.dirtyChunks = newDirtyChunks;
+		}
+		
+		long position = this.dataOffset + ((long) chunkIndex * this.framesPerChunk * this.frameBytes);
+		long size = (long) this.framesPerChunk * this.frameBytes;
+		
+		try {
+			if (this.readOnly) {
+				// A read-only mapping cannot extend the file, so map only what exists.
+				size = Math.min(size, this.channel.size() - position);
+				newChunks[chunkIndex] = this.channel.map(MapMode.READ_ONLY, position, size);
+			} else if (position + size > this.dataEnd) {
+				// The mapping grows the file; move the trailer to the new end, leaving blank frames behind it.
+				if (this.trailerPosition >= 0) {
+					writeFully(ByteBuffer.allocate(TRAILER_BYTES), this.trailerPosition);
+				}
+				newChunks[chunkIndex] = this.channel.map(MapMode.READ_WRITE, position, size);
+				this.dataEnd = position + size;
+				this.trailerPosition = this.dataEnd;
+				writeTrailer();
+			} else {
+				newChunks[chunkIndex] = this.channel.map(MapMode.READ_WRITE, position, size);
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to map frames from the data file", e);
+		}
+		
+		this.chunks = newChunks;
+		return newChunks[chunkIndex];
+	}
+	
+	private void forceDirtyChunks(long now) throws IOException {
+		MappedByteBuffer[] currentChunks = this.chunks;
+		for (int chunkIndex = 0; chunkIndex < this.dirtyChunks.length; chunkIndex++) {
+			if (this.dirtyChunks[chunkIndex] && chunkIndex < currentChunks.length && currentChunks[chunkIndex] != null) {
+				currentChunks[chunkIndex].force();
+				this.dirtyChunks[chunkIndex] = false;
+			}
+		}
+		
+		// Record the frames committed only once they are on storage.
+		this.forcedFrameCount = this.committedFrameCount;
+		if (this.trailerPosition >= 0) {
+			writeTrailer();
+			this.channel.force(false);
+		}
+		this.framesSinceForce = 0;
+		this.lastForceTime = now;
+	}
+	
+	private void writeTrailer() throws IOException {
+		ByteBuffer trailer = ByteBuffer.allocate(TRAILER_BYTES);
+		trailer.putLong(TRAILER_MAGIC);
+		trailer.putLong(this.forcedFrameCount);
+		trailer.flip();
+		writeFully(trailer, this.trailerPosition);
+	}
+	
+	/**
+	 * Reads the trailer left by a store that was not closed.
+	 * @param size the size of the file
+	 * @return the number of frames committed and forced to storage; -1 if the file has no trailer
+	 */
+	private long readTrailer(long size) throws IOException {
+		long chunkBytes = (long) this.framesPerChunk * this.frameBytes;
+		long paddedBytes = size - TRAILER_BYTES - this.dataOffset;
+		if (paddedBytes <= 0 || paddedBytes % chunkBytes != 0) {
+			return -1;
+		}
+		ByteBuffer trailer = ByteBuffer.allocate(TRAILER_BYTES);
+		while (trailer.hasRemaining()) {
+			if (this.channel.read(trailer, size - TRAILER_BYTES + trailer.position()) < 0) {
+				return -1;
+			}
+		}
+		long committed = trailer.getLong(8);
+		if (trailer.getLong(0) != TRAILER_MAGIC || committed < 0 || committed > paddedBytes / this.frameBytes) {
+			return -1;
+		}
+		return committed;
+	}
+	
+	private void writeFully(ByteBuffer source, long position) throws IOException {
+		while (source.hasRemaining()) {
+			this.channel.write(source, position + source.position());
+		}
+	}
+	
+	/**
+	 * Releases a mapping now, rather than when it is garbage collected, so the file can be trimmed.
+	 * @return false if the runtime does not allow it
+	 */
+	private static boolean unmap(MappedByteBuffer buffer) {
+		try {
+			// Java 9 and later
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			invokeCleaner.invoke(theUnsafe.get(null), buffer);
+			return true;
+		} catch (NoSuchMethodException e) {
+			// Java 8
+			try {
+				Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+				cleanerMethod.setAccessible(true);
+				Object cleaner = cleanerMethod.invoke(buffer);
+				cleaner.getClass().getMethod("clean").invoke(cleaner);
+				return true;
+			} catch (Exception cleanerException) {
+				return false;
+			}
+		} catch (Exception e) {
+			return false;
+		}
+	}
+	
+}
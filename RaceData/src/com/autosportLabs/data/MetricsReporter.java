@@ -0,0 +1,15 @@
+package com.autosportLabs.data;
+
+/**
+ * Receives snapshots of a DataMetrics, such as to log them or forward them to a monitoring system.
+ */
+public interface MetricsReporter {
+
+	/**
+	 * Reports a snapshot. Called from the thread taking it: the caller of DataMetrics.report(),
+	 * or the reporting thread started by DataMetrics.startReporting().
+	 * @param snapshot the snapshot
+	 */
+	void report(MetricsSnapshot snapshot);
+
+}
@@ -0,0 +1,70 @@
+package com.autosportLabs.data;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * The counters and latencies of a DataMetrics at one time.
+ */
+public final class MetricsSnapshot {
+
+	private final long timestamp;
+	private final SortedMap<String, Long> counters;
+	private final SortedMap<String, LatencyHistogram.Snapshot> latencies;
+
+	MetricsSnapshot(long timestamp, SortedMap<String, Long> counters, SortedMap<String, LatencyHistogram.Snapshot> latencies) {
+		this.timestamp = timestamp;
+		this.counters = Collections.unmodifiableSortedMap(counters);
+		this.latencies = Collections.unmodifiableSortedMap(latencies);
+	}
+
+	/**
+	 * @return the time the snapshot was taken (in milliseconds since the epoch)
+	 */
+	public long getTimestamp() {
+		return this.timestamp;
+	}
+
+	/**
+	 * @return the value of each counter, by name
+	 */
+	public SortedMap<String, Long> getCounters() {
+		return this.counters;
+	}
+
+	/**
+	 * @return the value of a counter; 0 if it has not been counted
+	 */
+	public long getCounter(String name) {
+		Long value = this.counters.get(name);
+		return value == null ? 0 : value;
+	}
+
+	/**
+	 * @return the snapshot of each latency histogram, by name
+	 */
+	public SortedMap<String, LatencyHistogram.Snapshot> getLatencies() {
+		return this.latencies;
+	}
+
+	/**
+	 * @return the snapshot of a latency histogram; null if nothing has been recorded in it
+	 */
+	public LatencyHistogram.Snapshot getLatency(String name) {
+		return this.latencies.get(name);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		for (Map.Entry<String, Long> counter : this.counters.entrySet()) {
+			builder.append(counter.getKey()).append(": ").append(counter.getValue()).append('\n');
+		}
+		for (Map.Entry<String, LatencyHistogram.Snapshot> latency : this.latencies.entrySet()) {
+			builder.append(latency.getKey()).append(": ").append(latency.getValue()).append('\n');
+		}
+		return builder.toString();
+	}
+
+}
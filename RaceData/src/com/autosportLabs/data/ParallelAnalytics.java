@@ -0,0 +1,162 @@
+package com.autosportLabs.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Runs a FrameRangeAggregator over the frames of one DataManager or many, in parallel on a ForkJoinPool.
+ *
+ * A range of frames is split in halves until each piece holds at most framesPerTask frames. The
+ * pieces depend only on the range, not on the threads, and each pair of results is merged earlier
+ * first, so the result is the same however the work is scheduled. Across DataManagers, each
+ * DataManager's range is split the same way, and idle threads steal pieces of any DataManager.
+ *
+ * Frame reads use absolute buffer positions, so the threads share no buffer state. Frames held in
+ * memory, mapped, or read as a range are read without locks; a cached or compressed file serializes
+ * its readers, and its cache must hold the frames (or blocks) of all the threads at once.
+ * Call only while no frames are being written.
+ */
+public final class ParallelAnalytics {
+
+	public static final int DEFAULT_FRAMES_PER_TASK = 64;
+
+	private final ForkJoinPool pool;
+	private final int framesPerTask;
+
+	/**
+	 * @param pool the pool to run tasks on
+	 * @param framesPerTask the most frames aggregated by one task
+	 */
+	public ParallelAnalytics(ForkJoinPool pool, int framesPerTask) {
+		if (framesPerTask < 1) {
+			throw new IllegalArgumentException(String.format("Invalid frames per task %s", framesPerTask));
+		}
+		this.pool = pool;
+		this.framesPerTask = framesPerTask;
+	}
+
+	public ParallelAnalytics(ForkJoinPool pool) {
+		this(pool, DEFAULT_FRAMES_PER_TASK);
+	}
+
+	/**
+	 * Aggregates all the frames of a DataManager.
+	 */
+	public <R> R aggregate(DataManager manager, FrameRangeAggregator<R> aggregator) {
+		return aggregate(manager, manager.getFirstFrameIndex(), manager.getFrameCount(), aggregator);
+	}
+
+	/**
+	 * Aggregates a range of frames of a DataManager.
+	 * @param fromFrame the first frame index (inclusive)
+	 * @param toFrame the last frame index (exclusive)
+	 */
+	public <R> R aggregate(DataManager manager, int fromFrame, int toFrame, FrameRangeAggregator<R> aggregator) {
+		if (fromFrame < 0 || toFrame < fromFrame) {
+			throw new IndexOutOfBoundsException(String.format("Invalid frame range %s to %s", fromFrame, toFrame));
+		}
+		return this.pool.invoke(new RangeTask<R>(aggregator, manager, fromFrame, toFrame));
+	}
+
+	/**
+	 * Aggregates all the frames of each DataManager, in parallel across and within DataManagers.
+	 * @return the result of each DataManager, in the same order
+	 */
+	public <R> List<R> aggregateEach(List<DataManager> managers, FrameRangeAggregator<R> aggregator) {
+		Object[] results = new Object[managers.size()];
+		this.pool.invoke(new SessionsTask<R>(aggregator, managers, 0, managers.size(), results));
+
+		List<R> resultList = new ArrayList<R>(results.length);
+		for (Object result : results) {
+			@SuppressWarnings("unchecked")
+			R typedResult = (R) result;
+			resultList.add(typedResult);
+		}
+		return resultList;
+	}
+
+	/**
+	 * Aggregates all the frames of all the DataManagers into one result, merged in the order of the list.
+	 */
+	public <R> R aggregateAll(List<DataManager> managers, FrameRangeAggregator<R> aggregator) {
+		R result = aggregator.identity();
+		for (R sessionResult : aggregateEach(managers, aggregator)) {
+			result = aggregator.merge(result, sessionResult);
+		}
+		return result;
+	}
+
+	/**
+	 * Aggregates a range of frames, splitting it in halves down to framesPerTask frames.
+	 */
+	private final class RangeTask<R> extends RecursiveTask<R> {
+		private static final long serialVersionUID = 1L;
+
+		private final FrameRangeAggregator<R> aggregator;
+		private final DataManager manager;
+		private final int fromFrame;
+		private final int toFrame;
+
+		RangeTask(FrameRangeAggregator<R> aggregator, DataManager manager, int fromFrame, int toFrame) {
+			this.aggregator = aggregator;
+			this.manager = manager;
+			this.fromFrame = fromFrame;
+			this.toFrame = toFrame;
+		}
+
+		@Override
+		protected R compute() {
+			if (this.toFrame - this.fromFrame <= ParallelAnalytics.this.framesPerTask) {
+				if (this.toFrame == this.fromFrame) {
+					return this.aggregator.identity();
+				}
+				return this.aggregator.aggregate(this.manager, this.fromFrame, this.toFrame);
+			}
+			int middle = (this.fromFrame + this.toFrame) >>> 1;
+			RangeTask<R> earlier = new RangeTask<R>(this.aggregator, this.manager, this.fromFrame, middle);
+			RangeTask<R> later = new RangeTask<R>(this.aggregator, this.manager, middle, this.toFrame);
+			earlier.fork();
+			R laterResult = later.compute();
+			return this.aggregator.merge(earlier.join(), laterResult);
+		}
+	}
+
+	/**
+	 * Aggregates each DataManager of a range of the list into its slot of the results.
+	 */
+	private final class SessionsTask<R> extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final FrameRangeAggregator<R> aggregator;
+		private final List<DataManager> managers;
+		private final int fromIndex;
+		private final int toIndex;
+		private final Object[] results;
+
+		SessionsTask(FrameRangeAggregator<R> aggregator, List<DataManager> managers, int fromIndex, int toIndex,
+				Object[] results) {
+			this.aggregator = aggregator;
+			this.managers = managers;
+			this.fromIndex = fromIndex;
+			this.toIndex = toIndex;
+			this.results = results;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.toIndex - this.fromIndex == 1) {
+				DataManager manager = this.managers.get(this.fromIndex);
+				this.results[this.fromIndex] = new RangeTask<R>(this.aggregator, manager,
+						manager.getFirstFrameIndex(), manager.getFrameCount()).compute();
+			} else if (this.toIndex > this.fromIndex) {
+				int middle = (this.fromIndex + this.toIndex) >>> 1;
+				invokeAll(new SessionsTask<R>(this.aggregator, this.managers, this.fromIndex, middle, this.results),
+						new SessionsTask<R>(this.aggregator, this.managers, middle, this.toIndex, this.results));
+			}
+		}
+	}
+
+}
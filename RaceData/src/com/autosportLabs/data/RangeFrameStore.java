@@ -0,0 +1,76 @@
+package com.autosportLabs.data;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Holds a range of frames read from a data file, keeping their original frame indexes.
+ * Frames outside the range are not available. The store is read-only.
+ */
+public class RangeFrameStore implements FrameStore {
+
+	private final int firstFrame;
+	private final int endFrame;
+	private final int frameBytes;
+	private final ByteBuffer frames;
+
+	/**
+	 * @param firstFrame the index of the first frame held
+	 * @param endFrame the index after the last frame held
+	 * @param frameBytes the number of bytes used per Frame
+	 * @param frames the frames, consecutively from position 0
+	 */
+	RangeFrameStore(int firstFrame, int endFrame, int frameBytes, ByteBuffer frames) {
+		this.firstFrame = firstFrame;
+		this.endFrame = endFrame;
+		this.frameBytes = frameBytes;
+		this.frames = frames;
+	}
+
+	/**
+	 * @return the index of the first frame held
+	 */
+	public int getFirstFrame() {
+		return this.firstFrame;
+	}
+
+	@Override
+	public ByteBuffer getBuffer(int frameIndex) {
+		if (frameIndex < this.firstFrame || frameIndex >= this.endFrame) {
+			throw new IndexOutOfBoundsException(String.format("Frame %s is outside the range %s to %s",
+					frameIndex, this.firstFrame, this.endFrame));
+		}
+		return this.frames;
+	}
+
+	@Override
+	public ByteBuffer getBufferForWrite(int frameIndex) {
+		throw new UnsupportedOperationException("A range of frames is read-only");
+	}
+
+	@Override
+	public int getOffset(int frameIndex) {
+		return (frameIndex - this.firstFrame) * this.frameBytes;
+	}
+
+	/**
+	 * @return the index after the last frame held
+	 */
+	@Override
+	public int getFrameCount() {
+		return this.endFrame;
+	}
+
+	@Override
+	public void commitFrame(int frameIndex) {
+		throw new UnsupportedOperationException("A range of frames is read-only");
+	}
+
+	@Override
+	public void flush() {
+	}
+
+	@Override
+	public void close() {
+	}
+
+}
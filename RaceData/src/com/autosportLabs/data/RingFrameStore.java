@@ -0,0 +1,250 @@
+package com.autosportLabs.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Holds only the most recent frames, in a circular buffer allocated once, for live sessions
+ * of unbounded length.
+ *
+ * Frames keep their absolute frame indexes: frame n is held in slot (n % capacity). Only the
+ * writer adds frames, through getBufferForWrite(); adding a frame beyond the capacity evicts the
+ * oldest frames, and their slots are cleared for reuse. Requests for an evicted frame throw
+ * FrameEvictedException, and reads of frames not yet added throw IndexOutOfBoundsException, so
+ * a reader never moves the window. Changed frames may be spilled to a data file as they are
+ * evicted, so the session is kept in full on storage.
+ *
+ * Growth is synchronized, and the oldest frame index and frame count are published through
+ * volatile fields. Evicting frames holds a sequence lock for write while it moves the oldest frame
+ * and clears the slots. A reader of a frame near getFirstFrame() may see the slot cleared or reused
+ * while it reads, so it reads optimistically and validates the read afterwards, repeating it if
+ * frames were evicted meanwhile; the repeat throws FrameEvictedException if its own frame was.
+ * DataManager does this for the channels and groups (see DataManager.startRead()).
+ */
+public class RingFrameStore implements FrameStore {
+
+	private final int frameBytes;
+	private final int capacity;
+	private final ByteBuffer frames;
+
+	private final FileChannel spillChannel;		// The data file evicted frames are written to; null for none.
+	private final long spillDataOffset;			// The offset for the start of binary data in the data file
+
+	private volatile int firstFrame = 0;		// The oldest frame held.
+	private volatile int frameCount = 0;		// The high-water mark of frames in use.
+	private final boolean[] dirtySlots;			// Changed since last spilled; used by the writer.
+	private long evictionCount = 0;				// Guarded by this.
+	private final StampedLock evictions;		// Held for write while frames are evicted.
+
+	/**
+	 * @param frameBytes the number of bytes used per Frame
+	 * @param capacity the number of frames held
+	 * @param direct true to allocate a direct (off-heap) buffer, false for a heap buffer
+	 * @param spillChannel the data file to write changed frames to as they are evicted (and on flush); null for none
+	 * @param spillDataOffset the position of frame 0 in the data file
+	 */
+	public RingFrameStore(int frameBytes, int capacity, boolean direct, FileChannel spillChannel, long spillDataOffset) {
+		this(frameBytes, capacity, direct, spillChannel, spillDataOffset, new StampedLock());
+	}
+	
+	/**
+	 * @param evictions the lock to hold for write while frames are evicted, which readers validate their reads with
+	 */
+	RingFrameStore(int frameBytes, int capacity, boolean direct, FileChannel spillChannel, long spillDataOffset,
+			StampedLock evictions) {
+		if (capacity < 1 || (long) capacity * frameBytes > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException(String.format("Invalid capacity of %s frames", capacity));
+		}
+		this.frameBytes = frameBytes;
+		this.capacity = capacity;
+		this.frames = direct ? ByteBuffer.allocateDirect(capacity * frameBytes) : ByteBuffer.allocate(capacity * frameBytes);
+		this.spillChannel = spillChannel;
+		this.spillDataOffset = spillDataOffset;
+		this.dirtySlots = new boolean[capacity];
+		this.evictions = evictions;
+	}
+	
+	/**
+	 * Starts a read of a frame; read it after this call, then check the read with validateRead().
+	 * @return the stamp for validateRead()
+	 * @throws FrameEvictedException if the frame is no longer held
+	 */
+	public long startRead(int frameIndex) {
+		long stamp;
+		while ((stamp = this.evictions.tryOptimisticRead()) == 0) {
+			Thread.yield();
+		}
+		checkRetained(frameIndex);
+		return stamp;
+	}
+	
+	/**
+	 * @param stamp the stamp from startRead()
+	 * @return true if no frames were evicted since the stamp; otherwise repeat the read from startRead()
+	 */
+	public boolean validateRead(long stamp) {
+		return this.evictions.validate(stamp);
+	}
+
+	/**
+	 * Gets the buffer containing a frame already added. Unlike other stores, this never adds
+	 * frames, so a reader cannot evict frames the writer still needs.
+	 * @throws IndexOutOfBoundsException if the frame has not been added
+	 */
+	@Override
+	public ByteBuffer getBuffer(int frameIndex) {
+		int count = this.frameCount;
+		if (frameIndex >= count) {
+			throw new IndexOutOfBoundsException(String.format("Frame %s is beyond the frames held (to %s)",
+					frameIndex, count));
+		}
+		checkRetained(frameIndex);
+		return this.frames;
+	}
+
+	/**
+	 * Gets the buffer containing a frame that is about to be changed, adding the frame if needed.
+	 * This may move to any later frame, evicting every frame held.
+	 */
+	@Override
+	public ByteBuffer getBufferForWrite(int frameIndex) {
+		if (frameIndex >= this.frameCount) {
+			extendFramesToIndex(frameIndex);
+		}
+		checkRetained(frameIndex);
+		this.dirtySlots[frameIndex % this.capacity] = true;
+		return this.frames;
+	}
+
+	@Override
+	public int getOffset(int frameIndex) {
+		return (frameIndex % this.capacity) * this.frameBytes;
+	}
+
+	/**
+	 * @return the index after the newest frame
+	 */
+	@Override
+	public int getFrameCount() {
+		return this.frameCount;
+	}
+
+	/**
+	 * @return the index of the oldest frame held
+	 */
+	public int getFirstFrame() {
+		return this.firstFrame;
+	}
+
+	/**
+	 * @return the number of frames held once the buffer is full
+	 */
+	public int getCapacity() {
+		return this.capacity;
+	}
+
+	/**
+	 * @return the number of frames evicted
+	 */
+	public synchronized long getEvictionCount() {
+		return this.evictionCount;
+	}
+
+	@Override
+	public void commitFrame(int frameIndex) {
+		// Nothing to do; changed frames are spilled on eviction or flush.
+	}
+
+	/**
+	 * Writes the changed frames held to the spill file, if there is one.
+	 */
+	@Override
+	public synchronized void flush() throws IOException {
+		if (this.spillChannel == null) {
+			return;
+		}
+		for (int frameIndex = this.firstFrame; frameIndex < this.frameCount; frameIndex++) {
+			spill(frameIndex);
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		flush();
+	}
+
+	/**
+	 * @throws FrameEvictedException if the frame is no longer held
+	 */
+	void checkRetained(int frameIndex) {
+		int first = this.firstFrame;
+		if (frameIndex < first) {
+			throw new FrameEvictedException(frameIndex, first);
+		}
+	}
+
+	private synchronized void extendFramesToIndex(int frameIndex) {
+		if (frameIndex < this.frameCount) {
+			return;		// Another thread has already extended the frames.
+		}
+		int oldCount = this.frameCount;
+		int newFirst = Math.max(this.firstFrame, frameIndex + 1 - this.capacity);
+
+		// Spill the frames leaving, then publish the new oldest frame before their slots are reused.
+		try {
+			for (int evicted = this.firstFrame; evicted < Math.min(newFirst, oldCount); evicted++) {
+				spill(evicted);
+				this.evictionCount++;
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to spill frames to the data file", e);
+		}
+		
+		// Hold the lock while slots are reused, so readers of the evicted frames repeat their reads;
+		// until the ring is full, the slots cleared are unused, and need no lock.
+		long stamp = newFirst > this.firstFrame ? this.evictions.writeLock() : 0;
+		try {
+			this.firstFrame = newFirst;
+
+			// Clear the slots of the new frames; a slot is cleared at most once, however far the jump.
+			for (int added = Math.max(oldCount, newFirst); added <= frameIndex; added++) {
+				int slot = added % this.capacity;
+				if (this.frames.hasArray()) {
+					int start = this.frames.arrayOffset() + (slot * this.frameBytes);
+					Arrays.fill(this.frames.array(), start, start + this.frameBytes, (byte) 0);
+				} else {
+					ByteBuffer view = this.frames.duplicate();
+					view.position(slot * this.frameBytes);
+					view.put(new byte[this.frameBytes]);
+				}
+				this.dirtySlots[slot] = false;
+			}
+		} finally {
+			if (stamp != 0) {
+				this.evictions.unlockWrite(stamp);
+			}
+		}
+
+		// Publish the frame count after the slots are ready.
+		this.frameCount = frameIndex + 1;
+	}
+
+	private void spill(int frameIndex) throws IOException {
+		int slot = frameIndex % this.capacity;
+		if (this.spillChannel == null || !this.dirtySlots[slot]) {
+			return;
+		}
+		ByteBuffer frame = this.frames.duplicate();
+		frame.limit((slot + 1) * this.frameBytes);
+		frame.position(slot * this.frameBytes);
+		long position = this.spillDataOffset + ((long) this.frameBytes * frameIndex);
+		while (frame.hasRemaining()) {
+			this.spillChannel.write(frame, position + frame.position() - (slot * this.frameBytes));
+		}
+		this.dirtySlots[slot] = false;
+	}
+
+}
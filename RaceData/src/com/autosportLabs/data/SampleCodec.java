@@ -0,0 +1,187 @@
+package com.autosportLabs.data;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+
+/**
+ * Encodes and decodes whole sample sets of a DataChannelGroup, with code specialized for the group's layout.
+ *
+ * The values of a sample set's AnalogDataChannels are held in a float array, one slot per channel
+ * in order of byte offset. compile() builds a method handle per channel with its byte offset and slot
+ * bound in as constants, and chains them into one handle that reads (or writes) the whole sample
+ * set in straight-line code, once the JIT compiles it. The frame is located once per sample set,
+ * rather than once per channel as by the channels' own accessors.
+ *
+ * A codec holds no state between calls, so any number of threads may use it under the DataManager's
+ * rules for readers and the writer.
+ */
+public final class SampleCodec {
+
+	private static final MethodHandle DECODE_FLOAT;
+	private static final MethodHandle ENCODE_FLOAT;
+	private static final MethodHandle NO_OPERATION;
+	private static final MethodType SAMPLE_SET_TYPE = MethodType.methodType(void.class, ByteBuffer.class, int.class, float[].class);
+
+	static {
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		MethodType channelType = MethodType.methodType(void.class, int.class, int.class, ByteBuffer.class, int.class, float[].class);
+		try {
+			DECODE_FLOAT = lookup.findStatic(SampleCodec.class, "decodeFloat", channelType);
+			ENCODE_FLOAT = lookup.findStatic(SampleCodec.class, "encodeFloat", channelType);
+			NO_OPERATION = lookup.findStatic(SampleCodec.class, "noOperation", SAMPLE_SET_TYPE);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private final DataChannelGroup group;
+	private final DataManager manager;
+	private final int sampleRate;
+	private final int groupOffset;
+	private final int sampleBytes;
+	private final AnalogDataChannel[] channels;
+
+	// (ByteBuffer buffer, int sampleOffset, float[] values) void
+	private final MethodHandle decoder;
+	private final MethodHandle encoder;
+
+	private SampleCodec(DataChannelGroup group, AnalogDataChannel[] channels) {
+		this.group = group;
+		this.manager = group.getManager();
+		this.sampleRate = group.getSampleRate();
+		this.groupOffset = group.getByteOffset();
+		this.sampleBytes = group.getSampleBytes();
+		this.channels = channels;
+
+		// Chain the channels, last first, so they run in order of byte offset
+		MethodHandle decoder = NO_OPERATION;
+		MethodHandle encoder = NO_OPERATION;
+		for (int slot = channels.length - 1; slot >= 0; slot--) {
+			int offset = channels[slot].byteOffset;
+			decoder = MethodHandles.foldArguments(decoder, MethodHandles.insertArguments(DECODE_FLOAT, 0, offset, slot));
+			encoder = MethodHandles.foldArguments(encoder, MethodHandles.insertArguments(ENCODE_FLOAT, 0, offset, slot));
+		}
+		this.decoder = decoder;
+		this.encoder = encoder;
+	}
+
+	/**
+	 * Builds a codec for the AnalogDataChannels of a group.
+	 */
+	@SuppressWarnings("rawtypes")
+	public static SampleCodec compile(DataChannelGroup group) {
+		List<AnalogDataChannel> channels = new ArrayList<AnalogDataChannel>();
+		Enumeration<DataChannel> allChannels = group.getManager().enumerateDataChannels();
+		while (allChannels.hasMoreElements()) {
+			DataChannel<?> channel = allChannels.nextElement();
+			if (channel.getGroup() == group && channel instanceof AnalogDataChannel) {
+				channels.add((AnalogDataChannel) channel);
+			}
+		}
+		Collections.sort(channels, new Comparator<AnalogDataChannel>() {
+			@Override
+			public int compare(AnalogDataChannel first, AnalogDataChannel second) {
+				return first.byteOffset < second.byteOffset ? -1 : (first.byteOffset == second.byteOffset ? 0 : 1);
+			}
+		});
+		return new SampleCodec(group, channels.toArray(new AnalogDataChannel[channels.size()]));
+	}
+
+	/**
+	 * @return the number of values in a sample set
+	 */
+	public int getChannelCount() {
+		return this.channels.length;
+	}
+
+	/**
+	 * @return the channel whose value is held in a slot of the values array
+	 */
+	public AnalogDataChannel getChannel(int slot) {
+		return this.channels[slot];
+	}
+
+	/**
+	 * Reads a sample set.
+	 * @param index the sample index
+	 * @param values the array to receive the value of each channel, by slot
+	 * @return true if the sample set is valid
+	 */
+	public boolean decode(int index, float[] values) {
+		checkValues(values);
+		int frameIndex = index / this.sampleRate;
+		int offset = sampleOffset(frameIndex, index);
+		byte flags;
+		long stamp;
+		do {
+			stamp = this.manager.startRead(frameIndex);
+			ByteBuffer buffer = this.manager.getFrameBuffer(frameIndex);
+			invoke(this.decoder, buffer, offset, values);
+			flags = buffer.get(offset);
+		} while (!this.manager.validateRead(stamp));
+		return (flags & 0x01) != 0;
+	}
+
+	/**
+	 * Writes a sample set.
+	 * @param values the value of each channel, by slot
+	 * @param isValid the validity of the sample set
+	 * @param index the sample index
+	 */
+	public void encode(float[] values, boolean isValid, int index) {
+		checkValues(values);
+		int frameIndex = index / this.sampleRate;
+		ByteBuffer buffer = this.manager.getFrameBufferForWrite(frameIndex);
+		int offset = sampleOffset(frameIndex, index);
+		invoke(this.encoder, buffer, offset, values);
+		byte flags = buffer.get(offset);
+		buffer.put(offset, (byte) (isValid ? flags | 0x01 : flags & ~0x01));
+		this.group.validityWritten(frameIndex, index - (frameIndex * this.sampleRate), isValid);
+	}
+
+	private int sampleOffset(int frameIndex, int index) {
+		return this.manager.getFrameOffset(frameIndex) + this.groupOffset
+				+ ((index - (frameIndex * this.sampleRate)) * this.sampleBytes);
+	}
+
+	private void checkValues(float[] values) {
+		if (values.length < this.channels.length) {
+			throw new IndexOutOfBoundsException(String.format("Array of length %s cannot hold %s values",
+					values.length, this.channels.length));
+		}
+	}
+
+	private static void invoke(MethodHandle handle, ByteBuffer buffer, int offset, float[] values) {
+		try {
+			handle.invokeExact(buffer, offset, values);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new IllegalStateException("Sample codec failed", e);
+		}
+	}
+
+	@SuppressWarnings("unused")		// called through DECODE_FLOAT
+	private static void decodeFloat(int channelOffset, int slot, ByteBuffer buffer, int sampleOffset, float[] values) {
+		values[slot] = buffer.getFloat(sampleOffset + channelOffset);
+	}
+
+	@SuppressWarnings("unused")		// called through ENCODE_FLOAT
+	private static void encodeFloat(int channelOffset, int slot, ByteBuffer buffer, int sampleOffset, float[] values) {
+		buffer.putFloat(sampleOffset + channelOffset, values[slot]);
+	}
+
+	@SuppressWarnings("unused")		// called through NO_OPERATION
+	private static void noOperation(ByteBuffer buffer, int sampleOffset, float[] values) {
+	}
+
+}
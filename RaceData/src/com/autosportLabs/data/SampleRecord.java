@@ -0,0 +1,377 @@
+package com.autosportLabs.data;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A reusable cursor over the sample sets of a DataChannelGroup, giving access to all of a sample
+ * set's channels and its validity through one frame lookup.
+ *
+ * The cursor keeps its frame and sample indexes, and the location of its sample set in the frame's
+ * buffer, as it moves; advance() and next() step to the following sample set without division, and
+ * look up a frame only when they cross into it. Nothing is allocated after construction.
+ *
+ * Readers call the getters, which read the frame directly, and repeat a read that overlapped a
+ * change the writer makes under readers (see DataManager.startRead()). A reader scans a range with
+ * range() and next():
+ * <pre>
+ * for (record.range(0, group.getPublishedSampleCount()); record.next(); ) { ... }
+ * </pre>
+ * Writers call the setters, which change a copy of the sample set held by the record; commit()
+ * then stores the whole sample set into its frame in one copy. The writer publishes committed
+ * samples with DataChannelGroup.publishSamples(). Moving the cursor with uncommitted changes is an error.
+ *
+ * A record is used by one thread at a time.
+ */
+public final class SampleRecord {
+
+	private static final byte VALID_BIT = 0x01;
+
+	private final DataChannelGroup group;
+	private final DataManager manager;
+	private final int sampleRate;
+	private final int sampleBytes;
+	private final int groupOffset;
+
+	// The position: the sample index, its frame and sample indexes, and (once located) its sample set in the frame's buffer.
+	private int index = -1;
+	private int frameIndex = -1;
+	private int sampleIndex = -1;
+	private ByteBuffer buffer;
+	private int frameBase;		// the location of the frame's first sample set in buffer
+	private int limit = Integer.MAX_VALUE;
+
+	// The copy of the sample set changed by the setters.
+	private final byte[] staged;
+	private final ByteBuffer stagedBuffer;
+	private boolean staging = false;
+
+	public SampleRecord(DataChannelGroup group) {
+		this.group = group;
+		this.manager = group.getManager();
+		this.sampleRate = group.getSampleRate();
+		this.sampleBytes = group.getSampleBytes();
+		this.groupOffset = group.getByteOffset();
+		this.staged = new byte[this.sampleBytes];
+		this.stagedBuffer = ByteBuffer.wrap(this.staged);
+	}
+
+	public DataChannelGroup getGroup() {
+		return this.group;
+	}
+
+	/**
+	 * @return the sample index of the current sample set; -1 before the cursor is first moved
+	 */
+	public int getIndex() {
+		return this.index;
+	}
+
+	/**
+	 * Moves to a sample set.
+	 * @param index the sample index
+	 */
+	public void moveTo(int index) {
+		if (index < 0) {
+			throw new IndexOutOfBoundsException(String.format("Invalid sample index %s", index));
+		}
+		checkCommitted();
+		this.index = index;
+		int newFrameIndex = index / this.sampleRate;
+		if (newFrameIndex != this.frameIndex) {
+			this.frameIndex = newFrameIndex;
+			this.buffer = null;
+		}
+		this.sampleIndex = index - (newFrameIndex * this.sampleRate);
+	}
+
+	/**
+	 * Moves to the next sample set.
+	 */
+	public void advance() {
+		checkCommitted();
+		this.index++;
+		this.sampleIndex++;
+		if (this.sampleIndex == this.sampleRate || this.frameIndex < 0) {
+			this.frameIndex = this.index / this.sampleRate;
+			this.sampleIndex = this.index - (this.frameIndex * this.sampleRate);
+			this.buffer = null;
+		}
+	}
+
+	/**
+	 * Prepares to visit a range of sample sets with next(); the first call moves to fromIndex.
+	 * @param fromIndex the first sample index (inclusive)
+	 * @param toIndex the last sample index (exclusive)
+	 * @return this record
+	 */
+	public SampleRecord range(int fromIndex, int toIndex) {
+		if (fromIndex < 0 || toIndex < fromIndex) {
+			throw new IndexOutOfBoundsException(String.format("Invalid sample range %s to %s", fromIndex, toIndex));
+		}
+		checkCommitted();
+		this.index = fromIndex - 1;
+		this.frameIndex = -1;
+		this.buffer = null;
+		this.limit = toIndex;
+		return this;
+	}
+
+	/**
+	 * Moves to the next sample set of the range set by range().
+	 * @return false, without moving, at the end of the range
+	 */
+	public boolean next() {
+		if (this.index + 1 >= this.limit) {
+			return false;
+		}
+		advance();
+		return true;
+	}
+
+	public boolean isValid() {
+		if (this.staging) {
+			return (this.staged[0] & VALID_BIT) != 0;
+		}
+		ByteBuffer frame = frame();
+		byte flags;
+		long stamp;
+		do {
+			stamp = this.manager.startRead(this.frameIndex);
+			flags = frame.get(sampleOffset());
+		} while (!this.manager.validateRead(stamp));
+		return (flags & VALID_BIT) != 0;
+	}
+
+	public void setValid(boolean isValid) {
+		stage();
+		this.staged[0] = (byte) (isValid ? this.staged[0] | VALID_BIT : this.staged[0] & ~VALID_BIT);
+	}
+
+	/**
+	 * @param channel a channel of the record's group
+	 */
+	public float getFloat(AnalogDataChannel channel) {
+		channel.countReads(1);
+		if (this.staging) {
+			return this.stagedBuffer.getFloat(channel.byteOffset);
+		}
+		ByteBuffer frame = frame();
+		float value;
+		long stamp;
+		do {
+			stamp = this.manager.startRead(this.frameIndex);
+			value = frame.getFloat(sampleOffset() + channel.byteOffset);
+		} while (!this.manager.validateRead(stamp));
+		return value;
+	}
+
+	/**
+	 * @param channel a channel of the record's group
+	 */
+	public void setFloat(AnalogDataChannel channel, float value) {
+		stage();
+		this.stagedBuffer.putFloat(channel.byteOffset, value);
+		channel.countWrites(1);
+	}
+
+	/**
+	 * @param channel a channel of the record's group
+	 */
+	public float getFloat(ScaledDataChannel channel) {
+		channel.countReads(1);
+		if (this.staging) {
+			return (float) channel.toValue(channel.getStorage().read(this.stagedBuffer, channel.byteOffset));
+		}
+		ByteBuffer frame = frame();
+		int count;
+		long stamp;
+		do {
+			stamp = this.manager.startRead(this.frameIndex);
+			count = channel.getStorage().read(frame, sampleOffset() + channel.byteOffset);
+		} while (!this.manager.validateRead(stamp));
+		return (float) channel.toValue(count);
+	}
+
+	/**
+	 * @param channel a channel of the record's group
+	 */
+	public void setFloat(ScaledDataChannel channel, float value) {
+		stage();
+		channel.getStorage().write(this.stagedBuffer, channel.byteOffset, channel.toCount(value));
+		channel.countWrites(1);
+	}
+
+	/**
+	 * @param channel a channel of the record's group
+	 */
+	public int getInt(IntegerDataChannel channel) {
+		channel.countReads(1);
+		if (this.staging) {
+			return channel.getType().read(this.stagedBuffer, channel.byteOffset);
+		}
+		ByteBuffer frame = frame();
+		int value;
+		long stamp;
+		do {
+			stamp = this.manager.startRead(this.frameIndex);
+			value = channel.getType().read(frame, sampleOffset() + channel.byteOffset);
+		} while (!this.manager.validateRead(stamp));
+		return value;
+	}
+
+	/**
+	 * @param channel a channel of the record's group
+	 * @throws IllegalArgumentException if the value is out of the channel type's range
+	 */
+	public void setInt(IntegerDataChannel channel, int value) {
+		channel.checkValue(value);
+		stage();
+		channel.getType().write(this.stagedBuffer, channel.byteOffset, value);
+		channel.countWrites(1);
+	}
+
+	/**
+	 * @param channel a channel of the record's group
+	 */
+	public double getDouble(DoubleDataChannel channel) {
+		channel.countReads(1);
+		if (this.staging) {
+			return this.stagedBuffer.getDouble(channel.byteOffset);
+		}
+		ByteBuffer frame = frame();
+		double value;
+		long stamp;
+		do {
+			stamp = this.manager.startRead(this.frameIndex);
+			value = frame.getDouble(sampleOffset() + channel.byteOffset);
+		} while (!this.manager.validateRead(stamp));
+		return value;
+	}
+
+	/**
+	 * @param channel a channel of the record's group
+	 */
+	public void setDouble(DoubleDataChannel channel, double value) {
+		stage();
+		this.stagedBuffer.putDouble(channel.byteOffset, value);
+		channel.countWrites(1);
+	}
+
+	/**
+	 * @param channel a channel of the record's group
+	 */
+	public int getOrdinal(EnumDataChannel channel) {
+		channel.countReads(1);
+		if (this.staging) {
+			return channel.getStorage().read(this.stagedBuffer, channel.byteOffset);
+		}
+		ByteBuffer frame = frame();
+		int ordinal;
+		long stamp;
+		do {
+			stamp = this.manager.startRead(this.frameIndex);
+			ordinal = channel.getStorage().read(frame, sampleOffset() + channel.byteOffset);
+		} while (!this.manager.validateRead(stamp));
+		return ordinal;
+	}
+
+	/**
+	 * @param channel a channel of the record's group
+	 * @throws IllegalArgumentException if the ordinal is not that of one of the channel's labels
+	 */
+	public void setOrdinal(EnumDataChannel channel, int ordinal) {
+		channel.checkOrdinal(ordinal);
+		stage();
+		channel.getStorage().write(this.stagedBuffer, channel.byteOffset, ordinal);
+		channel.countWrites(1);
+	}
+
+	/**
+	 * @param channel a channel of the record's group
+	 */
+	public boolean getBoolean(BooleanDataChannel channel) {
+		channel.countReads(1);
+		byte containingByte;
+		if (this.staging) {
+			containingByte = this.staged[channel.byteOffset];
+		} else {
+			ByteBuffer frame = frame();
+			long stamp;
+			do {
+				stamp = this.manager.startRead(this.frameIndex);
+				containingByte = frame.get(sampleOffset() + channel.byteOffset);
+			} while (!this.manager.validateRead(stamp));
+		}
+		return ((containingByte >> channel.getBitOffset()) & 0x01) != 0;
+	}
+
+	/**
+	 * @param channel a channel of the record's group
+	 */
+	public void setBoolean(BooleanDataChannel channel, boolean value) {
+		stage();
+		int bit = 0x01 << channel.getBitOffset();
+		byte containingByte = this.staged[channel.byteOffset];
+		this.staged[channel.byteOffset] = (byte) (value ? containingByte | bit : containingByte & ~bit);
+		channel.countWrites(1);
+	}
+
+	/**
+	 * Stores the changed sample set into its frame. Does nothing if nothing has changed.
+	 */
+	public void commit() {
+		if (!this.staging) {
+			return;
+		}
+		this.buffer = this.manager.getFrameBufferForWrite(this.frameIndex);
+		this.frameBase = this.manager.getFrameOffset(this.frameIndex) + this.groupOffset;
+		DataChannelGroup.copyIntoBuffer(this.staged, this.buffer, sampleOffset());
+		this.group.validityWritten(this.frameIndex, this.sampleIndex, (this.staged[0] & VALID_BIT) != 0);
+		this.staging = false;
+	}
+
+	/**
+	 * Discards changes made since the last commit.
+	 */
+	public void discard() {
+		this.staging = false;
+	}
+
+	/**
+	 * Starts a change to the current sample set, from its stored contents.
+	 */
+	private void stage() {
+		if (!this.staging) {
+			// Locate the frame for writing, so a writer may stage a sample in a frame not yet held.
+			if (this.frameIndex < 0) {
+				throw new IllegalStateException("The record has not been moved to a sample");
+			}
+			this.buffer = this.manager.getFrameBufferForWrite(this.frameIndex);
+			this.frameBase = this.manager.getFrameOffset(this.frameIndex) + this.groupOffset;
+			DataChannelGroup.copyFromBuffer(this.buffer, sampleOffset(), this.staged);
+			this.staging = true;
+		}
+	}
+
+	private ByteBuffer frame() {
+		if (this.buffer == null) {
+			if (this.frameIndex < 0) {
+				throw new IllegalStateException("The record has not been moved to a sample");
+			}
+			this.buffer = this.manager.getFrameBuffer(this.frameIndex);
+			this.frameBase = this.manager.getFrameOffset(this.frameIndex) + this.groupOffset;
+		}
+		return this.buffer;
+	}
+
+	private int sampleOffset() {
+		return this.frameBase + (this.sampleIndex * this.sampleBytes);
+	}
+
+	private void checkCommitted() {
+		if (this.staging) {
+			throw new IllegalStateException(String.format("Sample %s has uncommitted changes", this.index));
+		}
+	}
+
+}
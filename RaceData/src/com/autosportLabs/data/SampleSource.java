@@ -0,0 +1,75 @@
+package com.autosportLabs.data;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free queue of timestamped samples from one producer thread (a sensor reader) to the
+ * IngestPipeline's ingest thread.
+ * 
+ * Samples are held in preallocated primitive arrays, so offering a sample does not allocate.
+ * Only one thread may call offer(), and only the ingest thread drains the queue.
+ */
+public final class SampleSource {
+
+	private final IngestPipeline pipeline;
+	private final int mask;
+	private final int[] channelIds;
+	private final long[] timestamps;
+	private final float[] values;
+	
+	// The next slot to read, and the next slot to write. Published with lazySet (a store-store barrier).
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong tail = new AtomicLong();
+	
+	SampleSource(IngestPipeline pipeline, int capacity) {
+		int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;	// the next power of two
+		this.pipeline = pipeline;
+		this.mask = size - 1;
+		this.channelIds = new int[size];
+		this.timestamps = new long[size];
+		this.values = new float[size];
+	}
+	
+	/**
+	 * Queues a sample for the ingest thread.
+	 * @param channelId the channel id from IngestPipeline.registerChannel()
+	 * @param timestamp the time of the sample (in microseconds since the session start)
+	 * @param value the value
+	 * @return false if the queue is full and the sample was not queued
+	 */
+	public boolean offer(int channelId, long timestamp, float value) {
+		long currentTail = this.tail.get();
+		if (currentTail - this.head.get() > this.mask) {
+			return false;
+		}
+		int slot = (int) (currentTail & this.mask);
+		this.channelIds[slot] = channelId;
+		this.timestamps[slot] = timestamp;
+		this.values[slot] = value;
+		this.tail.lazySet(currentTail + 1);
+		return true;
+	}
+	
+	/**
+	 * @return the number of samples waiting
+	 */
+	public int size() {
+		return (int) (this.tail.get() - this.head.get());
+	}
+	
+	/**
+	 * Passes the waiting samples to the pipeline. Called on the ingest thread only.
+	 * @return the number of samples drained
+	 */
+	int drain() throws Exception {
+		long currentHead = this.head.get();
+		long currentTail = this.tail.get();
+		for (long index = currentHead; index < currentTail; index++) {
+			int slot = (int) (index & this.mask);
+			this.pipeline.offer(this.channelIds[slot], this.timestamps[slot], this.values[slot]);
+		}
+		this.head.lazySet(currentTail);
+		return (int) (currentTail - currentHead);
+	}
+	
+}
@@ -0,0 +1,140 @@
+package com.autosportLabs.data;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A channel of fixed-point values: each value is stored as an integer count, and read as
+ * (count * gain) + offset. A 16-bit count holds a sensor's range in half the bytes of a float.
+ *
+ * Values are rounded to the nearest count when set; values beyond the storage's range are stored
+ * as its limit, as a sensor saturates.
+ */
+public final class ScaledDataChannel extends DataChannel<Float> {
+
+	private final IntegerType storage;
+	private final double gain;
+	private final double offset;
+
+	/**
+	 * @param storage the storage of the counts
+	 * @param gain the value of one count; not zero
+	 * @param offset the value of a count of zero
+	 */
+	public ScaledDataChannel(String name, String units, int byteOffset, IntegerType storage, double gain, double offset,
+			DataManager manager, DataChannelGroup group) {
+		super(name, units, byteOffset, manager, group);
+		if (gain == 0 || Double.isNaN(gain) || Double.isInfinite(gain)) {
+			throw new IllegalArgumentException(String.format("Invalid gain %s for channel %s", gain, name));
+		}
+		this.storage = storage;
+		this.gain = gain;
+		this.offset = offset;
+	}
+
+	public IntegerType getStorage() {
+		return this.storage;
+	}
+
+	public double getGain() {
+		return this.gain;
+	}
+
+	public double getOffset() {
+		return this.offset;
+	}
+
+	@Override
+	public int getByteCount() {
+		return this.storage.getByteCount();
+	}
+
+	/**
+	 * Gets the value for the frame and sample indexes, without boxing.
+	 * @param frameIndex the frame index containing the value
+	 * @param sampleIndex the sample index containing the value
+	 * @return the value
+	 */
+	public float getFloat(int frameIndex, int sampleIndex) {
+		return (float) toValue(getCount(frameIndex, sampleIndex));
+	}
+
+	public float getFloat(int index) {
+		int frameIndex = index / this.group.getSampleRate();
+		int sampleIndex = index % this.group.getSampleRate();
+		return this.getFloat(frameIndex, sampleIndex);
+	}
+
+	/**
+	 * Sets the value for the frame and sample indexes, without boxing.
+	 * @param value the value to set
+	 * @param frameIndex the frame index to contain the value
+	 * @param sampleIndex the sample index to contain the value
+	 */
+	public void setFloat(float value, int frameIndex, int sampleIndex) {
+		setCount(toCount(value), frameIndex, sampleIndex);
+	}
+
+	public void setFloat(float value, int index) {
+		int frameIndex = index / this.group.getSampleRate();
+		int sampleIndex = index % this.group.getSampleRate();
+		this.setFloat(value, frameIndex, sampleIndex);
+	}
+
+	/**
+	 * Gets the stored count for the frame and sample indexes.
+	 * @param frameIndex the frame index containing the value
+	 * @param sampleIndex the sample index containing the value
+	 * @return the count
+	 */
+	public int getCount(int frameIndex, int sampleIndex) {
+		countReads(1);
+		int offset = valueOffset(frameIndex, sampleIndex);
+		int value;
+		long stamp;
+		do {
+			stamp = this.manager.startRead(frameIndex);
+			value = this.storage.read(this.manager.getFrameBuffer(frameIndex), offset);
+		} while (!this.manager.validateRead(stamp));
+		return value;
+	}
+
+	/**
+	 * Sets the stored count for the frame and sample indexes, such as a raw ADC reading.
+	 * @param count the count, within the storage's range
+	 * @param frameIndex the frame index to contain the value
+	 * @param sampleIndex the sample index to contain the value
+	 * @throws IllegalArgumentException if the count is out of the storage's range
+	 */
+	public void setCount(int count, int frameIndex, int sampleIndex) {
+		if (count < this.storage.getMinimum() || count > this.storage.getMaximum()) {
+			throw new IllegalArgumentException(String.format("%s is out of range for %s channel %s",
+					count, this.storage.getTypeName(), this.name));
+		}
+		ByteBuffer buffer = this.manager.getFrameBufferForWrite(frameIndex);
+		this.storage.write(buffer, valueOffset(frameIndex, sampleIndex), count);
+		countWrites(1);
+	}
+
+	@Override
+	protected void insertValueIntoFrame(Float value, ByteBuffer buffer, int offset) {
+		this.storage.write(buffer, offset, toCount(value));
+	}
+
+	@Override
+	protected Float extractValueFromFrame(ByteBuffer buffer, int offset) {
+		return (float) toValue(this.storage.read(buffer, offset));
+	}
+
+	double toValue(int count) {
+		return (count * this.gain) + this.offset;
+	}
+
+	/**
+	 * @return the nearest count to a value, limited to the storage's range
+	 */
+	int toCount(float value) {
+		double count = Math.rint((value - this.offset) / this.gain);
+		return (int) Math.max(this.storage.getMinimum(), Math.min(this.storage.getMaximum(), count));
+	}
+
+}
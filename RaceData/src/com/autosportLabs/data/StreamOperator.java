@@ -0,0 +1,293 @@
+package com.autosportLabs.data;
+
+import java.util.Arrays;
+
+/**
+ * Derives a channel from an AnalogDataChannel, sample by sample, as the input's samples are published.
+ *
+ * The output is a virtual channel, with the same sample rate and sample indexes as the input, held
+ * in memory rather than in the frames of the input's DataManager. DataManager.addStreamOperator()
+ * registers the output under its name, after which the operator processes each sample published
+ * by DataChannelGroup.publishSamples() on the writer thread, and publishes the output in turn.
+ * An output can be the input of another operator.
+ *
+ * Samples are processed a frame (or less) at a time, through arrays allocated with the operator,
+ * so processing does not allocate. Operators keep their state between samples, so each input
+ * sample is processed exactly once, in order. The state at the start of each frame is kept as a
+ * checkpoint; if published input samples are revised (DataChannelGroup.reviseSamples()), the
+ * operator returns to its state at the start of the first frame revised and processes its input
+ * again from there, rather than from the first sample.
+ */
+public abstract class StreamOperator {
+
+	private static final String OUTPUT_GROUP = "Derived";
+	private static final int ANALOG_SAMPLE_BYTES = 5;	// validity, then the float
+	private static final int BOOLEAN_SAMPLE_BYTES = 1;	// validity in bit 0, the value in bit 1
+
+	protected final AnalogDataChannel input;
+	private final DataChannelGroup inputGroup;
+	private final DataChannelGroup outputGroup;
+	private final AnalogDataChannel analogOutput;
+	private final BooleanDataChannel booleanOutput;
+
+	/** The time between samples, in seconds. */
+	protected final double samplePeriod;
+
+	// The number of input samples processed (from index 0).
+	private int processedCount = 0;
+	
+	// The state at the start of each frame processed, stateSize() values per frame, for revise(). In
+	// live mode, only as many frames as the input's DataManager holds are kept, reusing slots in turn.
+	private double[] checkpoints = new double[0];
+	private int[] checkpointFrames = new int[0];	// the frame of each slot's checkpoint, or -1
+
+	// The input and output of process(), for up to a frame of samples.
+	protected final float[] values;
+	protected final long[] validity;
+	protected final float[] results;
+	protected final long[] resultValidity;
+
+	/**
+	 * @param input the channel to derive from
+	 * @param outputName the name of the output channel
+	 * @param outputUnits the units of the output channel
+	 * @param booleanOutput true for a BooleanDataChannel output, false for an AnalogDataChannel output
+	 */
+	StreamOperator(AnalogDataChannel input, String outputName, String outputUnits, boolean booleanOutput) throws Exception {
+		this.input = input;
+		this.inputGroup = input.getGroup();
+		int sampleRate = this.inputGroup.getSampleRate();
+		int framePeriod = input.manager.getFramePeriod();
+		this.samplePeriod = framePeriod / (1000.0 * sampleRate);
+
+		int sampleBytes = booleanOutput ? BOOLEAN_SAMPLE_BYTES : ANALOG_SAMPLE_BYTES;
+		DataManager storage = new DataManager(String.format(
+				"{\"framePeriod\":%s,\"frameBytes\":%s,\"dataChannelGroups\":[{\"groupName\":\"%s\",\"groupSampleRate\":%s,"
+				+ "\"groupByteOffset\":0,\"groupSampleBytes\":%s,\"groupChannels\":[]}]}",
+				framePeriod, sampleRate * sampleBytes, OUTPUT_GROUP, sampleRate, sampleBytes));
+		this.outputGroup = storage.getDataChannelGroup(OUTPUT_GROUP);
+		if (booleanOutput) {
+			this.booleanOutput = new BooleanDataChannel(outputName, outputUnits, 0, 1, storage, this.outputGroup);
+			this.analogOutput = null;
+		} else {
+			this.analogOutput = new AnalogDataChannel(outputName, outputUnits, 1, storage, this.outputGroup);
+			this.booleanOutput = null;
+		}
+
+		this.values = new float[sampleRate];
+		this.validity = new long[(sampleRate + 63) / 64];
+		this.results = new float[sampleRate];
+		this.resultValidity = new long[this.validity.length];
+	}
+
+	public AnalogDataChannel getInput() {
+		return this.input;
+	}
+
+	/**
+	 * @return the output channel: an AnalogDataChannel, or a BooleanDataChannel
+	 */
+	public DataChannel<?> getOutput() {
+		return this.booleanOutput != null ? this.booleanOutput : this.analogOutput;
+	}
+
+	/**
+	 * @return the number of input samples processed, which is also the output's published sample count
+	 */
+	public int getProcessedCount() {
+		return this.processedCount;
+	}
+
+	/**
+	 * Processes the input samples up to an index.
+	 * @param toIndex the sample index to process to (exclusive)
+	 */
+	void advance(int toIndex) {
+		int sampleRate = this.inputGroup.getSampleRate();
+		while (this.processedCount < toIndex) {
+			int fromIndex = this.processedCount;
+			if (fromIndex % sampleRate == 0) {
+				saveCheckpoint(fromIndex / sampleRate);
+			}
+			int count = Math.min(toIndex - fromIndex, sampleRate - (fromIndex % sampleRate));
+			processInput(fromIndex, count);
+
+			// Output samples already published (when revising) are rewritten under the revision lock.
+			boolean revising = fromIndex < this.outputGroup.getPublishedSampleCount();
+			long stamp = revising ? this.outputGroup.beginRevision() : 0;
+			try {
+				if (this.booleanOutput != null) {
+					for (int i = 0; i < count; i++) {
+						this.booleanOutput.setBoolean(this.results[i] != 0, fromIndex + i);
+					}
+				} else {
+					this.analogOutput.writeFloats(this.results, 0, fromIndex, fromIndex + count);
+				}
+				this.outputGroup.writeValidity(this.resultValidity, fromIndex, fromIndex + count);
+			} finally {
+				if (revising) {
+					this.outputGroup.endRevision(stamp);
+				}
+			}
+
+			this.processedCount = fromIndex + count;
+			this.outputGroup.publishSamples(this.processedCount);
+		}
+	}
+
+	/**
+	 * Starts processing at a later input sample, such as the oldest sample still held by a
+	 * DataManager in live mode. The output samples skipped are invalid.
+	 * @param index the sample index to process from
+	 */
+	void skipTo(int index) {
+		if (index > this.processedCount) {
+			this.processedCount = index;
+			this.outputGroup.publishSamples(index);
+		}
+	}
+	
+	/**
+	 * Processes the input again after published input samples from an index were revised, such
+	 * as by a telemetry backfill. The operator returns to its state at the start of the frame
+	 * holding that index (see restoreState()), or, failing that, is reset to process every input
+	 * sample held again from the first (in live mode, the oldest held). It rewrites its output in
+	 * place, and the output samples are then revised in turn.
+	 * @param fromIndex the first sample index revised
+	 */
+	void revise(int fromIndex) {
+		int toIndex = this.processedCount;
+		if (fromIndex >= toIndex) {
+			return;
+		}
+		int sampleRate = this.inputGroup.getSampleRate();
+		int firstIndex = this.input.manager.getFirstFrameIndex() * sampleRate;
+		int restartIndex = Math.max(fromIndex - (fromIndex % sampleRate), firstIndex);
+		if (restartIndex >= toIndex) {
+			return;
+		}
+		if (!restoreState(restartIndex / sampleRate)) {
+			reset();
+			restartIndex = firstIndex;
+		}
+		this.processedCount = restartIndex;
+		advance(toIndex);
+		this.outputGroup.reviseSamples(restartIndex, toIndex);
+	}
+	
+	/**
+	 * Returns the operator to its state at the start of a frame, for revise(). By default, the
+	 * state is loaded from the frame's checkpoint (see stateSize()).
+	 * @return false if the state cannot be restored, such as for a frame whose checkpoint is no longer kept
+	 */
+	boolean restoreState(int frameIndex) {
+		int size = stateSize();
+		if (size == 0) {
+			return true;
+		}
+		int slot = checkpointSlot(frameIndex);
+		if (slot >= this.checkpointFrames.length || this.checkpointFrames[slot] != frameIndex) {
+			return false;
+		}
+		loadState(this.checkpoints, slot * size);
+		return true;
+	}
+	
+	/**
+	 * @return the number of values holding the operator's state between samples, kept in each
+	 * frame's checkpoint; 0 for an operator without state
+	 */
+	int stateSize() {
+		return 0;
+	}
+	
+	/**
+	 * Stores the operator's state, stateSize() values, into a checkpoint.
+	 */
+	void saveState(double[] state, int offset) {
+	}
+	
+	/**
+	 * Loads the operator's state from a checkpoint made by saveState().
+	 */
+	void loadState(double[] state, int offset) {
+	}
+	
+	/**
+	 * Returns the operator to its state before the first sample, for revise().
+	 */
+	abstract void reset();
+	
+	/**
+	 * Processes input samples only to rebuild the operator's state, leaving the output unchanged.
+	 * Samples no longer held (in live mode) are skipped.
+	 * @param fromIndex the first sample index (inclusive)
+	 * @param toIndex the last sample index (exclusive)
+	 */
+	final void replay(int fromIndex, int toIndex) {
+		int sampleRate = this.inputGroup.getSampleRate();
+		fromIndex = Math.max(fromIndex, this.input.manager.getFirstFrameIndex() * sampleRate);
+		while (fromIndex < toIndex) {
+			int count = Math.min(toIndex - fromIndex, sampleRate - (fromIndex % sampleRate));
+			processInput(fromIndex, count);
+			fromIndex += count;
+		}
+	}
+	
+	/**
+	 * Reads up to a frame of input samples, and derives the results from them.
+	 */
+	private void processInput(int fromIndex, int count) {
+		this.input.readFloats(fromIndex, fromIndex + count, this.values, 0);
+		this.inputGroup.readValidity(fromIndex, fromIndex + count, this.validity);
+		Arrays.fill(this.resultValidity, 0L);
+
+		process(fromIndex, count);
+	}
+	
+	private void saveCheckpoint(int frameIndex) {
+		int size = stateSize();
+		if (size == 0) {
+			return;
+		}
+		int slot = checkpointSlot(frameIndex);
+		if (slot >= this.checkpointFrames.length) {
+			int oldLength = this.checkpointFrames.length;
+			int length = Math.max(slot + 1, oldLength * 2);
+			this.checkpoints = Arrays.copyOf(this.checkpoints, length * size);
+			this.checkpointFrames = Arrays.copyOf(this.checkpointFrames, length);
+			Arrays.fill(this.checkpointFrames, oldLength, length, -1);
+		}
+		saveState(this.checkpoints, slot * size);
+		this.checkpointFrames[slot] = frameIndex;
+	}
+	
+	private int checkpointSlot(int frameIndex) {
+		int limit = this.input.manager.getLiveFrameLimit();
+		return limit > 0 ? frameIndex % limit : frameIndex;
+	}
+	
+	/**
+	 * Derives output samples from input samples. values and validity hold the input samples;
+	 * set results and resultValidity (which is cleared) for the same samples.
+	 * For a BooleanDataChannel output, a nonzero result is true.
+	 * @param fromIndex the sample index of the first sample
+	 * @param count the number of samples
+	 */
+	abstract void process(int fromIndex, int count);
+
+	/**
+	 * @return true if the input sample at a position in values is valid
+	 */
+	protected final boolean isValid(int position) {
+		return (this.validity[position >>> 6] & (1L << position)) != 0;
+	}
+
+	/**
+	 * Marks the result at a position in results as valid.
+	 */
+	protected final void setResultValid(int position) {
+		this.resultValidity[position >>> 6] |= (1L << position);
+	}
+
+}
@@ -0,0 +1,65 @@
+package com.autosportLabs.data;
+
+/**
+ * Consecutive buckets of a ChannelSummary, each summarizing the valid samples of the same number of frames.
+ * The min, max and mean of a bucket with no valid samples are NaN.
+ */
+public final class SummaryBuckets {
+
+	private final int firstFrame;
+	private final int framesPerBucket;
+	private final float[] min;
+	private final float[] max;
+	private final double[] sum;
+	private final int[] count;
+
+	SummaryBuckets(int firstFrame, int framesPerBucket, float[] min, float[] max, double[] sum, int[] count) {
+		this.firstFrame = firstFrame;
+		this.framesPerBucket = framesPerBucket;
+		this.min = min;
+		this.max = max;
+		this.sum = sum;
+		this.count = count;
+	}
+
+	/**
+	 * @return the number of buckets
+	 */
+	public int size() {
+		return this.count.length;
+	}
+
+	/**
+	 * @return the index of the first frame of the first bucket
+	 */
+	public int getFirstFrame() {
+		return this.firstFrame;
+	}
+
+	/**
+	 * @return the number of frames in each bucket
+	 */
+	public int getFramesPerBucket() {
+		return this.framesPerBucket;
+	}
+
+	public float getMin(int bucket) {
+		return this.count[bucket] > 0 ? this.min[bucket] : Float.NaN;
+	}
+
+	public float getMax(int bucket) {
+		return this.count[bucket] > 0 ? this.max[bucket] : Float.NaN;
+	}
+
+	public double getMean(int bucket) {
+		return this.count[bucket] > 0 ? this.sum[bucket] / this.count[bucket] : Double.NaN;
+	}
+
+	/**
+	 * @return the number of valid samples in the bucket
+	 */
+	public int getCount(int bucket) {
+		return this.count[bucket];
+	}
+
+}
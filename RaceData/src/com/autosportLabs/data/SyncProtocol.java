@@ -0,0 +1,60 @@
+package com.autosportLabs.data;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The wire format shared by SyncSender and SyncReceiver.
+ * 
+ * Every message starts with a type byte. Integers are unsigned variable-length (7 bits per byte,
+ * low bits first, high bit set on all but the last byte). Groups are identified by their position
+ * in the configuration, so both DataManagers must share one configuration definition.
+ * 
+ * SAMPLE_DATA: a sequence of records, each holding one group's samples in one frame:
+ *   group id, frame index, sample bitmap (one bit per sample slot, bit 0 of byte 0 first),
+ *   then the sample set bytes of each slot whose bit is set, in slot order.
+ *   
+ * BACKFILL_REQUEST: group id, first sample index, sample count, then a bitmap (one bit per sample)
+ *   of the samples the receiver already holds, which are not to be sent.
+ */
+final class SyncProtocol {
+	
+	static final byte SAMPLE_DATA = 1;
+	static final byte BACKFILL_REQUEST = 2;
+	
+	private SyncProtocol() {
+	}
+	
+	static void putVarint(ByteBuffer buffer, int value) {
+		while ((value & ~0x7F) != 0) {
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+	
+	static int getVarint(ByteBuffer buffer) {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			byte next = buffer.get();
+			value |= (next & 0x7F) << shift;
+			if ((next & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Malformed variable-length integer");
+	}
+	
+	static int varintSize(int value) {
+		int size = 1;
+		while ((value & ~0x7F) != 0) {
+			value >>>= 7;
+			size++;
+		}
+		return size;
+	}
+	
+	static int bitmapBytes(int bitCount) {
+		return (bitCount + 7) / 8;
+	}
+	
+}
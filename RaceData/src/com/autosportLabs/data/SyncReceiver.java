@@ -0,0 +1,283 @@
+package com.autosportLabs.data;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Applies the messages of a SyncSender to a DataManager of the same configuration, such as at the pits.
+ * 
+ * Samples are written into their frames as they arrive, and each group's published sample count
+ * is raised to just past the latest sample received, so readers of the receiving DataManager
+ * follow along. Samples skipped by a sender's sample interval are missing (invalid) until a
+ * backfill request fetches them.
+ * 
+ * Use from one thread, the receiving DataManager's writer.
+ */
+public class SyncReceiver {
+
+	private final DataManager manager;
+	private final List<DataChannelGroup> groups;
+	private final int maximumMessageBytes;
+	
+	// The range of samples already published that the message being applied changed, per group.
+	private final int[] revisedFrom;
+	private final int[] revisedTo;
+	
+	private long messageCount = 0;
+	private long sampleCount = 0;
+	private long byteCount = 0;
+	
+	/**
+	 * @param manager the DataManager to write into
+	 * @param maximumMessageBytes the largest message to produce, such as a datagram payload limit
+	 */
+	public SyncReceiver(DataManager manager, int maximumMessageBytes) {
+		this.manager = manager;
+		this.groups = manager.getDataChannelGroups();
+		this.maximumMessageBytes = maximumMessageBytes;
+		this.revisedFrom = new int[this.groups.size()];
+		this.revisedTo = new int[this.groups.size()];
+	}
+	
+	/**
+	 * Writes the samples in a message into the DataManager.
+	 * 
+	 * Samples beyond those published are published with DataChannelGroup.publishSamples().
+	 * Samples already published (a backfill of missing samples) may be in use by readers, so they
+	 * are written between DataChannelGroup.beginRevision() and endRevision(), and published once
+	 * per group and message with DataChannelGroup.reviseSamples(), which also passes them to the
+	 * group's StreamOperators and ChannelSummaries.
+	 * @param message the message
+	 * @return the number of samples written
+	 * @throws Exception if the message is not a valid sample data message, or is for a frame no longer held
+	 */
+	public int apply(ByteBuffer message) throws Exception {
+		ByteBuffer input = message.duplicate();
+		if (!input.hasRemaining() || input.get() != SyncProtocol.SAMPLE_DATA) {
+			throw new Exception("Not a sample data message");
+		}
+		this.messageCount++;
+		this.byteCount += message.remaining();
+		
+		int applied = 0;
+		Arrays.fill(this.revisedFrom, Integer.MAX_VALUE);
+		Arrays.fill(this.revisedTo, 0);
+		try {
+			while (input.hasRemaining()) {
+				applied += applyFrame(input);
+			}
+		} catch (BufferUnderflowException e) {
+			throw new Exception("Invalid sample data message: truncated", e);
+		} catch (IllegalArgumentException e) {
+			throw new Exception("Invalid sample data message: " + e.getMessage(), e);
+		} catch (IndexOutOfBoundsException e) {
+			throw new Exception("Invalid sample data message: " + e.getMessage(), e);
+		} finally {
+			// Samples of frames applied before any error are revised too.
+			for (int groupId = 0; groupId < this.groups.size(); groupId++) {
+				if (this.revisedFrom[groupId] < this.revisedTo[groupId]) {
+					this.groups.get(groupId).reviseSamples(this.revisedFrom[groupId], this.revisedTo[groupId]);
+				}
+			}
+		}
+		this.sampleCount += applied;
+		DataMetrics metrics = this.manager.getMetrics();
+		if (metrics != null) {
+			metrics.telemetrySamplesReceived.add(applied);
+		}
+		return applied;
+	}
+	
+	/**
+	 * Writes the samples of one group and frame from a message.
+	 * @return the number of samples written
+	 */
+	private int applyFrame(ByteBuffer input) throws Exception {
+		int groupId = SyncProtocol.getVarint(input);
+		if (groupId < 0 || groupId >= this.groups.size()) {
+			throw new Exception(String.format("Unknown group %s", groupId));
+		}
+		DataChannelGroup group = this.groups.get(groupId);
+		int frameIndex = SyncProtocol.getVarint(input);
+		int sampleRate = group.getSampleRate();
+		int sampleBytes = group.getSampleBytes();
+		if (frameIndex < 0 || frameIndex >= Integer.MAX_VALUE / sampleRate) {
+			throw new Exception(String.format("Invalid sample data message: frame %s", frameIndex));
+		}
+		int firstFrame = this.manager.getFirstFrameIndex();
+		if (frameIndex < firstFrame) {
+			throw new Exception(String.format("Frame %s is no longer held; the oldest frame held is %s", frameIndex, firstFrame));
+		}
+		
+		// Check the whole of the frame's samples arrived before changing anything.
+		int bitmapOffset = input.position();
+		int bitmapBytes = SyncProtocol.bitmapBytes(sampleRate);
+		if (input.remaining() < bitmapBytes) {
+			throw new BufferUnderflowException();
+		}
+		int present = 0;
+		for (int slot = 0; slot < sampleRate; slot++) {
+			if ((input.get(bitmapOffset + (slot >>> 3)) & (1 << (slot & 7))) != 0) {
+				present++;
+			}
+		}
+		int payloadOffset = bitmapOffset + bitmapBytes;
+		if (input.limit() - payloadOffset < present * sampleBytes) {
+			throw new BufferUnderflowException();
+		}
+		input.position(payloadOffset + (present * sampleBytes));
+		if (present == 0) {
+			return 0;
+		}
+		
+		ByteBuffer buffer = this.manager.getFrameBufferForWrite(frameIndex);
+		int groupOffset = this.manager.getFrameOffset(frameIndex) + group.getByteOffset();
+		int firstUnpublished = group.getPublishedSampleCount() - (frameIndex * sampleRate);
+		
+		// Samples already published are written under the revision lock, so readers never see one half written.
+		int firstSlot = -1;
+		int lastSlot = -1;
+		int backfilled = 0;
+		for (int slot = 0; slot < sampleRate; slot++) {
+			if ((input.get(bitmapOffset + (slot >>> 3)) & (1 << (slot & 7))) != 0) {
+				if (firstSlot < 0) {
+					firstSlot = slot;
+				}
+				lastSlot = slot;
+				if (slot < firstUnpublished) {
+					backfilled++;
+				}
+			}
+		}
+		long stamp = backfilled > 0 ? group.beginRevision() : 0;
+		try {
+			int source = payloadOffset;
+			for (int slot = firstSlot; slot <= lastSlot; slot++) {
+				if ((input.get(bitmapOffset + (slot >>> 3)) & (1 << (slot & 7))) != 0) {
+					int offset = groupOffset + slot * sampleBytes;
+					for (int i = 0; i < sampleBytes; i++) {
+						buffer.put(offset + i, input.get(source + i));
+					}
+					group.validityWritten(frameIndex, slot, (input.get(source) & 0x01) != 0);
+					source += sampleBytes;
+				}
+			}
+		} finally {
+			if (backfilled > 0) {
+				group.endRevision(stamp);
+			}
+		}
+		
+		int frameStart = frameIndex * sampleRate;
+		if (backfilled > 0) {
+			this.revisedFrom[groupId] = Math.min(this.revisedFrom[groupId], frameStart + firstSlot);
+			this.revisedTo[groupId] = Math.max(this.revisedTo[groupId], frameStart + Math.min(lastSlot + 1, firstUnpublished));
+		}
+		int published = frameStart + lastSlot + 1;
+		int previouslyPublished = group.getPublishedSampleCount();
+		if (published > previouslyPublished) {
+			group.publishSamples(published);
+			DataMetrics metrics = this.manager.getMetrics();
+			if (metrics != null) {
+				metrics.telemetrySamplesSkipped.add((published - previouslyPublished) - (present - backfilled));
+			}
+		}
+		return present;
+	}
+	
+	/**
+	 * Encodes requests for the samples of a range that this DataManager does not hold yet.
+	 * Only samples the sender has already sent updates for are served.
+	 * @param group the group
+	 * @param fromIndex the first sample index (inclusive)
+	 * @param toIndex the last sample index (exclusive)
+	 * @return the request messages to send to the SyncSender
+	 * @throws Exception
+	 */
+	public List<ByteBuffer> requestBackfill(DataChannelGroup group, int fromIndex, int toIndex) throws Exception {
+		int groupId = this.groups.indexOf(group);
+		if (groupId < 0) {
+			throw new Exception(String.format("Group %s does not belong to this DataManager", group.getName()));
+		}
+		if (fromIndex < 0 || toIndex < fromIndex) {
+			throw new IndexOutOfBoundsException(String.format("Invalid sample range %s to %s", fromIndex, toIndex));
+		}
+		
+		// Split the range so each request's held bitmap fits in a message
+		int header = 1 + 3 * SyncProtocol.varintSize(Integer.MAX_VALUE);
+		int samplesPerRequest = Math.max(64, (this.maximumMessageBytes - header) * 8 / 64 * 64);
+		int available = Math.min(toIndex, group.getPublishedSampleCount());
+		long[] held = new long[samplesPerRequest / 64];
+		
+		List<ByteBuffer> requests = new ArrayList<ByteBuffer>();
+		for (int start = fromIndex; start < toIndex; start += samplesPerRequest) {
+			int count = Math.min(samplesPerRequest, toIndex - start);
+			int heldEnd = Math.max(start, Math.min(start + count, available));
+			int validCount = group.readValidity(start, heldEnd, held);
+			if (validCount == count) {
+				continue;
+			}
+			
+			ByteBuffer request = ByteBuffer.allocate(header + SyncProtocol.bitmapBytes(count));
+			request.put(SyncProtocol.BACKFILL_REQUEST);
+			SyncProtocol.putVarint(request, groupId);
+			SyncProtocol.putVarint(request, start);
+			SyncProtocol.putVarint(request, count);
+			for (int i = 0; i < SyncProtocol.bitmapBytes(count); i++) {
+				int bit = i * 8;
+				request.put(bit < heldEnd - start ? (byte) (held[bit >>> 6] >>> (bit & 63)) : 0);
+			}
+			request.flip();
+			requests.add(request);
+		}
+		return requests;
+	}
+	
+	/**
+	 * Sends requests for the samples of a range that this DataManager does not hold yet.
+	 * @param transport the link to the sender
+	 * @return the number of requests sent
+	 * @throws Exception
+	 */
+	public int sendBackfillRequest(SyncTransport transport, DataChannelGroup group, int fromIndex, int toIndex) throws Exception {
+		List<ByteBuffer> requests = requestBackfill(group, fromIndex, toIndex);
+		for (ByteBuffer request : requests) {
+			transport.send(request);
+		}
+		return requests.size();
+	}
+	
+	/**
+	 * Applies the messages that have arrived.
+	 * @param transport the link to the sender
+	 * @param timeout the longest time to wait for the first message (in milliseconds)
+	 * @return the number of samples written
+	 * @throws Exception
+	 */
+	public int receive(SyncTransport transport, long timeout) throws Exception {
+		int applied = 0;
+		ByteBuffer message = transport.receive(timeout);
+		while (message != null) {
+			applied += apply(message);
+			message = transport.receive(0);
+		}
+		return applied;
+	}
+	
+	public long getMessageCount() {
+		return this.messageCount;
+	}
+	
+	public long getSampleCount() {
+		return this.sampleCount;
+	}
+	
+	public long getByteCount() {
+		return this.byteCount;
+	}
+	
+}
@@ -0,0 +1,299 @@
+package com.autosportLabs.data;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sends the samples of a capture DataManager to a SyncReceiver, such as at the pits.
+ * 
+ * Only the samples published since the previous update are sent, and only the valid ones, so
+ * each update costs bytes in proportion to the new data. A sample interval per group thins the
+ * live updates for a limited link; the samples skipped can be sent later on a backfill request.
+ * Published samples never change, so a sample that was sent never needs sending again.
+ * 
+ * Use from one thread, which may differ from the capture's writer thread.
+ */
+public class SyncSender {
+
+	private final DataManager manager;
+	private final List<DataChannelGroup> groups;
+	private final int maximumMessageBytes;
+	private final int[] sampleIntervals;
+	private final int[] sentSampleCounts;
+	
+	private long messageCount = 0;
+	private long sampleCount = 0;
+	private long byteCount = 0;
+	
+	/**
+	 * @param manager the capture to send from
+	 * @param maximumMessageBytes the largest message to produce, such as a datagram payload limit
+	 * @throws Exception if a single frame of a group cannot fit in a message
+	 */
+	public SyncSender(DataManager manager, int maximumMessageBytes) throws Exception {
+		this.manager = manager;
+		this.groups = manager.getDataChannelGroups();
+		this.maximumMessageBytes = maximumMessageBytes;
+		this.sampleIntervals = new int[this.groups.size()];
+		this.sentSampleCounts = new int[this.groups.size()];
+		
+		for (int groupId = 0; groupId < this.groups.size(); groupId++) {
+			DataChannelGroup group = this.groups.get(groupId);
+			if (maximumRecordBytes(groupId, group) > maximumMessageBytes) {
+				String message = String.format("A frame of group %s does not fit in %s bytes", group.getName(), maximumMessageBytes);
+				throw new Exception(message);
+			}
+			this.sampleIntervals[groupId] = 1;
+		}
+	}
+	
+	/**
+	 * Sends only every nth sample of a group in updates. Others wait for a backfill request.
+	 * @param group the group
+	 * @param interval the sample index interval (1 sends every sample)
+	 * @throws Exception
+	 */
+	public void setSampleInterval(DataChannelGroup group, int interval) throws Exception {
+		if (interval < 1) {
+			throw new Exception(String.format("Invalid sample interval %s", interval));
+		}
+		this.sampleIntervals[groupId(group)] = interval;
+	}
+	
+	/**
+	 * Encodes the samples published since the previous call.
+	 * @return the messages to send, possibly none
+	 */
+	public List<ByteBuffer> collectUpdates() {
+		MessageBuilder builder = new MessageBuilder(SyncProtocol.SAMPLE_DATA);
+		for (int groupId = 0; groupId < this.groups.size(); groupId++) {
+			DataChannelGroup group = this.groups.get(groupId);
+			int fromIndex = this.sentSampleCounts[groupId];
+			int toIndex = group.getPublishedSampleCount();
+			encodeRange(builder, groupId, group, fromIndex, toIndex, this.sampleIntervals[groupId], null);
+			this.sentSampleCounts[groupId] = toIndex;
+		}
+		return builder.finish();
+	}
+	
+	/**
+	 * Encodes the samples asked for by a SyncReceiver's backfill request.
+	 * Samples not yet sent in updates are left for the updates.
+	 * @param request the request message
+	 * @return the messages to send, possibly none
+	 * @throws Exception if the request is not a valid backfill request
+	 */
+	public List<ByteBuffer> serveBackfill(ByteBuffer request) throws Exception {
+		ByteBuffer input = request.duplicate();
+		if (!input.hasRemaining() || input.get() != SyncProtocol.BACKFILL_REQUEST) {
+			throw new Exception("Not a backfill request");
+		}
+		int groupId;
+		int fromIndex;
+		int count;
+		try {
+			groupId = SyncProtocol.getVarint(input);
+			fromIndex = SyncProtocol.getVarint(input);
+			count = SyncProtocol.getVarint(input);
+		} catch (BufferUnderflowException e) {
+			throw new Exception("Invalid backfill request: truncated", e);
+		} catch (IllegalArgumentException e) {
+			throw new Exception("Invalid backfill request: " + e.getMessage(), e);
+		}
+		if (groupId < 0 || groupId >= this.groups.size()) {
+			throw new Exception(String.format("Unknown group %s", groupId));
+		}
+		// The held bitmap must be in the request, which also bounds the range asked for.
+		if (fromIndex < 0 || count < 0 || count > Integer.MAX_VALUE - fromIndex
+				|| count > (long) input.remaining() * 8) {
+			throw new Exception(String.format("Invalid backfill request: %s samples from %s", count, fromIndex));
+		}
+		byte[] held = new byte[SyncProtocol.bitmapBytes(count)];
+		input.get(held);
+		
+		int toIndex = Math.min(fromIndex + count, this.sentSampleCounts[groupId]);
+		MessageBuilder builder = new MessageBuilder(SyncProtocol.SAMPLE_DATA);
+		encodeRange(builder, groupId, this.groups.get(groupId), fromIndex, toIndex, 1, held);
+		return builder.finish();
+	}
+	
+	/**
+	 * Sends the samples published since the previous update.
+	 * @param transport the link to the receiver
+	 * @return the number of messages sent
+	 * @throws IOException
+	 */
+	public int sendUpdates(SyncTransport transport) throws IOException {
+		List<ByteBuffer> messages = collectUpdates();
+		for (ByteBuffer message : messages) {
+			transport.send(message);
+		}
+		return messages.size();
+	}
+	
+	/**
+	 * Answers the backfill requests that have arrived. An invalid request does not stop the
+	 * others being served; the first such failure is thrown once they have been.
+	 * @param transport the link to the receiver
+	 * @param timeout the longest time to wait for the first request (in milliseconds)
+	 * @return the number of requests served
+	 * @throws Exception
+	 */
+	public int serveBackfill(SyncTransport transport, long timeout) throws Exception {
+		int served = 0;
+		Exception failure = null;
+		ByteBuffer request = transport.receive(timeout);
+		while (request != null) {
+			List<ByteBuffer> messages = null;
+			try {
+				messages = serveBackfill(request);
+			} catch (Exception e) {
+				if (failure == null) {
+					failure = e;
+				}
+			}
+			if (messages != null) {
+				for (ByteBuffer message : messages) {
+					transport.send(message);
+				}
+				served++;
+			}
+			request = transport.receive(0);
+		}
+		if (failure != null) {
+			throw failure;
+		}
+		return served;
+	}
+	
+	public long getMessageCount() {
+		return this.messageCount;
+	}
+	
+	public long getSampleCount() {
+		return this.sampleCount;
+	}
+	
+	public long getByteCount() {
+		return this.byteCount;
+	}
+	
+	private int groupId(DataChannelGroup group) throws Exception {
+		int groupId = this.groups.indexOf(group);
+		if (groupId < 0) {
+			throw new Exception(String.format("Group %s does not belong to this DataManager", group.getName()));
+		}
+		return groupId;
+	}
+	
+	private static int maximumRecordBytes(int groupId, DataChannelGroup group) {
+		return 1 + SyncProtocol.varintSize(groupId) + SyncProtocol.varintSize(Integer.MAX_VALUE)
+				+ SyncProtocol.bitmapBytes(group.getSampleRate()) + group.getSampleRate() * group.getSampleBytes();
+	}
+	
+	/**
+	 * Adds one record per frame for the valid samples in a range that fall on the interval
+	 * and are not marked in the held bitmap (indexed from fromIndex).
+	 */
+	private void encodeRange(MessageBuilder builder, int groupId, DataChannelGroup group,
+			int fromIndex, int toIndex, int interval, byte[] held) {
+		int sampleRate = group.getSampleRate();
+		int sampleBytes = group.getSampleBytes();
+		byte[] bitmap = new byte[SyncProtocol.bitmapBytes(sampleRate)];
+		
+		int index = fromIndex;
+		while (index < toIndex) {
+			int frameIndex = index / sampleRate;
+			int frameEnd = Math.min(toIndex, (frameIndex + 1) * sampleRate);
+			ByteBuffer buffer = this.manager.getFrameBuffer(frameIndex);
+			int groupOffset = this.manager.getFrameOffset(frameIndex) + group.getByteOffset();
+			
+			// Select the samples to send
+			Arrays.fill(bitmap, (byte) 0);
+			int selected = 0;
+			for (; index < frameEnd; index++) {
+				int heldBit = index - fromIndex;
+				if (index % interval != 0
+						|| (held != null && (held[heldBit >>> 3] & (1 << (heldBit & 7))) != 0)) {
+					continue;
+				}
+				int slot = index % sampleRate;
+				if ((buffer.get(groupOffset + slot * sampleBytes) & 0x01) != 0) {
+					bitmap[slot >>> 3] |= (byte) (1 << (slot & 7));
+					selected++;
+				}
+			}
+			if (selected == 0) {
+				continue;
+			}
+			
+			ByteBuffer output = builder.reserve(SyncProtocol.varintSize(groupId) + SyncProtocol.varintSize(frameIndex)
+					+ bitmap.length + selected * sampleBytes);
+			SyncProtocol.putVarint(output, groupId);
+			SyncProtocol.putVarint(output, frameIndex);
+			output.put(bitmap);
+			
+			// Copy each run of selected sample sets in one bulk transfer from a view of the frame
+			ByteBuffer frame = group.getFrameSlice(frameIndex);
+			int slot = 0;
+			while (slot < sampleRate) {
+				if ((bitmap[slot >>> 3] & (1 << (slot & 7))) == 0) {
+					slot++;
+					continue;
+				}
+				int runStart = slot;
+				while (slot < sampleRate && (bitmap[slot >>> 3] & (1 << (slot & 7))) != 0) {
+					slot++;
+				}
+				frame.clear();
+				frame.limit(slot * sampleBytes);
+				frame.position(runStart * sampleBytes);
+				output.put(frame);
+			}
+			this.sampleCount += selected;
+		}
+	}
+	
+	/**
+	 * Packs records into messages no larger than the maximum message size.
+	 */
+	private class MessageBuilder {
+		
+		private final byte type;
+		private final List<ByteBuffer> messages = new ArrayList<ByteBuffer>();
+		private ByteBuffer current;
+		
+		MessageBuilder(byte type) {
+			this.type = type;
+		}
+		
+		ByteBuffer reserve(int recordBytes) {
+			if (this.current == null || this.current.remaining() < recordBytes) {
+				close();
+				this.current = ByteBuffer.allocate(SyncSender.this.maximumMessageBytes);
+				this.current.put(this.type);
+			}
+			return this.current;
+		}
+		
+		List<ByteBuffer> finish() {
+			close();
+			return this.messages;
+		}
+		
+		private void close() {
+			if (this.current != null) {
+				this.current.flip();
+				this.messages.add(this.current);
+				SyncSender.this.messageCount++;
+				SyncSender.this.byteCount += this.current.remaining();
+				this.current = null;
+			}
+		}
+	}
+	
+}
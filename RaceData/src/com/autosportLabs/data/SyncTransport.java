@@ -0,0 +1,28 @@
+package com.autosportLabs.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Carries sync messages between a SyncSender and a SyncReceiver.
+ */
+public interface SyncTransport {
+
+	/**
+	 * Sends a message. The message's remaining bytes are sent; the buffer may be reused on return.
+	 * @param message the message
+	 * @throws IOException
+	 */
+	void send(ByteBuffer message) throws IOException;
+	
+	/**
+	 * Waits for the next message.
+	 * @param timeout the longest time to wait (in milliseconds)
+	 * @return the message, or null if none arrived in time
+	 * @throws IOException
+	 */
+	ByteBuffer receive(long timeout) throws IOException;
+	
+	void close() throws IOException;
+	
+}
@@ -0,0 +1,68 @@
+package com.autosportLabs.data;
+
+/**
+ * A flag for a channel being above a threshold, such as an alert. The flag is set when a valid
+ * sample reaches the rising threshold, and cleared when one falls below the falling threshold;
+ * a falling threshold below the rising one adds hysteresis, so noise near the threshold does
+ * not toggle the flag. The output is a BooleanDataChannel, valid where the input is valid.
+ */
+public final class ThresholdOperator extends StreamOperator {
+
+	private final float risingThreshold;
+	private final float fallingThreshold;
+	private boolean set = false;
+
+	/**
+	 * @param input the channel to watch
+	 * @param outputName the name of the output channel
+	 * @param risingThreshold the value at or above which the flag is set
+	 * @param fallingThreshold the value below which the flag is cleared; at most the rising threshold
+	 */
+	public ThresholdOperator(AnalogDataChannel input, String outputName, float risingThreshold, float fallingThreshold)
+			throws Exception {
+		super(input, outputName, "", true);
+		if (fallingThreshold > risingThreshold) {
+			throw new Exception(String.format("The falling threshold %s is above the rising threshold %s",
+					fallingThreshold, risingThreshold));
+		}
+		this.risingThreshold = risingThreshold;
+		this.fallingThreshold = fallingThreshold;
+	}
+
+	@Override
+	void reset() {
+		this.set = false;
+	}
+
+	@Override
+	int stateSize() {
+		return 1;
+	}
+
+	@Override
+	void saveState(double[] state, int offset) {
+		state[offset] = this.set ? 1 : 0;
+	}
+
+	@Override
+	void loadState(double[] state, int offset) {
+		this.set = state[offset] != 0;
+	}
+
+	@Override
+	void process(int fromIndex, int count) {
+		for (int i = 0; i < count; i++) {
+			if (isValid(i)) {
+				float value = this.values[i];
+				if (value >= this.risingThreshold) {
+					this.set = true;
+				} else if (value < this.fallingThreshold) {
+					this.set = false;
+				}
+				setResultValid(i);
+			}
+			this.results[i] = this.set ? 1 : 0;
+		}
+	}
+
+}
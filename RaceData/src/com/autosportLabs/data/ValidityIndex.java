@@ -0,0 +1,197 @@
+package com.autosportLabs.data;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A bitmap of the validity of a DataChannelGroup's samples, kept alongside the frames so readers can
+ * find valid samples by scanning words rather than reading the validity byte of every sample.
+ *
+ * Each frame has its own run of words, with bit n of the run for sample index n of the frame.
+ * A frame's run is filled from the frame when the writer first changes the frame's validity through
+ * the group (or when frames are indexed in bulk); from then on, the group keeps it up to date.
+ * Frames that have not been indexed are read from the frame itself. For a DataManager in live mode,
+ * the index holds runs for only as many frames as the frame store, reusing them in turn.
+ *
+ * The writer updates the bitmap; readers may use it for published samples, as for the frames.
+ */
+final class ValidityIndex {
+
+	private final DataChannelGroup group;
+	private final DataManager manager;
+	private final int sampleRate;
+	private final int sampleBytes;
+	private final int wordsPerFrame;
+
+	// The number of frames held, reusing runs in turn; 0 to hold every frame.
+	private int slotCount = 0;
+	
+	// Replaced, never changed in place, when they grow.
+	private volatile long[] words = new long[0];
+	private volatile int[] slotFrames = new int[0];		// the frame indexed in each run, or -1
+
+	ValidityIndex(DataChannelGroup group, DataManager manager) {
+		this.group = group;
+		this.manager = manager;
+		this.sampleRate = group.getSampleRate();
+		this.sampleBytes = group.getSampleBytes();
+		this.wordsPerFrame = (this.sampleRate + 63) / 64;
+	}
+
+	/**
+	 * Holds runs for only a number of frames, for a frame store that holds that many. Discards the index.
+	 * @param frames the number of frames; 0 to hold every frame
+	 */
+	void setSlotCount(int frames) {
+		this.slotCount = frames;
+		this.words = new long[frames * this.wordsPerFrame];
+		int[] emptySlots = new int[frames];
+		Arrays.fill(emptySlots, -1);
+		this.slotFrames = emptySlots;
+	}
+	
+	boolean isIndexed(int frameIndex) {
+		int[] frames = this.slotFrames;
+		int slot = slot(frameIndex);
+		return slot < frames.length && frames[slot] == frameIndex;
+	}
+
+	/**
+	 * Records the validity of a sample written by the writer.
+	 */
+	void set(int frameIndex, int sampleIndex, boolean isValid) {
+		if (!isIndexed(frameIndex)) {
+			indexFrame(frameIndex);
+		}
+		int word = (slot(frameIndex) * this.wordsPerFrame) + (sampleIndex >>> 6);
+		if (isValid) {
+			this.words[word] |= (1L << sampleIndex);
+		} else {
+			this.words[word] &= ~(1L << sampleIndex);
+		}
+	}
+
+	/**
+	 * Fills a frame's run of words from the frame's validity bytes.
+	 */
+	void indexFrame(int frameIndex) {
+		if (this.slotCount == 0) {
+			ensureCapacity(frameIndex);
+		}
+		ByteBuffer buffer = this.manager.getFrameBuffer(frameIndex);
+		int offset = this.manager.getFrameOffset(frameIndex) + this.group.getByteOffset();
+		long[] currentWords = this.words;
+		int slot = slot(frameIndex);
+		int firstWord = slot * this.wordsPerFrame;
+		Arrays.fill(currentWords, firstWord, firstWord + this.wordsPerFrame, 0L);
+		for (int sampleIndex = 0; sampleIndex < this.sampleRate; sampleIndex++) {
+			if ((buffer.get(offset) & 0x01) != 0) {
+				currentWords[firstWord + (sampleIndex >>> 6)] |= (1L << sampleIndex);
+			}
+			offset += this.sampleBytes;
+		}
+		this.slotFrames[slot] = frameIndex;
+	}
+
+	/**
+	 * Gets a word of a frame's validity: the indexed bits, or bits read from the frame.
+	 * @param wordIndex the word within the frame's run
+	 */
+	long frameWord(int frameIndex, int wordIndex) {
+		if (isIndexed(frameIndex)) {
+			return this.words[(slot(frameIndex) * this.wordsPerFrame) + wordIndex];
+		}
+		ByteBuffer buffer = this.manager.getFrameBuffer(frameIndex);
+		int firstSample = wordIndex * 64;
+		int count = Math.min(64, this.sampleRate - firstSample);
+		int offset = this.manager.getFrameOffset(frameIndex) + this.group.getByteOffset() + (firstSample * this.sampleBytes);
+		long word = 0;
+		for (int bit = 0; bit < count; bit++) {
+			if ((buffer.get(offset) & 0x01) != 0) {
+				word |= (1L << bit);
+			}
+			offset += this.sampleBytes;
+		}
+		return word;
+	}
+
+	/**
+	 * @return the first valid sample index in the range, or -1 if there is none
+	 */
+	int nextValid(int fromIndex, int toIndex) {
+		return next(fromIndex, toIndex, false);
+	}
+
+	/**
+	 * @return the first invalid sample index in the range, or -1 if there is none
+	 */
+	int nextInvalid(int fromIndex, int toIndex) {
+		return next(fromIndex, toIndex, true);
+	}
+
+	private int next(int fromIndex, int toIndex, boolean invert) {
+		int index = fromIndex;
+		while (index < toIndex) {
+			int frameIndex = index / this.sampleRate;
+			int sampleIndex = index - (frameIndex * this.sampleRate);
+			int wordIndex = sampleIndex >>> 6;
+			long word = frameWord(frameIndex, wordIndex);
+			if (invert) {
+				word = ~word;
+			}
+			word &= -1L << sampleIndex;		// samples before the start; the shift uses the low 6 bits
+			int wordEnd = Math.min(this.sampleRate, (wordIndex + 1) * 64);
+			if (word != 0) {
+				int found = (frameIndex * this.sampleRate) + (wordIndex * 64) + Long.numberOfTrailingZeros(word);
+				if (found < (frameIndex * this.sampleRate) + wordEnd) {
+					return found < toIndex ? found : -1;
+				}
+			}
+			index = (frameIndex * this.sampleRate) + wordEnd;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the number of valid samples in the range
+	 */
+	int validCount(int fromIndex, int toIndex) {
+		int count = 0;
+		int index = fromIndex;
+		while (index < toIndex) {
+			int frameIndex = index / this.sampleRate;
+			int sampleIndex = index - (frameIndex * this.sampleRate);
+			int wordIndex = sampleIndex >>> 6;
+			int frameStart = frameIndex * this.sampleRate;
+			int wordEnd = Math.min(this.sampleRate, (wordIndex + 1) * 64);
+			int end = Math.min(toIndex - frameStart, wordEnd);		// exclusive, within the frame
+
+			long word = frameWord(frameIndex, wordIndex) & (-1L << sampleIndex);
+			int endBit = end - (wordIndex * 64);
+			if (endBit < 64) {
+				word &= (1L << endBit) - 1;
+			}
+			count += Long.bitCount(word);
+			index = frameStart + end;
+		}
+		return count;
+	}
+
+	private void ensureCapacity(int frameIndex) {
+		int wordsNeeded = (frameIndex + 1) * this.wordsPerFrame;
+		if (wordsNeeded > this.words.length) {
+			this.words = Arrays.copyOf(this.words, Math.max(wordsNeeded, this.words.length * 2));
+		}
+		if (frameIndex >= this.slotFrames.length) {
+			int oldLength = this.slotFrames.length;
+			int[] frames = Arrays.copyOf(this.slotFrames, Math.max(frameIndex + 1, oldLength * 2));
+			Arrays.fill(frames, oldLength, frames.length, -1);
+			this.slotFrames = frames;
+		}
+	}
+	
+	private int slot(int frameIndex) {
+		return this.slotCount == 0 ? frameIndex : frameIndex % this.slotCount;
+	}
+
+}
@@ -0,0 +1,109 @@
+package com.autosportLabs.data;
+
+/**
+ * The minimum, maximum or mean of the valid samples among the latest samples of a channel (a
+ * sliding window). An output sample is valid if its window holds any valid input samples.
+ *
+ * The minimum and maximum use a monotonic queue, and the mean a running sum, so each
+ * sample costs about the same however large the window.
+ */
+public final class WindowOperator extends StreamOperator {
+
+	public enum Statistic { MIN, MAX, MEAN }
+
+	private final Statistic statistic;
+	private final int windowSamples;
+
+	// The valid samples of the window, oldest first, in a ring; for MIN and MAX, only
+	// those that can still become the result (a monotonic queue).
+	private final int[] queueIndexes;
+	private final float[] queueValues;
+	private int queueHead = 0;
+	private int queueSize = 0;
+
+	// For MEAN.
+	private double sum = 0;
+
+	/**
+	 * @param input the channel to summarize
+	 * @param outputName the name of the output channel, which has the input's units
+	 * @param statistic the statistic of the window
+	 * @param windowSamples the number of samples in the window, including the current sample
+	 */
+	public WindowOperator(AnalogDataChannel input, String outputName, Statistic statistic, int windowSamples) throws Exception {
+		super(input, outputName, input.getUnits(), false);
+		if (windowSamples < 1) {
+			throw new Exception(String.format("Invalid window of %s samples", windowSamples));
+		}
+		this.statistic = statistic;
+		this.windowSamples = windowSamples;
+		this.queueIndexes = new int[windowSamples];
+		this.queueValues = new float[windowSamples];
+	}
+
+	@Override
+	void reset() {
+		this.queueHead = 0;
+		this.queueSize = 0;
+		this.sum = 0;
+	}
+
+	@Override
+	boolean restoreState(int frameIndex) {
+		// The window holds only recent samples, so it is rebuilt from them rather than kept per frame.
+		int index = frameIndex * this.input.getGroup().getSampleRate();
+		reset();
+		replay(index - this.windowSamples, index);
+		return true;
+	}
+
+	@Override
+	void process(int fromIndex, int count) {
+		for (int i = 0; i < count; i++) {
+			int index = fromIndex + i;
+
+			// Drop the sample leaving the window
+			if (this.queueSize > 0 && this.queueIndexes[this.queueHead] <= index - this.windowSamples) {
+				this.sum -= this.queueValues[this.queueHead];
+				this.queueHead = (this.queueHead + 1) % this.windowSamples;
+				this.queueSize--;
+				if (this.queueSize == 0) {
+					this.sum = 0;	// drop any rounding error
+				}
+			}
+
+			if (isValid(i)) {
+				float value = this.values[i];
+				if (this.statistic == Statistic.MEAN) {
+					this.sum += value;
+				} else {
+					// Drop the samples the new one outranks; they can no longer be the result
+					while (this.queueSize > 0 && outranks(value, this.queueValues[tail()])) {
+						this.queueSize--;
+					}
+				}
+				int slot = (this.queueHead + this.queueSize) % this.windowSamples;
+				this.queueIndexes[slot] = index;
+				this.queueValues[slot] = value;
+				this.queueSize++;
+			}
+
+			if (this.queueSize > 0) {
+				this.results[i] = this.statistic == Statistic.MEAN
+						? (float) (this.sum / this.queueSize) : this.queueValues[this.queueHead];
+				setResultValid(i);
+			} else {
+				this.results[i] = 0;
+			}
+		}
+	}
+
+	private int tail() {
+		return (this.queueHead + this.queueSize - 1) % this.windowSamples;
+	}
+
+	private boolean outranks(float value, float other) {
+		return this.statistic == Statistic.MIN ? value <= other : value >= other;
+	}
+
+}
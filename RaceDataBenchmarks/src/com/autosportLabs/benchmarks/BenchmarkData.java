@@ -0,0 +1,163 @@
+package com.autosportLabs.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import com.autosportLabs.data.AnalogDataChannel;
+import com.autosportLabs.data.DataChannelGroup;
+import com.autosportLabs.data.DataManager;
+
+/**
+ * Builds the configurations and data files used by the benchmarks.
+ */
+public final class BenchmarkData {
+	
+	public static final String GROUP_NAME = "Benchmark Group";
+	public static final int FRAME_PERIOD = 1000;
+	
+	private BenchmarkData() {
+	}
+	
+	/**
+	 * Builds a configuration with one DataChannelGroup of analog channels, one frame per second.
+	 * @param channelCount the number of analog channels in the group
+	 * @param sampleRate the number of samples per frame
+	 * @return the Configuration Definition, in JSON format
+	 */
+	public static String configurationJSON(int channelCount, int sampleRate) {
+		int sampleBytes = 1 + (4 * channelCount);	// validity byte, then one float per channel
+		
+		StringBuilder json = new StringBuilder();
+		json.append("{\"framePeriod\":").append(FRAME_PERIOD);
+		json.append(",\"frameBytes\":").append(sampleBytes * sampleRate);
+		json.append(",\"dataChannelGroups\":[{\"groupName\":\"").append(GROUP_NAME).append("\"");
+		json.append(",\"groupSampleRate\":").append(sampleRate);
+		json.append(",\"groupOffset\":0");
+		json.append(",\"groupSampleBytes\":").append(sampleBytes);
+		json.append(",\"groupChannels\":[");
+		for (int channelIndex = 0; channelIndex < channelCount; channelIndex++) {
+			if (channelIndex > 0) {
+				json.append(",");
+			}
+			json.append("{\"channelType\":\"analog\",\"channelName\":\"").append(channelName(channelIndex)).append("\"");
+			json.append(",\"channelUnits\":\"g\",\"channelByteOffset\":").append(1 + (4 * channelIndex)).append("}");
+		}
+		json.append("]}]}");
+		return json.toString();
+	}
+	
+	/**
+	 * Builds a mixed-rate configuration: a 1 kHz "IMU" group (X, Y, Z, Yaw), a 50 Hz "GPS" group
+	 * (Latitude, Longitude, Speed) and a 10 Hz "Engine" group (RPM, Coolant), sharing one-second frames.
+	 * @return the Configuration Definition, in JSON format
+	 */
+	public static String mixedRateConfigurationJSON() {
+		StringBuilder json = new StringBuilder();
+		int frameBytes = 0;
+		json.append("{\"framePeriod\":").append(FRAME_PERIOD).append(",\"dataChannelGroups\":[");
+		frameBytes = appendGroup(json, "IMU", 1000, frameBytes, new String[] {"X", "Y", "Z", "Yaw"});
+		json.append(",");
+		frameBytes = appendGroup(json, "GPS", 50, frameBytes, new String[] {"Latitude", "Longitude", "Speed"});
+		json.append(",");
+		frameBytes = appendGroup(json, "Engine", 10, frameBytes, new String[] {"RPM", "Coolant"});
+		json.append("],\"frameBytes\":").append(frameBytes).append("}");
+		return json.toString();
+	}
+	
+	private static int appendGroup(StringBuilder json, String groupName, int sampleRate, int byteOffset, String[] channelNames) {
+		int sampleBytes = 1 + (4 * channelNames.length);
+		json.append("{\"groupName\":\"").append(groupName).append("\"");
+		json.append(",\"groupSampleRate\":").append(sampleRate);
+		json.append(",\"groupByteOffset\":").append(byteOffset);
+		json.append(",\"groupSampleBytes\":").append(sampleBytes);
+		json.append(",\"groupChannels\":[");
+		for (int channelIndex = 0; channelIndex < channelNames.length; channelIndex++) {
+			if (channelIndex > 0) {
+				json.append(",");
+			}
+			json.append("{\"channelType\":\"analog\",\"channelName\":\"").append(channelNames[channelIndex]).append("\"");
+			json.append(",\"channelUnits\":\"\",\"channelByteOffset\":").append(1 + (4 * channelIndex)).append("}");
+		}
+		json.append("]}");
+		return byteOffset + (sampleBytes * sampleRate);
+	}
+	
+	public static String channelName(int channelIndex) {
+		return "Channel " + channelIndex;
+	}
+	
+	/**
+	 * Gets the analog channels of a configuration built by configurationJSON().
+	 */
+	public static AnalogDataChannel[] analogChannels(DataManager manager, int channelCount) {
+		AnalogDataChannel[] channels = new AnalogDataChannel[channelCount];
+		for (int channelIndex = 0; channelIndex < channelCount; channelIndex++) {
+			channels[channelIndex] = (AnalogDataChannel) manager.getDataChannel(channelName(channelIndex));
+		}
+		return channels;
+	}
+	
+	/**
+	 * Fills every channel of every sample for the given number of frames.
+	 */
+	public static void fill(DataManager manager, int channelCount, int frameCount) {
+		AnalogDataChannel[] channels = analogChannels(manager, channelCount);
+		DataChannelGroup group = manager.getDataChannelGroup(GROUP_NAME);
+		int sampleCount = frameCount * group.getSampleRate();
+		
+		for (int index = 0; index < sampleCount; index++) {
+			for (int channelIndex = 0; channelIndex < channelCount; channelIndex++) {
+				channels[channelIndex].setFloat(index + channelIndex, index);
+			}
+			group.setValid(true, index);
+		}
+	}
+	
+	/**
+	 * Fills every sample with sensor-like values: slowly varying signals in steps of 1/1024 (as from
+	 * an ADC) with a step or two of noise, and an occasional invalid sample.
+	 */
+	public static void fillSensorLike(DataManager manager, int channelCount, int frameCount) {
+		AnalogDataChannel[] channels = analogChannels(manager, channelCount);
+		DataChannelGroup group = manager.getDataChannelGroup(GROUP_NAME);
+		int sampleCount = frameCount * group.getSampleRate();
+		Random random = new Random(42);
+		
+		for (int index = 0; index < sampleCount; index++) {
+			double time = (double) index / group.getSampleRate();
+			for (int channelIndex = 0; channelIndex < channelCount; channelIndex++) {
+				double steps = (Math.sin(time / (5 + channelIndex)) * (channelIndex + 1) * 1024) + random.nextGaussian();
+				channels[channelIndex].setFloat(Math.round(steps) / 1024f, index);
+			}
+			group.setValid(random.nextInt(1000) != 0, index);
+		}
+	}
+	
+	/**
+	 * Writes a capture file in the legacy format, holding the given number of filled frames.
+	 */
+	public static File writeCaptureFile(int channelCount, int sampleRate, int frameCount) throws Exception {
+		File file = File.createTempFile("benchmark", ".rcap");
+		file.deleteOnExit();
+		
+		DataManager manager = new DataManager(configurationJSON(channelCount, sampleRate));
+		fill(manager, channelCount, frameCount);
+		
+		RandomAccessFile dataFile = new RandomAccessFile(file, "rw");
+		manager.setNewDataFile(dataFile);
+		for (int frameIndex = 0; frameIndex < frameCount; frameIndex++) {
+			manager.writeFrame(frameIndex);
+		}
+		dataFile.close();
+		return file;
+	}
+	
+	public static void delete(File file) throws IOException {
+		if (file != null && file.exists() && !file.delete()) {
+			throw new IOException("Unable to delete " + file);
+		}
+	}
+	
+}
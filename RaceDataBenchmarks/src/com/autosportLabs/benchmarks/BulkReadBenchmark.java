@@ -0,0 +1,104 @@
+package com.autosportLabs.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.autosportLabs.data.AnalogDataChannel;
+import com.autosportLabs.data.DataChannelGroup;
+import com.autosportLabs.data.DataManager;
+
+/**
+ * Scanning a whole channel into an array: per-sample access against the bulk columnar API.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BulkReadBenchmark {
+	
+	@Param({"4", "32"})
+	public int channelCount;
+	
+	@Param({"30", "100"})
+	public int sampleRate;
+	
+	@Param({"20"})
+	public int sessionMinutes;
+	
+	private AnalogDataChannel channel;
+	private DataChannelGroup group;
+	private int sampleCount;
+	private float[] values;
+	private long[] validity;
+	
+	@Setup
+	public void setup() throws Exception {
+		DataManager manager = new DataManager(BenchmarkData.configurationJSON(this.channelCount, this.sampleRate));
+		int frameCount = (this.sessionMinutes * 60 * 1000) / BenchmarkData.FRAME_PERIOD;
+		BenchmarkData.fill(manager, this.channelCount, frameCount);
+		
+		this.sampleCount = frameCount * this.sampleRate;
+		this.channel = (AnalogDataChannel) manager.getDataChannel(BenchmarkData.channelName(0));
+		this.group = manager.getDataChannelGroup(BenchmarkData.GROUP_NAME);
+		this.values = new float[this.sampleCount];
+		this.validity = new long[(this.sampleCount + 63) / 64];
+	}
+	
+	@Benchmark
+	public float[] perSampleGetValue() {
+		for (int index = 0; index < this.sampleCount; index++) {
+			this.values[index] = this.channel.getValue(index);
+		}
+		return this.values;
+	}
+	
+	@Benchmark
+	public float[] perSampleGetFloat() {
+		for (int index = 0; index < this.sampleCount; index++) {
+			this.values[index] = this.channel.getFloat(index);
+		}
+		return this.values;
+	}
+	
+	@Benchmark
+	public float[] bulkReadFloats() {
+		this.channel.readFloats(0, this.sampleCount, this.values, 0);
+		return this.values;
+	}
+	
+	@Benchmark
+	public float[] bulkWriteFloats() {
+		this.channel.writeFloats(this.values, 0, 0, this.sampleCount);
+		return this.values;
+	}
+	
+	@Benchmark
+	public int perSampleIsValid() {
+		int validCount = 0;
+		for (int index = 0; index < this.sampleCount; index++) {
+			if (this.group.isValid(index)) {
+				validCount++;
+			}
+		}
+		return validCount;
+	}
+	
+	@Benchmark
+	public int bulkReadValidity() {
+		return this.group.readValidity(0, this.sampleCount, this.validity);
+	}
+	
+}
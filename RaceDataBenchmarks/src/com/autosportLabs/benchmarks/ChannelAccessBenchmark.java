@@ -0,0 +1,119 @@
+package com.autosportLabs.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.autosportLabs.data.AnalogDataChannel;
+import com.autosportLabs.data.BooleanDataChannel;
+import com.autosportLabs.data.DataChannelGroup;
+import com.autosportLabs.data.DataManager;
+
+/**
+ * Per-sample access to analog and boolean channels: the generic (boxed) API against the
+ * primitive accessors. Each invocation touches every sample of the session once.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ChannelAccessBenchmark {
+	
+	@Param({"4", "32"})
+	public int channelCount;
+	
+	@Param({"30", "100"})
+	public int sampleRate;
+	
+	@Param({"10"})
+	public int sessionMinutes;
+	
+	private DataManager manager;
+	private AnalogDataChannel analogChannel;
+	private BooleanDataChannel booleanChannel;
+	private int sampleCount;
+	
+	@Setup
+	public void setup() throws Exception {
+		this.manager = new DataManager(BenchmarkData.configurationJSON(this.channelCount, this.sampleRate));
+		int frameCount = (this.sessionMinutes * 60 * 1000) / BenchmarkData.FRAME_PERIOD;
+		BenchmarkData.fill(this.manager, this.channelCount, frameCount);
+		
+		this.sampleCount = frameCount * this.sampleRate;
+		this.analogChannel = (AnalogDataChannel) this.manager.getDataChannel(BenchmarkData.channelName(this.channelCount - 1));
+		
+		// Boolean channels share the validity byte: bit 1 of byte 0.
+		DataChannelGroup group = this.manager.getDataChannelGroup(BenchmarkData.GROUP_NAME);
+		this.booleanChannel = new BooleanDataChannel("Flag", "", 0, 1, this.manager, group);
+	}
+	
+	@Benchmark
+	public void analogSetValue() {
+		for (int index = 0; index < this.sampleCount; index++) {
+			this.analogChannel.setValue(Float.valueOf(index), index);
+		}
+	}
+	
+	@Benchmark
+	public void analogSetFloat() {
+		for (int index = 0; index < this.sampleCount; index++) {
+			this.analogChannel.setFloat(index, index);
+		}
+	}
+	
+	@Benchmark
+	public void analogGetValue(Blackhole blackhole) {
+		for (int index = 0; index < this.sampleCount; index++) {
+			blackhole.consume(this.analogChannel.getValue(index));
+		}
+	}
+	
+	@Benchmark
+	public void analogGetFloat(Blackhole blackhole) {
+		for (int index = 0; index < this.sampleCount; index++) {
+			blackhole.consume(this.analogChannel.getFloat(index));
+		}
+	}
+	
+	@Benchmark
+	public void booleanSetValue() {
+		for (int index = 0; index < this.sampleCount; index++) {
+			this.booleanChannel.setValue(Boolean.valueOf((index & 1) == 0), index);
+		}
+	}
+	
+	@Benchmark
+	public void booleanSetBoolean() {
+		for (int index = 0; index < this.sampleCount; index++) {
+			this.booleanChannel.setBoolean((index & 1) == 0, index);
+		}
+	}
+	
+	@Benchmark
+	public void booleanGetValue(Blackhole blackhole) {
+		for (int index = 0; index < this.sampleCount; index++) {
+			blackhole.consume(this.booleanChannel.getValue(index));
+		}
+	}
+	
+	@Benchmark
+	public void booleanGetBoolean(Blackhole blackhole) {
+		for (int index = 0; index < this.sampleCount; index++) {
+			blackhole.consume(this.booleanChannel.getBoolean(index));
+		}
+	}
+	
+}
@@ -0,0 +1,104 @@
+package com.autosportLabs.benchmarks;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.autosportLabs.data.AnalogDataChannel;
+import com.autosportLabs.data.DataManager;
+
+/**
+ * Writing and loading a session in the compressed data file format, against the legacy format.
+ * The compression ratio of the session is printed during setup.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompressionBenchmark {
+	
+	@Param({"legacy", "compressed"})
+	public String format;
+	
+	@Param({"16"})
+	public int channelCount;
+	
+	@Param({"100"})
+	public int sampleRate;
+	
+	@Param({"10"})
+	public int sessionMinutes;
+	
+	@Param({"64"})
+	public int framesPerBlock;
+	
+	private DataManager manager;
+	private File file;
+	private int lastSampleIndex;
+	
+	@Setup
+	public void setup() throws Exception {
+		int frameCount = (this.sessionMinutes * 60 * 1000) / BenchmarkData.FRAME_PERIOD;
+		this.manager = new DataManager(BenchmarkData.configurationJSON(this.channelCount, this.sampleRate));
+		BenchmarkData.fillSensorLike(this.manager, this.channelCount, frameCount);
+		this.lastSampleIndex = (frameCount * this.sampleRate) - 1;
+		
+		this.file = File.createTempFile("benchmark", ".rcap");
+		this.file.deleteOnExit();
+		write();
+		
+		long legacyBytes = 2 + this.manager.getConfigurationJSON().length() + ((long) frameCount * this.manager.getFrameByteCount());
+		System.out.println(String.format("%n%s format: %s bytes, compression ratio %.2f", this.format, this.file.length(),
+				(double) legacyBytes / this.file.length()));
+	}
+	
+	@TearDown
+	public void tearDown() throws Exception {
+		BenchmarkData.delete(this.file);
+	}
+	
+	@Benchmark
+	public void write() throws Exception {
+		if ("compressed".equals(this.format)) {
+			this.manager.writeCompressedDataFile(this.file, this.framesPerBlock);
+		} else {
+			RandomAccessFile dataFile = new RandomAccessFile(this.file, "rw");
+			dataFile.setLength(0);
+			this.manager.setNewDataFile(dataFile);
+			for (int frameIndex = 0; frameIndex < this.manager.getFrameCount(); frameIndex++) {
+				this.manager.writeFrame(frameIndex);
+			}
+			dataFile.close();
+		}
+	}
+	
+	/**
+	 * Loads (and for the compressed format, decodes) every frame.
+	 */
+	@Benchmark
+	public float load() throws Exception {
+		RandomAccessFile dataFile = new RandomAccessFile(this.file, "r");
+		DataManager loaded = new DataManager(dataFile);
+		AnalogDataChannel channel = (AnalogDataChannel) loaded.getDataChannel(BenchmarkData.channelName(0));
+		float value = channel.getFloat(this.lastSampleIndex);
+		loaded.close();
+		dataFile.close();
+		return value;
+	}
+	
+}
@@ -0,0 +1,88 @@
+package com.autosportLabs.benchmarks;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.autosportLabs.data.AnalogDataChannel;
+import com.autosportLabs.data.DataManager;
+import com.autosportLabs.data.DurabilityPolicy;
+
+/**
+ * Time to open a large .rcap file and read one sample from its last frame, for each way of
+ * loading a file.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FileLoadBenchmark {
+	
+	@Param({"eager", "cached", "mapped"})
+	public String loader;
+	
+	@Param({"16"})
+	public int channelCount;
+	
+	@Param({"100"})
+	public int sampleRate;
+	
+	@Param({"60", "240"})
+	public int sessionMinutes;
+	
+	private File file;
+	private int lastSampleIndex;
+	
+	@Setup
+	public void setup() throws Exception {
+		int frameCount = (this.sessionMinutes * 60 * 1000) / BenchmarkData.FRAME_PERIOD;
+		this.file = BenchmarkData.writeCaptureFile(this.channelCount, this.sampleRate, frameCount);
+		this.lastSampleIndex = (frameCount * this.sampleRate) - 1;
+	}
+	
+	@TearDown
+	public void tearDown() throws Exception {
+		BenchmarkData.delete(this.file);
+	}
+	
+	@Benchmark
+	public float openAndReadLastSample() throws Exception {
+		RandomAccessFile dataFile = null;
+		DataManager manager;
+		if ("mapped".equals(this.loader)) {
+			manager = new DataManager(this.file, true, DurabilityPolicy.onFlush());
+		} else {
+			dataFile = new RandomAccessFile(this.file, "r");
+			if ("cached".equals(this.loader)) {
+				manager = new DataManager(dataFile, 16 * 1024 * 1024);
+			} else {
+				manager = new DataManager(dataFile);
+			}
+		}
+		
+		AnalogDataChannel channel = (AnalogDataChannel) manager.getDataChannel(BenchmarkData.channelName(0));
+		float value = channel.getFloat(this.lastSampleIndex);
+		
+		manager.close();
+		if (dataFile != null) {
+			dataFile.close();
+		}
+		return value;
+	}
+	
+}
@@ -0,0 +1,101 @@
+package com.autosportLabs.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.autosportLabs.data.DataChannelGroup;
+import com.autosportLabs.data.DataManager;
+
+/**
+ * Copying a session's frames to another file: through a byte array per frame, as a gathering
+ * write of read-only views of the frames, and by FileChannel.transferTo() from the data file.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FrameExportBenchmark {
+	
+	@Param({"4", "32"})
+	public int channelCount;
+	
+	@Param({"100"})
+	public int sampleRate;
+	
+	@Param({"60"})
+	public int sessionMinutes;
+	
+	private File sourceFile;
+	private File exportFile;
+	private RandomAccessFile source;
+	private RandomAccessFile export;
+	private DataManager memoryManager;
+	private DataManager fileManager;
+	private DataChannelGroup group;
+	private int frameCount;
+	
+	@Setup
+	public void setup() throws Exception {
+		this.frameCount = (this.sessionMinutes * 60 * 1000) / BenchmarkData.FRAME_PERIOD;
+		this.memoryManager = new DataManager(BenchmarkData.configurationJSON(this.channelCount, this.sampleRate));
+		BenchmarkData.fill(this.memoryManager, this.channelCount, this.frameCount);
+		this.group = this.memoryManager.getDataChannelGroup(BenchmarkData.GROUP_NAME);
+		
+		this.sourceFile = File.createTempFile("export-source", ".rcap");
+		this.exportFile = File.createTempFile("export", ".rcap");
+		this.memoryManager.exportDataFile(this.sourceFile);
+		this.source = new RandomAccessFile(this.sourceFile, "r");
+		this.fileManager = new DataManager(this.source);
+		this.export = new RandomAccessFile(this.exportFile, "rw");
+	}
+	
+	@TearDown
+	public void tearDown() throws IOException {
+		this.source.close();
+		this.export.close();
+		this.sourceFile.delete();
+		this.exportFile.delete();
+	}
+	
+	@Benchmark
+	public long copyBytesForFrame() throws IOException {
+		FileChannel channel = this.export.getChannel().position(0);
+		for (int frameIndex = 0; frameIndex < this.frameCount; frameIndex++) {
+			ByteBuffer frame = ByteBuffer.wrap(this.group.getBytesForFrame(frameIndex));
+			while (frame.hasRemaining()) {
+				channel.write(frame);
+			}
+		}
+		return channel.position();
+	}
+	
+	@Benchmark
+	public long writeFrames() throws IOException {
+		return this.memoryManager.writeFrames(0, this.frameCount, this.export.getChannel().position(0));
+	}
+	
+	@Benchmark
+	public long transferFrames() throws IOException {
+		return this.fileManager.transferFrames(0, this.frameCount, this.export.getChannel().position(0));
+	}
+	
+}
@@ -0,0 +1,73 @@
+package com.autosportLabs.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.autosportLabs.data.DataChannelGroup;
+import com.autosportLabs.data.DataManager;
+
+/**
+ * Copying whole sample sets in and out of a DataChannelGroup, as the telemetry path does.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GroupBytesBenchmark {
+	
+	@Param({"4", "32"})
+	public int channelCount;
+	
+	@Param({"30", "100"})
+	public int sampleRate;
+	
+	@Param({"10"})
+	public int sessionMinutes;
+	
+	private DataChannelGroup sourceGroup;
+	private DataChannelGroup destinationGroup;
+	private int sampleCount;
+	
+	@Setup
+	public void setup() throws Exception {
+		String json = BenchmarkData.configurationJSON(this.channelCount, this.sampleRate);
+		int frameCount = (this.sessionMinutes * 60 * 1000) / BenchmarkData.FRAME_PERIOD;
+		
+		DataManager source = new DataManager(json);
+		BenchmarkData.fill(source, this.channelCount, frameCount);
+		DataManager destination = new DataManager(json);
+		
+		this.sampleCount = frameCount * this.sampleRate;
+		this.sourceGroup = source.getDataChannelGroup(BenchmarkData.GROUP_NAME);
+		this.destinationGroup = destination.getDataChannelGroup(BenchmarkData.GROUP_NAME);
+	}
+	
+	@Benchmark
+	public void getBytesForSample(Blackhole blackhole) {
+		for (int index = 0; index < this.sampleCount; index++) {
+			blackhole.consume(this.sourceGroup.getBytesForSample(index));
+		}
+	}
+	
+	@Benchmark
+	public void copyBytesForSample() throws Exception {
+		for (int index = 0; index < this.sampleCount; index++) {
+			this.destinationGroup.setBytesForSample(this.sourceGroup.getBytesForSample(index), index);
+		}
+	}
+	
+}
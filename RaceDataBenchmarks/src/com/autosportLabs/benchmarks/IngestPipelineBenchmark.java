@@ -0,0 +1,90 @@
+package com.autosportLabs.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.autosportLabs.data.AnalogDataChannel;
+import com.autosportLabs.data.DataManager;
+import com.autosportLabs.data.IngestPipeline;
+import com.autosportLabs.data.SampleSource;
+
+/**
+ * Mixed-rate ingest through the IngestPipeline: 1 kHz IMU, 50 Hz GPS and 10 Hz engine samples,
+ * each from its own SampleSource, in time order. Each invocation ingests the given number of
+ * seconds of session data, so the score shows how far ahead of real time ingest runs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IngestPipelineBenchmark {
+	
+	@Param({"60"})
+	public int sessionSeconds;
+	
+	private IngestPipeline pipeline;
+	private SampleSource imuSource;
+	private SampleSource gpsSource;
+	private SampleSource engineSource;
+	private int[] imuChannels;
+	private int[] gpsChannels;
+	private int[] engineChannels;
+	
+	@Setup(Level.Invocation)
+	public void setup() throws Exception {
+		DataManager manager = new DataManager(BenchmarkData.mixedRateConfigurationJSON(), this.sessionSeconds * 1000L, false);
+		this.pipeline = new IngestPipeline(manager, 200000);
+		this.imuChannels = register(manager, new String[] {"X", "Y", "Z", "Yaw"});
+		this.gpsChannels = register(manager, new String[] {"Latitude", "Longitude", "Speed"});
+		this.engineChannels = register(manager, new String[] {"RPM", "Coolant"});
+		this.imuSource = this.pipeline.createSource(4096);
+		this.gpsSource = this.pipeline.createSource(256);
+		this.engineSource = this.pipeline.createSource(64);
+	}
+	
+	private int[] register(DataManager manager, String[] channelNames) {
+		int[] ids = new int[channelNames.length];
+		for (int channelIndex = 0; channelIndex < channelNames.length; channelIndex++) {
+			ids[channelIndex] = this.pipeline.registerChannel((AnalogDataChannel) manager.getDataChannel(channelNames[channelIndex]));
+		}
+		return ids;
+	}
+	
+	@Benchmark
+	public long ingest() throws Exception {
+		long sessionMicros = this.sessionSeconds * 1000000L;
+		for (long timestamp = 0; timestamp < sessionMicros; timestamp += 1000) {
+			offerAll(this.imuSource, this.imuChannels, timestamp);
+			if (timestamp % 20000 == 0) {
+				offerAll(this.gpsSource, this.gpsChannels, timestamp);
+			}
+			if (timestamp % 100000 == 0) {
+				offerAll(this.engineSource, this.engineChannels, timestamp);
+				this.pipeline.drain();
+			}
+		}
+		this.pipeline.finish();
+		return this.pipeline.getCommittedFrameCount();
+	}
+	
+	private static void offerAll(SampleSource source, int[] channelIds, long timestamp) {
+		for (int channelIndex = 0; channelIndex < channelIds.length; channelIndex++) {
+			source.offer(channelIds[channelIndex], timestamp, timestamp * 0.001f + channelIndex);
+		}
+	}
+	
+}
@@ -0,0 +1,101 @@
+package com.autosportLabs.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.autosportLabs.data.AnalogDataChannel;
+import com.autosportLabs.data.DataManager;
+import com.autosportLabs.data.DataMetrics;
+import com.autosportLabs.data.IngestPipeline;
+
+/**
+ * The cost of DataMetrics on the instrumented hot paths: channel reads and writes, writeFrame()
+ * and IngestPipeline.offer(), with metrics disabled and enabled. Each invocation touches every
+ * sample (or frame) of the session once; frames are held in memory, so only the instrumentation
+ * differs between the two.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MetricsOverheadBenchmark {
+
+	@Param({"false", "true"})
+	public boolean metricsEnabled;
+
+	@Param({"4"})
+	public int channelCount;
+
+	@Param({"100"})
+	public int sampleRate;
+
+	@Param({"10"})
+	public int sessionMinutes;
+
+	private DataManager manager;
+	private AnalogDataChannel channel;
+	private int frameCount;
+	private int sampleCount;
+
+	@Setup
+	public void setup() throws Exception {
+		this.manager = new DataManager(BenchmarkData.configurationJSON(this.channelCount, this.sampleRate));
+		this.frameCount = (this.sessionMinutes * 60 * 1000) / BenchmarkData.FRAME_PERIOD;
+		BenchmarkData.fill(this.manager, this.channelCount, this.frameCount);
+		if (this.metricsEnabled) {
+			this.manager.enableMetrics(new DataMetrics());
+		}
+
+		this.sampleCount = this.frameCount * this.sampleRate;
+		this.channel = (AnalogDataChannel) this.manager.getDataChannel(BenchmarkData.channelName(0));
+	}
+
+	@Benchmark
+	public void getFloat(Blackhole blackhole) {
+		for (int index = 0; index < this.sampleCount; index++) {
+			blackhole.consume(this.channel.getFloat(index));
+		}
+	}
+
+	@Benchmark
+	public void setFloat() {
+		for (int index = 0; index < this.sampleCount; index++) {
+			this.channel.setFloat(index, index);
+		}
+	}
+
+	@Benchmark
+	public void writeFrame() throws Exception {
+		for (int frameIndex = 0; frameIndex < this.frameCount; frameIndex++) {
+			this.manager.writeFrame(frameIndex);
+		}
+	}
+
+	@Benchmark
+	public long ingest() throws Exception {
+		// A new pipeline each time, so every sample is stored rather than late.
+		IngestPipeline pipeline = new IngestPipeline(this.manager, 0);
+		int channelId = pipeline.registerChannel(this.channel);
+		long samplePeriod = (BenchmarkData.FRAME_PERIOD * 1000L) / this.sampleRate;
+		for (int index = 0; index < this.sampleCount; index++) {
+			pipeline.offer(channelId, index * samplePeriod, index);
+		}
+		pipeline.finish();
+		return pipeline.getCommittedFrameCount();
+	}
+
+}
@@ -0,0 +1,87 @@
+package com.autosportLabs.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.autosportLabs.data.ChannelStatistics;
+import com.autosportLabs.data.DataManager;
+import com.autosportLabs.data.FrameRangeAggregator;
+import com.autosportLabs.data.ParallelAnalytics;
+
+/**
+ * Scaling of ParallelAnalytics with the number of threads: the statistics of one channel over a
+ * single long session, and over a weekend of sessions. Compare each thread count with 1 thread.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParallelAnalyticsBenchmark {
+	
+	@Param({"1", "2", "4", "8", "16"})
+	public int threads;
+	
+	@Param({"16"})
+	public int channelCount;
+	
+	@Param({"100"})
+	public int sampleRate;
+	
+	@Param({"50"})
+	public int sessionCount;
+	
+	@Param({"5"})
+	public int sessionMinutes;
+	
+	private List<DataManager> sessions;
+	private ForkJoinPool pool;
+	private ParallelAnalytics analytics;
+	private FrameRangeAggregator<ChannelStatistics> aggregator;
+	
+	@Setup
+	public void setup() throws Exception {
+		int frameCount = (this.sessionMinutes * 60 * 1000) / BenchmarkData.FRAME_PERIOD;
+		this.sessions = new ArrayList<DataManager>();
+		for (int i = 0; i < this.sessionCount; i++) {
+			DataManager manager = new DataManager(BenchmarkData.configurationJSON(this.channelCount, this.sampleRate));
+			BenchmarkData.fillSensorLike(manager, this.channelCount, frameCount);
+			this.sessions.add(manager);
+		}
+		this.pool = new ForkJoinPool(this.threads);
+		this.analytics = new ParallelAnalytics(this.pool);
+		this.aggregator = ChannelStatistics.aggregator(BenchmarkData.channelName(this.channelCount - 1));
+	}
+	
+	@TearDown
+	public void tearDown() {
+		this.pool.shutdown();
+	}
+	
+	@Benchmark
+	public ChannelStatistics oneSession() {
+		return this.analytics.aggregate(this.sessions.get(0), this.aggregator);
+	}
+	
+	@Benchmark
+	public ChannelStatistics allSessions() {
+		return this.analytics.aggregateAll(this.sessions, this.aggregator);
+	}
+	
+}
@@ -0,0 +1,109 @@
+package com.autosportLabs.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.autosportLabs.data.AnalogDataChannel;
+import com.autosportLabs.data.DataChannelGroup;
+import com.autosportLabs.data.DataManager;
+import com.autosportLabs.data.SampleCodec;
+
+/**
+ * Decoding and encoding every sample set of a session as an array of values: through a compiled
+ * SampleCodec, against each channel's own accessors.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SampleCodecBenchmark {
+	
+	@Param({"4", "32"})
+	public int channelCount;
+	
+	@Param({"100"})
+	public int sampleRate;
+	
+	@Param({"10"})
+	public int sessionMinutes;
+	
+	private DataChannelGroup group;
+	private AnalogDataChannel[] channels;
+	private SampleCodec codec;
+	private int sampleCount;
+	private float[] values;
+	
+	@Setup
+	public void setup() throws Exception {
+		int frameCount = (this.sessionMinutes * 60 * 1000) / BenchmarkData.FRAME_PERIOD;
+		DataManager manager = new DataManager(BenchmarkData.configurationJSON(this.channelCount, this.sampleRate));
+		BenchmarkData.fill(manager, this.channelCount, frameCount);
+		
+		this.sampleCount = frameCount * this.sampleRate;
+		this.group = manager.getDataChannelGroup(BenchmarkData.GROUP_NAME);
+		this.codec = SampleCodec.compile(this.group);
+		
+		// Both paths use the codec's slot order
+		this.channels = new AnalogDataChannel[this.codec.getChannelCount()];
+		for (int slot = 0; slot < this.channels.length; slot++) {
+			this.channels[slot] = this.codec.getChannel(slot);
+		}
+		this.values = new float[this.channels.length];
+	}
+	
+	@Benchmark
+	public float decodeInterpretive() {
+		float total = 0;
+		for (int index = 0; index < this.sampleCount; index++) {
+			if (this.group.isValid(index)) {
+				for (int slot = 0; slot < this.channels.length; slot++) {
+					this.values[slot] = this.channels[slot].getFloat(index);
+				}
+				total += this.values[0];
+			}
+		}
+		return total;
+	}
+	
+	@Benchmark
+	public float decodeCompiled() {
+		float total = 0;
+		for (int index = 0; index < this.sampleCount; index++) {
+			if (this.codec.decode(index, this.values)) {
+				total += this.values[0];
+			}
+		}
+		return total;
+	}
+	
+	@Benchmark
+	public void encodeInterpretive() {
+		for (int index = 0; index < this.sampleCount; index++) {
+			for (int slot = 0; slot < this.channels.length; slot++) {
+				this.channels[slot].setFloat(this.values[slot], index);
+			}
+			this.group.setValid(true, index);
+		}
+	}
+	
+	@Benchmark
+	public void encodeCompiled() {
+		for (int index = 0; index < this.sampleCount; index++) {
+			this.codec.encode(this.values, true, index);
+		}
+	}
+	
+}
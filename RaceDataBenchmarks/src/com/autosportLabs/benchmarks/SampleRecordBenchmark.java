@@ -0,0 +1,108 @@
+package com.autosportLabs.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.autosportLabs.data.AnalogDataChannel;
+import com.autosportLabs.data.DataChannelGroup;
+import com.autosportLabs.data.DataManager;
+import com.autosportLabs.data.SampleRecord;
+
+/**
+ * Writing and scanning every channel of every sample set of a session: through a SampleRecord
+ * cursor, against each channel's per-sample accessors.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SampleRecordBenchmark {
+	
+	@Param({"4", "32"})
+	public int channelCount;
+	
+	@Param({"100"})
+	public int sampleRate;
+	
+	@Param({"10"})
+	public int sessionMinutes;
+	
+	private DataChannelGroup group;
+	private AnalogDataChannel[] channels;
+	private SampleRecord record;
+	private int sampleCount;
+	
+	@Setup
+	public void setup() throws Exception {
+		int frameCount = (this.sessionMinutes * 60 * 1000) / BenchmarkData.FRAME_PERIOD;
+		DataManager manager = new DataManager(BenchmarkData.configurationJSON(this.channelCount, this.sampleRate));
+		BenchmarkData.fill(manager, this.channelCount, frameCount);
+		
+		this.sampleCount = frameCount * this.sampleRate;
+		this.group = manager.getDataChannelGroup(BenchmarkData.GROUP_NAME);
+		this.channels = BenchmarkData.analogChannels(manager, this.channelCount);
+		this.record = new SampleRecord(this.group);
+	}
+	
+	@Benchmark
+	public void writeChannels() {
+		for (int index = 0; index < this.sampleCount; index++) {
+			for (AnalogDataChannel channel : this.channels) {
+				channel.setFloat(index, index);
+			}
+			this.group.setValid(true, index);
+		}
+	}
+	
+	@Benchmark
+	public void writeRecord() {
+		this.record.range(0, this.sampleCount);
+		while (this.record.next()) {
+			for (AnalogDataChannel channel : this.channels) {
+				this.record.setFloat(channel, this.record.getIndex());
+			}
+			this.record.setValid(true);
+			this.record.commit();
+		}
+	}
+	
+	@Benchmark
+	public float scanChannels() {
+		float total = 0;
+		for (int index = 0; index < this.sampleCount; index++) {
+			if (this.group.isValid(index)) {
+				for (AnalogDataChannel channel : this.channels) {
+					total += channel.getFloat(index);
+				}
+			}
+		}
+		return total;
+	}
+	
+	@Benchmark
+	public float scanRecord() {
+		float total = 0;
+		for (this.record.range(0, this.sampleCount); this.record.next(); ) {
+			if (this.record.isValid()) {
+				for (AnalogDataChannel channel : this.channels) {
+					total += this.record.getFloat(channel);
+				}
+			}
+		}
+		return total;
+	}
+	
+}
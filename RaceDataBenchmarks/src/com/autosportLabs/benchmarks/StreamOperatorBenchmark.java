@@ -0,0 +1,119 @@
+package com.autosportLabs.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.autosportLabs.data.AnalogDataChannel;
+import com.autosportLabs.data.DataChannelGroup;
+import com.autosportLabs.data.DataManager;
+import com.autosportLabs.data.DerivativeOperator;
+import com.autosportLabs.data.EwmaOperator;
+import com.autosportLabs.data.IntegralOperator;
+import com.autosportLabs.data.LookupOperator;
+import com.autosportLabs.data.StreamOperator;
+import com.autosportLabs.data.ThresholdOperator;
+import com.autosportLabs.data.WindowOperator;
+
+/**
+ * The cost per input sample of running StreamOperators over a session, as the number of operators grows.
+ * The operators cycle through each kind, all with the same input channel.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StreamOperatorBenchmark {
+	
+	private static final int SAMPLE_RATE = 100;
+	private static final int FRAME_COUNT = 600;
+	private static final int SAMPLE_COUNT = SAMPLE_RATE * FRAME_COUNT;
+	
+	@Param({"1", "4", "16"})
+	public int operatorCount;
+	
+	private DataManager manager;
+	private AnalogDataChannel channel;
+	private StreamOperator[] operators;
+	
+	@Setup
+	public void setup() throws Exception {
+		this.manager = new DataManager(BenchmarkData.configurationJSON(1, SAMPLE_RATE));
+		BenchmarkData.fillSensorLike(this.manager, 1, FRAME_COUNT);
+		DataChannelGroup group = this.manager.getDataChannelGroup(BenchmarkData.GROUP_NAME);
+		group.publishSamples(SAMPLE_COUNT);
+		this.channel = BenchmarkData.analogChannels(this.manager, 1)[0];
+		this.operators = new StreamOperator[this.operatorCount];
+	}
+	
+	/**
+	 * Creates new operators, as each processes the session's samples only once.
+	 */
+	@Setup(Level.Invocation)
+	public void createOperators() throws Exception {
+		for (int i = 0; i < this.operatorCount; i++) {
+			String name = "Operator " + i;
+			switch (i % 8) {
+			case 0:
+				this.operators[i] = new WindowOperator(this.channel, name, WindowOperator.Statistic.MAX, SAMPLE_RATE);
+				break;
+			case 1:
+				this.operators[i] = new WindowOperator(this.channel, name, WindowOperator.Statistic.MEAN, SAMPLE_RATE);
+				break;
+			case 2:
+				this.operators[i] = new EwmaOperator(this.channel, name, 0.1);
+				break;
+			case 3:
+				this.operators[i] = new DerivativeOperator(this.channel, name, "units/second");
+				break;
+			case 4:
+				this.operators[i] = new IntegralOperator(this.channel, name, "units*seconds");
+				break;
+			case 5:
+				this.operators[i] = new ThresholdOperator(this.channel, name, 0.5f, 0.4f);
+				break;
+			case 6:
+				this.operators[i] = new LookupOperator(this.channel, name, "units",
+						new float[] {-1, 0, 1}, new float[] {0, 10, 40});
+				break;
+			default:
+				this.operators[i] = new WindowOperator(this.channel, name, WindowOperator.Statistic.MIN, SAMPLE_RATE);
+				break;
+			}
+		}
+	}
+	
+	@TearDown(Level.Invocation)
+	public void removeOperators() {
+		for (StreamOperator operator : this.operators) {
+			this.manager.removeStreamOperator(operator);
+		}
+	}
+	
+	/**
+	 * Adding an operator processes the samples already published.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(SAMPLE_COUNT)
+	public void process() throws Exception {
+		for (StreamOperator operator : this.operators) {
+			this.manager.addStreamOperator(operator);
+		}
+	}
+	
+}
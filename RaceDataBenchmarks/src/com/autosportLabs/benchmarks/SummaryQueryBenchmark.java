@@ -0,0 +1,103 @@
+package com.autosportLabs.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.autosportLabs.data.AnalogDataChannel;
+import com.autosportLabs.data.ChannelSummary;
+import com.autosportLabs.data.DataChannelGroup;
+import com.autosportLabs.data.DataManager;
+import com.autosportLabs.data.SummaryBuckets;
+
+/**
+ * Drawing the min/max envelope of a whole session in a chart of a given width: from the
+ * channel summary, against scanning every sample.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SummaryQueryBenchmark {
+	
+	@Param({"100"})
+	public int sampleRate;
+	
+	@Param({"60"})
+	public int sessionMinutes;
+	
+	@Param({"1000"})
+	public int pixels;
+	
+	private int frameCount;
+	private AnalogDataChannel channel;
+	private DataChannelGroup group;
+	private ChannelSummary summary;
+	private float[] values;
+	private long[] validity;
+	private float[] min;
+	private float[] max;
+	
+	@Setup
+	public void setup() throws Exception {
+		this.frameCount = (this.sessionMinutes * 60 * 1000) / BenchmarkData.FRAME_PERIOD;
+		DataManager manager = new DataManager(BenchmarkData.configurationJSON(1, this.sampleRate));
+		BenchmarkData.fillSensorLike(manager, 1, this.frameCount);
+		manager.enableChannelSummaries();
+		
+		this.channel = BenchmarkData.analogChannels(manager, 1)[0];
+		this.group = this.channel.getGroup();
+		this.summary = manager.getChannelSummary(this.channel.getName());
+		this.values = new float[this.sampleRate];
+		this.validity = new long[(this.sampleRate + 63) / 64];
+		this.min = new float[this.pixels];
+		this.max = new float[this.pixels];
+	}
+	
+	@Benchmark
+	public float summary() {
+		SummaryBuckets buckets = this.summary.query(0, this.frameCount, this.pixels);
+		float total = 0;
+		for (int bucket = 0; bucket < buckets.size(); bucket++) {
+			total += buckets.getMax(bucket) - buckets.getMin(bucket);
+		}
+		return total;
+	}
+	
+	@Benchmark
+	public float scan() {
+		int framesPerPixel = (this.frameCount + this.pixels - 1) / this.pixels;
+		float total = 0;
+		for (int pixel = 0; pixel * framesPerPixel < this.frameCount; pixel++) {
+			this.min[pixel] = Float.MAX_VALUE;
+			this.max[pixel] = -Float.MAX_VALUE;
+			int endFrame = Math.min(this.frameCount, (pixel + 1) * framesPerPixel);
+			for (int frameIndex = pixel * framesPerPixel; frameIndex < endFrame; frameIndex++) {
+				int fromIndex = frameIndex * this.sampleRate;
+				this.channel.readFloats(fromIndex, fromIndex + this.sampleRate, this.values, 0);
+				this.group.readValidity(fromIndex, fromIndex + this.sampleRate, this.validity);
+				for (int i = 0; i < this.sampleRate; i++) {
+					if ((this.validity[i >>> 6] & (1L << i)) != 0) {
+						this.min[pixel] = Math.min(this.min[pixel], this.values[i]);
+						this.max[pixel] = Math.max(this.max[pixel], this.values[i]);
+					}
+				}
+			}
+			total += this.max[pixel] - this.min[pixel];
+		}
+		return total;
+	}
+	
+}
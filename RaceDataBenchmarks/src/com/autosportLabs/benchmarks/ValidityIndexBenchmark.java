@@ -0,0 +1,82 @@
+package com.autosportLabs.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.autosportLabs.data.DataChannelGroup;
+import com.autosportLabs.data.DataManager;
+
+/**
+ * Finding the valid samples of a sparse session (one sample in validEvery received): sample by
+ * sample with isValid(), against the validity index's nextValid() and validCount().
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ValidityIndexBenchmark {
+	
+	@Param({"1", "10", "1000"})
+	public int validEvery;
+	
+	@Param({"100"})
+	public int sampleRate;
+	
+	@Param({"10"})
+	public int sessionMinutes;
+	
+	private DataChannelGroup group;
+	private int sampleCount;
+	
+	@Setup
+	public void setup() throws Exception {
+		int frameCount = (this.sessionMinutes * 60 * 1000) / BenchmarkData.FRAME_PERIOD;
+		DataManager manager = new DataManager(BenchmarkData.configurationJSON(4, this.sampleRate));
+		BenchmarkData.fill(manager, 4, frameCount);
+		
+		this.sampleCount = frameCount * this.sampleRate;
+		this.group = manager.getDataChannelGroup(BenchmarkData.GROUP_NAME);
+		for (int index = 0; index < this.sampleCount; index++) {
+			this.group.setValid(index % this.validEvery == 0, index);
+		}
+	}
+	
+	@Benchmark
+	public int scanIsValid() {
+		int total = 0;
+		for (int index = 0; index < this.sampleCount; index++) {
+			if (this.group.isValid(index)) {
+				total += index;
+			}
+		}
+		return total;
+	}
+	
+	@Benchmark
+	public int scanNextValid() {
+		int total = 0;
+		for (int index = this.group.nextValid(0, this.sampleCount); index >= 0; index = this.group.nextValid(index + 1, this.sampleCount)) {
+			total += index;
+		}
+		return total;
+	}
+	
+	@Benchmark
+	public int countValid() {
+		return this.group.validCount(0, this.sampleCount);
+	}
+	
+}
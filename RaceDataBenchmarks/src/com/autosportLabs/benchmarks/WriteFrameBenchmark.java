@@ -0,0 +1,91 @@
+package com.autosportLabs.benchmarks;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.autosportLabs.data.DataManager;
+import com.autosportLabs.data.DurabilityPolicy;
+import com.autosportLabs.data.FrameJournal;
+
+/**
+ * DataManager.writeFrame() throughput for each storage strategy.
+ * 
+ * Frames are written in order, wrapping after a fixed number so the file stays bounded.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class WriteFrameBenchmark {
+	
+	private static final int MAXIMUM_FRAMES = 10000;
+	
+	@Param({"randomAccessFile", "synchronousFile", "batched", "mapped", "journal"})
+	public String storage;
+	
+	@Param({"4", "32"})
+	public int channelCount;
+	
+	@Param({"100"})
+	public int sampleRate;
+	
+	private File file;
+	private RandomAccessFile dataFile;
+	private DataManager manager;
+	private int frameIndex;
+	
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		this.manager = new DataManager(BenchmarkData.configurationJSON(this.channelCount, this.sampleRate));
+		BenchmarkData.fill(this.manager, this.channelCount, MAXIMUM_FRAMES);
+		
+		this.file = File.createTempFile("writeFrame", ".rcap");
+		if ("mapped".equals(this.storage)) {
+			this.manager.setNewMappedDataFile(this.file, DurabilityPolicy.everyMillis(1000));
+		} else {
+			this.dataFile = new RandomAccessFile(this.file, "synchronousFile".equals(this.storage) ? "rws" : "rw");
+			this.manager.setNewDataFile(this.dataFile);
+			if ("batched".equals(this.storage)) {
+				this.manager.enableBatchedWrites(256 * 1024, 1000, true);
+			} else if ("journal".equals(this.storage)) {
+				this.manager.enableJournal(FrameJournal.journalFileFor(this.file), DurabilityPolicy.everyMillis(1000), 4 * 1024 * 1024);
+			}
+		}
+		this.frameIndex = 0;
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		this.manager.flush();
+		this.manager.close();
+		if (this.dataFile != null) {
+			this.dataFile.close();
+		}
+		BenchmarkData.delete(this.file);
+		BenchmarkData.delete(FrameJournal.journalFileFor(this.file));
+	}
+	
+	@Benchmark
+	public void writeFrame() throws Exception {
+		this.manager.writeFrame(this.frameIndex);
+		this.frameIndex = (this.frameIndex + 1) % MAXIMUM_FRAMES;
+	}
+	
+}
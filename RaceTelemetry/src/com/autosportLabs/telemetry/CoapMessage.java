@@ -0,0 +1,306 @@
+package com.autosportLabs.telemetry;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A CoAP message (RFC 7252), with the options used by the telemetry server and client:
+ * Observe (RFC 7641) and Block2 (RFC 7959).
+ */
+public class CoapMessage {
+
+	public static final int TYPE_CONFIRMABLE = 0;
+	public static final int TYPE_NON_CONFIRMABLE = 1;
+	public static final int TYPE_ACKNOWLEDGEMENT = 2;
+	public static final int TYPE_RESET = 3;
+
+	// Codes, as class << 5 | detail
+	public static final int CODE_EMPTY = 0x00;
+	public static final int CODE_GET = 0x01;
+	public static final int CODE_CONTENT = 0x45;			// 2.05
+	public static final int CODE_BAD_REQUEST = 0x80;		// 4.00
+	public static final int CODE_NOT_FOUND = 0x84;			// 4.04
+	public static final int CODE_METHOD_NOT_ALLOWED = 0x85;	// 4.05
+
+	public static final int OPTION_OBSERVE = 6;
+	public static final int OPTION_URI_PATH = 11;
+	public static final int OPTION_CONTENT_FORMAT = 12;
+	public static final int OPTION_URI_QUERY = 15;
+	public static final int OPTION_BLOCK2 = 23;
+	public static final int OPTION_SIZE2 = 28;
+
+	public static final int FORMAT_OCTET_STREAM = 42;
+	public static final int FORMAT_JSON = 50;
+
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final byte[] EMPTY = new byte[0];
+	private static final int PAYLOAD_MARKER = 0xFF;
+
+	private int type;
+	private int code;
+	private int messageId;
+	private byte[] token = EMPTY;
+	private final List<Option> options = new ArrayList<Option>();
+	private byte[] payload = EMPTY;
+
+	public CoapMessage(int type, int code, int messageId) {
+		this.type = type;
+		this.code = code;
+		this.messageId = messageId & 0xFFFF;
+	}
+
+	public int getType() {
+		return this.type;
+	}
+
+	public int getCode() {
+		return this.code;
+	}
+
+	public int getMessageId() {
+		return this.messageId;
+	}
+
+	public byte[] getToken() {
+		return this.token;
+	}
+
+	public void setToken(byte[] token) {
+		if (token.length > 8) {
+			throw new IllegalArgumentException("Tokens are at most 8 bytes");
+		}
+		this.token = token;
+	}
+
+	public byte[] getPayload() {
+		return this.payload;
+	}
+
+	public void setPayload(byte[] payload) {
+		this.payload = payload;
+	}
+
+	/**
+	 * Adds an option, keeping options in number order (and repeated options in the order added).
+	 */
+	public void addOption(int number, byte[] value) {
+		int position = this.options.size();
+		while (position > 0 && this.options.get(position - 1).number > number) {
+			position--;
+		}
+		this.options.add(position, new Option(number, value));
+	}
+
+	public void addOption(int number, String value) {
+		addOption(number, value.getBytes(UTF8));
+	}
+
+	/**
+	 * Adds an unsigned integer option, in the fewest bytes.
+	 */
+	public void addOption(int number, int value) {
+		int length = 0;
+		for (int remaining = value; remaining != 0; remaining >>>= 8) {
+			length++;
+		}
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[length - 1 - i] = (byte) (value >>> (8 * i));
+		}
+		addOption(number, bytes);
+	}
+
+	public boolean hasOption(int number) {
+		return getOption(number) != null;
+	}
+
+	/**
+	 * @return an unsigned integer option's value, or the default if the option is absent
+	 */
+	public int getIntOption(int number, int defaultValue) {
+		byte[] value = getOption(number);
+		if (value == null) {
+			return defaultValue;
+		}
+		int result = 0;
+		for (byte b : value) {
+			result = (result << 8) | (b & 0xFF);
+		}
+		return result;
+	}
+
+	/**
+	 * @return the values of a repeatable string option, in order
+	 */
+	public List<String> getStringOptions(int number) {
+		List<String> values = new ArrayList<String>();
+		for (Option option : this.options) {
+			if (option.number == number) {
+				values.add(new String(option.value, UTF8));
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * @return the Uri-Path options joined with "/"
+	 */
+	public String getUriPath() {
+		StringBuilder path = new StringBuilder();
+		for (String segment : getStringOptions(OPTION_URI_PATH)) {
+			if (path.length() > 0) {
+				path.append('/');
+			}
+			path.append(segment);
+		}
+		return path.toString();
+	}
+
+	/**
+	 * Sets the Uri-Path options from a path of "/"-separated segments.
+	 */
+	public void setUriPath(String path) {
+		for (String segment : path.split("/")) {
+			if (segment.length() > 0) {
+				addOption(OPTION_URI_PATH, segment);
+			}
+		}
+	}
+
+	private byte[] getOption(int number) {
+		for (Option option : this.options) {
+			if (option.number == number) {
+				return option.value;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Writes the message at the buffer's position.
+	 * @throws java.nio.BufferOverflowException if the message does not fit
+	 */
+	public void encode(ByteBuffer buffer) {
+		buffer.put((byte) (0x40 | (this.type << 4) | this.token.length));
+		buffer.put((byte) this.code);
+		buffer.putShort((short) this.messageId);
+		buffer.put(this.token);
+
+		int previousNumber = 0;
+		for (Option option : this.options) {
+			int delta = option.number - previousNumber;
+			int length = option.value.length;
+			buffer.put((byte) ((nibble(delta) << 4) | nibble(length)));
+			putExtended(buffer, delta);
+			putExtended(buffer, length);
+			buffer.put(option.value);
+			previousNumber = option.number;
+		}
+
+		if (this.payload.length > 0) {
+			buffer.put((byte) PAYLOAD_MARKER);
+			buffer.put(this.payload);
+		}
+	}
+
+	/**
+	 * Reads a message from the buffer's remaining bytes (one datagram).
+	 * @throws Exception if the bytes are not a valid CoAP message
+	 */
+	public static CoapMessage decode(ByteBuffer buffer) throws Exception {
+		if (buffer.remaining() < 4) {
+			throw new Exception("Message shorter than its header");
+		}
+		int first = buffer.get() & 0xFF;
+		if ((first >>> 6) != 1) {
+			throw new Exception(String.format("Unsupported CoAP version %s", first >>> 6));
+		}
+		int tokenLength = first & 0x0F;
+		if (tokenLength > 8) {
+			throw new Exception(String.format("Invalid token length %s", tokenLength));
+		}
+		CoapMessage message = new CoapMessage((first >>> 4) & 0x03, buffer.get() & 0xFF, buffer.getShort() & 0xFFFF);
+		byte[] token = new byte[tokenLength];
+		buffer.get(token);
+		message.token = token;
+
+		int number = 0;
+		while (buffer.hasRemaining()) {
+			int header = buffer.get() & 0xFF;
+			if (header == PAYLOAD_MARKER) {
+				if (!buffer.hasRemaining()) {
+					throw new Exception("Payload marker without a payload");
+				}
+				message.payload = new byte[buffer.remaining()];
+				buffer.get(message.payload);
+				break;
+			}
+			number += getExtended(buffer, header >>> 4);
+			byte[] value = new byte[getExtended(buffer, header & 0x0F)];
+			buffer.get(value);
+			message.options.add(new Option(number, value));
+		}
+		return message;
+	}
+
+	private static int nibble(int value) {
+		return value < 13 ? value : (value < 269 ? 13 : 14);
+	}
+
+	private static void putExtended(ByteBuffer buffer, int value) {
+		if (value >= 269) {
+			buffer.putShort((short) (value - 269));
+		} else if (value >= 13) {
+			buffer.put((byte) (value - 13));
+		}
+	}
+
+	private static int getExtended(ByteBuffer buffer, int nibble) throws Exception {
+		switch (nibble) {
+		case 13:
+			return (buffer.get() & 0xFF) + 13;
+		case 14:
+			return (buffer.getShort() & 0xFFFF) + 269;
+		case 15:
+			throw new Exception("Reserved option nibble");
+		default:
+			return nibble;
+		}
+	}
+
+	/**
+	 * Encodes a Block2 option value.
+	 * @param number the block number
+	 * @param more whether more blocks follow
+	 * @param sizeExponent the block size, as 2^(sizeExponent + 4) bytes
+	 */
+	public static int block(int number, boolean more, int sizeExponent) {
+		return (number << 4) | (more ? 0x08 : 0) | sizeExponent;
+	}
+
+	public static int blockNumber(int block) {
+		return block >>> 4;
+	}
+
+	public static boolean blockHasMore(int block) {
+		return (block & 0x08) != 0;
+	}
+
+	public static int blockSize(int block) {
+		return 1 << ((block & 0x07) + 4);
+	}
+
+	private static class Option {
+		final int number;
+		final byte[] value;
+
+		Option(int number, byte[] value) {
+			this.number = number;
+			this.value = value;
+		}
+	}
+
+}
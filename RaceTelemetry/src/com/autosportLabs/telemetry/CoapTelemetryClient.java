@@ -0,0 +1,322 @@
+package com.autosportLabs.telemetry;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import com.autosportLabs.data.DataChannelGroup;
+import com.autosportLabs.data.DataManager;
+import com.autosportLabs.data.FrameStore;
+
+/**
+ * Mirrors a DataManager served by a CoapTelemetryServer into a local DataManager.
+ *
+ * mirror() fetches the configuration and creates the local DataManager; observe() subscribes to
+ * a group's samples, which are written into the mirror as notifications arrive in poll(); and
+ * fetchFrames() copies whole frames, such as to fill in samples missed by notifications.
+ *
+ * Requests are confirmable and retransmitted as in RFC 7252. Use from one thread, which is
+ * the mirror's writer.
+ */
+public class CoapTelemetryClient {
+
+	private static final long ACK_TIMEOUT = 2000;
+	private static final int MAXIMUM_RETRANSMIT = 4;
+	private static final int MESSAGE_BYTES = 1280;
+
+	private final DatagramChannel channel;
+	private final Selector selector;
+	private final ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(MESSAGE_BYTES);
+	private final ByteBuffer sendBuffer = ByteBuffer.allocateDirect(MESSAGE_BYTES);
+	private final Map<Integer, DataChannelGroup> observations = new HashMap<Integer, DataChannelGroup>();
+	private int nextMessageId;
+	private int nextToken;
+
+	private DataManager mirror;
+	private long notificationCount = 0;
+	private long retransmissionCount = 0;
+
+	/**
+	 * @param server the server's address
+	 * @throws IOException
+	 */
+	public CoapTelemetryClient(InetSocketAddress server) throws IOException {
+		this.channel = DatagramChannel.open();
+		this.channel.configureBlocking(false);
+		this.channel.connect(server);
+		this.selector = Selector.open();
+		this.channel.register(this.selector, SelectionKey.OP_READ);
+
+		Random random = new Random();
+		this.nextMessageId = random.nextInt(0x10000);
+		this.nextToken = random.nextInt();
+	}
+
+	/**
+	 * Fetches the server's configuration and creates the mirror DataManager from it.
+	 * @return the mirror
+	 * @throws Exception
+	 */
+	public DataManager mirror() throws Exception {
+		byte[] configuration = getBlockwise("config", null);
+		this.mirror = new DataManager(new String(configuration, CoapMessage.UTF8));
+		return this.mirror;
+	}
+
+	public DataManager getDataManager() {
+		return this.mirror;
+	}
+
+	/**
+	 * Subscribes to a group's samples. The latest sample is written into the mirror at once.
+	 * @param groupName the group's name
+	 * @throws Exception if the group does not exist or the server does not answer
+	 */
+	public void observe(String groupName) throws Exception {
+		DataChannelGroup group = this.mirror.getDataChannelGroup(groupName);
+		if (group == null) {
+			throw new Exception(String.format("Unknown group %s", groupName));
+		}
+		int token = this.nextToken++;
+		this.observations.put(token, group);
+
+		CoapMessage request = createRequest("groups/" + groupName, token);
+		request.addOption(CoapMessage.OPTION_OBSERVE, 0);
+		CoapMessage response = exchange(request);
+		if (response.getCode() != CoapMessage.CODE_CONTENT) {
+			this.observations.remove(token);
+			throw new Exception(String.format("Observe %s failed with code %s", groupName, codeString(response.getCode())));
+		}
+		applySamples(group, response.getPayload());
+	}
+
+	/**
+	 * Copies frames from the server into the mirror. Only frames whose samples are all published
+	 * on the server are copied, and their samples are published in the mirror.
+	 * @param fromIndex the first frame index (inclusive)
+	 * @param toIndex the last frame index (exclusive)
+	 * @return the number of frames copied
+	 * @throws Exception
+	 */
+	public int fetchFrames(int fromIndex, int toIndex) throws Exception {
+		byte[] frames = getBlockwise("frames", new String[] {"from=" + fromIndex, "to=" + toIndex});
+		int frameBytes = this.mirror.getFrameByteCount();
+		int frameCount = frames.length / frameBytes;
+		FrameStore store = this.mirror.getFrameStore();
+
+		for (int i = 0; i < frameCount; i++) {
+			ByteBuffer buffer = store.getBufferForWrite(fromIndex + i).duplicate();
+			buffer.position(store.getOffset(fromIndex + i));
+			buffer.put(frames, i * frameBytes, frameBytes);
+			store.commitFrame(fromIndex + i);
+		}
+		for (DataChannelGroup group : this.mirror.getDataChannelGroups()) {
+			group.indexValidity(fromIndex, fromIndex + frameCount);
+			int end = (fromIndex + frameCount) * group.getSampleRate();
+			if (frameCount > 0 && end > group.getPublishedSampleCount()) {
+				group.publishSamples(end);
+			}
+		}
+		return frameCount;
+	}
+
+	/**
+	 * Writes the samples of the notifications that have arrived into the mirror.
+	 * @param timeout the longest time to wait for a notification (in milliseconds); 0 does not wait
+	 * @return the number of samples written
+	 * @throws IOException
+	 */
+	public int poll(long timeout) throws IOException {
+		int applied = 0;
+		if (timeout > 0) {
+			this.selector.select(timeout);
+		} else {
+			this.selector.selectNow();
+		}
+		this.selector.selectedKeys().clear();
+
+		CoapMessage message;
+		while ((message = receive()) != null) {
+			applied += dispatch(message);
+		}
+		return applied;
+	}
+
+	/**
+	 * Cancels the observations and closes the connection.
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		for (Map.Entry<Integer, DataChannelGroup> observation : this.observations.entrySet()) {
+			CoapMessage request = createRequest("groups/" + observation.getValue().getName(), observation.getKey());
+			request.addOption(CoapMessage.OPTION_OBSERVE, 1);
+			try {
+				exchange(request);
+			} catch (Exception e) {
+				// The server will forget the observation when a notification is reset.
+			}
+		}
+		this.observations.clear();
+		this.selector.close();
+		this.channel.close();
+	}
+
+	public long getNotificationCount() {
+		return this.notificationCount;
+	}
+
+	public long getRetransmissionCount() {
+		return this.retransmissionCount;
+	}
+
+	/**
+	 * Gets a resource, a block at a time until the last block.
+	 */
+	private byte[] getBlockwise(String path, String[] queries) throws Exception {
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		int blockNumber = 0;
+		while (true) {
+			CoapMessage request = createRequest(path, this.nextToken++);
+			if (queries != null) {
+				for (String query : queries) {
+					request.addOption(CoapMessage.OPTION_URI_QUERY, query);
+				}
+			}
+			request.addOption(CoapMessage.OPTION_BLOCK2, CoapMessage.block(blockNumber, false, CoapTelemetryServer.MAXIMUM_BLOCK_EXPONENT));
+			CoapMessage response = exchange(request);
+			if (response.getCode() != CoapMessage.CODE_CONTENT) {
+				throw new Exception(String.format("Get %s failed with code %s", path, codeString(response.getCode())));
+			}
+			content.write(response.getPayload());
+
+			int block = response.getIntOption(CoapMessage.OPTION_BLOCK2, 0);
+			if (!CoapMessage.blockHasMore(block)) {
+				return content.toByteArray();
+			}
+			if (CoapMessage.blockSize(block) != CoapTelemetryServer.MAXIMUM_PAYLOAD_BYTES) {
+				throw new Exception(String.format("Unsupported block size %s", CoapMessage.blockSize(block)));
+			}
+			blockNumber++;
+		}
+	}
+
+	/**
+	 * Sends a confirmable request and waits for its piggybacked response, retransmitting as needed.
+	 * Notifications received meanwhile are applied.
+	 */
+	private CoapMessage exchange(CoapMessage request) throws Exception {
+		long timeout = ACK_TIMEOUT;
+		for (int attempt = 0; attempt <= MAXIMUM_RETRANSMIT; attempt++) {
+			if (attempt > 0) {
+				this.retransmissionCount++;
+			}
+			send(request);
+			long deadline = System.currentTimeMillis() + timeout;
+			long remaining = timeout;
+			while (remaining > 0) {
+				this.selector.select(remaining);
+				this.selector.selectedKeys().clear();
+				CoapMessage message;
+				while ((message = receive()) != null) {
+					if (message.getType() == CoapMessage.TYPE_ACKNOWLEDGEMENT
+							&& message.getMessageId() == request.getMessageId()) {
+						return message;
+					}
+					dispatch(message);
+				}
+				remaining = deadline - System.currentTimeMillis();
+			}
+			timeout *= 2;
+		}
+		throw new IOException(String.format("No response to %s", request.getUriPath()));
+	}
+
+	/**
+	 * Applies a notification, or resets a message for an unknown observation.
+	 */
+	private int dispatch(CoapMessage message) throws IOException {
+		if (message.getType() == CoapMessage.TYPE_ACKNOWLEDGEMENT || message.getType() == CoapMessage.TYPE_RESET) {
+			return 0;	// A late answer to a retransmitted request
+		}
+		DataChannelGroup group = message.getToken().length == 4 ? this.observations.get(ByteBuffer.wrap(message.getToken()).getInt()) : null;
+		if (group == null) {
+			send(new CoapMessage(CoapMessage.TYPE_RESET, CoapMessage.CODE_EMPTY, message.getMessageId()));
+			return 0;
+		}
+		this.notificationCount++;
+		if (message.getType() == CoapMessage.TYPE_CONFIRMABLE) {
+			send(new CoapMessage(CoapMessage.TYPE_ACKNOWLEDGEMENT, CoapMessage.CODE_EMPTY, message.getMessageId()));
+		}
+		return applySamples(group, message.getPayload());
+	}
+
+	/**
+	 * Writes a group payload (first sample index, then sample sets) into the mirror.
+	 */
+	private int applySamples(DataChannelGroup group, byte[] payload) {
+		ByteBuffer input = ByteBuffer.wrap(payload);
+		int index = input.getInt();
+		int sampleRate = group.getSampleRate();
+		int sampleBytes = group.getSampleBytes();
+		int count = input.remaining() / sampleBytes;
+		FrameStore store = this.mirror.getFrameStore();
+		int firstFrame = index / sampleRate;
+
+		for (int i = 0; i < count; i++, index++) {
+			int frameIndex = index / sampleRate;
+			ByteBuffer buffer = store.getBufferForWrite(frameIndex).duplicate();
+			buffer.position(store.getOffset(frameIndex) + group.getByteOffset() + (index % sampleRate) * sampleBytes);
+			for (int b = 0; b < sampleBytes; b++) {
+				buffer.put(input.get());
+			}
+		}
+		if (count > 0) {
+			group.indexValidity(firstFrame, (index - 1) / sampleRate + 1);
+		}
+		if (count > 0 && index > group.getPublishedSampleCount()) {
+			group.publishSamples(index);
+		}
+		return count;
+	}
+
+	private CoapMessage createRequest(String path, int token) {
+		CoapMessage request = new CoapMessage(CoapMessage.TYPE_CONFIRMABLE, CoapMessage.CODE_GET, this.nextMessageId++);
+		request.setToken(ByteBuffer.allocate(4).putInt(token).array());
+		request.setUriPath(path);
+		return request;
+	}
+
+	private void send(CoapMessage message) throws IOException {
+		this.sendBuffer.clear();
+		message.encode(this.sendBuffer);
+		this.sendBuffer.flip();
+		this.channel.write(this.sendBuffer);
+	}
+
+	private CoapMessage receive() throws IOException {
+		while (true) {
+			this.receiveBuffer.clear();
+			if (this.channel.receive(this.receiveBuffer) == null) {
+				return null;
+			}
+			this.receiveBuffer.flip();
+			try {
+				return CoapMessage.decode(this.receiveBuffer);
+			} catch (Exception e) {
+				// Not CoAP; ignore it
+			}
+		}
+	}
+
+	private static String codeString(int code) {
+		return String.format("%d.%02d", code >>> 5, code & 0x1F);
+	}
+
+}
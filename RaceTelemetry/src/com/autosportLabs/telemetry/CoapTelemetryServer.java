@@ -0,0 +1,439 @@
+package com.autosportLabs.telemetry;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.autosportLabs.data.DataChannelGroup;
+import com.autosportLabs.data.DataManager;
+import com.autosportLabs.data.FrameStore;
+
+/**
+ * Serves a live DataManager over CoAP.
+ *
+ * Resources:
+ *   config              the configuration JSON (block-wise when large)
+ *   groups/{group name} the group's latest samples; observable, a notification is sent to every
+ *                       observer as the group's published sample count advances
+ *   frames?from=a&to=b  frames a (inclusive) to b (exclusive), clipped to the fully published
+ *                       frames, as raw frame bytes (block-wise)
+ *
+ * A group payload is the index of its first sample (4 bytes, big-endian) followed by consecutive
+ * sample sets of the group's sample bytes each.
+ *
+ * The server does not create threads; it uses non-blocking I/O, and each call to poll() answers
+ * the requests that have arrived and notifies observers. It is meant to be polled by the
+ * DataManager's writer (the ingest thread) between samples, or run() on a thread of its own.
+ * Notifications are non-confirmable; one that cannot be sent immediately is dropped, and an
+ * observer can recover the samples from the frames resource.
+ */
+public class CoapTelemetryServer implements Runnable {
+
+	// 2^(6 + 4) = 1024 bytes, the largest block and notification payload
+	static final int MAXIMUM_BLOCK_EXPONENT = 6;
+	static final int MAXIMUM_PAYLOAD_BYTES = 1024;
+
+	private static final int MESSAGE_BYTES = 1280;
+	private static final int OBSERVE_SEQUENCE_MASK = 0xFFFFFF;
+
+	private final DataManager manager;
+	private final List<DataChannelGroup> groups;
+	private final List<List<Observer>> observers;
+	private final int[] notifiedSampleCounts;
+
+	private final DatagramChannel channel;
+	private final Selector selector;
+	private final ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(MESSAGE_BYTES);
+	private final ByteBuffer sendBuffer = ByteBuffer.allocateDirect(MESSAGE_BYTES);
+	private final byte[] configurationBytes;
+	private int nextMessageId = 0;
+	private volatile boolean closed = false;
+
+	private long requestCount = 0;
+	private long notificationCount = 0;
+	private long droppedCount = 0;
+
+	/**
+	 * @param manager the DataManager to serve
+	 * @param address the address to serve on, such as a loopback address (port 0 picks a free port)
+	 * @throws IOException
+	 */
+	public CoapTelemetryServer(DataManager manager, InetSocketAddress address) throws IOException {
+		this.manager = manager;
+		this.groups = manager.getDataChannelGroups();
+		this.observers = new ArrayList<List<Observer>>();
+		for (int i = 0; i < this.groups.size(); i++) {
+			this.observers.add(new ArrayList<Observer>());
+		}
+		this.notifiedSampleCounts = new int[this.groups.size()];
+		this.configurationBytes = manager.getConfigurationJSON().getBytes(CoapMessage.UTF8);
+
+		this.channel = DatagramChannel.open();
+		this.channel.configureBlocking(false);
+		this.channel.socket().bind(address);
+		this.selector = Selector.open();
+		this.channel.register(this.selector, SelectionKey.OP_READ);
+	}
+
+	public InetSocketAddress getLocalAddress() {
+		return (InetSocketAddress) this.channel.socket().getLocalSocketAddress();
+	}
+
+	/**
+	 * Answers the requests that have arrived, then notifies observers of newly published samples.
+	 * @param timeout the longest time to wait for a request (in milliseconds); 0 does not wait
+	 * @throws IOException
+	 */
+	public void poll(long timeout) throws IOException {
+		if (timeout > 0) {
+			this.selector.select(timeout);
+		} else {
+			this.selector.selectNow();
+		}
+		this.selector.selectedKeys().clear();
+
+		while (true) {
+			this.receiveBuffer.clear();
+			SocketAddress source = this.channel.receive(this.receiveBuffer);
+			if (source == null) {
+				break;
+			}
+			this.receiveBuffer.flip();
+			CoapMessage request;
+			try {
+				request = CoapMessage.decode(this.receiveBuffer);
+			} catch (Exception e) {
+				continue;	// Not CoAP; ignore it
+			}
+			handle(request, source);
+		}
+
+		notifyObservers();
+	}
+
+	/**
+	 * Polls until closed, sleeping on the selector between requests.
+	 * Suitable only when the served DataManager's writer is another thread.
+	 */
+	public void run() {
+		try {
+			while (!this.closed) {
+				poll(1);
+			}
+		} catch (IOException e) {
+			if (!this.closed) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	public void close() throws IOException {
+		this.closed = true;
+		this.selector.close();
+		this.channel.close();
+	}
+
+	public int getObserverCount() {
+		int count = 0;
+		for (List<Observer> groupObservers : this.observers) {
+			count += groupObservers.size();
+		}
+		return count;
+	}
+
+	public long getRequestCount() {
+		return this.requestCount;
+	}
+
+	public long getNotificationCount() {
+		return this.notificationCount;
+	}
+
+	/**
+	 * @return the number of messages not sent because the socket's send buffer was full
+	 */
+	public long getDroppedCount() {
+		return this.droppedCount;
+	}
+
+	private void handle(CoapMessage request, SocketAddress source) throws IOException {
+		if (request.getType() == CoapMessage.TYPE_RESET) {
+			removeObserver(source, request.getMessageId());
+			return;
+		}
+		if (request.getType() == CoapMessage.TYPE_ACKNOWLEDGEMENT || request.getCode() == CoapMessage.CODE_EMPTY) {
+			return;
+		}
+		this.requestCount++;
+
+		CoapMessage response = createResponse(request);
+		String[] path = request.getUriPath().split("/", 2);
+		if (request.getCode() != CoapMessage.CODE_GET) {
+			response = createResponse(request, CoapMessage.CODE_METHOD_NOT_ALLOWED);
+		} else if (path[0].equals("config")) {
+			respondBlock(request, response, new BytesContent(this.configurationBytes), CoapMessage.FORMAT_JSON);
+		} else if (path[0].equals("groups") && path.length == 2) {
+			response = respondGroup(request, source, path[1]);
+		} else if (path[0].equals("frames")) {
+			response = respondFrames(request, response);
+		} else {
+			response = createResponse(request, CoapMessage.CODE_NOT_FOUND);
+		}
+		send(response, source);
+	}
+
+	private CoapMessage respondGroup(CoapMessage request, SocketAddress source, String groupName) {
+		DataChannelGroup group = this.manager.getDataChannelGroup(groupName);
+		if (group == null) {
+			return createResponse(request, CoapMessage.CODE_NOT_FOUND);
+		}
+		int groupId = this.groups.indexOf(group);
+		List<Observer> groupObservers = this.observers.get(groupId);
+
+		// Remove any earlier registration by the same client and token
+		for (int i = groupObservers.size() - 1; i >= 0; i--) {
+			Observer observer = groupObservers.get(i);
+			if (observer.address.equals(source) && Arrays.equals(observer.token, request.getToken())) {
+				groupObservers.remove(i);
+			}
+		}
+
+		CoapMessage response = createResponse(request);
+		int observe = request.getIntOption(CoapMessage.OPTION_OBSERVE, -1);
+		if (observe == 0) {
+			Observer observer = new Observer(source, request.getToken());
+			groupObservers.add(observer);
+			response.addOption(CoapMessage.OPTION_OBSERVE, observer.sequence);
+		}
+		int published = group.getPublishedSampleCount();
+		response.addOption(CoapMessage.OPTION_CONTENT_FORMAT, CoapMessage.FORMAT_OCTET_STREAM);
+		response.setPayload(groupPayload(group, Math.max(0, published - 1), published));
+		return response;
+	}
+
+	private CoapMessage respondFrames(CoapMessage request, CoapMessage response) {
+		int from = -1;
+		int to = -1;
+		try {
+			for (String query : request.getStringOptions(CoapMessage.OPTION_URI_QUERY)) {
+				if (query.startsWith("from=")) {
+					from = Integer.parseInt(query.substring(5));
+				} else if (query.startsWith("to=")) {
+					to = Integer.parseInt(query.substring(3));
+				}
+			}
+		} catch (NumberFormatException e) {
+			return createResponse(request, CoapMessage.CODE_BAD_REQUEST);
+		}
+		if (from < 0 || to < from) {
+			return createResponse(request, CoapMessage.CODE_BAD_REQUEST);
+		}
+
+		// Only frames whose samples are all published are stable.
+		int completeFrames = this.manager.getFrameCount();
+		for (DataChannelGroup group : this.groups) {
+			completeFrames = Math.min(completeFrames, group.getPublishedSampleCount() / group.getSampleRate());
+		}
+		to = Math.min(to, completeFrames);
+		from = Math.min(from, to);
+
+		respondBlock(request, response, new FrameContent(from, to), CoapMessage.FORMAT_OCTET_STREAM);
+		return response;
+	}
+
+	/**
+	 * Puts the requested block of the content in the response, or all of it if it fits in one block.
+	 */
+	private void respondBlock(CoapMessage request, CoapMessage response, Content content, int format) {
+		int requested = request.getIntOption(CoapMessage.OPTION_BLOCK2, CoapMessage.block(0, false, MAXIMUM_BLOCK_EXPONENT));
+		int exponent = Math.min(requested & 0x07, MAXIMUM_BLOCK_EXPONENT);
+		int blockSize = 1 << (exponent + 4);
+		int number = CoapMessage.blockNumber(requested);
+		int totalBytes = content.length();
+
+		response.addOption(CoapMessage.OPTION_CONTENT_FORMAT, format);
+		if (totalBytes <= blockSize && number == 0 && !request.hasOption(CoapMessage.OPTION_BLOCK2)) {
+			byte[] payload = new byte[totalBytes];
+			content.read(0, payload);
+			response.setPayload(payload);
+			return;
+		}
+
+		// A smaller size than the client asked for renumbers the blocks.
+		number = number * CoapMessage.blockSize(requested) / blockSize;
+		int start = Math.min(totalBytes, number * blockSize);
+		byte[] payload = new byte[Math.min(blockSize, totalBytes - start)];
+		content.read(start, payload);
+		response.addOption(CoapMessage.OPTION_BLOCK2, CoapMessage.block(number, start + payload.length < totalBytes, exponent));
+		if (number == 0) {
+			response.addOption(CoapMessage.OPTION_SIZE2, totalBytes);
+		}
+		response.setPayload(payload);
+	}
+
+	private void notifyObservers() throws IOException {
+		for (int groupId = 0; groupId < this.groups.size(); groupId++) {
+			DataChannelGroup group = this.groups.get(groupId);
+			int published = group.getPublishedSampleCount();
+			if (published <= this.notifiedSampleCounts[groupId]) {
+				continue;
+			}
+			List<Observer> groupObservers = this.observers.get(groupId);
+			if (!groupObservers.isEmpty()) {
+				// Build the payload once, for all observers of the group
+				int maximumSamples = (MAXIMUM_PAYLOAD_BYTES - 4) / group.getSampleBytes();
+				int from = Math.max(this.notifiedSampleCounts[groupId], published - maximumSamples);
+				byte[] payload = groupPayload(group, from, published);
+
+				for (Observer observer : groupObservers) {
+					observer.sequence = (observer.sequence + 1) & OBSERVE_SEQUENCE_MASK;
+					observer.messageId = nextMessageId();
+					CoapMessage notification = new CoapMessage(CoapMessage.TYPE_NON_CONFIRMABLE, CoapMessage.CODE_CONTENT, observer.messageId);
+					notification.setToken(observer.token);
+					notification.addOption(CoapMessage.OPTION_OBSERVE, observer.sequence);
+					notification.addOption(CoapMessage.OPTION_CONTENT_FORMAT, CoapMessage.FORMAT_OCTET_STREAM);
+					notification.setPayload(payload);
+					if (send(notification, observer.address)) {
+						this.notificationCount++;
+					}
+				}
+			}
+			this.notifiedSampleCounts[groupId] = published;
+		}
+	}
+
+	private byte[] groupPayload(DataChannelGroup group, int fromIndex, int toIndex) {
+		int sampleRate = group.getSampleRate();
+		int sampleBytes = group.getSampleBytes();
+		ByteBuffer payload = ByteBuffer.allocate(4 + (toIndex - fromIndex) * sampleBytes);
+		payload.putInt(fromIndex);
+		int index = fromIndex;
+		while (index < toIndex) {
+			// Copy the samples in each frame in one bulk transfer from a view of the frame
+			int frameIndex = index / sampleRate;
+			int frameEnd = Math.min(toIndex, (frameIndex + 1) * sampleRate);
+			ByteBuffer frame = group.getFrameSlice(frameIndex);
+			frame.limit((frameEnd - frameIndex * sampleRate) * sampleBytes);
+			frame.position((index - frameIndex * sampleRate) * sampleBytes);
+			payload.put(frame);
+			index = frameEnd;
+		}
+		return payload.array();
+	}
+
+	private void removeObserver(SocketAddress source, int messageId) {
+		for (List<Observer> groupObservers : this.observers) {
+			for (int i = groupObservers.size() - 1; i >= 0; i--) {
+				Observer observer = groupObservers.get(i);
+				if (observer.address.equals(source) && observer.messageId == messageId) {
+					groupObservers.remove(i);
+				}
+			}
+		}
+	}
+
+	private CoapMessage createResponse(CoapMessage request) {
+		return createResponse(request, CoapMessage.CODE_CONTENT);
+	}
+
+	private CoapMessage createResponse(CoapMessage request, int code) {
+		// Confirmable requests are answered in the acknowledgement (piggybacked)
+		CoapMessage response;
+		if (request.getType() == CoapMessage.TYPE_CONFIRMABLE) {
+			response = new CoapMessage(CoapMessage.TYPE_ACKNOWLEDGEMENT, code, request.getMessageId());
+		} else {
+			response = new CoapMessage(CoapMessage.TYPE_NON_CONFIRMABLE, code, nextMessageId());
+		}
+		response.setToken(request.getToken());
+		return response;
+	}
+
+	private boolean send(CoapMessage message, SocketAddress destination) throws IOException {
+		this.sendBuffer.clear();
+		message.encode(this.sendBuffer);
+		this.sendBuffer.flip();
+		if (this.channel.send(this.sendBuffer, destination) == 0) {
+			this.droppedCount++;
+			return false;
+		}
+		return true;
+	}
+
+	private int nextMessageId() {
+		this.nextMessageId = (this.nextMessageId + 1) & 0xFFFF;
+		return this.nextMessageId;
+	}
+
+	private static class Observer {
+		final SocketAddress address;
+		final byte[] token;
+		int sequence = 0;
+		int messageId = -1;
+
+		Observer(SocketAddress address, byte[] token) {
+			this.address = address;
+			this.token = token;
+		}
+	}
+
+	/**
+	 * Content served block-wise, read a block at a time.
+	 */
+	private interface Content {
+		int length();
+		void read(int offset, byte[] destination);
+	}
+
+	private static class BytesContent implements Content {
+		private final byte[] bytes;
+
+		BytesContent(byte[] bytes) {
+			this.bytes = bytes;
+		}
+
+		public int length() {
+			return this.bytes.length;
+		}
+
+		public void read(int offset, byte[] destination) {
+			System.arraycopy(this.bytes, offset, destination, 0, destination.length);
+		}
+	}
+
+	private class FrameContent implements Content {
+		private final int fromFrame;
+		private final int toFrame;
+
+		FrameContent(int fromFrame, int toFrame) {
+			this.fromFrame = fromFrame;
+			this.toFrame = toFrame;
+		}
+
+		public int length() {
+			return (this.toFrame - this.fromFrame) * manager.getFrameByteCount();
+		}
+
+		public void read(int offset, byte[] destination) {
+			int frameBytes = manager.getFrameByteCount();
+			FrameStore store = manager.getFrameStore();
+			int copied = 0;
+			while (copied < destination.length) {
+				int frameIndex = this.fromFrame + (offset + copied) / frameBytes;
+				int within = (offset + copied) % frameBytes;
+				int count = Math.min(frameBytes - within, destination.length - copied);
+				ByteBuffer buffer = store.getBuffer(frameIndex).duplicate();
+				buffer.position(store.getOffset(frameIndex) + within);
+				buffer.get(destination, copied, count);
+				copied += count;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,231 @@
+package com.autosportLabs.telemetry;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.commons.io.IOUtils;
+
+import com.autosportLabs.data.AnalogDataChannel;
+import com.autosportLabs.data.DataChannelGroup;
+import com.autosportLabs.data.DataManager;
+
+/**
+ * A console latency and throughput test of the CoAP telemetry server and client, on loopback.
+ *
+ * One ingest thread writes samples into a capture DataManager at a fixed rate and polls the
+ * server between samples. Several clients, each on its own thread, mirror the capture and observe
+ * every group; the time from publishing a sample to its arrival in each mirror is measured.
+ * Finally another client copies every frame block-wise, and its mirror is compared with the capture.
+ *
+ * Arguments: [observers] [seconds] [samples per second]
+ */
+public class TelemetryHarness {
+
+	private static final String[] CHANNEL_NAMES = {"Longitudinal Acceleration", "Lateral Acceleration",
+		"Vertical Acceleration", "Yaw Rate"};
+
+	public static void main(String[] args) throws Exception {
+		int observerCount = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+		int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		int samplesPerSecond = args.length > 2 ? Integer.parseInt(args[2]) : 300;
+
+		FileInputStream stream = new FileInputStream(new File("config.json"));
+		String stringJSON = IOUtils.toString(stream, "UTF-8");
+		stream.close();
+
+		DataManager captureDataManager = new DataManager(stringJSON);
+		DataChannelGroup captureGroup = captureDataManager.getDataChannelGroups().get(0);
+		int sampleCount = samplesPerSecond * seconds;
+		sampleCount -= sampleCount % captureGroup.getSampleRate();	// Whole frames
+		long[] publishTimes = new long[sampleCount];
+
+		CoapTelemetryServer server = new CoapTelemetryServer(captureDataManager, new InetSocketAddress("127.0.0.1", 0));
+		InetSocketAddress address = server.getLocalAddress();
+
+		// Connect the observers, polling the server until all have subscribed
+		CountDownLatch subscribed = new CountDownLatch(observerCount);
+		List<Observer> observers = new ArrayList<Observer>();
+		for (int i = 0; i < observerCount; i++) {
+			Observer observer = new Observer(new CoapTelemetryClient(address), publishTimes, subscribed);
+			observer.start();
+			observers.add(observer);
+		}
+		while (subscribed.getCount() > 0) {
+			server.poll(10);
+		}
+		for (Observer observer : observers) {
+			if (observer.failure != null) {
+				for (Observer other : observers) {
+					other.running = false;
+				}
+				server.close();
+				throw new Exception(String.format("Observer %s failed to subscribe", observer.getName()), observer.failure);
+			}
+		}
+		System.out.println(String.format("Streaming %s samples at %s/sec to %s observers", sampleCount, samplesPerSecond, observerCount));
+
+		// Ingest: write and publish samples at the rate, polling the server in between
+		AnalogDataChannel[] channels = new AnalogDataChannel[CHANNEL_NAMES.length];
+		for (int i = 0; i < channels.length; i++) {
+			channels[i] = (AnalogDataChannel) captureDataManager.getDataChannel(CHANNEL_NAMES[i]);
+		}
+		long start = System.nanoTime();
+		for (int index = 0; index < sampleCount; index++) {
+			long due = start + index * 1000000000L / samplesPerSecond;
+			long wait;
+			while ((wait = due - System.nanoTime()) > 0) {
+				server.poll(Math.max(1, wait / 1000000));
+			}
+			for (int c = 0; c < channels.length; c++) {
+				channels[c].setFloat(index * 0.01f + c, index);
+			}
+			captureGroup.setValid(true, index);
+			publishTimes[index] = System.nanoTime();
+			captureGroup.publishSamples(index + 1);
+			server.poll(0);
+		}
+		double elapsed = (System.nanoTime() - start) / 1e9;
+
+		// Let the last notifications arrive, then cancel the observations
+		long drainUntil = System.currentTimeMillis() + 500;
+		while (System.currentTimeMillis() < drainUntil) {
+			server.poll(10);
+		}
+		for (Observer observer : observers) {
+			observer.running = false;
+		}
+		for (Observer observer : observers) {
+			while (observer.isAlive()) {
+				server.poll(10);
+			}
+		}
+
+		long[] latencies = new long[0];
+		long samplesReceived = 0;
+		long notifications = 0;
+		for (Observer observer : observers) {
+			samplesReceived += observer.received;
+			notifications += observer.client.getNotificationCount();
+			int previous = latencies.length;
+			latencies = Arrays.copyOf(latencies, previous + observer.latencyCount);
+			System.arraycopy(observer.latencies, 0, latencies, previous, observer.latencyCount);
+		}
+		Arrays.sort(latencies);
+		System.out.println(String.format("Sent %s notifications (%s dropped) in %.2f s",
+				server.getNotificationCount(), server.getDroppedCount(), elapsed));
+		System.out.println(String.format("Received %s notifications, %s of %s samples (%.0f samples/sec)",
+				notifications, samplesReceived, (long) sampleCount * observerCount, samplesReceived / elapsed));
+		if (latencies.length > 0) {
+			System.out.println(String.format("Latency (us): p50 %s, p99 %s, max %s", latencies[latencies.length / 2] / 1000,
+					latencies[(int) (latencies.length * 0.99)] / 1000, latencies[latencies.length - 1] / 1000));
+		}
+
+		// Copy every frame block-wise into a new mirror, polling the server meanwhile
+		final CoapTelemetryClient client = new CoapTelemetryClient(address);
+		final int frameCount = captureDataManager.getFrameCount();
+		final long[] fetchNanos = new long[1];
+		Thread fetch = new Thread() {
+			@Override
+			public void run() {
+				try {
+					client.mirror();
+					long fetchStart = System.nanoTime();
+					client.fetchFrames(0, frameCount);
+					fetchNanos[0] = System.nanoTime() - fetchStart;
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+		};
+		fetch.start();
+		while (fetch.isAlive()) {
+			server.poll(10);
+		}
+		double fetchSeconds = fetchNanos[0] / 1e9;
+		System.out.println(String.format("Fetched %s frames block-wise in %.3f s (%.0f KB/sec)", frameCount, fetchSeconds,
+				frameCount * captureDataManager.getFrameByteCount() / 1024.0 / fetchSeconds));
+
+		int errors = 0;
+		DataChannelGroup mirrorGroup = client.getDataManager().getDataChannelGroups().get(0);
+		for (int index = 0; index < sampleCount; index++) {
+			if (!Arrays.equals(captureGroup.getBytesForSample(index), mirrorGroup.getBytesForSample(index))) {
+				errors++;
+			}
+		}
+		System.out.println("Data Integrity Errors: " + errors);
+
+		client.close();
+		server.close();
+	}
+
+	/**
+	 * A client polled on its own thread, timing each sample's arrival in its mirror.
+	 */
+	private static class Observer extends Thread {
+		final CoapTelemetryClient client;
+		final long[] publishTimes;
+		final long[] latencies;
+		final CountDownLatch subscribed;
+		int latencyCount = 0;
+		long received = 0;
+		volatile boolean running = true;
+		volatile Exception failure;		// Set if the observer could not subscribe
+
+		Observer(CoapTelemetryClient client, long[] publishTimes, CountDownLatch subscribed) {
+			this.client = client;
+			this.publishTimes = publishTimes;
+			this.latencies = new long[publishTimes.length];
+			this.subscribed = subscribed;
+		}
+
+		@Override
+		public void run() {
+			DataManager mirror;
+			try {
+				mirror = this.client.mirror();
+				for (DataChannelGroup group : mirror.getDataChannelGroups()) {
+					this.client.observe(group.getName());
+				}
+			} catch (Exception e) {
+				this.failure = e;
+				try {
+					this.client.close();
+				} catch (IOException closeFailure) {
+					e.addSuppressed(closeFailure);
+				}
+				return;
+			} finally {
+				// Count down even on failure, so the harness stops waiting and reports it
+				this.subscribed.countDown();
+			}
+
+			try {
+				DataChannelGroup group = mirror.getDataChannelGroups().get(0);
+				int seen = group.getPublishedSampleCount();
+				while (this.running) {
+					int applied = this.client.poll(10);
+					if (applied == 0) {
+						continue;
+					}
+					long now = System.nanoTime();
+					this.received += applied;
+					int published = Math.min(group.getPublishedSampleCount(), this.publishTimes.length);
+					for (int index = seen; index < published; index++) {
+						this.latencies[this.latencyCount++] = now - this.publishTimes[index];
+					}
+					seen = Math.max(seen, published);
+				}
+				this.client.close();
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+}